@@ -29,6 +29,7 @@ import org.intermine.bio.io.gff3.GFF3Record;
 import org.intermine.bio.util.BioConverterUtil;
 import org.intermine.dataconversion.DataConverter;
 import org.intermine.dataconversion.ItemWriter;
+import org.intermine.dataconversion.ParallelRecordProcessor;
 import org.intermine.metadata.ClassDescriptor;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreException;
@@ -196,23 +197,54 @@ public class GFF3Converter extends DataConverter
     }
 
     /**
-     * Parse a bufferedReader and process GFF3 record
+     * Parse a bufferedReader and process GFF3 record.  If the converter.threads property is more
+     * than 1, the lines are parsed on that many threads, and processed in order on this one.
      * @param bReader the Reader
      * @throws java.io.IOException if an error occurs reading GFF
      * @throws ObjectStoreException if an error occurs storing items
      */
     public void parse(BufferedReader bReader)  throws IOException, ObjectStoreException {
-        GFF3Record record;
-        long start, now, opCount;
+        RecordProcessor processor = new RecordProcessor(getThreadCount());
+        try {
+            processor.process(GFF3Parser.parseLines(bReader));
+        } catch (IOException e) {
+            throw e;
+        } catch (ObjectStoreException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        if (processor.duplicates) {
+            LOG.error("Duplicated IDs in GFF file: " + processor.duplicatedIds);
+            throw new IllegalArgumentException("Duplicated IDs in GFF file: "
+                    + processor.duplicatedIds);
+        }
+    }
+
+    /**
+     * Parses GFF3 lines into GFF3Records, and processes them in file order.
+     */
+    private class RecordProcessor extends ParallelRecordProcessor<String, GFF3Record>
+    {
+        private long start = System.currentTimeMillis();
+        private long opCount = 0;
+        private boolean duplicates = false;
+        private Set<String> processedIds = new HashSet<String>();
+        private Set<String> duplicatedIds = new HashSet<String>();
 
-        opCount = 0;
-        start = System.currentTimeMillis();
-        boolean duplicates = false;
-        Set<String> processedIds = new HashSet<String>();
-        Set<String> duplicatedIds = new HashSet<String>();
-        for (Iterator<?> i = GFF3Parser.parse(bReader); i.hasNext();) {
-            record = (GFF3Record) i.next();
+        RecordProcessor(int threads) {
+            super(threads);
+        }
+
+        @Override
+        protected GFF3Record parse(String line) throws IOException {
+            return new GFF3Record(line);
+        }
 
+        @Override
+        protected void handle(GFF3Record record) throws ObjectStoreException {
             // we only care about dupes if we are NOT creating locations
             if (processedIds.contains(record.getId()) && dontCreateLocations) {
                 duplicates = true;
@@ -223,19 +255,15 @@ public class GFF3Converter extends DataConverter
                 }
             }
             if (!duplicates) {
-                process(record);
+                GFF3Converter.this.process(record);
             }
             opCount++;
             if (opCount % 1000 == 0) {
-                now = System.currentTimeMillis();
+                long now = System.currentTimeMillis();
                 LOG.info("processed " + opCount + " lines --took " + (now - start) + " ms");
                 start = System.currentTimeMillis();
             }
         }
-        if (duplicates) {
-            LOG.error("Duplicated IDs in GFF file: " + duplicatedIds);
-            throw new IllegalArgumentException("Duplicated IDs in GFF file: " + duplicatedIds);
-        }
     }
 
     /**
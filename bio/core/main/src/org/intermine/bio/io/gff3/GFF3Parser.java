@@ -35,24 +35,47 @@ public final class GFF3Parser
      * @throws IOException if there is an error during reading or parsing
      */
     public static Iterator<?> parse(final BufferedReader reader) throws IOException {
-        String line = null;
+        final Iterator<String> lines = parseLines(reader);
 
-        while ((line = reader.readLine()) != null) {
-            String trimmedLine = line.trim();
+        return new Iterator<Object>() {
+            @Override
+            public boolean hasNext() {
+                return lines.hasNext();
+            }
 
-            if (trimmedLine.length() == 0 || trimmedLine.startsWith("#")) {
-                continue;
+            @Override
+            public Object next() {
+                try {
+                    return new GFF3Record(lines.next());
+                } catch (IOException e) {
+                    throw new RuntimeException("IOException while getting next GFF record", e);
+                }
             }
 
-            // throws IOException if the first GFF line isn't valid
-            new GFF3Record(trimmedLine);
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("remove not supported");
+            }
+        };
+    }
 
-            break;
-        }
+    /**
+     * Read GFF3 lines from a BufferedReader and return an Iterator over the lines that hold
+     * records, without parsing them, so that they can be parsed by several threads.  Comments,
+     * blank lines and any FASTA section at the end are skipped.
+     * @param reader the Reader to reader from
+     * @return an Iterator over the record lines from the reader
+     * @throws IOException if there is an error during reading, or the first line is not valid
+     */
+    public static Iterator<String> parseLines(final BufferedReader reader) throws IOException {
+        final String firstGFFLine = nextLine(reader);
 
-        final String firstGFFLine = line;
+        if (firstGFFLine != null) {
+            // throws IOException if the first GFF line isn't valid
+            new GFF3Record(firstGFFLine);
+        }
 
-        return new Iterator<Object>() {
+        return new Iterator<String>() {
             String currentLine = firstGFFLine;
             @Override
             public boolean hasNext() {
@@ -60,24 +83,17 @@ public final class GFF3Parser
             }
 
             @Override
-            public Object next() {
-                if (currentLine == null) {
+            public String next() {
+                if (!hasNext()) {
                     throw new NoSuchElementException();
                 }
-                Object objectToReturn = null;
+                String lineToReturn = currentLine;
                 try {
-                    objectToReturn = new GFF3Record(currentLine);
-                    while ((currentLine = reader.readLine()) != null) {
-                        String trimmedLine = currentLine.trim();
-                        if (trimmedLine.length() == 0 || trimmedLine.startsWith("#")) {
-                            continue;
-                        }
-                        break;
-                    }
+                    currentLine = nextLine(reader);
                 } catch (IOException e) {
                     throw new RuntimeException("IOException while getting next GFF record", e);
                 }
-                return objectToReturn;
+                return lineToReturn;
             }
 
             @Override
@@ -86,4 +102,16 @@ public final class GFF3Parser
             }
         };
     }
+
+    // the next line that is not blank or a comment, or null at the end of the reader
+    private static String nextLine(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String trimmedLine = line.trim();
+            if (trimmedLine.length() > 0 && !trimmedLine.startsWith("#")) {
+                return line;
+            }
+        }
+        return null;
+    }
 }
@@ -53,6 +53,7 @@ public class GFF3ConverterTask extends Task
     private String seqHandlerClassName;
 
     private boolean dontCreateLocations = false;
+    private String converterThreads;
 
      /**
      * Set the data fileset
@@ -154,6 +155,14 @@ public class GFF3ConverterTask extends Task
         this.dontCreateLocations = dontCreateLocations;
     }
 
+    /**
+     * Set the number of threads to parse GFF lines on, see DataConverter.setConverterThreads().
+     * @param converterThreads the number of threads, 1 if not set
+     */
+    public void setConverterThreads(String converterThreads) {
+        this.converterThreads = converterThreads;
+    }
+
     /**
      * @see Task#execute()
      */
@@ -230,6 +239,9 @@ public class GFF3ConverterTask extends Task
             if (dontCreateLocations) {
                 gff3converter.setDontCreateLocations(dontCreateLocations);
             }
+            if (!StringUtils.isEmpty(converterThreads)) {
+                gff3converter.setConverterThreads(converterThreads);
+            }
             DirectoryScanner ds = fileSet.getDirectoryScanner(getProject());
             String[] files = ds.getIncludedFiles();
             if (files.length == 0) {
@@ -116,6 +116,30 @@ public class ClobAccessReverseComplement extends ClobAccess
         return translate(originalChar);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        init();
+        if (srcBegin < 0 || srcEnd > length || srcEnd < srcBegin) {
+            throw new IndexOutOfBoundsException("Invalid range " + srcBegin + " to " + srcEnd
+                    + " of a Clob of length " + length);
+        }
+        // the same characters forwards, then reversed and complemented in place
+        super.getChars(length - srcEnd, length - srcBegin, dst, dstBegin);
+        int low = dstBegin;
+        int high = dstBegin + srcEnd - srcBegin - 1;
+        while (low < high) {
+            char lowChar = dst[low];
+            dst[low++] = translate(dst[high]);
+            dst[high--] = translate(lowChar);
+        }
+        if (low == high) {
+            dst[low] = translate(dst[low]);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -77,6 +77,19 @@ public class GFF3ConverterTest extends ItemsTestCase {
     }
 
 
+    /**
+     * Test that parsing lines on several threads creates the same items.
+     */
+    public void testParseLocatedThreads() throws Exception {
+        BufferedReader srcReader = new BufferedReader(new InputStreamReader(getClass()
+                    .getClassLoader().getResourceAsStream("test.gff")));
+        converter.setConverterThreads("4");
+        converter.parse(srcReader);
+        converter.storeAll();
+
+        assertEquals(readItemSet("GFF3ConverterTest.xml"), writer.getItems());
+    }
+
     /**
      * Test creating items with dontCreateLocations flag true.
      */
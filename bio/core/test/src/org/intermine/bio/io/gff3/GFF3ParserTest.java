@@ -149,6 +149,22 @@ public class GFF3ParserTest extends TestCase
         assertEquals(original, sb.toString());
     }
 
+    public void testParseLines() throws Exception {
+        String gff = "##gff-version 3\n\n"
+            + "4\t.\texon\t22335\t22528\t.\t-\t.\tID=CG32013:2\n"
+            + "# a comment\n"
+            + "4\t.\texon\t22600\t22700\t.\t-\t.\tID=CG32013:3\n"
+            + "##FASTA\n"
+            + ">4\nACGT\n";
+        Iterator<String> iter = GFF3Parser.parseLines(new BufferedReader(new StringReader(gff)));
+        List<String> lines = new ArrayList<String>();
+        while (iter.hasNext()) {
+            lines.add(iter.next());
+        }
+        assertEquals(Arrays.asList("4\t.\texon\t22335\t22528\t.\t-\t.\tID=CG32013:2",
+                    "4\t.\texon\t22600\t22700\t.\t-\t.\tID=CG32013:3"), lines);
+    }
+
     public void testParents() throws Exception {
         String gff="4\t.\texon\t22335\t22528\t.\t-\t.\tID=CG32013:2;Parent=CG32013-RA,CG32013-RB\n";
         Iterator iter = GFF3Parser.parse(new BufferedReader(new StringReader(gff)));
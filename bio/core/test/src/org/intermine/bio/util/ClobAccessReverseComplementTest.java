@@ -1,23 +1,36 @@
 package org.intermine.bio.util;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreFactory;
+import org.intermine.objectstore.ObjectStoreWriter;
+import org.intermine.objectstore.ObjectStoreWriterFactory;
 import org.intermine.objectstore.query.Clob;
 import org.intermine.objectstore.query.ClobAccess;
 
 public class ClobAccessReverseComplementTest extends TestCase
 {
     private ObjectStore os;
+    private ObjectStoreWriter osw;
 
     public void setUp() throws Exception {
         os = ObjectStoreFactory.getObjectStore("os.bio-test");
     }
 
+    public void tearDown() throws Exception {
+        if (osw != null) {
+            osw.close();
+            osw = null;
+        }
+    }
+
     public void testTranslate() throws Exception {
         Clob clob = new Clob(1);
         ClobAccess ca = new ClobAccess(os, clob);
@@ -67,4 +80,86 @@ public class ClobAccessReverseComplementTest extends TestCase
 
     }
 
+    public void testGetCharsMatchesToString() throws Exception {
+        osw = ObjectStoreWriterFactory.getObjectStoreWriter("osw.bio-test");
+        int pageSize = Clob.CLOB_PAGE_SIZE;
+        // an odd and an even length, each spanning three pages
+        for (int length : new int[] {2 * pageSize + 1001, 2 * pageSize + 1002}) {
+            String sequence = makeSequence(length);
+            Clob clob = osw.createClob();
+            osw.replaceClob(clob, sequence);
+            ClobAccessReverseComplement carc = new ClobAccessReverseComplement(
+                    new ClobAccess(osw, clob));
+            String expected = reverseComplement(sequence);
+            assertEquals(expected, carc.toString());
+            assertEquals(expected, readAll(carc.getReader()));
+
+            int[][] ranges = {{0, length}, {0, 1}, {length - 1, length}, {5, 5},
+                {pageSize - 1, pageSize + 1}, {pageSize - 10, pageSize + 11},
+                {pageSize, 2 * pageSize}, {pageSize - 3, 2 * pageSize + 4},
+                {length - pageSize - 1, length}, {1, length - 1}};
+            for (int[] range : ranges) {
+                char[] chars = new char[range[1] - range[0] + 4];
+                carc.getChars(range[0], range[1], chars, 2);
+                assertEquals(range[0] + " to " + range[1], expected.substring(range[0], range[1]),
+                        new String(chars, 2, range[1] - range[0]));
+                assertEquals(0, chars[0]);
+                assertEquals(0, chars[chars.length - 1]);
+            }
+
+            // a subsequence that starts and ends part way through pages
+            int start = pageSize - 7;
+            int end = length - 13;
+            ClobAccessReverseComplement sub = carc.subSequence(start, end);
+            assertEquals(expected.substring(start, end), sub.toString());
+            assertEquals(expected.substring(start, end), readAll(sub.getReader()));
+            char[] chars = new char[20];
+            sub.getChars(3, 23, chars, 0);
+            assertEquals(expected.substring(start + 3, start + 23), new String(chars));
+        }
+    }
+
+    public void testGetCharsInvalidRange() throws Exception {
+        osw = ObjectStoreWriterFactory.getObjectStoreWriter("osw.bio-test");
+        Clob clob = osw.createClob();
+        osw.replaceClob(clob, "ACGT");
+        ClobAccessReverseComplement carc = new ClobAccessReverseComplement(
+                new ClobAccess(osw, clob));
+        try {
+            carc.getChars(2, 5, new char[10], 0);
+            fail("Expected an IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // as expected
+        }
+    }
+
+    private static String makeSequence(int length) {
+        String bases = "ACGTNacgtn";
+        Random random = new Random(length);
+        StringBuilder sequence = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sequence.append(bases.charAt(random.nextInt(bases.length())));
+        }
+        return sequence.toString();
+    }
+
+    private static String reverseComplement(String sequence) {
+        String from = "ACGTNacgtn";
+        String to = "TGCANtgcan";
+        StringBuilder ret = new StringBuilder();
+        for (int i = sequence.length() - 1; i >= 0; i--) {
+            ret.append(to.charAt(from.indexOf(sequence.charAt(i))));
+        }
+        return ret.toString();
+    }
+
+    private static String readAll(Reader reader) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[1000];
+        int count;
+        while ((count = reader.read(buffer)) != -1) {
+            text.append(buffer, 0, count);
+        }
+        return text.toString();
+    }
 }
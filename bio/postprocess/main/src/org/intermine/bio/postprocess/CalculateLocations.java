@@ -59,10 +59,15 @@ import org.intermine.util.DynamicUtil;
 public class CalculateLocations
 {
     private static final Logger LOG = Logger.getLogger(CalculateLocations.class);
+    /**
+     * The number of chromosomes to look for overlaps on at once, unless overlap.threads is set.
+     */
+    public static final int DEFAULT_OVERLAP_THREADS = 4;
 
     protected ObjectStoreWriter osw;
     protected ObjectStore os;
     private Model model;
+    private int overlapThreads = DEFAULT_OVERLAP_THREADS;
 
 
 
@@ -77,6 +82,15 @@ public class CalculateLocations
     }
 
 
+    /**
+     * Set the number of chromosomes to look for overlaps on at once.  This is set from the
+     * overlap.threads property by PostProcessOperationsTask, so it takes a String.
+     * @param overlapThreads the number of threads
+     */
+    public void setOverlapThreads(String overlapThreads) {
+        this.overlapThreads = Integer.parseInt(overlapThreads.trim());
+    }
+
     /**
      * Create OverlapRelation objects for all overlapping SequenceFeatures by querying
      * objects that are located on chromosomes and overlap.
@@ -93,12 +107,8 @@ public class CalculateLocations
         osw.beginTransaction();
         Map<String, Integer> summary = new HashMap<String, Integer>();
         Map<Integer, Chromosome> chromosomeMap = makeChromosomeMap();
-        Iterator<?> chromosomeIdIter = chromosomeMap.keySet().iterator();
-        while (chromosomeIdIter.hasNext()) {
-            Integer id = (Integer) chromosomeIdIter.next();
-            createSubjectOverlapRelations(chromosomeMap.get(id), classNamesToIgnore,
-                    ignoreSelfMatches, summary);
-        }
+        OverlapUtil.createOverlaps(os, chromosomeMap.values(), classNamesToIgnore,
+                ignoreSelfMatches, osw, summary, overlapThreads);
         osw.commitTransaction();
         LOG.info("Stored a total of " + summary.remove("total") + " overlaps");
         List<SortElement> sortList = new ArrayList<SortElement>();
@@ -141,28 +151,6 @@ public class CalculateLocations
         }
     }
 
-    /**
-     * Create OverlapRelation objects for locations that have the given subject.
-     *
-     * @param subject a Chromosome object on which to create the overlaps
-     * @param classNamesToIgnore a List of the names of those classes that should be ignored when
-     * searching for overlaps.  Sub classes to these classes are ignored too. In addition, an
-     * entry can be of the form class=class, which specifies that the particular combination should
-     * be ignored. Hence an entry of the form class is equivalent to class=InterMineObject
-     * @param ignoreSelfMatches if true, don't create OverlapRelations between two objects of the
-     * same class
-     * @param summary a Map to which summary data will be added
-     */
-    private void createSubjectOverlapRelations(Chromosome subject, List<String> classNamesToIgnore,
-            boolean ignoreSelfMatches, Map<String, Integer> summary) throws Exception {
-        LOG.info("Creating overlaps for id " + subject.getId() + ", identifier: "
-                 + subject.getPrimaryIdentifier());
-
-        OverlapUtil.createOverlaps(os, subject, classNamesToIgnore, ignoreSelfMatches, osw,
-                summary);
-    }
-
-
     /**
      * Create a Location that spans the locations of some child objects.  eg. create a location for
      * Transcript that is as big as all the exons in it's exons collection.  One new location will
@@ -17,13 +17,17 @@ import java.sql.Statement;
 import org.apache.log4j.Logger;
 import org.intermine.objectstore.ObjectStoreWriter;
 import org.intermine.objectstore.intermine.ObjectStoreWriterInterMineImpl;
+import org.intermine.objectstore.intermine.RangeBins;
 import org.intermine.sql.Database;
+import org.intermine.sql.DatabaseUtil;
 
 
 /**
 * Create an index on the location table to be used for range queries. If Postgres is version 9.2 or
 * later this will use the built-in int4range type, otherwise it will use BioSeg if installed. If
-* neither of these conditions are met an exception will be thrown.
+* neither of these conditions are met an exception will be thrown. Alternatively, or as well, the
+* location table can be given a column of UCSC-style bins with an ordinary index, which overlap
+* queries on a single chromosome will use until more locations are stored.
 * @author Richard Smith
 *
 */
@@ -31,6 +35,7 @@ public class CreateLocationOverlapIndex
 {
     protected ObjectStoreWriterInterMineImpl osw;
     private static final String RANGE_TYPE = "int4range";
+    private static final String TABLE = "location";
     private static final Logger LOG = Logger.getLogger(CreateLocationOverlapIndex.class);
 
     /**
@@ -104,4 +109,58 @@ public class CreateLocationOverlapIndex
                     + " to be > 9.2) and doesn't have bioseg installed. Aborting.");
         }
     }
+
+    /**
+     * Add a column to the location table holding the bin of each location, as defined by
+     * RangeBins, fill it in and index it together with the chromosome.  Once done this is recorded
+     * in the metadata and in the schema of the ObjectStore, so that overlap queries use the bins.
+     * Locations stored later won't have a bin and storing them clears that record, so this should
+     * be run after everything else that creates locations.
+     *
+     * @throws SQLException if commands fail
+     */
+    public void createBins() throws SQLException {
+        Database db = this.osw.getDatabase();
+        Connection con = db.getConnection();
+        try {
+            con.setAutoCommit(false);
+            long startTime = System.currentTimeMillis();
+            Statement statement = con.createStatement();
+            if (!DatabaseUtil.columnExists(con, TABLE, RangeBins.BIN_COLUMN)) {
+                statement.executeUpdate("ALTER TABLE " + TABLE + " ADD COLUMN "
+                        + RangeBins.BIN_COLUMN + " integer");
+            }
+            String updateSql = "UPDATE " + TABLE + " SET " + RangeBins.BIN_COLUMN + " = "
+                + RangeBins.getBinSql("intermine_start", "intermine_end");
+            LOG.info(updateSql);
+            int rows = statement.executeUpdate(updateSql);
+            String indexName = TABLE + "__" + RangeBins.BIN_COLUMN;
+            if (!indexExists(con, indexName)) {
+                String indexSql = "CREATE INDEX " + indexName + " ON " + TABLE
+                    + " (locatedonid, " + RangeBins.BIN_COLUMN + ")";
+                LOG.info(indexSql);
+                statement.executeUpdate(indexSql);
+            }
+            RangeBins.setComplete(con, TABLE, true);
+            con.commit();
+            con.setAutoCommit(true);
+            osw.getSchema().setRangeBins(TABLE, true);
+            statement.executeUpdate("ANALYSE " + TABLE);
+            statement.close();
+            LOG.info("Set the bins of " + rows + " locations, took: "
+                    + (System.currentTimeMillis() - startTime) + "ms.");
+        } finally {
+            con.close();
+        }
+    }
+
+    private static boolean indexExists(Connection con, String indexName) throws SQLException {
+        Statement statement = con.createStatement();
+        try {
+            return statement.executeQuery("SELECT 1 FROM pg_indexes WHERE indexname = '"
+                    + indexName + "'").next();
+        } finally {
+            statement.close();
+        }
+    }
 }
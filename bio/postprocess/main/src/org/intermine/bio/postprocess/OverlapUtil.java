@@ -10,12 +10,20 @@ package org.intermine.bio.postprocess;
  *
  */
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 import org.intermine.metadata.Model;
@@ -27,6 +35,7 @@ import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.ObjectStoreWriter;
 import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.objectstore.intermine.ObjectStoreWriterInterMineImpl;
 import org.intermine.metadata.ConstraintOp;
 import org.intermine.objectstore.query.ConstraintSet;
 import org.intermine.objectstore.query.ContainsConstraint;
@@ -36,6 +45,7 @@ import org.intermine.objectstore.query.QueryField;
 import org.intermine.objectstore.query.QueryObjectReference;
 import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.util.DaemonThreadFactory;
 
 
 /**
@@ -47,6 +57,8 @@ import org.intermine.objectstore.query.ResultsRow;
 public abstract class OverlapUtil
 {
     private static final Logger LOG = Logger.getLogger(OverlapUtil.class);
+    private static final int BATCH_SIZE = 10000;
+    private static final int WRITE_BATCH_SIZE = 100000;
 
     private OverlapUtil() {
       //disable external instantiation
@@ -73,8 +85,76 @@ public abstract class OverlapUtil
             List<?> classNamesToIgnore, boolean ignoreSelfMatches, ObjectStoreWriter osw,
             Map<String, Integer> summary)
         throws ObjectStoreException, ClassNotFoundException {
-        Model model = os.getModel();
+        Map<Class<?>, Set<Class<?>>> classesToIgnore = getClassesToIgnore(os.getModel(),
+                classNamesToIgnore);
+        OverlapSweep sweep = createOverlaps(os, subject, classesToIgnore, ignoreSelfMatches, osw);
+        sweep.addToSummary(summary);
+    }
+
+    /**
+     * Creates OverlapRelations for overlapping SequenceFeature objects located on each of the
+     * given subjects, working on several subjects at once.  The locations on each subject are
+     * read in order of start and compared in a single pass, and the overlapping pairs are added
+     * to the overlappingFeatures collections in large batches.
+     *
+     * @param os the ObjectStore to query
+     * @param subjects the SequenceFeatures (eg. Chromosomes) where the LSFs are located
+     * @param classNamesToIgnore a List of the names of those classes that should be ignored when
+     * searching for overlaps, as for createOverlaps() on one subject
+     * @param ignoreSelfMatches if true, don't create OverlapRelations between two objects of the
+     * same class
+     * @param osw the ObjectStoreWriter to use to write to the database
+     * @param summary a Map, to which summary data will be added
+     * @param threads the number of subjects to work on at once
+     * @throws ObjectStoreException if an error occurs while reading or writing
+     */
+    public static void createOverlaps(final ObjectStore os,
+            Collection<? extends SequenceFeature> subjects, List<?> classNamesToIgnore,
+            final boolean ignoreSelfMatches, final ObjectStoreWriter osw,
+            Map<String, Integer> summary, int threads) throws ObjectStoreException {
+        final Map<Class<?>, Set<Class<?>>> classesToIgnore = getClassesToIgnore(os.getModel(),
+                classNamesToIgnore);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads),
+                new DaemonThreadFactory("OverlapUtil"));
+        try {
+            List<Future<OverlapSweep>> futures = new ArrayList<Future<OverlapSweep>>();
+            for (final SequenceFeature subject : subjects) {
+                futures.add(executor.submit(new Callable<OverlapSweep>() {
+                    public OverlapSweep call() throws Exception {
+                        return createOverlaps(os, subject, classesToIgnore, ignoreSelfMatches,
+                                osw);
+                    }
+                }));
+            }
+            for (Future<OverlapSweep> future : futures) {
+                try {
+                    future.get().addToSummary(summary);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof ObjectStoreException) {
+                        throw (ObjectStoreException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new ObjectStoreException("Error while creating overlaps", cause);
+                } catch (InterruptedException e) {
+                    throw new ObjectStoreException("Interrupted while creating overlaps", e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
+    /**
+     * Parse the classes to ignore when looking for overlaps.
+     *
+     * @param model the Model
+     * @param classNamesToIgnore class names, or pairs of class names in the form class=class
+     * @return a Map from each class to ignore to the classes it should be ignored against
+     */
+    static Map<Class<?>, Set<Class<?>>> getClassesToIgnore(Model model,
+            List<?> classNamesToIgnore) {
         Map<Class<?>, Set<Class<?>>> classesToIgnore = new HashMap<Class<?>, Set<Class<?>>>();
 
         Iterator<?> classNamesToIgnoreIter = classNamesToIgnore.iterator();
@@ -106,19 +186,27 @@ public abstract class OverlapUtil
                 // ignore
             }
         }
+        return classesToIgnore;
+    }
 
+    private static OverlapSweep createOverlaps(ObjectStore os, SequenceFeature subject,
+            Map<Class<?>, Set<Class<?>>> classesToIgnore, boolean ignoreSelfMatches,
+            ObjectStoreWriter osw) throws ObjectStoreException {
         Query q = new Query();
         ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
         q.setConstraint(cs);
+        q.setDistinct(false);
 
         QueryClass qcLoc = new QueryClass(Location.class);
         q.addFrom(qcLoc);
-        q.addToSelect(qcLoc);
-
-        q.setDistinct(false);
         QueryClass qcObj = new QueryClass(SequenceFeature.class);
         q.addFrom(qcObj);
-        q.addToSelect(qcObj);
+
+        QueryField qfStart = new QueryField(qcLoc, "start");
+        q.addToSelect(qfStart);
+        q.addToSelect(new QueryField(qcLoc, "end"));
+        q.addToSelect(new QueryField(qcObj, "id"));
+        q.addToSelect(new QueryField(qcObj, "class"));
 
         QueryObjectReference ref1 = new QueryObjectReference(qcLoc, "feature");
         ContainsConstraint cc1 = new ContainsConstraint(ref1, ConstraintOp.CONTAINS, qcObj);
@@ -129,87 +217,56 @@ public abstract class OverlapUtil
                 subject);
         cs.addConstraint(subjectIdConstraint);
 
-        q.addToOrderBy(new QueryField(qcLoc, "start"));
+        q.addToOrderBy(qfStart);
 
+        OverlapSweep sweep = new OverlapSweep(classesToIgnore, ignoreSelfMatches);
         try {
             ((ObjectStoreInterMineImpl) os).goFaster(q);
-            Results results = os.execute(q);
-            Map<Location, SequenceFeature> currentLocations
-                = new HashMap<Location, SequenceFeature>();
-            int count = 0;
+            Results results = os.execute(q, BATCH_SIZE, true, false, false);
             Iterator<?> resIter = results.iterator();
-
             while (resIter.hasNext()) {
                 ResultsRow<?> rr = (ResultsRow<?>) resIter.next();
-
-                Location location = (Location) rr.get(0);
-
-                if (location.getStart() == null || location.getEnd() == null) {
+                Integer start = (Integer) rr.get(0);
+                Integer end = (Integer) rr.get(1);
+                if (start == null || end == null) {
                     continue;
                 }
-
-                SequenceFeature lsf = (SequenceFeature) rr.get(1);
-
-                if (isAClassToIgnore(classesToIgnore, lsf.getClass())) {
-                    continue;
+                sweep.add(((Integer) rr.get(2)).intValue(), (Class<?>) rr.get(3),
+                        start.intValue(), end.intValue());
+                if (sweep.getPairCount() >= WRITE_BATCH_SIZE) {
+                    writePairs(osw, sweep);
                 }
-
-                int start = location.getStart().intValue();
-
-                // Okay, first we compare this location to all the currentLocations.
-                Iterator<?> currIter = currentLocations.entrySet().iterator();
-                while (currIter.hasNext()) {
-                    Map.Entry<Location, SequenceFeature> currEntry = (Map.Entry<Location,
-                            SequenceFeature>) currIter.next();
-                    Location currLoc = currEntry.getKey();
-                    SequenceFeature currLsf = currEntry.getValue();
-                    if (currLoc.getEnd().intValue() < start) {
-                        currIter.remove();
-                    } else {
-                        // They overlap, so check to see if we have configured them out.
-                        if ((!ignoreSelfMatches)
-                                || (!lsf.getClass().equals(currLsf.getClass()))) {
-                            if (!(ignoreCombination(classesToIgnore, lsf.getClass(),
-                                            currLsf.getClass())
-                                    || ignoreCombination(classesToIgnore, currLsf.getClass(),
-                                        lsf.getClass()))) {
-                                ++count;
-                                osw.addToCollection(lsf.getId(), SequenceFeature.class,
-                                        "overlappingFeatures", currLsf.getId());
-                                osw.addToCollection(currLsf.getId(), SequenceFeature.class,
-                                        "overlappingFeatures", lsf.getId());
-
-                                // Log it, for the summary.
-                                String classname1 = Util.getFriendlyName(lsf.getClass());
-                                String classname2 = Util.getFriendlyName(currLsf
-                                        .getClass());
-
-                                String summaryLine = classname1.compareTo(classname2) > 0
-                                    ? classname2 + " - " + classname1 : classname1 + " - "
-                                    + classname2;
-                                Integer summaryCount = summary.get(summaryLine);
-                                if (summaryCount == null) {
-                                    summaryCount = new Integer(0);
-                                }
-                                summary.put(summaryLine, new Integer(summaryCount.intValue()
-                                            + 1));
-                            }
-                        }
-                    }
-                }
-                currentLocations.put(location, lsf);
-            }
-            LOG.info("Stored " + count + " overlaps for " + results.size()
-                    + " features on feature id " + subject.getId() + ", identifier: "
-                     + subject.getSecondaryIdentifier());
-            Integer summaryCount = summary.get("total");
-            if (summaryCount == null) {
-                summaryCount = new Integer(0);
             }
-            summary.put("total", new Integer(summaryCount.intValue() + count));
+            writePairs(osw, sweep);
         } finally {
             ((ObjectStoreInterMineImpl) os).releaseGoFaster(q);
         }
+        LOG.info("Stored " + sweep.getOverlapCount() + " overlaps for "
+                + sweep.getFeatureCount() + " features on feature id " + subject.getId()
+                + ", identifier: " + subject.getSecondaryIdentifier());
+        return sweep;
+    }
+
+    /**
+     * Add the pairs found so far to the overlappingFeatures collections.  The writer only lets
+     * one thread use its connection at a time, so the subjects being read at once take turns.
+     */
+    private static void writePairs(ObjectStoreWriter osw, OverlapSweep sweep)
+        throws ObjectStoreException {
+        int count = sweep.getPairCount();
+        if (count == 0) {
+            return;
+        }
+        if (osw instanceof ObjectStoreWriterInterMineImpl) {
+            ((ObjectStoreWriterInterMineImpl) osw).addAllToCollection(SequenceFeature.class,
+                    "overlappingFeatures", sweep.hasIds, sweep.hadIds, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                osw.addToCollection(Integer.valueOf(sweep.hasIds[i]), SequenceFeature.class,
+                        "overlappingFeatures", Integer.valueOf(sweep.hadIds[i]));
+            }
+        }
+        sweep.clearPairs();
     }
 
     /**
@@ -252,4 +309,203 @@ public abstract class OverlapUtil
         }
         return false;
     }
+
+    /**
+     * Finds the overlapping pairs among locations on one subject, given in order of start.
+     * A location overlaps the ones before it that end at or after its start, so only those
+     * locations are kept, in arrays.  The rules about which classes to ignore are worked out
+     * once for each combination of classes seen.
+     */
+    static final class OverlapSweep
+    {
+        private final Map<Class<?>, Set<Class<?>>> classesToIgnore;
+        private final boolean ignoreSelfMatches;
+        private final Map<Class<?>, Integer> classNos = new HashMap<Class<?>, Integer>();
+        private final List<Class<?>> classes = new ArrayList<Class<?>>();
+        private boolean[] classIgnored = new boolean[8];
+        // per pair of classes: 0 not worked out yet, 1 keep, 2 ignore
+        private byte[][] pairRules = new byte[8][8];
+        private int[][] summaryCounts = new int[8][8];
+
+        private int[] activeIds = new int[64];
+        private int[] activeEnds = new int[64];
+        private int[] activeClasses = new int[64];
+        private int activeSize = 0;
+
+        int[] hasIds = new int[1024];
+        int[] hadIds = new int[1024];
+        private int pairCount = 0;
+        private long overlapCount = 0;
+        private int featureCount = 0;
+
+        /**
+         * @param classesToIgnore the classes to ignore, from getClassesToIgnore()
+         * @param ignoreSelfMatches if true, don't pair objects of the same class
+         */
+        OverlapSweep(Map<Class<?>, Set<Class<?>>> classesToIgnore, boolean ignoreSelfMatches) {
+            this.classesToIgnore = classesToIgnore;
+            this.ignoreSelfMatches = ignoreSelfMatches;
+        }
+
+        /**
+         * Add a location, which must not start before any location already added.
+         *
+         * @param id the id of the located feature
+         * @param clazz the class of the located feature
+         * @param start the start of the location
+         * @param end the end of the location
+         */
+        void add(int id, Class<?> clazz, int start, int end) {
+            featureCount++;
+            int classNo = getClassNo(clazz);
+            if (classIgnored[classNo]) {
+                return;
+            }
+            int kept = 0;
+            for (int i = 0; i < activeSize; i++) {
+                if (activeEnds[i] < start) {
+                    continue;
+                }
+                int otherClassNo = activeClasses[i];
+                if (!isIgnored(classNo, otherClassNo)) {
+                    addPair(id, activeIds[i]);
+                    int low = Math.min(classNo, otherClassNo);
+                    int high = Math.max(classNo, otherClassNo);
+                    summaryCounts[low][high]++;
+                }
+                activeIds[kept] = activeIds[i];
+                activeEnds[kept] = activeEnds[i];
+                activeClasses[kept] = otherClassNo;
+                kept++;
+            }
+            activeSize = kept;
+            if (activeSize == activeIds.length) {
+                activeIds = Arrays.copyOf(activeIds, activeSize * 2);
+                activeEnds = Arrays.copyOf(activeEnds, activeSize * 2);
+                activeClasses = Arrays.copyOf(activeClasses, activeSize * 2);
+            }
+            activeIds[activeSize] = id;
+            activeEnds[activeSize] = end;
+            activeClasses[activeSize] = classNo;
+            activeSize++;
+        }
+
+        private void addPair(int id, int otherId) {
+            if (pairCount + 2 > hasIds.length) {
+                hasIds = Arrays.copyOf(hasIds, hasIds.length * 2);
+                hadIds = Arrays.copyOf(hadIds, hadIds.length * 2);
+            }
+            hasIds[pairCount] = id;
+            hadIds[pairCount] = otherId;
+            hasIds[pairCount + 1] = otherId;
+            hadIds[pairCount + 1] = id;
+            pairCount += 2;
+            overlapCount++;
+        }
+
+        private boolean isIgnored(int classNo, int otherClassNo) {
+            byte rule = pairRules[classNo][otherClassNo];
+            if (rule == 0) {
+                Class<?> class1 = classes.get(classNo);
+                Class<?> class2 = classes.get(otherClassNo);
+                boolean ignore = (ignoreSelfMatches && class1.equals(class2))
+                    || ignoreCombination(classesToIgnore, class1, class2)
+                    || ignoreCombination(classesToIgnore, class2, class1);
+                rule = (byte) (ignore ? 2 : 1);
+                pairRules[classNo][otherClassNo] = rule;
+                pairRules[otherClassNo][classNo] = rule;
+            }
+            return rule == 2;
+        }
+
+        private int getClassNo(Class<?> clazz) {
+            Integer classNo = classNos.get(clazz);
+            if (classNo == null) {
+                int size = classes.size();
+                if (size == classIgnored.length) {
+                    classIgnored = Arrays.copyOf(classIgnored, size * 2);
+                    pairRules = grow(pairRules, size * 2);
+                    summaryCounts = grow(summaryCounts, size * 2);
+                }
+                classes.add(clazz);
+                classIgnored[size] = isAClassToIgnore(classesToIgnore, clazz);
+                classNo = Integer.valueOf(size);
+                classNos.put(clazz, classNo);
+            }
+            return classNo.intValue();
+        }
+
+        private static byte[][] grow(byte[][] square, int size) {
+            byte[][] grown = new byte[size][size];
+            for (int i = 0; i < square.length; i++) {
+                System.arraycopy(square[i], 0, grown[i], 0, square.length);
+            }
+            return grown;
+        }
+
+        private static int[][] grow(int[][] square, int size) {
+            int[][] grown = new int[size][size];
+            for (int i = 0; i < square.length; i++) {
+                System.arraycopy(square[i], 0, grown[i], 0, square.length);
+            }
+            return grown;
+        }
+
+        /**
+         * @return the number of entries in hasIds and hadIds not written yet
+         */
+        int getPairCount() {
+            return pairCount;
+        }
+
+        /**
+         * Forget the pairs found so far, once they have been written.
+         */
+        void clearPairs() {
+            pairCount = 0;
+        }
+
+        /**
+         * @return the number of overlaps found
+         */
+        long getOverlapCount() {
+            return overlapCount;
+        }
+
+        /**
+         * @return the number of locations added
+         */
+        int getFeatureCount() {
+            return featureCount;
+        }
+
+        /**
+         * Add the numbers of overlaps found, by pair of classes, to a summary.
+         *
+         * @param summary a Map from class pair, and "total", to number of overlaps
+         */
+        void addToSummary(Map<String, Integer> summary) {
+            for (int i = 0; i < classes.size(); i++) {
+                for (int j = i; j < classes.size(); j++) {
+                    int count = summaryCounts[i][j];
+                    if (count > 0) {
+                        String classname1 = Util.getFriendlyName(classes.get(i));
+                        String classname2 = Util.getFriendlyName(classes.get(j));
+                        String summaryLine = classname1.compareTo(classname2) > 0
+                            ? classname2 + " - " + classname1 : classname1 + " - " + classname2;
+                        addToSummary(summary, summaryLine, count);
+                    }
+                }
+            }
+            addToSummary(summary, "total", (int) overlapCount);
+        }
+
+        private static void addToSummary(Map<String, Integer> summary, String line, int count) {
+            Integer summaryCount = summary.get(line);
+            if (summaryCount == null) {
+                summaryCount = new Integer(0);
+            }
+            summary.put(line, new Integer(summaryCount.intValue() + count));
+        }
+    }
 }
@@ -124,6 +124,7 @@ public class PostProcessOperationsTask extends DynamicAttributeTask
             } else if ("transfer-sequences".equals(operation)) {
                 TransferSequences ts = new TransferSequences(getObjectStoreWriter());
                 ts = new TransferSequences(getObjectStoreWriter());
+                configureDynamicAttributes(ts);
                 LOGGER.info("Starting TransferSequences.transferToLocatedSequenceFeatures()");
                 ts.transferToLocatedSequenceFeatures();
                 ts = new TransferSequences(getObjectStoreWriter());
@@ -166,6 +167,7 @@ public class PostProcessOperationsTask extends DynamicAttributeTask
                 }
 
                 CalculateLocations cl = new CalculateLocations(getObjectStoreWriter());
+                configureDynamicAttributes(cl);
                 cl.createOverlapRelations(classNamesToIgnoreList, false);
             } else if ("create-attribute-indexes".equals(operation)) {
                 CreateIndexesTask cit = new CreateIndexesTask();
@@ -270,6 +272,10 @@ public class PostProcessOperationsTask extends DynamicAttributeTask
                 CreateLocationOverlapIndex cloi =
                         new CreateLocationOverlapIndex(getObjectStoreWriter());
                 cloi.create();
+            } else if ("create-location-bin-index".equals(operation)) {
+                CreateLocationOverlapIndex cloi =
+                        new CreateLocationOverlapIndex(getObjectStoreWriter());
+                cloi.createBins();
             }
 
         } catch (BuildException e) {
@@ -10,10 +10,17 @@ package org.intermine.bio.postprocess;
  *
  */
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 import org.intermine.bio.util.ClobAccessReverseComplement;
@@ -46,6 +53,7 @@ import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
 import org.intermine.objectstore.query.SimpleConstraint;
 import org.intermine.objectstore.query.SingletonResults;
+import org.intermine.util.DaemonThreadFactory;
 import org.intermine.util.DynamicUtil;
 
 /**
@@ -59,7 +67,13 @@ public class TransferSequences
 {
     protected ObjectStoreWriter osw;
     private Model model;
+    private final List<Class<?>> classesToSkip = new ArrayList<Class<?>>();
     private static final Logger LOG = Logger.getLogger(TransferSequences.class);
+    /**
+     * The number of chromosomes to transfer sequences on at once, unless transfer.threads is set.
+     */
+    public static final int DEFAULT_THREADS = 4;
+    private int transferThreads = DEFAULT_THREADS;
 
     /**
      * Create a new TransferSequences object from the given ObjectStoreWriter
@@ -68,6 +82,20 @@ public class TransferSequences
     public TransferSequences (ObjectStoreWriter osw) {
         this.osw = osw;
         this.model = osw.getModel();
+        for (String clsName : new String[] {"ChromosomeBand", "SNP", "SequenceAlteration"}) {
+            if (model.hasClassDescriptor(clsName)) {
+                classesToSkip.add(model.getClassDescriptorByName(clsName).getType());
+            }
+        }
+    }
+
+    /**
+     * Set the number of chromosomes to transfer sequences on at once.  This is set from the
+     * transfer.threads property by PostProcessOperationsTask, so it takes a String.
+     * @param transferThreads the number of threads
+     */
+    public void setTransferThreads(String transferThreads) {
+        this.transferThreads = Integer.parseInt(transferThreads.trim());
     }
 
     private void storeNewSequence(SequenceFeature feature, ClobAccess sequenceString)
@@ -86,7 +114,8 @@ public class TransferSequences
     /**
      * Use the Location relations to copy the sequence from the Chromosomes to every
      * SequenceFeature that is located on a Chromosome and which doesn't already have a
-     * sequence (ie. don't copy to Assembly).  Uses the ObjectStoreWriter that was passed to the
+     * sequence (ie. don't copy to Assembly).  Several chromosomes are done at once, each with
+     * its own writer on the ObjectStore of the ObjectStoreWriter that was passed to the
      * constructor.
      *
      * @throws Exception if there are problems with the transfer
@@ -116,19 +145,46 @@ public class TransferSequences
         LOG.info("Found " + chromosomes.size() + " chromosomes with sequence, took "
                 + (System.currentTimeMillis() - startTime) + " ms.");
 
-        for (Chromosome chr : chromosomes) {
-            String organism = "";
-            if (chr.getOrganism() != null) {
-                organism = chr.getOrganism().getShortName();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, transferThreads),
+                new DaemonThreadFactory("TransferSequences"));
+        int total = 0;
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (final Chromosome chr : chromosomes) {
+                futures.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        String organism = "";
+                        if (chr.getOrganism() != null) {
+                            organism = chr.getOrganism().getShortName();
+                        }
+                        LOG.info("Starting transfer for " + organism + " chromosome "
+                                + chr.getPrimaryIdentifier());
+                        return new Integer(transferForChromosome(chr));
+                    }
+                }));
+            }
+            for (Future<Integer> future : futures) {
+                try {
+                    total += future.get().intValue();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw e;
+                }
             }
-            LOG.info("Starting transfer for " + organism + " chromosome "
-                    + chr.getPrimaryIdentifier());
-            transferForChromosome(chr);
+        } finally {
+            executor.shutdownNow();
         }
+        LOG.info("Finished setting " + total + " feature sequences on " + chromosomes.size()
+                + " chromosomes - took " + (System.currentTimeMillis() - startTime) + " ms.");
     }
 
 
-    private void transferForChromosome(Chromosome chr) throws Exception {
+    private int transferForChromosome(Chromosome chr) throws Exception {
 
         long startTime = System.currentTimeMillis();
 
@@ -167,92 +223,90 @@ public class TransferSequences
 
         q.setConstraint(cs);
 
-        osw.beginTransaction();
+        // The residues of the chromosome are looked up once, and each feature gets a slice of
+        // them.  A slice only refers to the chromosome clob, so no residues are copied.
+        ClobAccess chrResidues = chr.getSequence().getResidues();
+        int chrLength = chrResidues.length();
 
-        Set<QueryNode> indexesToCreate = new HashSet<QueryNode>();
-        indexesToCreate.add(qcLoc);
-        indexesToCreate.add(qcSub);
-        ((ObjectStoreInterMineImpl) os).precompute(q, indexesToCreate,
-            Constants.PRECOMPUTE_CATEGORY);
-        Results results = os.execute(q, 1000, true, true, true);
+        ObjectStoreWriter chrOsw = os.getNewWriter();
+        int i = 0;
+        try {
+            chrOsw.beginTransaction();
 
-        @SuppressWarnings("unchecked") Iterator<ResultsRow> resIter = (Iterator) results.iterator();
+            Set<QueryNode> indexesToCreate = new HashSet<QueryNode>();
+            indexesToCreate.add(qcLoc);
+            indexesToCreate.add(qcSub);
+            ((ObjectStoreInterMineImpl) os).precompute(q, indexesToCreate,
+                Constants.PRECOMPUTE_CATEGORY);
+            Results results = os.execute(q, 1000, true, true, true);
 
-        long start = System.currentTimeMillis();
-        int i = 0;
-        while (resIter.hasNext()) {
-            ResultsRow<?> rr = resIter.next();
+            @SuppressWarnings("unchecked") Iterator<ResultsRow> resIter =
+                (Iterator) results.iterator();
 
-            SequenceFeature feature = (SequenceFeature) rr.get(0);
-            Location locationOnChr = (Location) rr.get(1);
+            long start = System.currentTimeMillis();
+            while (resIter.hasNext()) {
+                ResultsRow<?> rr = resIter.next();
 
-            try {
+                SequenceFeature feature = (SequenceFeature) rr.get(0);
+                Location locationOnChr = (Location) rr.get(1);
 
-                if (PostProcessUtil.isInstance(model, feature, "ChromosomeBand")) {
-                    continue;
-                }
+                try {
+                    if (isClassToSkip(feature)) {
+                        continue;
+                    }
 
-                if (PostProcessUtil.isInstance(model, feature, "SNP")) {
-                    continue;
-                }
+                    if (feature instanceof Gene) {
+                        Gene gene = (Gene) feature;
+                        if (gene.getLength() != null && gene.getLength().intValue() > 2000000) {
+                            LOG.warn("gene too long in transferToSequenceFeatures() ignoring: "
+                                      + gene);
+                            continue;
+                        }
+                    }
 
-                /**
-                 * In human intermine, SNP is not a sequence alteration, which I think is wrong
-                 * But here are the kinds of types that are alterations:
-                 *
-                 *      Deletion
-                 *      Genetic Marker
-                 *      Indel
-                 *      Insertion
-                 *      SNV
-                 *      Substitution
-                 *      Tandem Repeat
-                 */
-                if (PostProcessUtil.isInstance(model, feature, "SequenceAlteration")) {
-                    continue;
-                }
+                    ClobAccess featureSeq = getSubSequence(chrResidues, chrLength,
+                            locationOnChr);
 
-                if (feature instanceof Gene) {
-                    Gene gene = (Gene) feature;
-                    if (gene.getLength() != null && gene.getLength().intValue() > 2000000) {
-                        LOG.warn("gene too long in transferToSequenceFeatures() ignoring: "
-                                  + gene);
+                    if (featureSeq == null) {
+                        // probably the locationOnChr is out of range
                         continue;
                     }
-                }
-
-                ClobAccess featureSeq = getSubSequence(chr.getSequence(), locationOnChr);
 
-                if (featureSeq == null) {
-                    // probably the locationOnChr is out of range
-                    continue;
+                    Sequence sequence = (Sequence) DynamicUtil.createObject(
+                            Collections.singleton(Sequence.class));
+                    sequence.setResidues(featureSeq);
+                    sequence.setLength(featureSeq.length());
+                    chrOsw.store(sequence);
+                    SequenceFeature cloneLsf = PostProcessUtil.cloneInterMineObject(feature);
+                    cloneLsf.setSequence(sequence);
+                    cloneLsf.setLength(new Integer(featureSeq.length()));
+                    chrOsw.store(cloneLsf);
+                    i++;
+                    if (i % 1000 == 0) {
+                        long now = System.currentTimeMillis();
+                        LOG.info("Set sequences for " + i + " features on chromosome "
+                                + chr.getPrimaryIdentifier()
+                                + " (avg = " + ((60000L * i) / (now - start)) + " per minute)");
+                    }
+                } catch (Exception e) {
+                    Exception e2 = new Exception("Exception while processing SequenceFeature "
+                            + feature);
+                    e2.initCause(e);
+                    throw e2;
                 }
+            }
 
-                Sequence sequence =
-                    (Sequence) DynamicUtil.createObject(Collections.singleton(Sequence.class));
-                sequence.setResidues(featureSeq);
-                sequence.setLength(featureSeq.length());
-                osw.store(sequence);
-                SequenceFeature cloneLsf = PostProcessUtil.cloneInterMineObject(feature);
-                cloneLsf.setSequence(sequence);
-                cloneLsf.setLength(new Integer(featureSeq.length()));
-                osw.store(cloneLsf);
-                i++;
-                if (i % 1000 == 0) {
-                    long now = System.currentTimeMillis();
-                    LOG.info("Set sequences for " + i + " features"
-                             + " (avg = " + ((60000L * i) / (now - start)) + " per minute)");
+            chrOsw.commitTransaction();
+        } finally {
+            try {
+                if (chrOsw.isInTransaction()) {
+                    chrOsw.abortTransaction();
                 }
-            } catch (Exception e) {
-                Exception e2 = new Exception("Exception while processing SequenceFeature "
-                        + feature);
-                e2.initCause(e);
-                throw e2;
+            } finally {
+                chrOsw.close();
             }
         }
 
-        osw.commitTransaction();
-
         String organism = "";
         if (chr.getOrganism() != null) {
             organism = chr.getOrganism().getShortName();
@@ -260,14 +314,37 @@ public class TransferSequences
         LOG.info("Finished setting " + i + " feature sequences for " + organism + " chromosome "
                 + chr.getPrimaryIdentifier() + " - took "
                 + (System.currentTimeMillis() - startTime) + " ms.");
+        return i;
+    }
+
+    /**
+     * Features that don't get a sequence of their own: ChromosomeBands, SNPs and
+     * SequenceAlterations.  In human intermine, SNP is not a sequence alteration, which I think
+     * is wrong.  But here are the kinds of types that are alterations:
+     *
+     *      Deletion
+     *      Genetic Marker
+     *      Indel
+     *      Insertion
+     *      SNV
+     *      Substitution
+     *      Tandem Repeat
+     */
+    private boolean isClassToSkip(SequenceFeature feature) {
+        for (Class<?> cls : classesToSkip) {
+            if (DynamicUtil.isInstance(feature, cls)) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    private static ClobAccess getSubSequence(Sequence chromosomeSequence, Location locationOnChr) {
+    private static ClobAccess getSubSequence(ClobAccess chromosomeSequenceString,
+            int chromosomeLength, Location locationOnChr) {
         int charsToCopy =
             locationOnChr.getEnd().intValue() - locationOnChr.getStart().intValue() + 1;
-        ClobAccess chromosomeSequenceString = chromosomeSequence.getResidues();
 
-        if (charsToCopy > chromosomeSequenceString.length()) {
+        if (charsToCopy > chromosomeLength) {
             LOG.warn("SequenceFeature too long, ignoring - Location: "
                       + locationOnChr.getId() + "  LSF id: " + locationOnChr.getFeature());
             return null;
@@ -282,7 +359,7 @@ public class TransferSequences
             return null;
         }
 
-        if (endPos > chromosomeSequenceString.length()) {
+        if (endPos > chromosomeLength) {
             LOG.warn(" has end coordinate greater than chromsome length."
                       + "ignoring Location: "
                       + locationOnChr.getId() + "  LSF id: " + locationOnChr.getFeature());
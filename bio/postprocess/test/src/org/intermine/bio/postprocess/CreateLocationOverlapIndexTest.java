@@ -0,0 +1,151 @@
+package org.intermine.bio.postprocess;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.intermine.metadata.ConstraintOp;
+import org.intermine.model.InterMineObject;
+import org.intermine.model.bio.Chromosome;
+import org.intermine.model.bio.Exon;
+import org.intermine.model.bio.Location;
+import org.intermine.objectstore.ObjectStoreWriterFactory;
+import org.intermine.objectstore.intermine.ObjectStoreWriterInterMineImpl;
+import org.intermine.objectstore.intermine.RangeBins;
+import org.intermine.objectstore.query.ConstraintSet;
+import org.intermine.objectstore.query.ContainsConstraint;
+import org.intermine.objectstore.query.OverlapConstraint;
+import org.intermine.objectstore.query.OverlapRange;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.QueryObjectReference;
+import org.intermine.objectstore.query.QueryValue;
+import org.intermine.objectstore.query.SingletonResults;
+import org.intermine.util.DynamicUtil;
+
+public class CreateLocationOverlapIndexTest extends TestCase
+{
+    private ObjectStoreWriterInterMineImpl osw;
+    private Chromosome chr;
+
+    public void setUp() throws Exception {
+        osw = (ObjectStoreWriterInterMineImpl) ObjectStoreWriterFactory
+            .getObjectStoreWriter("osw.bio-test");
+        osw.getObjectStore().flushObjectById();
+        chr = (Chromosome) DynamicUtil.createObject(Collections.singleton(Chromosome.class));
+        chr.setPrimaryIdentifier("X");
+        chr.setLength(new Integer(1000000));
+        osw.store(chr);
+    }
+
+    public void tearDown() throws Exception {
+        if (osw.isInTransaction()) {
+            osw.abortTransaction();
+        }
+        osw.getSchema().setRangeBins("location", false);
+        Connection con = osw.getDatabase().getConnection();
+        try {
+            con.setAutoCommit(false);
+            RangeBins.setComplete(con, "location", false);
+            Statement s = con.createStatement();
+            s.execute("ALTER TABLE location DROP COLUMN IF EXISTS " + RangeBins.BIN_COLUMN);
+            con.commit();
+            con.setAutoCommit(true);
+        } finally {
+            con.close();
+        }
+        Query q = new Query();
+        QueryClass qc = new QueryClass(InterMineObject.class);
+        q.addFrom(qc);
+        q.addToSelect(qc);
+        osw.beginTransaction();
+        for (Object o : osw.getObjectStore().executeSingleton(q)) {
+            osw.delete((InterMineObject) o);
+        }
+        osw.commitTransaction();
+        osw.close();
+    }
+
+    public void testStoreAfterCreateBins() throws Exception {
+        storeExon(100, 200);
+        storeExon(5000, 6000);
+        new CreateLocationOverlapIndex(osw).createBins();
+        assertTrue(osw.getSchema().hasRangeBins("location"));
+        assertTrue(RangeBins.getCompleteTables(osw.getDatabase()).contains("location"));
+        assertEquals(Collections.singleton(new Integer(100)), findStarts(150, 4500));
+
+        // stored without a bin, but still found through the same ObjectStore
+        storeExon(150, 160);
+        assertFalse(osw.getSchema().hasRangeBins("location"));
+        assertFalse(RangeBins.getCompleteTables(osw.getDatabase()).contains("location"));
+        Set<Integer> expected = new HashSet<Integer>();
+        expected.add(new Integer(100));
+        expected.add(new Integer(150));
+        assertEquals(expected, findStarts(150, 4500));
+    }
+
+    public void testAbortKeepsBinsIncomplete() throws Exception {
+        storeExon(100, 200);
+        new CreateLocationOverlapIndex(osw).createBins();
+        osw.beginTransaction();
+        storeExon(150, 160);
+        osw.abortTransaction();
+        assertTrue(RangeBins.getCompleteTables(osw.getDatabase()).contains("location"));
+
+        // the next transaction that stores a location records it
+        storeExon(300, 400);
+        assertFalse(RangeBins.getCompleteTables(osw.getDatabase()).contains("location"));
+    }
+
+    private void storeExon(int start, int end) throws Exception {
+        Exon exon = (Exon) DynamicUtil.createObject(Collections.singleton(Exon.class));
+        Location location = (Location) DynamicUtil.createObject(
+                Collections.singleton(Location.class));
+        location.setStart(new Integer(start));
+        location.setEnd(new Integer(end));
+        location.setLocatedOn(chr);
+        location.setFeature(exon);
+        osw.store(exon);
+        osw.store(location);
+    }
+
+    // the starts of the locations on the chromosome overlapping the given range
+    private Set<Integer> findStarts(int start, int end) throws Exception {
+        Query q = new Query();
+        QueryClass qcChr = new QueryClass(Chromosome.class);
+        QueryClass qcLoc = new QueryClass(Location.class);
+        q.addFrom(qcChr);
+        q.addFrom(qcLoc);
+        q.addToSelect(new QueryField(qcLoc, "start"));
+        ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
+        QueryObjectReference locatedOn = new QueryObjectReference(qcLoc, "locatedOn");
+        cs.addConstraint(new ContainsConstraint(locatedOn, ConstraintOp.CONTAINS, qcChr));
+        cs.addConstraint(new OverlapConstraint(new OverlapRange(new QueryField(qcLoc, "start"),
+                        new QueryField(qcLoc, "end"), locatedOn), ConstraintOp.OVERLAPS,
+                    new OverlapRange(new QueryValue(new Integer(start)),
+                        new QueryValue(new Integer(end)), locatedOn)));
+        q.setConstraint(cs);
+        SingletonResults res = osw.getObjectStore().executeSingleton(q);
+        Set<Integer> starts = new HashSet<Integer>();
+        for (Object o : (List<?>) res) {
+            starts.add((Integer) o);
+        }
+        return starts;
+    }
+}
@@ -49,4 +49,48 @@ public class OverlapUtilTest extends TestCase {
         assertFalse(OverlapUtil.ignoreCombination(classesToIgnore, class1, class2));
     }
 
+    public void testSweep() throws Exception {
+        HashMap<Class<?>, Set<Class<?>>> classesToIgnore = new HashMap();
+        classesToIgnore.put(Exon.class, new HashSet(Arrays.asList(new Class[] {Exon.class})));
+        OverlapUtil.OverlapSweep sweep = new OverlapUtil.OverlapSweep(classesToIgnore, false);
+        sweep.add(1, Gene.class, 10, 100);
+        sweep.add(2, Exon.class, 10, 20);
+        // overlaps the gene, but exons are not paired with each other
+        sweep.add(3, Exon.class, 20, 30);
+        sweep.add(4, Gene.class, 90, 200);
+        // touching the end of gene 1
+        sweep.add(5, Gene.class, 200, 300);
+        // nothing left to overlap
+        sweep.add(6, Exon.class, 301, 310);
+
+        Set<String> pairs = new HashSet<String>();
+        for (int i = 0; i < sweep.getPairCount(); i++) {
+            pairs.add(sweep.hasIds[i] + "-" + sweep.hadIds[i]);
+        }
+        assertEquals(new HashSet(Arrays.asList("2-1", "1-2", "3-1", "1-3", "4-1", "1-4", "5-4",
+                        "4-5")), pairs);
+        assertEquals(4, sweep.getOverlapCount());
+        assertEquals(6, sweep.getFeatureCount());
+
+        Map<String, Integer> summary = new HashMap<String, Integer>();
+        sweep.addToSummary(summary);
+        assertEquals(new Integer(4), summary.get("total"));
+        assertEquals(new Integer(2), summary.get("Gene - Gene"));
+        assertEquals(new Integer(2), summary.get("Exon - Gene"));
+
+        sweep.clearPairs();
+        assertEquals(0, sweep.getPairCount());
+    }
+
+    public void testSweepIgnoreSelfMatches() throws Exception {
+        HashMap<Class<?>, Set<Class<?>>> classesToIgnore = new HashMap();
+        OverlapUtil.OverlapSweep sweep = new OverlapUtil.OverlapSweep(classesToIgnore, true);
+        sweep.add(1, Gene.class, 10, 100);
+        sweep.add(2, Gene.class, 50, 150);
+        sweep.add(3, Exon.class, 60, 70);
+        assertEquals(2, sweep.getOverlapCount());
+        assertEquals(3, sweep.hasIds[0]);
+        assertEquals(1, sweep.hadIds[0]);
+    }
+
 }
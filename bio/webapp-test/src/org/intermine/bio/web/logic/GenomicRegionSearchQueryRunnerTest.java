@@ -0,0 +1,179 @@
+package org.intermine.bio.web.logic;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.intermine.bio.web.model.GenomicRegion;
+import org.intermine.bio.web.model.GenomicRegionSearchConstraint;
+import org.intermine.objectstore.ObjectStore;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares the sweep through the features of clusters of regions with fetching the features
+ * of each region on its own, as the search used to.
+ */
+public class GenomicRegionSearchQueryRunnerTest
+{
+    private List<int[]> features;
+    private List<String> featureChrs;
+    private List<GenomicRegion> regions;
+    private TestQueryRunner runner;
+
+    @Before
+    public void setup() {
+        features = new ArrayList<int[]>();
+        featureChrs = new ArrayList<String>();
+        addFeature("2L", 100, 200);
+        addFeature("2L", 200, 201);
+        addFeature("2L", 201, 300);
+        addFeature("2L", 150, 450);
+        addFeature("2L", 399, 400);
+        addFeature("2L", 500, 500);
+        addFeature("2L", 90, 5000);
+        addFeature("2L", 1000, 2000);
+        addFeature("2L", 400000, 400100);
+        addFeature("X", 100, 200);
+
+        regions = new ArrayList<GenomicRegion>();
+        // overlapping
+        addRegion("2L", 150, 300);
+        addRegion("2L", 100, 200);
+        // adjacent
+        addRegion("2L", 300, 399);
+        addRegion("2L", 400, 500);
+        // containing the others
+        addRegion("2L", 100, 1000);
+        // between the features
+        addRegion("2L", 3000, 3010);
+        // far enough away to be fetched on its own
+        addRegion("2L", 400050, 400060);
+        addRegion("X", 200, 200);
+        addRegion("3R", 100, 200);
+
+        GenomicRegionSearchConstraint grsc = new GenomicRegionSearchConstraint();
+        grsc.setGenomicRegionList(regions);
+        runner = new TestQueryRunner(grsc);
+    }
+
+    @Test
+    public void testSweepMatchesRegionQueries() {
+        Map<GenomicRegion, OverlapFeatureRows> results = runner.searchBatch(null, regions);
+        int clusterQueries = runner.queries;
+        // 2L is fetched as two clusters, X as one and 3R as one
+        assertEquals(4, clusterQueries);
+
+        for (GenomicRegion region : regions) {
+            OverlapFeatureRows.FeatureTable table = runner.fetchFeatures(null, region.getChr(),
+                    region.getStart().intValue(), region.getEnd().intValue());
+            OverlapFeatureRows found = results.get(region);
+            if (table == null) {
+                assertTrue(region.toString(), found == null || found.isEmpty());
+                continue;
+            }
+            List<List<String>> expected = new ArrayList<List<String>>();
+            for (int row = 0; row < table.size(); row++) {
+                expected.add(table.getRow(row));
+            }
+            assertEquals(region.toString(), expected, found);
+        }
+    }
+
+    @Test
+    public void testAdjacentRegions() {
+        Map<GenomicRegion, OverlapFeatureRows> results = runner.searchBatch(null, regions);
+        // ends are inclusive, so the feature from 201 to 300 is only in the first of the
+        // adjacent regions, the one from 500 to 500 only in the second, and the one from 399 to
+        // 400 in both
+        assertEquals(list(90, 150, 201, 399), getStarts(results.get(regions.get(2))));
+        assertEquals(list(90, 150, 399, 500), getStarts(results.get(regions.get(3))));
+        assertNull(results.get(regions.get(8)));
+    }
+
+    private void addFeature(String chr, int start, int end) {
+        features.add(new int[] {start, end});
+        featureChrs.add(chr);
+    }
+
+    private void addRegion(String chr, int start, int end) {
+        GenomicRegion region = new GenomicRegion();
+        region.setChr(chr);
+        region.setStart(new Integer(start));
+        region.setEnd(new Integer(end));
+        regions.add(region);
+    }
+
+    private static List<String> getStarts(OverlapFeatureRows rows) {
+        List<String> starts = new ArrayList<String>();
+        for (List<String> row : rows) {
+            starts.add(row.get(5));
+        }
+        return starts;
+    }
+
+    private static List<String> list(int... values) {
+        List<String> ret = new ArrayList<String>();
+        for (int value : values) {
+            ret.add(Integer.toString(value));
+        }
+        return ret;
+    }
+
+    /**
+     * Fetches the features from the lists of the test rather than from an ObjectStore, with the
+     * same inclusive overlap as the query, counting the fetches.
+     */
+    private class TestQueryRunner extends GenomicRegionSearchQueryRunner
+    {
+        private int queries = 0;
+
+        TestQueryRunner(GenomicRegionSearchConstraint grsc) {
+            super(null, null, grsc, grsc.getGenomicRegionList());
+        }
+
+        @Override
+        OverlapFeatureRows.FeatureTable fetchFeatures(ObjectStore os, String chr, int start,
+                int end) {
+            queries++;
+            List<Integer> found = new ArrayList<Integer>();
+            for (int i = 0; i < features.size(); i++) {
+                int[] feature = features.get(i);
+                if (chr.equals(featureChrs.get(i)) && feature[0] <= end && feature[1] >= start) {
+                    found.add(new Integer(i));
+                }
+            }
+            if (found.isEmpty()) {
+                return null;
+            }
+            Collections.sort(found, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return features.get(a.intValue())[0] - features.get(b.intValue())[0];
+                }
+            });
+            OverlapFeatureRows.FeatureTable table = new OverlapFeatureRows.FeatureTable(chr);
+            for (Integer i : found) {
+                int[] feature = features.get(i.intValue());
+                table.add(i.intValue(), "F" + i, null, "Exon", feature[0], feature[1]);
+            }
+            return table;
+        }
+    }
+}
@@ -20,6 +20,7 @@ import org.intermine.bio.web.model.GeneModelCache;
 import org.intermine.bio.web.model.GeneModelSettings;
 import org.intermine.model.bio.Gene;
 import org.intermine.model.bio.SequenceFeature;
+import org.intermine.web.context.InterMineContext;
 import org.intermine.web.displayer.ReportDisplayer;
 import org.intermine.web.logic.config.ReportDisplayerConfig;
 import org.intermine.web.logic.results.ReportObject;
@@ -28,7 +29,8 @@ import org.intermine.web.logic.results.ReportObject;
  * Custom displayer for gene structure.  A list of GeneModels will be added to the request, with
  * each GeneModel representing one transcript of the gene.  Each gene model includes a transcript,
  * exons, introns, UTRs and CDSs where available.  This displayer can be used for any component of a
- * gene model and the parent gene will be retrieved first.
+ * gene model and the parent gene will be retrieved first.  The GeneModelCache is configured from
+ * the web properties when the first displayer is made.
  * @author rns
  *
  */
@@ -41,12 +43,13 @@ public class GeneStructureDisplayer extends ReportDisplayer
      */
     public GeneStructureDisplayer(ReportDisplayerConfig config, InterMineAPI im) {
         super(config, im);
+        GeneModelCache.configure(im, InterMineContext.getWebProperties());
     }
 
     @Override
     public void display(HttpServletRequest request, ReportObject reportObject) {
         List<GeneModel> geneModels =
-            GeneModelCache.getGeneModels(reportObject.getObject(), im.getModel());
+            GeneModelCache.getGeneModels(reportObject.getObject(), im.getObjectStore());
 
         if (geneModels != null && !geneModels.isEmpty()) {
             Gene gene = geneModels.get(0).getGene();
@@ -70,7 +70,8 @@ public class RegulatoryRegionsDisplayer extends ReportDisplayer
 
         SequenceFeature startRegion = (SequenceFeature) reportObject.getObject();
 
-        Set<Integer> geneModelIds = GeneModelCache.getGeneModelIds(startRegion, im.getModel());
+        Set<Integer> geneModelIds = GeneModelCache.getGeneModelIds(startRegion,
+                im.getObjectStore());
         try {
             Collection<InterMineObject> regulatoryRegions =
                 (Collection<InterMineObject>) startRegion.getFieldValue("regulatoryRegions");
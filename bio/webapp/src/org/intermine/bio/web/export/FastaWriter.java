@@ -0,0 +1,111 @@
+package org.intermine.bio.web.export;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import org.intermine.objectstore.query.ClobAccess;
+
+/**
+ * Writes sequences in FASTA format, in the same layout as the BioJava FASTA writer, reading the
+ * residues from their Clob a page at a time rather than making a String or a BioJava Sequence of
+ * them first.  Only a fixed size buffer is held, however long the sequences are, so whole
+ * chromosomes can be exported.  Reverse complemented sequences are written by passing in a
+ * ClobAccessReverseComplement.  As BioJava writes DNA in lower case and proteins in upper case,
+ * the case of the residues can be changed on the way.
+ *
+ * @author InterMine
+ */
+public class FastaWriter
+{
+    /** The number of residues on each line. */
+    public static final int LINE_WIDTH = 60;
+    private static final int BUFFER_SIZE = LINE_WIDTH * 1024;
+
+    private final Writer out;
+    private final char[] buffer = new char[BUFFER_SIZE];
+
+    /**
+     * Constructor.
+     *
+     * @param out the Writer to write to, which should be buffered
+     */
+    public FastaWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Write one DNA sequence, in lower case.
+     *
+     * @param description the description line, without the leading &gt;
+     * @param residues the residues
+     * @throws IOException if the residues can't be read or the output can't be written
+     */
+    public void writeDna(String description, ClobAccess residues) throws IOException {
+        write(description, residues, true);
+    }
+
+    /**
+     * Write one protein sequence, in upper case.
+     *
+     * @param description the description line, without the leading &gt;
+     * @param residues the residues
+     * @throws IOException if the residues can't be read or the output can't be written
+     */
+    public void writeProtein(String description, ClobAccess residues) throws IOException {
+        write(description, residues, false);
+    }
+
+    private void write(String description, ClobAccess residues, boolean lowerCase)
+        throws IOException {
+        out.write('>');
+        out.write(description);
+        out.write('\n');
+        Reader reader = residues.getReader();
+        try {
+            int column = 0;
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    buffer[i] = lowerCase ? Character.toLowerCase(buffer[i])
+                        : Character.toUpperCase(buffer[i]);
+                }
+                int pos = 0;
+                while (pos < read) {
+                    int count = Math.min(read - pos, LINE_WIDTH - column);
+                    out.write(buffer, pos, count);
+                    pos += count;
+                    column += count;
+                    if (column == LINE_WIDTH) {
+                        out.write('\n');
+                        column = 0;
+                    }
+                }
+            }
+            if (column > 0) {
+                out.write('\n');
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Flush the underlying Writer.
+     *
+     * @throws IOException if the output can't be written
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+}
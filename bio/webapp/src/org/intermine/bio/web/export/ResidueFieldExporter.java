@@ -10,25 +10,21 @@ package org.intermine.bio.web.export;
  *
  */
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.nio.charset.Charset;
 import java.util.List;
 
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.log4j.Logger;
-import org.biojava.bio.Annotation;
-import org.biojava.bio.seq.io.FastaFormat;
-import org.biojava.bio.seq.io.SeqIOTools;
-import org.biojava.bio.symbol.IllegalSymbolException;
-import org.biojava.utils.ChangeVetoException;
 import org.intermine.model.bio.BioEntity;
 import org.intermine.model.bio.SequenceFeature;
 import org.intermine.model.bio.Protein;
 import org.intermine.model.bio.Sequence;
-import org.intermine.bio.web.biojava.BioSequence;
-import org.intermine.bio.web.biojava.BioSequenceFactory;
 import org.intermine.model.InterMineObject;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.metadata.ConstraintOp;
@@ -101,33 +97,23 @@ public class ResidueFieldExporter implements FieldExporter
                 return;
             }
 
-            BioSequence bioSequence;
-
-            if (lsf != null) {
-                bioSequence = BioSequenceFactory.make(lsf);
-            } else {
-                bioSequence = BioSequenceFactory.make(protein);
-            }
-
             // avoid opening the OutputStream until we have all the data - this avoids some problems
             // that occur when getOutputStream() is called twice (once by this method and again to
             // write the error)
             OutputStream outputStream = response.getOutputStream();
 
-            Annotation annotation = bioSequence.getAnnotation();
-
-            annotation.setProperty(FastaFormat.PROPERTY_DESCRIPTIONLINE,
-                                   bioEntity.getPrimaryIdentifier());
-
-            SeqIOTools.writeFasta(outputStream, bioSequence);
+            FastaWriter writer = new FastaWriter(new BufferedWriter(
+                    new OutputStreamWriter(outputStream, Charset.forName("UTF-8"))));
+            if (lsf != null) {
+                writer.writeDna(bioEntity.getPrimaryIdentifier(), sequence.getResidues());
+            } else {
+                writer.writeProtein(bioEntity.getPrimaryIdentifier(), sequence.getResidues());
+            }
+            writer.flush();
 
             outputStream.close();
-        } catch (IllegalSymbolException e) {
-            throw new ExportException("unexpected error while exporting", e);
         } catch (IllegalArgumentException e) {
             throw new ExportException("unexpected error while exporting", e);
-        } catch (ChangeVetoException e) {
-            throw new ExportException("unexpected error while exporting", e);
         } catch (IOException e) {
             throw new ExportException("unexpected IO error while exporting", e);
         }
@@ -11,6 +11,7 @@ package org.intermine.bio.web.logic;
  */
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -18,13 +19,20 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import org.apache.log4j.Logger;
 
 import org.intermine.api.InterMineAPI;
 import org.intermine.api.profile.Profile;
@@ -46,6 +54,8 @@ import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
 import org.intermine.pathquery.OrderDirection;
 import org.intermine.pathquery.PathQuery;
+import org.intermine.util.DaemonThreadFactory;
+import org.intermine.util.PropertiesUtil;
 import org.intermine.web.logic.session.SessionMethods;
 
 /**
@@ -55,10 +65,23 @@ import org.intermine.web.logic.session.SessionMethods;
  */
 public class GenomicRegionSearchQueryRunner implements Runnable
 {
+    private static final Logger LOG = Logger.getLogger(GenomicRegionSearchQueryRunner.class);
+    // regions are searched, and their results shown, this many at a time
+    private static final int REGIONS_PER_BATCH = 1000;
+    // regions closer than this are fetched with the same query
+    private static final int MAX_GAP = 100000;
+    // the number of searches run at once, unless genomicRegionSearch.threads is set
+    private static final int DEFAULT_SEARCH_THREADS = 4;
+    private static final int QUERY_BATCH_SIZE = 10000;
+
+    // searches wait here rather than each having its own thread
+    private static ExecutorService executor = null;
+
     private HttpServletRequest request = null;
+    private HttpSession session = null;
     private String spanUUIDString = null;
     private GenomicRegionSearchConstraint grsc = null;
-    private Map<GenomicRegion, Query> queryMap = null;
+    private List<GenomicRegion> regions = null;
 
     private static Map<String, Map<String, ChromosomeInfo>> chrInfoMap = null;
 
@@ -68,15 +91,15 @@ public class GenomicRegionSearchQueryRunner implements Runnable
      * @param request HttpServletRequest
      * @param spanUUIDString UUID
      * @param grsc GenomicRegionSearchConstraint
-     * @param queryMap map of span and its query
+     * @param regions the regions to search, extended if the user asked for that
      */
     public GenomicRegionSearchQueryRunner(HttpServletRequest request, String spanUUIDString,
-            GenomicRegionSearchConstraint grsc, Map<GenomicRegion, Query> queryMap) {
+            GenomicRegionSearchConstraint grsc, List<GenomicRegion> regions) {
 
         this.request = request;
         this.spanUUIDString = spanUUIDString;
         this.grsc = grsc;
-        this.queryMap = queryMap;
+        this.regions = regions;
     }
 
     /**
@@ -109,7 +132,18 @@ public class GenomicRegionSearchQueryRunner implements Runnable
         request.getSession().setAttribute("spanConstraintMap", spanConstraintMap);
         request.setAttribute("spanQueryTotalCount", grsc.getGenomicRegionList().size());
 
-        (new Thread(this)).start();
+        session = request.getSession();
+        getExecutor(SessionMethods.getWebProperties(request)).execute(this);
+    }
+
+    private static synchronized ExecutorService getExecutor(Properties webProperties) {
+        if (executor == null) {
+            int threads = PropertiesUtil.getInt(webProperties, "genomicRegionSearch.threads",
+                    DEFAULT_SEARCH_THREADS);
+            executor = Executors.newFixedThreadPool(Math.max(1, threads),
+                    new DaemonThreadFactory("Genomic region search"));
+        }
+        return executor;
     }
 
     @Override
@@ -119,14 +153,17 @@ public class GenomicRegionSearchQueryRunner implements Runnable
     }
 
     /**
-     * The method to run all the queries.
+     * The method to run all the queries.  The regions are searched in batches, in the order they
+     * were given so that the results page can show the first ones as soon as they are ready.  In
+     * each batch, the regions are sorted by chromosome and position, nearby regions are fetched
+     * with one query, and the features are matched to the regions in memory.
      */
     private void queryExecutor() {
 
         // Use spanOverlapFullResultMap to store the data in the session
         Map<String, Map<GenomicRegion, List<List<String>>>> spanOverlapFullResultMap =
-             (Map<String, Map<GenomicRegion, List<List<String>>>>) request
-                            .getSession().getAttribute("spanOverlapFullResultMap");
+             (Map<String, Map<GenomicRegion, List<List<String>>>>) session
+                            .getAttribute("spanOverlapFullResultMap");
 
         if (spanOverlapFullResultMap == null) {
             spanOverlapFullResultMap =
@@ -135,8 +172,8 @@ public class GenomicRegionSearchQueryRunner implements Runnable
 
         // map of sequence feature statistics: key - class name. value - count of feature
         Map<String, Map<GenomicRegion, Map<String, Integer>>> spanOverlapFullStatMap =
-             (Map<String, Map<GenomicRegion, Map<String, Integer>>>) request
-                            .getSession().getAttribute("spanOverlapFullStatMap");
+             (Map<String, Map<GenomicRegion, Map<String, Integer>>>) session
+                            .getAttribute("spanOverlapFullStatMap");
 
         if (spanOverlapFullStatMap == null) {
             spanOverlapFullStatMap =
@@ -153,66 +190,189 @@ public class GenomicRegionSearchQueryRunner implements Runnable
                 && !spanOverlapFullStatMap.containsKey(spanUUIDString)) {
 
             spanOverlapFullResultMap.put(spanUUIDString, spanOverlapResultDisplayMap);
-            request.getSession().setAttribute("spanOverlapFullResultMap", spanOverlapFullResultMap);
+            session.setAttribute("spanOverlapFullResultMap", spanOverlapFullResultMap);
 
             spanOverlapFullStatMap.put(spanUUIDString, spanOverlapResultStatMap);
-            request.getSession().setAttribute("spanOverlapFullStatMap", spanOverlapFullStatMap);
+            session.setAttribute("spanOverlapFullStatMap", spanOverlapFullStatMap);
 
             try {
-                ObjectStore os = SessionMethods.getInterMineAPI(
-                        request.getSession()).getObjectStore();
-
-                for (Entry<GenomicRegion, Query> e : queryMap.entrySet()) {
-                    Results results = os.execute(e.getValue());
-
-                    List<List<String>> spanResults = new ArrayList<List<String>>();
+                ObjectStore os = SessionMethods.getInterMineAPI(session).getObjectStore();
+
+                for (int i = 0; i < regions.size(); i += REGIONS_PER_BATCH) {
+                    List<GenomicRegion> batch =
+                        regions.subList(i, Math.min(regions.size(), i + REGIONS_PER_BATCH));
+                    Map<GenomicRegion, OverlapFeatureRows> batchResults = searchBatch(os, batch);
+                    for (GenomicRegion region : batch) {
+                        OverlapFeatureRows spanResults = batchResults.get(region);
+                        if (spanResults == null || spanResults.isEmpty()) {
+                            spanOverlapResultDisplayMap.put(region, null);
+                        } else {
+                            spanOverlapResultStatMap.put(region, getStats(spanResults));
+                            spanOverlapResultDisplayMap.put(region, spanResults);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                LOG.error("Genomic region search failed", e);
+            }
+        }
+    }
 
-                    Map<String, Integer> spanStatMap = new HashMap<String, Integer>();
-                    ValueComparator bvc =  new ValueComparator(spanStatMap);
-                    @SuppressWarnings("unchecked")
-                    TreeMap<String, Integer> sortedStatMap = new TreeMap<String, Integer>(bvc);
+    // Count the features of each type, most frequent first.
+    @SuppressWarnings("unchecked")
+    private static Map<String, Integer> getStats(OverlapFeatureRows spanResults) {
+        Map<String, Integer> spanStatMap = new HashMap<String, Integer>();
+        for (int i = 0; i < spanResults.size(); i++) {
+            String item = spanResults.getType(i);
+            // add class stat to spanStatMap
+            if (spanStatMap.containsKey(item)) {
+                spanStatMap.put(item, spanStatMap.get(item) + 1);
+            } else {
+                spanStatMap.put(item, 1);
+            }
+        }
+        ValueComparator bvc =  new ValueComparator(spanStatMap);
+        TreeMap<String, Integer> sortedStatMap = new TreeMap<String, Integer>(bvc);
+        sortedStatMap.putAll(spanStatMap);
+        return sortedStatMap;
+    }
 
-                    if (results == null || results.isEmpty()) {
-                        spanOverlapResultDisplayMap.put(e.getKey(), null);
-                    }
-                    else {
-                        for (Iterator<?> iter = results.iterator(); iter.hasNext();) {
-                            ResultsRow<?> row = (ResultsRow<?>) iter.next();
-
-                            List<String> resultRow = new ArrayList<String>();
-
-                            for (Object o : row) {
-                                String item = new String();
-
-                                // NULL for symbol or PID
-                                o = o == null ? new String() : o;
-
-                                if (o instanceof Class) {
-                                    item = ((Class) o).getSimpleName();
-                                    // add class stat to spanStatMap
-                                    if (spanStatMap.containsKey(item)) {
-                                        spanStatMap.put(item, spanStatMap.get(item) + 1);
-                                    } else {
-                                        spanStatMap.put(item, 1);
-                                    }
-                                } else {
-                                    item = o.toString();
-                                }
-
-                                resultRow.add(item);
-                            }
-                            spanResults.add(resultRow);
-                        }
-                        spanOverlapResultDisplayMap.put(e.getKey(), spanResults);
+    /**
+     * Find the features overlapping each of some regions.  The regions on each chromosome are
+     * sorted by start and gathered into clusters of nearby regions.  The features overlapping
+     * each cluster are fetched with one query, in order of start, and then swept through
+     * alongside the regions.
+     */
+    Map<GenomicRegion, OverlapFeatureRows> searchBatch(ObjectStore os,
+            List<GenomicRegion> batch) {
+        Map<String, List<GenomicRegion>> regionsByChr = new HashMap<String, List<GenomicRegion>>();
+        for (GenomicRegion region : batch) {
+            List<GenomicRegion> chrRegions = regionsByChr.get(region.getChr());
+            if (chrRegions == null) {
+                chrRegions = new ArrayList<GenomicRegion>();
+                regionsByChr.put(region.getChr(), chrRegions);
+            }
+            chrRegions.add(region);
+        }
+        Map<GenomicRegion, OverlapFeatureRows> results =
+            new HashMap<GenomicRegion, OverlapFeatureRows>();
+        for (Entry<String, List<GenomicRegion>> e : regionsByChr.entrySet()) {
+            List<GenomicRegion> chrRegions = e.getValue();
+            Collections.sort(chrRegions, new Comparator<GenomicRegion>() {
+                @Override
+                public int compare(GenomicRegion a, GenomicRegion b) {
+                    return Integer.valueOf(getStart(a)).compareTo(Integer.valueOf(getStart(b)));
+                }
+            });
+            int clusterStart = 0;
+            int clusterEnd = getEnd(chrRegions.get(0));
+            for (int i = 1; i < chrRegions.size(); i++) {
+                GenomicRegion region = chrRegions.get(i);
+                if ((long) getStart(region) - clusterEnd > MAX_GAP) {
+                    searchCluster(os, e.getKey(), chrRegions.subList(clusterStart, i),
+                            clusterEnd, results);
+                    clusterStart = i;
+                    clusterEnd = getEnd(region);
+                } else {
+                    clusterEnd = Math.max(clusterEnd, getEnd(region));
+                }
+            }
+            searchCluster(os, e.getKey(), chrRegions.subList(clusterStart, chrRegions.size()),
+                    clusterEnd, results);
+        }
+        return results;
+    }
 
-                        sortedStatMap.putAll(spanStatMap);
-                        spanOverlapResultStatMap.put(e.getKey(), sortedStatMap);
+    private void searchCluster(ObjectStore os, String chr, List<GenomicRegion> cluster,
+            int clusterEnd, Map<GenomicRegion, OverlapFeatureRows> results) {
+        OverlapFeatureRows.FeatureTable table = fetchFeatures(os, chr, getStart(cluster.get(0)),
+                clusterEnd);
+        if (table == null) {
+            return;
+        }
+        // Sweep through the regions in order of start.  Features are taken on as the regions
+        // reach their start, and dropped once a region starts after their end, since no later
+        // region can overlap them either.
+        List<Integer> active = new LinkedList<Integer>();
+        int next = 0;
+        int[] matches = new int[16];
+        int[][] regionMatches = new int[cluster.size()][];
+        boolean[] matched = new boolean[table.size()];
+        for (int r = 0; r < cluster.size(); r++) {
+            int regionStart = getStart(cluster.get(r));
+            int regionEnd = getEnd(cluster.get(r));
+            while (next < table.size() && table.getStart(next) <= regionEnd) {
+                active.add(Integer.valueOf(next++));
+            }
+            int matchCount = 0;
+            for (Iterator<Integer> iter = active.iterator(); iter.hasNext();) {
+                int feature = iter.next().intValue();
+                if (table.getEnd(feature) < regionStart) {
+                    iter.remove();
+                } else if (table.getStart(feature) <= regionEnd) {
+                    if (matchCount == matches.length) {
+                        matches = Arrays.copyOf(matches, matchCount * 2);
                     }
+                    matches[matchCount++] = feature;
+                    matched[feature] = true;
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
             }
+            regionMatches[r] = Arrays.copyOf(matches, matchCount);
+        }
+        // The cluster query also finds the features between the regions, which are kept with the
+        // results for as long as the session, so only keep the features a region overlaps.
+        int[] newRows = table.retain(matched);
+        for (int r = 0; r < cluster.size(); r++) {
+            int[] featureRows = regionMatches[r];
+            for (int i = 0; i < featureRows.length; i++) {
+                featureRows[i] = newRows[featureRows[i]];
+            }
+            results.put(cluster.get(r), new OverlapFeatureRows(table, featureRows));
+        }
+    }
+
+    /**
+     * Fetch the features of the searched types overlapping a range of a chromosome, in order of
+     * start.
+     *
+     * @return the features, or null if there are none
+     */
+    OverlapFeatureRows.FeatureTable fetchFeatures(ObjectStore os, String chr, int start,
+            int end) {
+        Query q = GenomicRegionSearchUtil.createOverlapQuery(chr, start, end, grsc.getOrgName(),
+                grsc.getFeatureTypes(), false);
+        OverlapFeatureRows.FeatureTable table = null;
+        Results rows = os.execute(q, QUERY_BATCH_SIZE, true, false, true);
+        for (Iterator<?> iter = rows.iterator(); iter.hasNext();) {
+            ResultsRow<?> row = (ResultsRow<?>) iter.next();
+            Integer featureStart = (Integer) row.get(5);
+            Integer featureEnd = (Integer) row.get(6);
+            if (featureStart == null || featureEnd == null) {
+                continue;
+            }
+            if (table == null) {
+                table = new OverlapFeatureRows.FeatureTable((String) row.get(4));
+            }
+            table.add(((Integer) row.get(0)).intValue(), (String) row.get(1),
+                    (String) row.get(2), ((Class<?>) row.get(3)).getSimpleName().intern(),
+                    featureStart.intValue(), featureEnd.intValue());
+        }
+        return table;
+    }
+
+    // The start of the region searched, extended if the user asked for that.
+    private int getStart(GenomicRegion region) {
+        if (grsc.getExtendedRegionSize() > 0) {
+            return region.getExtendedStart().intValue();
+        }
+        return region.getStart().intValue();
+    }
+
+    private int getEnd(GenomicRegion region) {
+        if (grsc.getExtendedRegionSize() > 0) {
+            return region.getExtendedEnd().intValue();
         }
+        return region.getEnd().intValue();
     }
 
     /**
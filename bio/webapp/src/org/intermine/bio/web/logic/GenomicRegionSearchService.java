@@ -680,16 +680,14 @@ public class GenomicRegionSearchService
     }
 
     /**
-     * To prepare queries for genomic regions
+     * To prepare genomic regions for searching
      *
-     * @return a list of prepared queries for genomic regions
+     * @return the genomic regions, extended by the flanking if any
      */
-    public Map<GenomicRegion, Query> createQueryList() {
-        return GenomicRegionSearchUtil.createQueryList(
+    public List<GenomicRegion> createRegionList() {
+        return GenomicRegionSearchUtil.extendGenomicRegions(
             grsc.getGenomicRegionList(),
-            grsc.getExtendedRegionSize(),
-            grsc.getOrgName(),
-            grsc.getFeatureTypes());
+            grsc.getExtendedRegionSize());
     }
 
     /**
@@ -1112,7 +1110,7 @@ public class GenomicRegionSearchService
              *        4.chr
              *        5.start
              *        6.end
-             * see query fields in createQueryList method
+             * see query fields in GenomicRegionSearchUtil.createOverlapQuery
              */
             if (features != null) {
                 if (aboveCutOffFeatureTypeMap == null || aboveCutOffFeatureTypeMap.size() == 0) {
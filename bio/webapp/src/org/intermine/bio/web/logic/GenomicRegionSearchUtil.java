@@ -229,21 +229,19 @@ public final class GenomicRegionSearchUtil
     }
 
     /**
-     * Create a list of queries from user regions.
+     * Extend user regions by the flanking, if any, ready for searching.
      *
      * @param genomicRegions list of gr
      * @param extension the flanking
-     * @param organismName org short name
-     * @param featureTypes ft
-     * @return map of gr-query
+     * @return the regions, in the same order
      */
-    public static Map<GenomicRegion, Query> createQueryList(
-            Collection<GenomicRegion> genomicRegions,
-            int extension,
-            String organismName,
-            Set<Class<?>> featureTypes) {
-        return createRegionQueries(genomicRegions, extension, organismName,
-                featureTypes, false);
+    public static List<GenomicRegion> extendGenomicRegions(
+            Collection<GenomicRegion> genomicRegions, int extension) {
+        List<GenomicRegion> regions = new ArrayList<GenomicRegion>(genomicRegions.size());
+        for (GenomicRegion aSpan : genomicRegions) {
+            regions.add((extension > 0) ? extendGenomicRegion(aSpan, extension) : aSpan);
+        }
+        return regions;
     }
 
     /**
@@ -287,95 +285,111 @@ public final class GenomicRegionSearchUtil
                 end = aSpan.getEnd();
             }
 
-            Query q = new Query();
-            q.setDistinct(true);
-
-            String chrPID = aSpan.getChr();
-
-
-            QueryClass qcOrg = new QueryClass(Organism.class);
-            QueryClass qcChr = new QueryClass(Chromosome.class);
-            QueryClass qcFeature = new QueryClass(SequenceFeature.class);
-            QueryClass qcLoc = new QueryClass(Location.class);
-
-            QueryField qfOrgName = new QueryField(qcOrg, "shortName");
-            QueryField qfFeatureId = new QueryField(qcFeature, "id");
-            QueryField qfFeaturePID = new QueryField(qcFeature,
-                    "primaryIdentifier");
-            QueryField qfFeatureSymbol = new QueryField(qcFeature, "symbol");
-            QueryField qfFeatureClass = new QueryField(qcFeature, "class");
-            QueryField qfChr = new QueryField(qcChr, "primaryIdentifier");
-            QueryField qfLocStart = new QueryField(qcLoc, "start");
-            QueryField qfLocEnd = new QueryField(qcLoc, "end");
-
-            q.addToSelect(qfFeatureId);
-            q.addFrom(qcFeature);
-            q.addFrom(qcChr);
-            q.addFrom(qcOrg);
-            q.addFrom(qcLoc);
-            if (!idOnly) {
-                q.addToSelect(qfFeaturePID);
-                q.addToSelect(qfFeatureSymbol);
-                q.addToSelect(qfFeatureClass);
-                q.addToSelect(qfChr);
-                q.addToSelect(qfLocStart);
-                q.addToSelect(qfLocEnd);
-                q.addToOrderBy(qfLocStart, "ascending");
-            }
-
-            ConstraintSet constraints = new ConstraintSet(ConstraintOp.AND);
-
-            q.setConstraint(constraints);
-
-            // SequenceFeature.organism = Organism
-            QueryObjectReference organism = new QueryObjectReference(qcFeature,
-                    "organism");
-            ContainsConstraint ccOrg = new ContainsConstraint(organism,
-                    ConstraintOp.CONTAINS, qcOrg);
-            constraints.addConstraint(ccOrg);
-
-            // Organism.name = orgName
-            SimpleConstraint scOrg = new SimpleConstraint(qfOrgName,
-                    ConstraintOp.EQUALS, new QueryValue(organismName));
-            constraints.addConstraint(scOrg);
-
-            // Location.feature = SequenceFeature
-            QueryObjectReference locSubject = new QueryObjectReference(qcLoc,
-                    "feature");
-            ContainsConstraint ccLocSubject = new ContainsConstraint(
-                    locSubject, ConstraintOp.CONTAINS, qcFeature);
-            constraints.addConstraint(ccLocSubject);
-
-            // Location.locatedOn = Chromosome
-            QueryObjectReference locObject = new QueryObjectReference(qcLoc,
-                    "locatedOn");
-            ContainsConstraint ccLocObject = new ContainsConstraint(locObject,
-                    ConstraintOp.CONTAINS, qcChr);
-            constraints.addConstraint(ccLocObject);
-
-            // Chromosome.primaryIdentifier = chrPID
-            SimpleConstraint scChr = new SimpleConstraint(qfChr,
-                    ConstraintOp.EQUALS, new QueryValue(chrPID));
-            constraints.addConstraint(scChr);
-
-            // SequenceFeature.class in a list
-            constraints.addConstraint(new BagConstraint(qfFeatureClass,
-                    ConstraintOp.IN, featureTypes));
-
-            OverlapRange overlapInput = new OverlapRange(new QueryValue(start),
-                    new QueryValue(end), locObject);
-            OverlapRange overlapFeature = new OverlapRange(new QueryField(
-                    qcLoc, "start"), new QueryField(qcLoc, "end"), locObject);
-            OverlapConstraint oc = new OverlapConstraint(overlapInput,
-                    ConstraintOp.OVERLAPS, overlapFeature);
-            constraints.addConstraint(oc);
-
-            queryMap.put(aSpan, q);
+            queryMap.put(aSpan, createOverlapQuery(aSpan.getChr(), start.intValue(),
+                    end.intValue(), organismName, featureTypes, idOnly));
         }
 
         return queryMap;
     }
 
+    /**
+     * Create a query for the features of some types that overlap a region of a chromosome.
+     * Unless only ids are wanted, the query selects the id, primary identifier, symbol, class,
+     * chromosome, start and end of the features, in order of start.
+     *
+     * @param chrPID the chromosome
+     * @param start the start of the region
+     * @param end the end of the region
+     * @param organismName org short name
+     * @param featureTypes ft
+     * @param idOnly select only the ids of the features
+     * @return the query
+     */
+    public static Query createOverlapQuery(String chrPID, int start, int end,
+            String organismName, Set<Class<?>> featureTypes, boolean idOnly) {
+        Query q = new Query();
+        q.setDistinct(true);
+
+        QueryClass qcOrg = new QueryClass(Organism.class);
+        QueryClass qcChr = new QueryClass(Chromosome.class);
+        QueryClass qcFeature = new QueryClass(SequenceFeature.class);
+        QueryClass qcLoc = new QueryClass(Location.class);
+
+        QueryField qfOrgName = new QueryField(qcOrg, "shortName");
+        QueryField qfFeatureId = new QueryField(qcFeature, "id");
+        QueryField qfFeaturePID = new QueryField(qcFeature,
+                "primaryIdentifier");
+        QueryField qfFeatureSymbol = new QueryField(qcFeature, "symbol");
+        QueryField qfFeatureClass = new QueryField(qcFeature, "class");
+        QueryField qfChr = new QueryField(qcChr, "primaryIdentifier");
+        QueryField qfLocStart = new QueryField(qcLoc, "start");
+        QueryField qfLocEnd = new QueryField(qcLoc, "end");
+
+        q.addToSelect(qfFeatureId);
+        q.addFrom(qcFeature);
+        q.addFrom(qcChr);
+        q.addFrom(qcOrg);
+        q.addFrom(qcLoc);
+        if (!idOnly) {
+            q.addToSelect(qfFeaturePID);
+            q.addToSelect(qfFeatureSymbol);
+            q.addToSelect(qfFeatureClass);
+            q.addToSelect(qfChr);
+            q.addToSelect(qfLocStart);
+            q.addToSelect(qfLocEnd);
+            q.addToOrderBy(qfLocStart, "ascending");
+        }
+
+        ConstraintSet constraints = new ConstraintSet(ConstraintOp.AND);
+
+        q.setConstraint(constraints);
+
+        // SequenceFeature.organism = Organism
+        QueryObjectReference organism = new QueryObjectReference(qcFeature,
+                "organism");
+        ContainsConstraint ccOrg = new ContainsConstraint(organism,
+                ConstraintOp.CONTAINS, qcOrg);
+        constraints.addConstraint(ccOrg);
+
+        // Organism.name = orgName
+        SimpleConstraint scOrg = new SimpleConstraint(qfOrgName,
+                ConstraintOp.EQUALS, new QueryValue(organismName));
+        constraints.addConstraint(scOrg);
+
+        // Location.feature = SequenceFeature
+        QueryObjectReference locSubject = new QueryObjectReference(qcLoc,
+                "feature");
+        ContainsConstraint ccLocSubject = new ContainsConstraint(
+                locSubject, ConstraintOp.CONTAINS, qcFeature);
+        constraints.addConstraint(ccLocSubject);
+
+        // Location.locatedOn = Chromosome
+        QueryObjectReference locObject = new QueryObjectReference(qcLoc,
+                "locatedOn");
+        ContainsConstraint ccLocObject = new ContainsConstraint(locObject,
+                ConstraintOp.CONTAINS, qcChr);
+        constraints.addConstraint(ccLocObject);
+
+        // Chromosome.primaryIdentifier = chrPID
+        SimpleConstraint scChr = new SimpleConstraint(qfChr,
+                ConstraintOp.EQUALS, new QueryValue(chrPID));
+        constraints.addConstraint(scChr);
+
+        // SequenceFeature.class in a list
+        constraints.addConstraint(new BagConstraint(qfFeatureClass,
+                ConstraintOp.IN, featureTypes));
+
+        OverlapRange overlapInput = new OverlapRange(new QueryValue(start),
+                new QueryValue(end), locObject);
+        OverlapRange overlapFeature = new OverlapRange(new QueryField(
+                qcLoc, "start"), new QueryField(qcLoc, "end"), locObject);
+        OverlapConstraint oc = new OverlapConstraint(overlapInput,
+                ConstraintOp.OVERLAPS, overlapFeature);
+        constraints.addConstraint(oc);
+
+        return q;
+    }
+
     /**
      * To extend genomic region
      * @param gr GenomicRegion
@@ -0,0 +1,169 @@
+package org.intermine.bio.web.logic;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The features overlapping one genomic region, as the rows of strings the results page uses:
+ * id, primary identifier, symbol, feature type, chromosome, start and end.  The features are
+ * held once in a FeatureTable shared by all the regions searched together, and each region only
+ * keeps the positions of its features in the table, so the rows are only made as they are read.
+ *
+ * @author InterMine
+ */
+public final class OverlapFeatureRows extends AbstractList<List<String>> implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final FeatureTable table;
+    private final int[] rows;
+
+    /**
+     * @param table the features
+     * @param rows the positions in the table of the features in this list
+     */
+    OverlapFeatureRows(FeatureTable table, int[] rows) {
+        this.table = table;
+        this.rows = rows;
+    }
+
+    @Override
+    public List<String> get(int index) {
+        return table.getRow(rows[index]);
+    }
+
+    @Override
+    public int size() {
+        return rows.length;
+    }
+
+    /**
+     * @param index the index of a row
+     * @return the feature type in the row
+     */
+    String getType(int index) {
+        return table.types[rows[index]];
+    }
+
+    /**
+     * Features found on one chromosome, in order of start.
+     */
+    static final class FeatureTable implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final String chr;
+        private int size = 0;
+        private int[] ids = new int[16];
+        private String[] primaryIdentifiers = new String[16];
+        private String[] symbols = new String[16];
+        private String[] types = new String[16];
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+
+        /**
+         * @param chr the chromosome
+         */
+        FeatureTable(String chr) {
+            this.chr = chr;
+        }
+
+        /**
+         * Add a feature.
+         *
+         * @param id the id
+         * @param primaryIdentifier the primary identifier, may be null
+         * @param symbol the symbol, may be null
+         * @param type the simple class name, which should be interned
+         * @param start the start
+         * @param end the end
+         */
+        void add(int id, String primaryIdentifier, String symbol, String type, int start,
+                int end) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                primaryIdentifiers = Arrays.copyOf(primaryIdentifiers, capacity);
+                symbols = Arrays.copyOf(symbols, capacity);
+                types = Arrays.copyOf(types, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+            }
+            ids[size] = id;
+            primaryIdentifiers[size] = primaryIdentifier;
+            symbols[size] = symbol;
+            types[size] = type;
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+        }
+
+        /**
+         * Remove the features not wanted, keeping the rest in order, and free the spare space.
+         *
+         * @param keep which of the features to keep
+         * @return the new position of each feature, or -1 for the features removed
+         */
+        int[] retain(boolean[] keep) {
+            int[] newRows = new int[size];
+            int kept = 0;
+            for (int row = 0; row < size; row++) {
+                if (keep[row]) {
+                    ids[kept] = ids[row];
+                    primaryIdentifiers[kept] = primaryIdentifiers[row];
+                    symbols[kept] = symbols[row];
+                    types[kept] = types[row];
+                    starts[kept] = starts[row];
+                    ends[kept] = ends[row];
+                    newRows[row] = kept++;
+                } else {
+                    newRows[row] = -1;
+                }
+            }
+            size = kept;
+            ids = Arrays.copyOf(ids, size);
+            primaryIdentifiers = Arrays.copyOf(primaryIdentifiers, size);
+            symbols = Arrays.copyOf(symbols, size);
+            types = Arrays.copyOf(types, size);
+            starts = Arrays.copyOf(starts, size);
+            ends = Arrays.copyOf(ends, size);
+            return newRows;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int getStart(int row) {
+            return starts[row];
+        }
+
+        int getEnd(int row) {
+            return ends[row];
+        }
+
+        List<String> getRow(int row) {
+            // NULL for symbol or PID
+            return Arrays.asList(
+                    Integer.toString(ids[row]),
+                    (primaryIdentifiers[row] == null) ? "" : primaryIdentifiers[row],
+                    (symbols[row] == null) ? "" : symbols[row],
+                    types[row],
+                    chr,
+                    Integer.toString(starts[row]),
+                    Integer.toString(ends[row]));
+        }
+    }
+}
@@ -13,8 +13,10 @@ package org.intermine.bio.web.model;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
@@ -44,6 +46,11 @@ public class GeneModel
     List<InterMineObject> cdss;
     Set<Integer> ids = null;
 
+    /**
+     * The collections of Transcript that hold the components of a gene model.
+     */
+    static final String[] COMPONENT_FIELDS = new String[] {"exons", "introns", "CDSs", "UTRs"};
+
     private static String[] types = new String[] {"Gene", "Transcript", "Exon", "UTR", "CDS"};
     /**
      * The unqualified class names of types that comprise a gene model.
@@ -64,11 +71,27 @@ public class GeneModel
         this.gene = gene;
         this.transcript = transcript;
         this.model = model;
-        init();
+        init(null);
     }
 
-    @SuppressWarnings("unchecked")
-    private void init() {
+    /**
+     * Construct a new gene model from components that have already been fetched, so that no
+     * further queries are run.
+     * @param model the data model
+     * @param gene the parent gene
+     * @param transcript the transcript to construct a gene model for
+     * @param components map from the names of COMPONENT_FIELDS to the objects in them for this
+     * transcript, a missing entry meaning none
+     */
+    GeneModel(Model model, Gene gene, InterMineObject transcript,
+            Map<String, ? extends Collection<InterMineObject>> components) {
+        this.gene = gene;
+        this.transcript = transcript;
+        this.model = model;
+        init(components);
+    }
+
+    private void init(Map<String, ? extends Collection<InterMineObject>> components) {
         // find other components
         if (transcript == null) {
             return;
@@ -81,8 +104,7 @@ public class GeneModel
         if (fieldExists("Transcript", "exons")) {
             exons = new ArrayList<InterMineObject>();
             try {
-                Collection<InterMineObject> transcriptExons =
-                    (Collection<InterMineObject>) transcript.getFieldValue("exons");
+                Collection<InterMineObject> transcriptExons = getComponents(components, "exons");
                 for (InterMineObject exon : transcriptExons) {
                     exons.add(exon);
                 }
@@ -95,7 +117,7 @@ public class GeneModel
             introns = new ArrayList<InterMineObject>();
             try {
                 Collection<InterMineObject> transcriptIntrons =
-                    (Collection<InterMineObject>) transcript.getFieldValue("introns");
+                    getComponents(components, "introns");
                 for (InterMineObject intron : transcriptIntrons) {
                     introns.add(intron);
                 }
@@ -107,8 +129,7 @@ public class GeneModel
         if (fieldExists("Transcript", "CDSs")) {
             cdss = new ArrayList<InterMineObject>();
             try {
-                Collection<InterMineObject> transcriptCdss =
-                    (Collection<InterMineObject>) transcript.getFieldValue("CDSs");
+                Collection<InterMineObject> transcriptCdss = getComponents(components, "CDSs");
                 for (InterMineObject cds : transcriptCdss) {
                     cdss.add(cds);
                 }
@@ -119,8 +140,7 @@ public class GeneModel
 
         if (fieldExists("Transcript", "UTRs")) {
             try {
-                Collection<InterMineObject> transcriptUTRs =
-                    (Collection<InterMineObject>) transcript.getFieldValue("UTRs");
+                Collection<InterMineObject> transcriptUTRs = getComponents(components, "UTRs");
                 for (InterMineObject utr : transcriptUTRs) {
                     String clsName = DynamicUtil.getSimpleClass(utr).getSimpleName();
                     if ("FivePrimeUTR".equals(clsName)) {
@@ -147,6 +167,20 @@ public class GeneModel
 
     }
 
+    @SuppressWarnings("unchecked")
+    private Collection<InterMineObject> getComponents(
+            Map<String, ? extends Collection<InterMineObject>> components, String fieldName)
+        throws IllegalAccessException {
+        if (components == null) {
+            return (Collection<InterMineObject>) transcript.getFieldValue(fieldName);
+        }
+        Collection<InterMineObject> fetched = components.get(fieldName);
+        if (fetched == null) {
+            return Collections.emptyList();
+        }
+        return fetched;
+    }
+
     /**
      * The parent gene for this gene model.
      * @return the gene
@@ -13,13 +13,26 @@ package org.intermine.bio.web.model;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.intermine.api.InterMineAPI;
+import org.intermine.api.tracker.TrackerDelegate;
 import org.intermine.metadata.ClassDescriptor;
 import org.intermine.metadata.FieldDescriptor;
 import org.intermine.metadata.Model;
@@ -27,7 +40,9 @@ import org.intermine.model.InterMineObject;
 import org.intermine.model.bio.Gene;
 import org.intermine.model.bio.Organism;
 import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.metadata.ConstraintOp;
+import org.intermine.objectstore.query.BagConstraint;
 import org.intermine.objectstore.query.ConstraintSet;
 import org.intermine.objectstore.query.ContainsConstraint;
 import org.intermine.objectstore.query.Query;
@@ -38,39 +53,101 @@ import org.intermine.objectstore.query.QueryObjectReference;
 import org.intermine.objectstore.query.QueryValue;
 import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.SimpleConstraint;
-import org.intermine.util.CacheMap;
 import org.intermine.util.DynamicUtil;
+import org.intermine.util.PropertiesUtil;
 
 /**
  * A cache for gene models by Gene object id.  A GeneModel represetnts a transcripts with exons,
  * introns, UTRs and CDSs where data are available.  Lookups can be done by any component of the
- * gene model and the corresponding gene will be found first.  The implementation uses a CacheMap
- * to allow garbage collection.
+ * gene model and the corresponding gene will be found first.  The gene models of each gene are
+ * only created once, however many report pages ask for them at the same time, and those of the
+ * least recently used genes are dropped once there are more than a fixed number of genes.  The
+ * number of genes is set by the geneModelCache.size web property, and the
+ * geneModelCache.warmUp web property is the number of the most searched for keywords whose genes
+ * have their gene models created when the webapp starts, see configure().
  * @author Richard Smith
  *
  */
 public final class GeneModelCache
 {
-    private static CacheMap<Integer, List<GeneModel>> cache =
-        new CacheMap<Integer, List<GeneModel>>();
+    /** The number of genes to keep gene models for unless geneModelCache.size is set. */
+    public static final int DEFAULT_MAX_SIZE = 10000;
+    /** The web property holding the number of genes to keep gene models for. */
+    public static final String SIZE_PROPERTY = "geneModelCache.size";
+    /** The web property holding the number of popular keywords to warm up the cache with. */
+    public static final String WARM_UP_PROPERTY = "geneModelCache.warmUp";
+    private static final int BATCH_SIZE = 1000;
+
     protected static final Logger LOG = Logger.getLogger(GeneModelCache.class);
-    private static Map<String, GeneModelSettings> organismSettings =
-        new HashMap<String, GeneModelSettings>();
+
+    private static int maxSize = DEFAULT_MAX_SIZE;
+    private static final Map<Integer, GeneModelsTask> CACHE =
+        new LinkedHashMap<Integer, GeneModelsTask>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, GeneModelsTask> eldest) {
+                return size() > maxSize;
+            }
+        };
+    private static final ConcurrentMap<String, GeneModelSettings> ORGANISM_SETTINGS =
+        new ConcurrentHashMap<String, GeneModelSettings>();
+    private static final AtomicBoolean CONFIGURED = new AtomicBoolean(false);
 
     private GeneModelCache() {
     }
 
+    /**
+     * Set the size of the cache from the web properties and start warming it up.  This only
+     * happens the first time it is called, so every displayer using the cache can call it.
+     * @param im the InterMine API
+     * @param webProperties the web properties
+     */
+    public static void configure(InterMineAPI im, Properties webProperties) {
+        if (!CONFIGURED.compareAndSet(false, true)) {
+            return;
+        }
+        setMaxSize(PropertiesUtil.getInt(webProperties, SIZE_PROPERTY, DEFAULT_MAX_SIZE));
+        startWarmUp(im, PropertiesUtil.getInt(webProperties, WARM_UP_PROPERTY, 0));
+    }
+
+    /**
+     * Set the number of genes to keep gene models for.
+     * @param size the maximum number of genes
+     */
+    private static void setMaxSize(int size) {
+        synchronized (CACHE) {
+            maxSize = size;
+            Iterator<Integer> iter = CACHE.keySet().iterator();
+            while (CACHE.size() > maxSize && iter.hasNext()) {
+                iter.next();
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the number of genes gene models are held for, including those being created
+     */
+    public static int size() {
+        synchronized (CACHE) {
+            return CACHE.size();
+        }
+    }
+
     /**
      * Fetch a list of gene models for a gene.  The method can be called with an component of a gene
      * model (Transcript, Exon, Intron, UTR, CDS) and corresponding gene will be returned first.
      * e.g. if called with an exon, the related gene will be found and all gene models created for
      * all transcripts of that gene regardless of whether they contain that exon.  If called with an
-     * object that isn't a gene model component an empty list is returned.
+     * object that isn't a gene model component an empty list is returned.  The gene models are
+     * fetched as for a page of one gene, with getGeneModels(Collection, ObjectStore).
      * @param object a the gene to get gene models for, or a component of a gene model
-     * @param model the data model
+     * @param os the ObjectStore the object was read from
      * @return a list of GeneModels, one per transcript or an empty list
      */
-    public static List<GeneModel> getGeneModels(InterMineObject object, Model model) {
+    public static List<GeneModel> getGeneModels(InterMineObject object, ObjectStore os) {
         String clsName = DynamicUtil.getSimpleClass(object).getSimpleName();
 
         // TODO make this deal with inheritance (transcripts and UTRs in on statement)
@@ -89,40 +166,286 @@ public final class GeneModelCache
                 LOG.warn("Failed to get gene from " + clsName + ": " + object.getId());
             }
         }
-        return fetchGeneModels(gene, model);
+        if (gene == null) {
+            return Collections.emptyList();
+        }
+        return getGeneModels(Collections.singleton(gene), os).get(gene.getId());
     }
 
     /**
-     * Look up gene models for a particular gene, either fetch from cache or create new gene models
-     * for each transcript.
-     * @param gene the gene to fetch gene models for
-     * @param model the data model
-     * @return a list of gene models or an empty list
+     * Fetch the gene models of several genes, such as a page of results, at once.  The transcripts
+     * of all the genes that aren't in the cache are fetched with one query, and their exons,
+     * introns, CDSs and UTRs with one query for each, rather than a few queries for each gene.
+     * @param genes the genes to fetch gene models for
+     * @param os the ObjectStore the genes were read from
+     * @return a map from gene id to a list of GeneModels, one per transcript, or an empty list
      */
+    public static Map<Integer, List<GeneModel>> getGeneModels(Collection<? extends Gene> genes,
+            ObjectStore os) {
+        Model model = os.getModel();
+        Map<Integer, GeneModelsTask> tasks = new LinkedHashMap<Integer, GeneModelsTask>();
+        Map<Integer, GeneModelsTask> toLoad = new HashMap<Integer, GeneModelsTask>();
+        Map<Integer, Gene> genesToLoad = new HashMap<Integer, Gene>();
+        synchronized (CACHE) {
+            for (Gene gene : genes) {
+                if (gene == null || tasks.containsKey(gene.getId())) {
+                    continue;
+                }
+                GeneModelsTask task = CACHE.get(gene.getId());
+                if (task == null) {
+                    task = new GeneModelsTask(gene, model);
+                    CACHE.put(gene.getId(), task);
+                    toLoad.put(gene.getId(), task);
+                    genesToLoad.put(gene.getId(), gene);
+                }
+                tasks.put(gene.getId(), task);
+            }
+        }
+        if (!toLoad.isEmpty()) {
+            Map<Integer, List<GeneModel>> loaded = null;
+            try {
+                loaded = createGeneModels(genesToLoad, os);
+            } catch (ObjectStoreException e) {
+                LOG.warn("Failed to fetch gene models for " + genesToLoad.size()
+                        + " genes at once, fetching them one at a time", e);
+            } catch (RuntimeException e) {
+                // the tasks must still finish, or other threads would wait for them forever
+                LOG.warn("Failed to fetch gene models for " + genesToLoad.size()
+                        + " genes at once, fetching them one at a time", e);
+            }
+            for (Map.Entry<Integer, GeneModelsTask> entry : toLoad.entrySet()) {
+                if (loaded == null) {
+                    entry.getValue().run();
+                } else {
+                    List<GeneModel> geneModels = loaded.get(entry.getKey());
+                    if (geneModels == null) {
+                        geneModels = new ArrayList<GeneModel>();
+                    }
+                    entry.getValue().setGeneModels(geneModels);
+                }
+            }
+        }
+        Map<Integer, List<GeneModel>> geneModels = new LinkedHashMap<Integer, List<GeneModel>>();
+        for (Map.Entry<Integer, GeneModelsTask> entry : tasks.entrySet()) {
+            geneModels.put(entry.getKey(), getResult(entry.getKey(), entry.getValue()));
+        }
+        return geneModels;
+    }
+
+    private static List<GeneModel> getResult(Integer geneId, GeneModelsTask task) {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            // don't keep the failure, the next request can try again
+            synchronized (CACHE) {
+                if (CACHE.get(geneId) == task) {
+                    CACHE.remove(geneId);
+                }
+            }
+            LOG.error("Error accessing transcripts collection for gene: " + geneId,
+                    e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Collections.emptyList();
+    }
+
     @SuppressWarnings("unchecked")
-    protected static synchronized List<GeneModel> fetchGeneModels(Gene gene, Model model) {
-        if (gene == null) {
-            return Collections.EMPTY_LIST;
+    private static List<GeneModel> createGeneModels(Gene gene, Model model)
+        throws IllegalAccessException {
+        List<GeneModel> geneModels = new ArrayList<GeneModel>();
+        Collection<InterMineObject> transcripts =
+            (Collection<InterMineObject>) gene.getFieldValue("transcripts");
+        for (InterMineObject transcript : transcripts) {
+            geneModels.add(new GeneModel(model, gene, transcript));
         }
-        List<GeneModel> geneModels = cache.get(gene.getId());
-        if (geneModels == null) {
-            geneModels = new ArrayList<GeneModel>();
+        return geneModels;
+    }
 
-            try {
-                Collection<InterMineObject> transcripts =
-                    (Collection<InterMineObject>) gene.getFieldValue("transcripts");
-                for (InterMineObject transcript : transcripts) {
-                    geneModels.add(new GeneModel(model, gene, transcript));
+    /**
+     * Create the gene models of several genes with one query for their transcripts and one for
+     * each kind of component of the transcripts.
+     * @return a map from gene id to gene models, with no entry for genes without transcripts
+     */
+    private static Map<Integer, List<GeneModel>> createGeneModels(Map<Integer, Gene> genes,
+            ObjectStore os) throws ObjectStoreException {
+        Model model = os.getModel();
+        ClassDescriptor cldTranscript = model.getClassDescriptorByName("Transcript");
+        ClassDescriptor cldGene = model.getClassDescriptorByName("Gene");
+        if (cldTranscript == null || cldGene.getCollectionDescriptorByName("transcripts", true)
+                == null) {
+            throw new ObjectStoreException("This model doesn't have Gene.transcripts");
+        }
+
+        Map<Integer, List<InterMineObject>> transcripts =
+            fetchCollection(os, cldGene, "transcripts", genes.keySet());
+        Set<Integer> transcriptIds = new HashSet<Integer>();
+        for (List<InterMineObject> geneTranscripts : transcripts.values()) {
+            for (InterMineObject transcript : geneTranscripts) {
+                transcriptIds.add(transcript.getId());
+            }
+        }
+        // component field name to transcript id to the objects in that field
+        Map<String, Map<Integer, List<InterMineObject>>> components =
+            new HashMap<String, Map<Integer, List<InterMineObject>>>();
+        for (String fieldName : GeneModel.COMPONENT_FIELDS) {
+            if (cldTranscript.getCollectionDescriptorByName(fieldName, true) != null) {
+                components.put(fieldName,
+                        fetchCollection(os, cldTranscript, fieldName, transcriptIds));
+            }
+        }
+
+        Map<Integer, List<GeneModel>> geneModels = new HashMap<Integer, List<GeneModel>>();
+        for (Map.Entry<Integer, List<InterMineObject>> entry : transcripts.entrySet()) {
+            Gene gene = genes.get(entry.getKey());
+            List<GeneModel> models = new ArrayList<GeneModel>();
+            for (InterMineObject transcript : entry.getValue()) {
+                Map<String, List<InterMineObject>> transcriptComponents =
+                    new HashMap<String, List<InterMineObject>>();
+                for (Map.Entry<String, Map<Integer, List<InterMineObject>>> component
+                        : components.entrySet()) {
+                    List<InterMineObject> objects = component.getValue().get(transcript.getId());
+                    if (objects != null) {
+                        transcriptComponents.put(component.getKey(), objects);
+                    }
                 }
-                cache.put(gene.getId(), geneModels);
-            } catch (IllegalAccessException e) {
-                LOG.error("Error accessing transcripts collection for gene: "
-                        + gene.getPrimaryIdentifier() + ", " + gene.getId());
+                models.add(new GeneModel(model, gene, transcript, transcriptComponents));
             }
+            geneModels.put(entry.getKey(), models);
         }
         return geneModels;
     }
 
+    /**
+     * Fetch the objects in a collection of many objects at once.
+     * @return a map from the id of each object with anything in the collection to its contents
+     */
+    private static Map<Integer, List<InterMineObject>> fetchCollection(ObjectStore os,
+            ClassDescriptor cld, String fieldName, Collection<Integer> ids)
+        throws ObjectStoreException {
+        Map<Integer, List<InterMineObject>> contents =
+            new HashMap<Integer, List<InterMineObject>>();
+        if (ids.isEmpty()) {
+            return contents;
+        }
+        ClassDescriptor cldTarget =
+            cld.getCollectionDescriptorByName(fieldName, true).getReferencedClassDescriptor();
+        Query q = new Query();
+        QueryClass qcParent = new QueryClass(cld.getType());
+        QueryClass qcTarget = new QueryClass(cldTarget.getType());
+        q.addFrom(qcParent);
+        q.addFrom(qcTarget);
+        QueryField qfParentId = new QueryField(qcParent, "id");
+        q.addToSelect(qfParentId);
+        q.addToSelect(qcTarget);
+        ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
+        cs.addConstraint(new ContainsConstraint(new QueryCollectionReference(qcParent, fieldName),
+                ConstraintOp.CONTAINS, qcTarget));
+        cs.addConstraint(new BagConstraint(qfParentId, ConstraintOp.IN, ids));
+        q.setConstraint(cs);
+
+        Results results = os.execute(q, BATCH_SIZE, true, false, false);
+        Iterator<?> iter = results.iterator();
+        while (iter.hasNext()) {
+            List<?> row = (List<?>) iter.next();
+            Integer parentId = (Integer) row.get(0);
+            List<InterMineObject> objects = contents.get(parentId);
+            if (objects == null) {
+                objects = new ArrayList<InterMineObject>();
+                contents.put(parentId, objects);
+            }
+            objects.add((InterMineObject) row.get(1));
+        }
+        return contents;
+    }
+
+    /**
+     * Create the gene models of the genes people have searched for most often, in another thread,
+     * so that their report pages are quick the first time they are viewed after a release is
+     * deployed.  The keywords searched for are looked up as gene identifiers and symbols, and
+     * anything that isn't one is ignored.
+     * @param im the InterMine API
+     * @param count the number of the most popular keywords to look up
+     */
+    private static void startWarmUp(InterMineAPI im, final int count) {
+        final TrackerDelegate trackerDelegate = im.getTrackerDelegate();
+        if (count <= 0 || trackerDelegate == null) {
+            return;
+        }
+        final ObjectStore os = im.getObjectStore();
+        Thread warmUp = new Thread("GeneModelCache warm-up") {
+            @Override
+            public void run() {
+                try {
+                    warmUp(os, trackerDelegate.getKeywordSearches(), count);
+                } catch (ObjectStoreException e) {
+                    LOG.warn("Failed to warm up the gene model cache", e);
+                } catch (RuntimeException e) {
+                    LOG.warn("Failed to warm up the gene model cache", e);
+                }
+            }
+        };
+        warmUp.setDaemon(true);
+        warmUp.start();
+    }
+
+    /**
+     * Create the gene models of the genes with the identifiers or symbols searched for most often.
+     * @param os the ObjectStore
+     * @param keywordSearches map from keywords to the number of times they have been searched for
+     * @param count the number of the most popular keywords to look up
+     * @throws ObjectStoreException if the genes can't be found
+     */
+    public static void warmUp(ObjectStore os, Map<String, Integer> keywordSearches, int count)
+        throws ObjectStoreException {
+        if (keywordSearches == null || keywordSearches.isEmpty()) {
+            return;
+        }
+        long time = System.currentTimeMillis();
+        List<Map.Entry<String, Integer>> popular =
+            new ArrayList<Map.Entry<String, Integer>>(keywordSearches.entrySet());
+        Collections.sort(popular, new Comparator<Map.Entry<String, Integer>>() {
+            @Override
+            public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) {
+                return b.getValue().compareTo(a.getValue());
+            }
+        });
+        Set<String> keywords = new HashSet<String>();
+        for (Map.Entry<String, Integer> search : popular) {
+            if (keywords.size() >= count) {
+                break;
+            }
+            if (!StringUtils.isBlank(search.getKey())) {
+                keywords.add(search.getKey().trim());
+            }
+        }
+
+        Query q = new Query();
+        QueryClass qcGene = new QueryClass(Gene.class);
+        q.addFrom(qcGene);
+        q.addToSelect(qcGene);
+        ConstraintSet cs = new ConstraintSet(ConstraintOp.OR);
+        cs.addConstraint(new BagConstraint(new QueryField(qcGene, "primaryIdentifier"),
+                ConstraintOp.IN, keywords));
+        cs.addConstraint(new BagConstraint(new QueryField(qcGene, "symbol"),
+                ConstraintOp.IN, keywords));
+        q.setConstraint(cs);
+        Results results = os.execute(q, BATCH_SIZE, true, false, false);
+
+        List<Gene> genes = new ArrayList<Gene>();
+        int warmed = 0;
+        Iterator<?> iter = results.iterator();
+        while (iter.hasNext()) {
+            genes.add((Gene) ((List<?>) iter.next()).get(0));
+            if (genes.size() == BATCH_SIZE || !iter.hasNext()) {
+                warmed += getGeneModels(genes, os).size();
+                genes.clear();
+            }
+        }
+        LOG.info("Warmed up gene model cache with " + warmed + " genes for " + keywords.size()
+                + " keywords in " + (System.currentTimeMillis() - time) + " ms");
+    }
+
     /**
      *
      * @param organismName org name
@@ -131,12 +454,16 @@ public final class GeneModelCache
      */
     public static GeneModelSettings getGeneModelOrganismSettings(String organismName,
             ObjectStore os) {
-        if (!organismSettings.containsKey(organismName)) {
-            GeneModelSettings settings = determineOrganismSettings(organismName, os);
-            organismSettings.put(organismName, settings);
+        GeneModelSettings settings = ORGANISM_SETTINGS.get(organismName);
+        if (settings == null) {
+            // at worst worked out more than once, the answer is always the same
+            settings = determineOrganismSettings(organismName, os);
+            GeneModelSettings existing = ORGANISM_SETTINGS.putIfAbsent(organismName, settings);
+            if (existing != null) {
+                settings = existing;
+            }
         }
-        return organismSettings.get(organismName);
-
+        return settings;
     }
 
     private static GeneModelSettings determineOrganismSettings(String organism, ObjectStore os) {
@@ -229,14 +556,37 @@ public final class GeneModelCache
      * objects involved.  If no gene model is found or object is not a gene model component and
      * empty set is returned.
      * @param object a gene or gene model component to look up
-     * @param model the data model
+     * @param os the ObjectStore the object was read from
      * @return the ids of all objects in the gene model or an empty set
      */
-    public static Set<Integer> getGeneModelIds(InterMineObject object, Model model) {
+    public static Set<Integer> getGeneModelIds(InterMineObject object, ObjectStore os) {
         Set<Integer> geneModelIds = new HashSet<Integer>();
-        for (GeneModel geneModel : getGeneModels(object, model)) {
+        for (GeneModel geneModel : getGeneModels(object, os)) {
             geneModelIds.addAll(geneModel.getIds());
         }
         return geneModelIds;
     }
+
+    /**
+     * The creation of the gene models of one gene, which other threads wanting them can wait for.
+     */
+    private static final class GeneModelsTask extends FutureTask<List<GeneModel>>
+    {
+        GeneModelsTask(final Gene gene, final Model model) {
+            super(new Callable<List<GeneModel>>() {
+                @Override
+                public List<GeneModel> call() throws IllegalAccessException {
+                    return createGeneModels(gene, model);
+                }
+            });
+        }
+
+        /**
+         * Finish with gene models created some other way, without running the task.
+         * @param geneModels the gene models
+         */
+        void setGeneModels(List<GeneModel> geneModels) {
+            set(geneModels);
+        }
+    }
 }
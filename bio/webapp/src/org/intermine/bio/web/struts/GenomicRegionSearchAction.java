@@ -29,7 +29,6 @@ import org.intermine.bio.web.logic.GenomicRegionSearchUtil;
 import org.intermine.bio.web.logic.LiftOverService;
 import org.intermine.bio.web.model.ChromosomeInfo;
 import org.intermine.bio.web.model.GenomicRegion;
-import org.intermine.objectstore.query.Query;
 import org.intermine.web.logic.session.SessionMethods;
 import org.intermine.web.struts.InterMineAction;
 import org.json.JSONArray;
@@ -207,10 +206,10 @@ public class GenomicRegionSearchAction extends InterMineAction
         }
 
         // regions will be extended in this step
-        Map<GenomicRegion, Query> queryMap = grsService.createQueryList();
+        List<GenomicRegion> regions = grsService.createRegionList();
 
         GenomicRegionSearchQueryRunner grsqRunner = new GenomicRegionSearchQueryRunner(
-                request, spanUUIDString, grsService.getConstraint(), queryMap);
+                request, spanUUIDString, grsService.getConstraint(), regions);
 
         grsqRunner.search();
 
@@ -10,8 +10,11 @@ package org.intermine.bio.web.struts;
  *
  */
 
+import java.io.BufferedWriter;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -25,15 +28,8 @@ import org.apache.log4j.Logger;
 import org.apache.struts.action.ActionForm;
 import org.apache.struts.action.ActionForward;
 import org.apache.struts.action.ActionMapping;
-import org.biojava.bio.Annotation;
-import org.biojava.bio.seq.io.FastaFormat;
-import org.biojava.bio.seq.io.SeqIOTools;
-import org.biojava.bio.symbol.IllegalSymbolException;
-import org.biojava.utils.ChangeVetoException;
 import org.intermine.api.InterMineAPI;
-import org.intermine.bio.web.biojava.BioSequence;
-import org.intermine.bio.web.biojava.BioSequenceFactory;
-import org.intermine.bio.web.biojava.BioSequenceFactory.SequenceType;
+import org.intermine.bio.web.export.FastaWriter;
 import org.intermine.bio.web.export.ResidueFieldExporter;
 import org.intermine.model.InterMineObject;
 import org.intermine.model.bio.BioEntity;
@@ -42,6 +38,7 @@ import org.intermine.model.bio.Sequence;
 import org.intermine.model.bio.SequenceFeature;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.query.ClobAccess;
 import org.intermine.metadata.TypeUtil;
 import org.intermine.web.logic.Constants;
 import org.intermine.web.logic.session.SessionMethods;
@@ -74,7 +71,6 @@ public class SequenceExportAction extends InterMineAction
         HttpSession session = request.getSession();
         final InterMineAPI im = SessionMethods.getInterMineAPI(session);
         ObjectStore os = im.getObjectStore();
-        BioSequence bioSequence = null;
 
         //SequenceHttpExporter.setSequenceExportHeader(response);
 
@@ -84,12 +80,28 @@ public class SequenceExportAction extends InterMineAction
         InterMineObject obj = getObject(os, webProps, objectId);
 
         if (obj instanceof SequenceFeature || obj instanceof Protein) {
-            bioSequence = createBioSequence(obj);
+            BioEntity bioEntity = (BioEntity) obj;
+            ClobAccess residues = null;
+            if (bioEntity instanceof Protein) {
+                Sequence sequence = ((Protein) bioEntity).getSequence();
+                residues = (sequence == null) ? null : sequence.getResidues();
+            } else {
+                Sequence sequence = ((SequenceFeature) bioEntity).getSequence();
+                residues = (sequence == null) ? null : sequence.getResidues();
+            }
 
             response.setContentType("text/plain");
-            if (bioSequence != null) {
+            if (residues != null) {
+                // streamed from the database, so that even whole chromosomes fit in memory
                 OutputStream out = response.getOutputStream();
-                SeqIOTools.writeFasta(out, bioSequence);
+                FastaWriter writer = new FastaWriter(new BufferedWriter(
+                        new OutputStreamWriter(out, Charset.forName("UTF-8"))));
+                if (bioEntity instanceof Protein) {
+                    writer.writeProtein(getIdentifier(bioEntity), residues);
+                } else {
+                    writer.writeDna(getIdentifier(bioEntity), residues);
+                }
+                writer.flush();
             } else {
                 PrintWriter out = response.getWriter();
                 out.write("Sequence information not availble for this sequence feature...");
@@ -100,15 +112,7 @@ public class SequenceExportAction extends InterMineAction
         return null;
     }
 
-    private BioSequence createBioSequence(InterMineObject obj)
-        throws IllegalSymbolException, IllegalAccessException, ChangeVetoException {
-        BioSequence bioSequence;
-        BioEntity bioEntity = (BioEntity) obj;
-        bioSequence = BioSequenceFactory.make(bioEntity, SequenceType.DNA);
-        if (bioSequence == null) {
-            return null;
-        }
-        Annotation annotation = bioSequence.getAnnotation();
+    private String getIdentifier(BioEntity bioEntity) {
         // try hard to find an identifier
         String identifier = bioEntity.getPrimaryIdentifier();
         if (identifier == null) {
@@ -118,6 +122,8 @@ public class SequenceExportAction extends InterMineAction
                 if (identifier == null) {
                     try {
                         identifier = (String) bioEntity.getFieldValue("primaryAccession");
+                    } catch (IllegalAccessException e) {
+                        // ignore
                     } catch (RuntimeException e) {
                         // ignore
                     }
@@ -127,8 +133,7 @@ public class SequenceExportAction extends InterMineAction
                 }
             }
         }
-        annotation.setProperty(FastaFormat.PROPERTY_DESCRIPTIONLINE, identifier);
-        return bioSequence;
+        return identifier;
     }
 
     private InterMineObject getObject(ObjectStore os, Properties webProps,
@@ -23,12 +23,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
 import org.apache.commons.collections.keyvalue.MultiKey;
 import org.apache.log4j.Logger;
@@ -37,6 +32,7 @@ import org.intermine.metadata.ClassDescriptor;
 import org.intermine.metadata.ConstraintOp;
 import org.intermine.metadata.Model;
 import org.intermine.model.FastPathObject;
+import org.intermine.model.InterMineObject;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.query.ConstraintSet;
@@ -51,7 +47,6 @@ import org.intermine.objectstore.query.QueryFunction;
 import org.intermine.objectstore.query.QueryObjectReference;
 import org.intermine.objectstore.query.QueryValue;
 import org.intermine.objectstore.query.SimpleConstraint;
-import org.intermine.pathquery.Constraints;
 import org.intermine.pathquery.PathConstraintRange;
 import org.intermine.pathquery.PathQuery;
 import org.intermine.util.CacheMap;
@@ -99,6 +94,16 @@ public class Engine extends CommandRunner
     @Override
     public void stats(Command command) {
         Map<String, Object> stats;
+        Segment seg = command.getSegment();
+        if (seg != Segment.NEGATIVE_SEGMENT && seg.getWidth() != null) {
+            // The width of the region is known, so the features can be counted in memory.
+            int count = getIndex(command).count(seg.getSection(), seg.getStart(), seg.getEnd());
+            stats = new HashMap<String, Object>();
+            stats.put("featureDensity", Double.valueOf(count) / seg.getWidth());
+            stats.put("featureCount",   count);
+            sendMap(stats);
+            return;
+        }
         Query q = getStatsQuery(command);
         // Stats can be expensive to calculate, so they are independently cached.
         synchronized (STATS_CACHE) {
@@ -145,9 +150,16 @@ public class Engine extends CommandRunner
 
     @Override
     public void features(Command command) {
-        if (command.getSegment() != Segment.NEGATIVE_SEGMENT) {
-            Query q = getFeatureQuery(command);
-            Iterator<Object> it = getResults(q).iterator();
+        Segment seg = command.getSegment();
+        if (seg != Segment.NEGATIVE_SEGMENT) {
+            List<Integer> ids = getIndex(command).getOverlapping(seg.getSection(),
+                    seg.getStart(), seg.getEnd());
+            Iterator<InterMineObject> it;
+            try {
+                it = getAPI().getObjectStore().getObjectsByIds(ids).iterator();
+            } catch (ObjectStoreException e) {
+                throw new RuntimeException("Error reading features.", e);
+            }
 
             while (it.hasNext()) {
                 FastPathObject fpo = (FastPathObject) it.next();
@@ -173,23 +185,6 @@ public class Engine extends CommandRunner
         return subsegments;
     }
 
-    private static final class PathQueryCounter implements Callable<Integer>
-    {
-        final PathQuery pq;
-        final ObjectStore os;
-
-        PathQueryCounter(PathQuery pq, ObjectStore os) {
-            this.pq = pq.clone();
-            this.os = os;
-        }
-
-        @Override
-        public Integer call() throws Exception {
-            Query q = pathQueryToOSQ(pq);
-            return os.count(q, ObjectStore.SEQUENCE_IGNORE);
-        }
-    }
-
     private static Map<MultiKey, Integer> maxima = new ConcurrentHashMap<MultiKey, Integer>();
 
     /**
@@ -198,24 +193,14 @@ public class Engine extends CommandRunner
     @Override
     public void densities(Command command) {
         final int nSlices = getNumberOfSlices(command);
-        List<PathQuery> segmentQueries = getSliceQueries(command, nSlices);
-        List<Future<Integer>> pending = countInParallel(segmentQueries);
-        List<Integer> results = new ArrayList<Integer>();
+        List<Integer> results = countSlices(command, nSlices);
 
         int max = 0, sum = 0;
-        for (Future<Integer> future: pending) {
-            try {
-                Integer r = future.get();
-                if (r != null && r > max) {
-                    max = r;
-                }
-                sum += r;
-                results.add(r);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            } catch (ExecutionException e) {
-                throw new RuntimeException(e);
+        for (Integer r: results) {
+            if (r > max) {
+                max = r;
             }
+            sum += r;
         }
         double mean = Double.valueOf(sum) / results.size();
 
@@ -259,30 +244,22 @@ public class Engine extends CommandRunner
         return width / numBPB;
     }
 
-    private List<PathQuery> getSliceQueries(Command command, final int nSlices) {
+    // Count the features overlapping each slice of the segment, using the interval index.
+    private List<Integer> countSlices(Command command, final int nSlices) {
         if (command.getSegment() == Segment.NEGATIVE_SEGMENT) {
             return Collections.emptyList();
         }
-        List<Segment> slices = sliceUp(nSlices, command.getSegment());
-        List<PathQuery> segmentQueries = new ArrayList<PathQuery>();
-        for (Segment s: slices) {
-            segmentQueries.add(getSFPathQuery(command, s));
+        FeatureIntervalIndex index = getIndex(command);
+        List<Integer> counts = new ArrayList<Integer>();
+        for (Segment s: sliceUp(nSlices, command.getSegment())) {
+            counts.add(index.count(s.getSection(), s.getStart(), s.getEnd()));
         }
-        return segmentQueries;
+        return counts;
     }
 
-    private List<Future<Integer>> countInParallel(List<PathQuery> segmentQueries) {
-        if (segmentQueries.isEmpty()) {
-            return Collections.emptyList();
-        }
-        ExecutorService executor = Executors.newFixedThreadPool(segmentQueries.size());
-        List<Future<Integer>> pending = new ArrayList<Future<Integer>>();
-        for (PathQuery pq: segmentQueries) {
-            Callable<Integer> counter = new PathQueryCounter(pq, getAPI().getObjectStore());
-            pending.add(executor.submit(counter));
-        }
-        executor.shutdown();
-        return pending;
+    private FeatureIntervalIndex getIndex(Command command) {
+        return FeatureIntervalIndex.getIndex(getAPI().getObjectStore(), command.getDomain(),
+                command.getType("SequenceFeature"));
     }
 
     private PathQuery getSFPathQuery(Command command) {
@@ -491,13 +468,4 @@ public class Engine extends CommandRunner
         return pathQueryToOSQ(pq);
     }
 
-    private Query getFeatureQuery(Command command) {
-        PathQuery pq = new PathQuery(model);
-        String type = command.getType("SequenceFeature");
-        pq.addView(format("%s.id", type));
-        pq.addConstraint(Constraints.eq(format("%s.organism.taxonId", type), command.getDomain()));
-        pq.addConstraint(makeRangeConstraint(type, command.getSegment()));
-        return pathQueryToOSQ(pq);
-    }
-
 }
@@ -0,0 +1,367 @@
+package org.intermine.webservice.server.jbrowse.genomic;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import static java.lang.String.format;
+import static org.intermine.pathquery.Constraints.eq;
+import static org.intermine.webservice.server.jbrowse.Queries.pathQueryToOSQ;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.commons.collections.keyvalue.MultiKey;
+import org.apache.log4j.Logger;
+import org.intermine.metadata.Model;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.Results;
+import org.intermine.pathquery.PathQuery;
+
+/**
+ * The locations of all the features of one type in one organism, held in sorted arrays so that
+ * the number of features overlapping a region, and their ids, can be found without querying the
+ * database.
+ *
+ * <p>
+ * Coordinates are interbase, as used by JBrowse: a feature at 1..10 on the chromosome is held as
+ * starting at 0 and ending at 10.  Since the production database doesn't change, an index is
+ * built the first time it is needed and kept for as long as the ObjectStore, that is until the
+ * next release is deployed, unless it is one of the least recently used once there are more than
+ * a fixed number of indexes.  Each index is only built once, however many requests ask for it at
+ * the same time, and requests for other indexes don't wait for it.
+ * </p>
+ *
+ * @author InterMine
+ */
+public final class FeatureIntervalIndex
+{
+    private static final Logger LOG = Logger.getLogger(FeatureIntervalIndex.class);
+    private static final int BATCH_SIZE = 50000;
+    // the number of indexes, of one feature type in one organism each, to keep
+    private static final int MAX_INDEXES = 32;
+
+    private static final Map<ObjectStore, Map<MultiKey, IndexTask>> INDEXES =
+        new WeakHashMap<ObjectStore, Map<MultiKey, IndexTask>>();
+
+    private final Map<String, Intervals> sections;
+    private final int size;
+
+    private FeatureIntervalIndex(Map<String, Intervals> sections) {
+        this.sections = sections;
+        int total = 0;
+        for (Intervals intervals : sections.values()) {
+            total += intervals.ids.length;
+        }
+        this.size = total;
+    }
+
+    /**
+     * Returns the index of the features of a type in an organism, reading it from the
+     * database if it hasn't been built yet.  If another thread is already building it, this
+     * waits for it to finish rather than building it again.
+     *
+     * @param os the production ObjectStore
+     * @param taxonId the taxon id of the organism
+     * @param type the name of a SequenceFeature class
+     * @return the index
+     */
+    public static FeatureIntervalIndex getIndex(ObjectStore os, String taxonId, String type) {
+        MultiKey key = new MultiKey(taxonId, type);
+        IndexTask task;
+        boolean load = false;
+        synchronized (INDEXES) {
+            Map<MultiKey, IndexTask> indexes = INDEXES.get(os);
+            if (indexes == null) {
+                indexes = new LinkedHashMap<MultiKey, IndexTask>(16, 0.75f, true)
+                {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<MultiKey, IndexTask> eldest) {
+                        return size() > MAX_INDEXES;
+                    }
+                };
+                INDEXES.put(os, indexes);
+            }
+            task = indexes.get(key);
+            if (task == null) {
+                task = new IndexTask(os, taxonId, type);
+                indexes.put(key, task);
+                load = true;
+            }
+        }
+        if (load) {
+            task.run();
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            // don't keep the failure, the next request can try again
+            synchronized (INDEXES) {
+                Map<MultiKey, IndexTask> indexes = INDEXES.get(os);
+                if (indexes != null && indexes.get(key) == task) {
+                    indexes.remove(key);
+                }
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Failed to index " + type + " locations", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for " + type + " locations", e);
+        }
+    }
+
+    private static FeatureIntervalIndex load(ObjectStore os, String taxonId, String type) {
+        long startTime = System.currentTimeMillis();
+        Model model = os.getModel();
+        PathQuery pq = new PathQuery(model);
+        pq.addViews(format("%s.id", type),
+                format("%s.chromosome.primaryIdentifier", type),
+                format("%s.chromosomeLocation.start", type),
+                format("%s.chromosomeLocation.end", type));
+        pq.addConstraint(eq(format("%s.organism.taxonId", type), taxonId));
+        Query q = pathQueryToOSQ(pq);
+        Results results = os.execute(q, BATCH_SIZE, true, false, false);
+        Builder builder = new Builder();
+        for (Object o : results) {
+            List<?> row = (List<?>) o;
+            Integer id = (Integer) row.get(0);
+            String section = (String) row.get(1);
+            Integer start = (Integer) row.get(2);
+            Integer end = (Integer) row.get(3);
+            if (section != null && start != null && end != null) {
+                // Convert Base -> Interbase Co-ords: start - 1
+                builder.add(section, id.intValue(), start.intValue() - 1, end.intValue());
+            }
+        }
+        FeatureIntervalIndex index = builder.build();
+        LOG.info(format("Indexed %d %s locations of organism %s in %d ms", index.size(), type,
+                taxonId, System.currentTimeMillis() - startTime));
+        return index;
+    }
+
+    /**
+     * @return the number of features in the index
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Count the features that overlap a region.
+     *
+     * @param section the chromosome, or null for all of them
+     * @param start the interbase start of the region, or null for the start of the chromosome
+     * @param end the interbase end of the region, or null for the end of the chromosome
+     * @return the number of features
+     */
+    public int count(String section, Integer start, Integer end) {
+        int count = 0;
+        for (Intervals intervals : getIntervals(section)) {
+            count += intervals.count(start, end);
+        }
+        return count;
+    }
+
+    /**
+     * Find the features that overlap a region.
+     *
+     * @param section the chromosome, or null for all of them
+     * @param start the interbase start of the region, or null for the start of the chromosome
+     * @param end the interbase end of the region, or null for the end of the chromosome
+     * @return the ids of the features, in order of their start
+     */
+    public List<Integer> getOverlapping(String section, Integer start, Integer end) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (Intervals intervals : getIntervals(section)) {
+            intervals.addOverlapping(start, end, ids);
+        }
+        return ids;
+    }
+
+    private Collection<Intervals> getIntervals(String section) {
+        if (section == null) {
+            return sections.values();
+        }
+        Intervals intervals = sections.get(section);
+        if (intervals == null) {
+            return Collections.emptySet();
+        }
+        return Collections.singleton(intervals);
+    }
+
+    /**
+     * The features on one chromosome.  The starts, ends and ids arrays are in order of start,
+     * and sortedEnds holds the same ends in order.  A feature overlaps a region if it starts
+     * before the end of the region and ends after the start of it, so the number overlapping is
+     * the number that start before the end, less the number that end before the start.
+     */
+    private static final class Intervals
+    {
+        private final int[] starts;
+        private final int[] ends;
+        private final int[] ids;
+        private final int[] sortedEnds;
+        private final int maxLength;
+
+        Intervals(int[] starts, int[] ends, int[] ids) {
+            this.starts = starts;
+            this.ends = ends;
+            this.ids = ids;
+            sortedEnds = ends.clone();
+            Arrays.sort(sortedEnds);
+            int longest = 0;
+            for (int i = 0; i < starts.length; i++) {
+                longest = Math.max(longest, ends[i] - starts[i]);
+            }
+            maxLength = longest;
+        }
+
+        int count(Integer start, Integer end) {
+            int startingBefore = (end == null) ? starts.length : lowerBound(starts, end);
+            int endingBefore = (start == null) ? 0 : upperBound(sortedEnds, start);
+            return Math.max(0, startingBefore - endingBefore);
+        }
+
+        void addOverlapping(Integer start, Integer end, List<Integer> into) {
+            int from = 0;
+            if (start != null) {
+                // no feature starting before this can reach the region
+                long earliest = (long) start.intValue() - maxLength;
+                from = lowerBound(starts, (int) Math.max(Integer.MIN_VALUE, earliest));
+            }
+            int to = (end == null) ? starts.length : lowerBound(starts, end);
+            for (int i = from; i < to; i++) {
+                if (start == null || ends[i] > start) {
+                    into.add(Integer.valueOf(ids[i]));
+                }
+            }
+        }
+
+        // the number of values less than key
+        private static int lowerBound(int[] values, int key) {
+            int low = 0, high = values.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[mid] < key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        // the number of values less than or equal to key
+        private static int upperBound(int[] values, int key) {
+            int low = 0, high = values.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[mid] <= key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * The building of one index, which other threads wanting it can wait for.
+     */
+    private static final class IndexTask extends FutureTask<FeatureIntervalIndex>
+    {
+        IndexTask(final ObjectStore os, final String taxonId, final String type) {
+            super(new Callable<FeatureIntervalIndex>() {
+                @Override
+                public FeatureIntervalIndex call() {
+                    return load(os, taxonId, type);
+                }
+            });
+        }
+    }
+
+    /**
+     * Collects feature locations and sorts them into an index.
+     */
+    static final class Builder
+    {
+        private final Map<String, int[][]> sections = new HashMap<String, int[][]>();
+        private final Map<String, Integer> sizes = new HashMap<String, Integer>();
+
+        /**
+         * Add the location of a feature.
+         *
+         * @param section the chromosome
+         * @param id the id of the feature
+         * @param start the interbase start
+         * @param end the interbase end
+         */
+        void add(String section, int id, int start, int end) {
+            int[][] columns = sections.get(section);
+            Integer sizeObj = sizes.get(section);
+            int size = (sizeObj == null) ? 0 : sizeObj.intValue();
+            if (columns == null) {
+                columns = new int[3][1024];
+                sections.put(section, columns);
+            } else if (size == columns[0].length) {
+                for (int i = 0; i < 3; i++) {
+                    columns[i] = Arrays.copyOf(columns[i], size * 2);
+                }
+            }
+            columns[0][size] = Math.min(start, end);
+            columns[1][size] = Math.max(start, end);
+            columns[2][size] = id;
+            sizes.put(section, Integer.valueOf(size + 1));
+        }
+
+        /**
+         * @return the index of the features added so far
+         */
+        FeatureIntervalIndex build() {
+            Map<String, Intervals> built = new HashMap<String, Intervals>();
+            for (Map.Entry<String, int[][]> entry : sections.entrySet()) {
+                int[][] columns = entry.getValue();
+                int size = sizes.get(entry.getKey()).intValue();
+                // sort by start, carrying the position along in the low bits
+                long[] order = new long[size];
+                for (int i = 0; i < size; i++) {
+                    order[i] = ((long) columns[0][i] << 32) | i;
+                }
+                Arrays.sort(order);
+                int[] starts = new int[size];
+                int[] ends = new int[size];
+                int[] ids = new int[size];
+                for (int i = 0; i < size; i++) {
+                    int from = (int) order[i];
+                    starts[i] = columns[0][from];
+                    ends[i] = columns[1][from];
+                    ids[i] = columns[2][from];
+                }
+                built.put(entry.getKey(), new Intervals(starts, ends, ids));
+            }
+            return new FeatureIntervalIndex(built);
+        }
+    }
+}
@@ -20,6 +20,7 @@ import org.intermine.api.mines.FriendlyMineManager;
 import org.intermine.api.profile.Profile;
 import org.intermine.api.profile.ProfileManager;
 import org.intermine.api.profile.TagManager;
+import org.intermine.api.query.DatabaseQueryStore;
 import org.intermine.api.query.MemoryQueryStore;
 import org.intermine.api.query.PathQueryExecutor;
 import org.intermine.api.query.QueryStore;
@@ -33,6 +34,7 @@ import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreSummary;
 import org.intermine.objectstore.ObjectStoreWriter;
+import org.intermine.objectstore.intermine.ObjectStoreWriterInterMineImpl;
 
 /**
  * InterMineAPI provides access to manager objects for the main parts of an InterMine application:
@@ -95,7 +97,12 @@ public class InterMineAPI
         this.oss = oss;
         this.trackerDelegate = trackerDelegate;
         this.linkRedirector = linkRedirector;
-        this.queryStore = new MemoryQueryStore(1024);
+        if (userProfileWriter instanceof ObjectStoreWriterInterMineImpl) {
+            this.queryStore = new DatabaseQueryStore(
+                    (ObjectStoreWriterInterMineImpl) userProfileWriter, 1024);
+        } else {
+            this.queryStore = new MemoryQueryStore(1024);
+        }
         initUserProfileResources(userProfileWriter);
     }
 
@@ -0,0 +1,189 @@
+package org.intermine.api.bag;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.log4j.Logger;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.query.ObjectStoreBag;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.SingletonResults;
+import org.intermine.util.IntBitmap;
+
+/**
+ * A cache of the contents of ObjectStoreBags as compressed bitmaps, so that list operations can
+ * be done in memory.  InterMineBag invalidates the entry for a bag whenever it changes it, but a
+ * bag may also be changed by another webapp sharing the database, or by writing to the bag table
+ * directly.  So before an entry is used, the number of rows the bag has in the database is counted
+ * and compared with the entry, which is much quicker than reading the ids.  Changes that keep the
+ * size the same, such as an upgrade replacing ids, are caught by reading the ids again once an
+ * entry is older than a few minutes.  There is one cache per production ObjectStore, and the
+ * least recently used bags are dropped once the bitmaps take more than a fixed amount of memory.
+ *
+ * @author InterMine
+ */
+public final class BagContentsCache
+{
+    private static final Logger LOG = Logger.getLogger(BagContentsCache.class);
+    private static final long MAX_BYTES = 64L * 1024 * 1024;
+    private static final int BATCH_SIZE = 50000;
+    private static final long MAX_AGE = 5L * 60 * 1000;
+
+    private static final Map<ObjectStore, BagContentsCache> CACHES =
+        new WeakHashMap<ObjectStore, BagContentsCache>();
+
+    private final ObjectStore os;
+    private final Map<Integer, Entry> contents =
+        new LinkedHashMap<Integer, Entry>(16, 0.75f, true);
+    private long bytes = 0;
+    private int changes = 0;
+
+    /**
+     * The contents of one bag, and when they were read.
+     */
+    private static final class Entry
+    {
+        private final IntBitmap bitmap;
+        private final long time = System.currentTimeMillis();
+
+        Entry(IntBitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+    }
+
+    private BagContentsCache(ObjectStore os) {
+        this.os = os;
+    }
+
+    /**
+     * Returns the cache for an ObjectStore.
+     * @param os the production ObjectStore
+     * @return a BagContentsCache
+     */
+    public static synchronized BagContentsCache getInstance(ObjectStore os) {
+        BagContentsCache cache = CACHES.get(os);
+        if (cache == null) {
+            cache = new BagContentsCache(os);
+            CACHES.put(os, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * Returns the contents of an ObjectStoreBag, reading them from the database if they aren't
+     * already in the cache, or if the cached contents may be out of date.  The returned bitmap
+     * must not be changed.
+     *
+     * @param osb the ObjectStoreBag
+     * @return the ids in the bag
+     */
+    public IntBitmap getContents(ObjectStoreBag osb) {
+        Integer bagId = new Integer(osb.getBagId());
+        Query q = new Query();
+        q.addToSelect(osb);
+        q.setDistinct(false);
+        int changesBefore;
+        Entry cached;
+        synchronized (this) {
+            cached = contents.get(bagId);
+            changesBefore = changes;
+        }
+        if (cached != null) {
+            if (System.currentTimeMillis() - cached.time < MAX_AGE) {
+                int size;
+                try {
+                    size = os.count(q, ObjectStore.SEQUENCE_IGNORE);
+                } catch (ObjectStoreException e) {
+                    throw new RuntimeException("Could not count the contents of bag " + bagId, e);
+                }
+                if (size == cached.bitmap.size()) {
+                    return cached.bitmap;
+                }
+                LOG.info("Bag " + bagId + " has " + size + " ids in the database but "
+                        + cached.bitmap.size() + " in the cache, reading it again");
+            }
+            synchronized (this) {
+                if (contents.get(bagId) == cached) {
+                    remove(bagId);
+                }
+            }
+        }
+        long start = System.currentTimeMillis();
+        IntBitmap bitmap = new IntBitmap();
+        SingletonResults res = os.executeSingleton(q, BATCH_SIZE, false, false, false);
+        for (Object id : res) {
+            bitmap.add(((Integer) id).intValue());
+        }
+        LOG.info("Read " + bitmap.size() + " ids of bag " + bagId + " in "
+                + (System.currentTimeMillis() - start) + " ms");
+        synchronized (this) {
+            // don't cache contents that may have changed while they were being read
+            if (changes == changesBefore) {
+                store(bagId, bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Store the contents of an ObjectStoreBag that have just been written.  The bitmap must not
+     * be changed afterwards.
+     *
+     * @param osb the ObjectStoreBag
+     * @param bitmap the ids in the bag
+     */
+    public synchronized void putContents(ObjectStoreBag osb, IntBitmap bitmap) {
+        changes++;
+        store(new Integer(osb.getBagId()), bitmap);
+    }
+
+    /**
+     * Remove an ObjectStoreBag from the cache.  This must be called whenever the bag is changed.
+     *
+     * @param osb the ObjectStoreBag, may be null
+     */
+    public synchronized void invalidate(ObjectStoreBag osb) {
+        changes++;
+        if (osb == null) {
+            return;
+        }
+        remove(new Integer(osb.getBagId()));
+    }
+
+    private void remove(Integer bagId) {
+        Entry old = contents.remove(bagId);
+        if (old != null) {
+            bytes -= old.bitmap.getSizeInBytes();
+        }
+    }
+
+    private void store(Integer bagId, IntBitmap bitmap) {
+        Entry entry = new Entry(bitmap);
+        Entry old = contents.put(bagId, entry);
+        if (old != null) {
+            bytes -= old.bitmap.getSizeInBytes();
+        }
+        bytes += bitmap.getSizeInBytes();
+        Iterator<Entry> iter = contents.values().iterator();
+        while (bytes > MAX_BYTES && iter.hasNext()) {
+            Entry eldest = iter.next();
+            if (eldest != entry) {
+                bytes -= eldest.bitmap.getSizeInBytes();
+                iter.remove();
+            }
+        }
+    }
+}
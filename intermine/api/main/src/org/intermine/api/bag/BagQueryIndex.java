@@ -0,0 +1,253 @@
+package org.intermine.api.bag;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.Results;
+import org.intermine.objectstore.query.ResultsRow;
+
+/**
+ * An in-memory copy of the identifiers that a BagQuery can match, so that BagQueryRunner can
+ * resolve input strings without running the query. Values are held in a hash table keyed by
+ * their lower-case form, so exact and case-insensitive lookups take constant time. The keys are
+ * also kept in sorted order so that a wildcard with a literal prefix, such as "eve*", only has to
+ * be compared with the keys that start with that prefix.
+ *
+ * Matching follows BagQueryRunner: case-insensitive lookups compare lower-case values, and a
+ * wildcard matches values whose lower-case form matches it, where "*" stands for any sequence of
+ * characters.
+ *
+ * @author InterMine
+ */
+public class BagQueryIndex
+{
+    private static final int BATCH_SIZE = 10000;
+    private static final String[] NO_KEYS = new String[0];
+
+    private final Map<String, Postings> postings = new HashMap<String, Postings>();
+    private String[] sortedKeys = NO_KEYS;
+    private int size = 0;
+
+    /**
+     * The ids of the objects with a given lower-case value, and the value each one has.
+     */
+    private static final class Postings
+    {
+        private int[] ids = new int[1];
+        private String[] values = new String[1];
+        private int count = 0;
+
+        void add(int id, String value) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+                values = Arrays.copyOf(values, count * 2);
+            }
+            ids[count] = id;
+            values[count] = value;
+            count++;
+        }
+
+        void trim() {
+            if (count < ids.length) {
+                ids = Arrays.copyOf(ids, count);
+                values = Arrays.copyOf(values, count);
+            }
+        }
+    }
+
+    /**
+     * Build the index for a BagQuery, by running it with a wildcard that matches every value.
+     *
+     * @param os the ObjectStore to run the query in
+     * @param bq the BagQuery
+     * @return a BagQueryIndex
+     * @throws ClassNotFoundException if the query refers to a class not in the model
+     * @throws ObjectStoreException if the query cannot be run
+     */
+    public static BagQueryIndex build(ObjectStore os, BagQuery bq)
+        throws ClassNotFoundException, ObjectStoreException {
+        Query q = bq.getQueryForWildcards(Collections.singleton("*"), null);
+        BagQueryIndex index = new BagQueryIndex();
+        Results res = os.execute(q, BATCH_SIZE, false, false, false);
+        for (Object rowObj : res) {
+            ResultsRow<?> row = (ResultsRow<?>) rowObj;
+            int id = ((Integer) row.get(0)).intValue();
+            for (int i = 1; i < row.size(); i++) {
+                Object fieldObject = row.get(i);
+                if (fieldObject != null) {
+                    index.add(String.valueOf(fieldObject), id);
+                }
+            }
+        }
+        index.freeze();
+        return index;
+    }
+
+    /**
+     * Add a value of an object to the index. freeze() must be called once all the values have
+     * been added.
+     *
+     * @param value the value of one of the fields the BagQuery matches on
+     * @param id the id of the object
+     */
+    public void add(String value, int id) {
+        String key = value.toLowerCase();
+        Postings p = postings.get(key);
+        if (p == null) {
+            p = new Postings();
+            postings.put(key, p);
+        }
+        // share the String with the key where possible, as values are often lower case
+        p.add(id, key.equals(value) ? key : value);
+        size++;
+    }
+
+    /**
+     * Finish building the index. Values must not be added afterwards.
+     */
+    public void freeze() {
+        for (Postings p : postings.values()) {
+            p.trim();
+        }
+        sortedKeys = postings.keySet().toArray(new String[postings.size()]);
+        Arrays.sort(sortedKeys);
+    }
+
+    /**
+     * Returns the number of values in the index.
+     *
+     * @return an int
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the ids of the objects that have a field matching an input string.
+     *
+     * @param input the input string
+     * @param caseSensitive true if the field has to match the case of the input too
+     * @return a Set of object ids, in the order they were added, empty if nothing matches
+     */
+    public Set<Integer> getIds(String input, boolean caseSensitive) {
+        Postings p = postings.get(input.toLowerCase());
+        if (p == null) {
+            return Collections.emptySet();
+        }
+        Set<Integer> retval = new LinkedHashSet<Integer>();
+        for (int i = 0; i < p.count; i++) {
+            if (!caseSensitive || input.equals(p.values[i])) {
+                retval.add(new Integer(p.ids[i]));
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Finds the objects with a field matching each of a collection of wildcards. Wildcards that
+     * start with a literal prefix only look at the keys with that prefix, and those that start
+     * with "*" are all checked in a single pass over the keys.
+     *
+     * @param wildcards the input strings containing "*"
+     * @return a Map from each wildcard that matched something to the ids of the objects it matched
+     */
+    public Map<String, Set<Integer>> matchWildcards(Collection<String> wildcards) {
+        Map<String, Set<Integer>> retval = new LinkedHashMap<String, Set<Integer>>();
+        List<String> unanchored = new ArrayList<String>();
+        for (String wildcard : wildcards) {
+            String pattern = wildcard.toLowerCase();
+            String prefix = pattern.substring(0, Math.max(0, pattern.indexOf('*')));
+            if ("".equals(prefix)) {
+                unanchored.add(wildcard);
+                continue;
+            }
+            int start = Arrays.binarySearch(sortedKeys, prefix);
+            if (start < 0) {
+                start = -start - 1;
+            }
+            for (int i = start; i < sortedKeys.length && sortedKeys[i].startsWith(prefix); i++) {
+                if (wildcardMatches(pattern, sortedKeys[i])) {
+                    addAll(retval, wildcard, sortedKeys[i]);
+                }
+            }
+        }
+        if (!unanchored.isEmpty()) {
+            String[] patterns = new String[unanchored.size()];
+            for (int j = 0; j < patterns.length; j++) {
+                patterns[j] = unanchored.get(j).toLowerCase();
+            }
+            for (String key : sortedKeys) {
+                for (int j = 0; j < patterns.length; j++) {
+                    if (wildcardMatches(patterns[j], key)) {
+                        addAll(retval, unanchored.get(j), key);
+                    }
+                }
+            }
+        }
+        return retval;
+    }
+
+    private void addAll(Map<String, Set<Integer>> results, String wildcard, String key) {
+        Set<Integer> ids = results.get(wildcard);
+        if (ids == null) {
+            ids = new LinkedHashSet<Integer>();
+            results.put(wildcard, ids);
+        }
+        Postings p = postings.get(key);
+        for (int i = 0; i < p.count; i++) {
+            ids.add(new Integer(p.ids[i]));
+        }
+    }
+
+    /**
+     * Returns true if the text matches the pattern, where "*" in the pattern matches any sequence
+     * of characters and every other character matches itself. This runs in time proportional to
+     * the length of the pattern times the length of the text at worst, and usually in linear time.
+     *
+     * @param pattern the pattern
+     * @param text the text to match
+     * @return a boolean
+     */
+    protected static boolean wildcardMatches(String pattern, String text) {
+        int p = 0, t = 0, star = -1, mark = 0;
+        while (t < text.length()) {
+            if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                mark = t;
+            } else if (p < pattern.length() && pattern.charAt(p) == text.charAt(t)) {
+                p++;
+                t++;
+            } else if (star >= 0) {
+                p = star + 1;
+                t = ++mark;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+}
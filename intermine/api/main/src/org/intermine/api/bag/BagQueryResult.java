@@ -82,6 +82,8 @@ public class BagQueryResult
 
     private final Set<String> unresolved = new LinkedHashSet<String>();
 
+    private final Map<String, Long> stageTimings = new LinkedHashMap<String, Long>();
+
     /**
      * Get any results that require some user input before adding to the bag.
      * [issue type -&gt; [query -&gt; [input string -&gt; List of InterMineObjects]]] or for issue
@@ -336,4 +338,25 @@ public class BagQueryResult
     public void addUnresolved(Collection<String> unresolvedIdentifiers) {
         unresolved.addAll(unresolvedIdentifiers);
     }
+
+    /**
+     * Record how long one of the bag queries took to run. If more than one query has the same
+     * message their times are added together.
+     * @param query the message of the bag query
+     * @param time the time the query took in milliseconds
+     */
+    public void addStageTiming(String query, long time) {
+        Long total = stageTimings.get(query);
+        stageTimings.put(query, new Long(time + (total == null ? 0 : total.longValue())));
+    }
+
+    /**
+     * Get the time taken by each of the bag queries that were run, in the order they were run.
+     * Queries that were not needed because every identifier had already been resolved are not
+     * included.
+     * @return a map from bag query message to time in milliseconds
+     */
+    public Map<String, Long> getStageTimings() {
+        return Collections.unmodifiableMap(stageTimings);
+    }
 }
@@ -12,12 +12,20 @@ package org.intermine.api.bag;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang.StringUtils;
@@ -36,6 +44,7 @@ import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsBatches;
 import org.intermine.objectstore.query.ResultsRow;
 import org.intermine.util.CollectionUtil;
+import org.intermine.util.DaemonThreadFactory;
 
 /**
  * For a given list of input strings search for objects using default and configured queries for a
@@ -46,11 +55,18 @@ import org.intermine.util.CollectionUtil;
 public class BagQueryRunner
 {
     private static final Logger LOG = Logger.getLogger(BagQueryRunner.class);
+    /** The default number of bag queries to run at once. */
+    public static final int DEFAULT_THREADS = 4;
     private ObjectStore os;
     private Model model;
     private Map<String, List<FieldDescriptor>> classKeys;
     private BagQueryConfig bagQueryConfig;
     private TemplateManager templateManager;
+    private volatile Map<String, List<BagQueryIndex>> indexes =
+        Collections.emptyMap();
+    private volatile int threads = DEFAULT_THREADS;
+    private volatile long timeout = 0;
+    private ExecutorService executor = null;
 
     /**
      * Construct with configured bag queries and a map of type -&gt; key fields.
@@ -70,6 +86,81 @@ public class BagQueryRunner
         this.templateManager = templateManager;
     }
 
+    /**
+     * Set the number of bag queries that may run at once, shared between all searches. When
+     * every query is to be run against every identifier (matchOnFirst is false), the queries
+     * for a type are independent, so a search runs them all at once and takes about as long as
+     * the slowest of them. When matchOnFirst is true, or if this is 1, each search runs its
+     * queries one after another, each one only looking for the identifiers still unresolved.
+     *
+     * @param threads the number of threads to run bag queries in
+     */
+    public synchronized void setThreads(int threads) {
+        this.threads = threads;
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * Set how long a search may spend running its bag queries before it fails, including any
+     * time spent waiting for a thread.
+     *
+     * @param timeout the time limit in milliseconds, or 0 for no limit
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads,
+                    new DaemonThreadFactory("BagQueryRunner"));
+        }
+        return executor;
+    }
+
+    /**
+     * Build in-memory indexes of the values matched by the bag queries for the given types, so
+     * that later searches for those types look identifiers up in memory instead of running the
+     * queries. The indexes are only used when no extra constraint value is given. The production
+     * database is expected not to change while the indexes are in use.
+     *
+     * If the index for one of the queries cannot be built, that query is run against the database
+     * as before.
+     *
+     * @param types unqualified class names to index
+     * @throws ClassNotFoundException if one of the types isn't in the model
+     */
+    public void buildIndexes(Collection<String> types) throws ClassNotFoundException {
+        Map<String, List<BagQueryIndex>> newIndexes =
+            new HashMap<String, List<BagQueryIndex>>(indexes);
+        for (String type : types) {
+            long start = System.currentTimeMillis();
+            Class<?> typeCls = Class.forName(model.getPackageName() + "." + type);
+            List<BagQueryIndex> typeIndexes = new ArrayList<BagQueryIndex>();
+            int size = 0;
+            for (BagQuery bq : getBagQueriesForType(bagQueryConfig, typeCls.getName())) {
+                BagQueryIndex index = null;
+                try {
+                    index = BagQueryIndex.build(os, bq);
+                    size += index.size();
+                } catch (ObjectStoreException e) {
+                    LOG.warn("Could not index bag query " + bq + " for " + type, e);
+                } catch (IllegalArgumentException e) {
+                    LOG.warn("Could not index bag query " + bq + " for " + type, e);
+                }
+                typeIndexes.add(index);
+            }
+            newIndexes.put(type, typeIndexes);
+            indexes = Collections.unmodifiableMap(
+                    new HashMap<String, List<BagQueryIndex>>(newIndexes));
+            LOG.info("Indexed " + size + " identifiers for " + type + " bag queries in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+
     /**
      * Given an input list of string identifiers search for corresponding objects. First run a
      * default query then any queries configured for the specified type.
@@ -104,7 +195,8 @@ public class BagQueryRunner
      * @param caseSensitive true if the strings have to match case too
      * @return the matches, issues and unresolved input
      * @throws ClassNotFoundException if the type isn't in the model
-     * @throws InterMineException if there is any other exception
+     * @throws InterMineException if the queries don't finish within the timeout, or if there is
+     * any other exception
      */
     public BagQueryResult search(String type, Collection<String> input, String extraFieldValue,
             boolean doWildcards, boolean caseSensitive)
@@ -151,16 +243,206 @@ public class BagQueryRunner
         // return first record ONLY for identifier.  otherwise, run all queries and return all
         boolean matchOnFirst = bagQueryConfig.getMatchOnFirst();
 
-        for (BagQuery bq : queries) {
-            // run the next query on identifiers not yet resolved
-            // OR all identifiers if matchOnFirst = FALSE
-            if (!unresolved.isEmpty() || !matchOnFirst) {
-                Map<String, Set<Integer>> resMap = new HashMap<String, Set<Integer>>();
+        List<BagQueryIndex> typeIndexes = null;
+        if (StringUtils.isEmpty(extraFieldValue)) {
+            typeIndexes = indexes.get(type);
+        }
+
+        List<Stage> stages = new ArrayList<Stage>();
+        for (int queryNo = 0; queryNo < queries.size(); queryNo++) {
+            BagQueryIndex index = (typeIndexes == null ? null : typeIndexes.get(queryNo));
+            stages.add(new Stage(queries.get(queryNo), index, extraFieldValue, caseSensitive,
+                        lowerCaseInput, wildcardInput, patterns));
+        }
+        long deadline = (timeout > 0) ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+
+        // If every query is run against every identifier, the queries are independent, so run
+        // them all at once and merge their results in order below, which gives the same result
+        // as running them one after another. With matchOnFirst each query only looks for what
+        // the ones before it did not find, so they run in turn.
+        List<Future<StageResult>> futures = null;
+        if (!matchOnFirst && threads > 1 && stages.size() > 1) {
+            ExecutorService stageExecutor = getExecutor();
+            futures = new ArrayList<Future<StageResult>>();
+            for (Stage stage : stages) {
+                stage.setInput(cleanInput);
+                futures.add(stageExecutor.submit(stage));
+            }
+        }
+
+        try {
+            for (int queryNo = 0; queryNo < queries.size(); queryNo++) {
+                BagQuery bq = queries.get(queryNo);
+                // the identifiers this query can resolve: those not yet resolved
+                // OR all identifiers if matchOnFirst = FALSE
+                Set<String> toProcess = new HashSet<String>((matchOnFirst) ? unresolved
+                        : unresolvedOriginal);
+                if (toProcess.isEmpty() && wildcardInput.isEmpty()) {
+                    // nothing left for this or any later query to resolve
+                    LOG.debug("Skipping " + (queries.size() - queryNo) + " bag queries for "
+                            + type + " as all identifiers are resolved");
+                    break;
+                }
+                StageResult result;
+                if (futures == null) {
+                    if (System.currentTimeMillis() > deadline) {
+                        throw new InterMineException("Bag queries for " + type
+                                + " did not finish within " + timeout + " ms");
+                    }
+                    Stage stage = stages.get(queryNo);
+                    stage.setInput(toProcess);
+                    result = stage.call();
+                } else {
+                    result = waitFor(futures.get(queryNo), deadline, type);
+                }
+                bqr.addStageTiming(bq.getMessage(), result.time);
+                LOG.info("Bag query \"" + bq.getMessage() + "\" for " + type + " matched "
+                        + (result.matches.size() + result.wildcardMatches.size())
+                        + " identifiers in " + result.time + " ms"
+                        + (stages.get(queryNo).index == null ? "" : " using the index"));
+
+                if (!toProcess.isEmpty()) {
+                    Map<String, Set<Integer>> resMap = new HashMap<String, Set<Integer>>();
+                    for (Map.Entry<String, Set<Integer>> match : result.matches.entrySet()) {
+                        if (toProcess.contains(match.getKey())) {
+                            resMap.put(match.getKey(), match.getValue());
+                            unresolved.remove(match.getKey());
+                        }
+                    }
+                    addResults(resMap, unresolved, bqr, bq.getMessage(), typeCls, false,
+                            matchOnFirst, bq.matchesAreIssues());
+                }
+                if (!wildcardInput.isEmpty()) {
+                    Map<String, Set<Integer>> resMap = result.wildcardMatches;
+                    wildcardUnresolved.removeAll(resMap.keySet());
+                    for (Map.Entry<String, Set<Integer>> entry : resMap.entrySet()) {
+                        // This is a dummy issue just to give a message when running queries
+                        bqr.addIssue(BagQueryResult.WILDCARD, bq.getMessage(),
+                                entry.getKey(), new ArrayList<Object>(entry.getValue()));
+                        if (matchOnFirst) {
+                            addResults(resMap, wildcardUnresolved, bqr, bq.getMessage(),
+                                    typeCls, true, matchOnFirst, bq.matchesAreIssues());
+                        } else {
+                            addResults(resMap, wildcardUnresolvedOriginal, bqr, bq.getMessage(),
+                                    typeCls, true, matchOnFirst, bq.matchesAreIssues());
+                        }
+
+                    }
+                }
+            }
+        } finally {
+            if (futures != null) {
+                // stops any queries that are no longer needed, or that are late
+                for (Future<StageResult> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+
+        unresolved.addAll(wildcardUnresolved);
+        bqr.addUnresolved(unresolved);
+
+        return bqr;
+    }
+
+    private StageResult waitFor(Future<StageResult> future, long deadline, String type)
+        throws ClassNotFoundException, InterMineException {
+        try {
+            if (deadline == Long.MAX_VALUE) {
+                return future.get();
+            }
+            return future.get(Math.max(0, deadline - System.currentTimeMillis()),
+                    TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new InterMineException("Bag queries for " + type + " did not finish within "
+                    + timeout + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterMineException("Interrupted while running bag queries for " + type, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ClassNotFoundException) {
+                throw (ClassNotFoundException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new InterMineException("Error running bag queries for " + type, cause);
+        }
+    }
+
+    private static void addMatch(Map<String, Set<Integer>> matches, Integer id, String input) {
+        Set<Integer> ids = matches.get(input);
+        if (ids == null) {
+            ids = new LinkedHashSet<Integer>();
+            matches.put(input, ids);
+        }
+        ids.add(id);
+    }
+
+    /**
+     * The identifiers that one BagQuery matched, and how long it took to find them.
+     */
+    private static class StageResult
+    {
+        private final Map<String, Set<Integer>> matches = new HashMap<String, Set<Integer>>();
+        private final Map<String, Set<Integer>> wildcardMatches =
+            new HashMap<String, Set<Integer>>();
+        private long time;
+    }
+
+    /**
+     * Runs one BagQuery, using its index if there is one. Stages do not change any shared state,
+     * so they can run in any thread.
+     */
+    private class Stage implements Callable<StageResult>
+    {
+        private final BagQuery bq;
+        private final BagQueryIndex index;
+        private final String extraFieldValue;
+        private final boolean caseSensitive;
+        private final Map<String, String> lowerCaseInput;
+        private final List<String> wildcardInput;
+        private final Map<String, Pattern> patterns;
+        private Set<String> input = Collections.emptySet();
+
+        Stage(BagQuery bq, BagQueryIndex index, String extraFieldValue, boolean caseSensitive,
+                Map<String, String> lowerCaseInput, List<String> wildcardInput,
+                Map<String, Pattern> patterns) {
+            this.bq = bq;
+            this.index = index;
+            this.extraFieldValue = extraFieldValue;
+            this.caseSensitive = caseSensitive;
+            this.lowerCaseInput = lowerCaseInput;
+            this.wildcardInput = wildcardInput;
+            this.patterns = patterns;
+        }
+
+        void setInput(Collection<String> input) {
+            this.input = new HashSet<String>(input);
+        }
+
+        @Override
+        public StageResult call() throws ClassNotFoundException {
+            long start = System.currentTimeMillis();
+            StageResult result = new StageResult();
+            if (!input.isEmpty() && index != null) {
+                for (String inputString : input) {
+                    Set<Integer> ids = index.getIds(inputString, caseSensitive);
+                    if (!ids.isEmpty()) {
+                        result.matches.put(inputString, ids);
+                    }
+                }
+            } else if (!input.isEmpty()) {
                 try {
-                    Set<String> toProcess = (matchOnFirst) ? unresolved : unresolvedOriginal;
-                    Query q = bq.getQuery(toProcess, extraFieldValue);
+                    Query q = bq.getQuery(input, extraFieldValue);
                     Results res = os.execute(q, 10000, true, true, false);
                     for (Object rowObj : res) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            // cancelled, the result will not be used
+                            return result;
+                        }
                         ResultsRow<?> row = (ResultsRow<?>) rowObj;
                         Integer id = (Integer) row.get(0);
                         for (int i = 1; i < row.size(); i++) {
@@ -169,15 +451,15 @@ public class BagQueryRunner
                                 String field = String.valueOf(fieldObject);
                                 String lowerField = field.toLowerCase();
                                 if (caseSensitive) {
-                                    if (cleanInput.contains(field)) {
-                                        processMatch(resMap, unresolved, id, field);
+                                    if (input.contains(field)) {
+                                        addMatch(result.matches, id, field);
                                     }
                                 } else if (lowerCaseInput.containsKey(lowerField)) {
                                     // because we are converting to lower case we need to match
                                     // to original input so that 'h' matches 'H' and 'h' becomes
                                     // a duplicate.
                                     String originalInput = lowerCaseInput.get(lowerField);
-                                    processMatch(resMap, unresolved, id, originalInput);
+                                    addMatch(result.matches, id, originalInput);
                                 }
                             }
                         }
@@ -185,16 +467,17 @@ public class BagQueryRunner
                 } catch (IllegalArgumentException e) {
                     // Query couldn't handle extra value
                 }
-                addResults(resMap, unresolved, bqr, bq.getMessage(), typeCls, false,
-                            matchOnFirst, bq.matchesAreIssues());
             }
-            if (!wildcardInput.isEmpty()) {
-                Map<String, Set<Integer>> resMap = new HashMap<String, Set<Integer>>();
-
+            if (!wildcardInput.isEmpty() && index != null) {
+                result.wildcardMatches.putAll(index.matchWildcards(wildcardInput));
+            } else if (!wildcardInput.isEmpty()) {
                 Query q = bq.getQueryForWildcards(wildcardInput, extraFieldValue);
                 Results res = os.execute(q, ResultsBatches.DEFAULT_BATCH_SIZE, true, true,
                         false);
                 for (Object rowObj : res) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return result;
+                    }
                     ResultsRow<?> row = (ResultsRow<?>) rowObj;
                     Integer id = (Integer) row.get(0);
                     for (int i = 1; i < row.size(); i++) {
@@ -203,43 +486,15 @@ public class BagQueryRunner
                         for (String wildcard : wildcardInput) {
                             Pattern pattern = patterns.get(wildcard);
                             if (pattern.matcher(lowerField).matches()) {
-                                processMatch(resMap, wildcardUnresolved, id, wildcard);
+                                addMatch(result.wildcardMatches, id, wildcard);
                             }
                         }
                     }
                 }
-                for (Map.Entry<String, Set<Integer>> entry : resMap.entrySet()) {
-                    // This is a dummy issue just to give a message when running queries
-                    bqr.addIssue(BagQueryResult.WILDCARD, bq.getMessage(),
-                            entry.getKey(), new ArrayList<Object>(entry.getValue()));
-                    if (matchOnFirst) {
-                        addResults(resMap, wildcardUnresolved, bqr, bq.getMessage(),
-                                typeCls, true, matchOnFirst, bq.matchesAreIssues());
-                    } else {
-                        addResults(resMap, wildcardUnresolvedOriginal, bqr, bq.getMessage(),
-                                typeCls, true, matchOnFirst, bq.matchesAreIssues());
-                    }
-
-                }
-
             }
+            result.time = System.currentTimeMillis() - start;
+            return result;
         }
-
-        unresolved.addAll(wildcardUnresolved);
-        bqr.addUnresolved(unresolved);
-
-        return bqr;
-    }
-
-    private static void processMatch(Map<String, Set<Integer>> resMap, Set<String> unresolved,
-        Integer id, String field) {
-        Set<Integer> ids = resMap.get(field);
-        if (ids == null) {
-            ids = new LinkedHashSet<Integer>();
-            resMap.put(field, ids);
-        }
-        ids.add(id);
-        unresolved.remove(field);
     }
 
     /**
@@ -28,7 +28,7 @@ import org.intermine.metadata.FieldDescriptor;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.query.ObjectStoreBagCombination;
-import org.intermine.objectstore.query.Query;
+import org.intermine.util.IntBitmap;
 
 /**
  * @author Alex
@@ -157,27 +157,74 @@ public abstract class BagOperation implements BagProducer
     }
 
     private void buildBag() throws InternalBagOperationException {
-        ObjectStoreBagCombination osbc = combineBags();
-        Query q = new Query();
-        q.addToSelect(osbc);
-        LOG.debug(q.toString());
+        long start = System.currentTimeMillis();
         try {
-            combined.addToBagFromQuery(q);
+            IntBitmap contents = combineContents();
+            if (!contents.isEmpty()) {
+                combined.addIdsToEmptyBag(contents);
+            }
+            LOG.info("Built list of " + contents.size() + " items by operation "
+                    + getOperationCode() + " in " + (System.currentTimeMillis() - start) + " ms");
         } catch (ObjectStoreException e) {
             cleanUp();
             throw new InternalBagOperationException("Error constructing bag", e);
+        } catch (RuntimeException e) {
+            cleanUp();
+            throw new InternalBagOperationException("Error constructing bag", e);
         }
     }
 
     /**
-     * @return combined list
+     * Work out the contents of the new list from the contents of the lists it is made from.
+     * This is done in memory, using the cached bitmaps of the lists' contents.
+     *
+     * @return the ids of the objects in the new list
+     * @throws ObjectStoreException if the contents of a list can't be read
+     */
+    protected IntBitmap combineContents() throws ObjectStoreException {
+        return combine(getOperationCode(), bags);
+    }
+
+    /**
+     * Combine the contents of some lists in the same way as an ObjectStoreBagCombination.
+     *
+     * @param op one of the operation codes from ObjectStoreBagCombination
+     * @param lists the lists to combine
+     * @return the ids of the objects in the result
+     * @throws ObjectStoreException if the contents of a list can't be read
      */
-    protected ObjectStoreBagCombination combineBags() {
-        ObjectStoreBagCombination osbc = new ObjectStoreBagCombination(getOperationCode());
-        for (InterMineBag bag : bags) {
-            osbc.addBag(bag.getOsb());
+    protected static IntBitmap combine(int op, Collection<InterMineBag> lists)
+        throws ObjectStoreException {
+        IntBitmap union = null;
+        IntBitmap intersection = null;
+        IntBitmap except = null;
+        for (InterMineBag bag : lists) {
+            IntBitmap contents = bag.getContentsAsBitmap();
+            if (union == null) {
+                union = contents;
+                intersection = contents;
+                except = contents;
+            } else {
+                union = IntBitmap.or(union, contents);
+                intersection = IntBitmap.and(intersection, contents);
+                except = IntBitmap.andNot(except, contents);
+            }
+        }
+        if (union == null) {
+            return new IntBitmap();
+        }
+        switch (op) {
+            case ObjectStoreBagCombination.UNION:
+                return union;
+            case ObjectStoreBagCombination.INTERSECT:
+                return intersection;
+            case ObjectStoreBagCombination.EXCEPT:
+                return except;
+            case ObjectStoreBagCombination.ALLBUTINTERSECT:
+                return IntBitmap.andNot(union, intersection);
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + op);
         }
-        return osbc;
     }
 
     private void initCombined(String type, String name) throws InternalBagOperationException {
@@ -21,7 +21,9 @@ import org.intermine.api.profile.Profile;
 import org.intermine.metadata.ClassDescriptor;
 import org.intermine.metadata.MetaDataException;
 import org.intermine.metadata.Model;
+import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.query.ObjectStoreBagCombination;
+import org.intermine.util.IntBitmap;
 
 /**
  *
@@ -68,18 +70,10 @@ public class RelativeComplement extends BagOperation
     }
 
     @Override
-    protected ObjectStoreBagCombination combineBags() {
-        ObjectStoreBagCombination leftUnion =
-                new ObjectStoreBagCombination(ObjectStoreBagCombination.UNION);
-        for (InterMineBag bag : getBags()) {
-            leftUnion.addBag(bag.getOsb());
-        }
-        ObjectStoreBagCombination osbc = new ObjectStoreBagCombination(getOperationCode());
-        osbc.addBagCombination(leftUnion);
-        for (InterMineBag bag : excluded) {
-            osbc.addBag(bag.getOsb());
-        }
-        return osbc;
+    protected IntBitmap combineContents() throws ObjectStoreException {
+        IntBitmap left = combine(ObjectStoreBagCombination.UNION, getBags());
+        IntBitmap right = combine(ObjectStoreBagCombination.UNION, excluded);
+        return IntBitmap.andNot(left, right);
     }
 
     @Override
@@ -45,8 +45,10 @@ import org.intermine.objectstore.query.QueryClass;
 import org.intermine.objectstore.query.QueryCollectionReference;
 import org.intermine.objectstore.query.QueryField;
 import org.intermine.objectstore.query.QueryObjectReference;
+import org.intermine.objectstore.query.QueryValue;
 import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.objectstore.query.SimpleConstraint;
 import org.intermine.pathquery.PathException;
 import org.intermine.util.DynamicUtil;
 import org.intermine.util.ObjectPipe;
@@ -54,7 +56,9 @@ import org.intermine.util.ObjectPipe;
 /**
  * thread to fetch all intermineobjects (with exceptions) from database, create
  * a lucene document for them, add references (if applicable) and put the final
- * document in the indexing queue
+ * document in the indexing queue.  A fetcher can be limited to a range of object
+ * ids, so that several fetchers can run side by side over different parts of the
+ * database.
  * @author nils
  */
 public class InterMineObjectFetcher extends Thread
@@ -76,6 +80,10 @@ public class InterMineObjectFetcher extends Thread
     final Map<Class<?>, Vector<ClassAttributes>> decomposedClassesCache =
             new HashMap<Class<?>, Vector<ClassAttributes>>();
     private Map<String, String> attributePrefixes = null;
+    private final Integer minId;
+    private final Integer maxId;
+    private volatile int fetched = 0;
+    private volatile Exception failure = null;
 
     Field idField = null;
     Field categoryField = null;
@@ -111,7 +119,33 @@ public class InterMineObjectFetcher extends Thread
             Map<Class<? extends InterMineObject>, String[]> specialReferences,
             Map<ClassDescriptor, Float> classBoost, Vector<KeywordSearchFacetData> facets,
             Map<String, String> attributePrefixes) {
-        super();
+        this(os, classKeys, indexingQueue, ignoredClasses, ignoredFields, specialReferences,
+                classBoost, facets, attributePrefixes, null, null);
+    }
+
+    /**
+     * initialize a documentfetcher thread that only fetches the objects with ids in a range
+     * @param os intermine objectstore
+     * @param classKeys classKeys from InterMineAPI, map of classname to all key field descriptors
+     * @param indexingQueue queue shared with indexer
+     * @param ignoredClasses classes that should not be indexed
+     * @param ignoredFields fields to ignore
+     * @param specialReferences map of classname to references to index in additional to normal
+     *            attributes
+     * @param classBoost apply per-class doc boost as specified here
+     * @param facets fields used for faceting
+     * @param attributePrefixes prefixes to be ignored
+     * @param minId the lowest id to fetch, or null for no lower limit
+     * @param maxId fetch only ids lower than this, or null for no upper limit
+     */
+    public InterMineObjectFetcher(ObjectStore os, Map<String, List<FieldDescriptor>> classKeys,
+            ObjectPipe<Document> indexingQueue,
+            Set<Class<? extends InterMineObject>> ignoredClasses,
+            Map<Class<? extends InterMineObject>, Set<String>> ignoredFields,
+            Map<Class<? extends InterMineObject>, String[]> specialReferences,
+            Map<ClassDescriptor, Float> classBoost, Vector<KeywordSearchFacetData> facets,
+            Map<String, String> attributePrefixes, Integer minId, Integer maxId) {
+        super("InterMineObjectFetcher " + minId + "-" + maxId);
 
         this.os = os;
         this.classKeys = classKeys;
@@ -122,6 +156,24 @@ public class InterMineObjectFetcher extends Thread
         this.classBoost = classBoost;
         this.facets = facets;
         this.attributePrefixes = attributePrefixes;
+        this.minId = minId;
+        this.maxId = maxId;
+    }
+
+    /**
+     * get the number of objects fetched so far, for progress reports
+     * @return a number of objects
+     */
+    public int getFetchedCount() {
+        return fetched;
+    }
+
+    /**
+     * get the exception that stopped this fetcher, once it has finished
+     * @return the exception, or null if all the objects were fetched
+     */
+    public Exception getFailure() {
+        return failure;
     }
 
     /**
@@ -141,7 +193,7 @@ public class InterMineObjectFetcher extends Thread
         try {
             long time = System.currentTimeMillis();
             long objectParseTime = 0;
-            LOG.info("Fetching all InterMineObjects...");
+            LOG.info("Fetching InterMineObjects with ids from " + minId + " to " + maxId + "...");
 
             HashSet<Class<? extends InterMineObject>> seenClasses =
                     new HashSet<Class<? extends InterMineObject>>();
@@ -156,7 +208,11 @@ public class InterMineObjectFetcher extends Thread
                 q.addToSelect(qc);
 
                 QueryField qf = new QueryField(qc, "class");
-                q.setConstraint(new BagConstraint(qf, ConstraintOp.NOT_IN, ignoredClasses));
+                ConstraintSet constraints = new ConstraintSet(ConstraintOp.AND);
+                constraints.addConstraint(new BagConstraint(qf, ConstraintOp.NOT_IN,
+                        ignoredClasses));
+                addIdRange(constraints, qc);
+                q.setConstraint(constraints);
 
                 LOG.info("QUERY: " + q.toString());
 
@@ -185,10 +241,11 @@ public class InterMineObjectFetcher extends Thread
                 }
             }
         } catch (Exception e) {
-            LOG.warn(null, e);
+            LOG.error("Failed to fetch objects with ids from " + minId + " to " + maxId, e);
+            failure = e;
         }
 
-        //notify main thread that we're done
+        //notify main thread that we're done, even if we failed, so that the indexer stops
         indexingQueue.finish();
     }
 
@@ -383,10 +440,27 @@ public class InterMineObjectFetcher extends Thread
             }
 
             i++;
+            fetched = i;
         }
         return i;
     }
 
+    /**
+     * Limit a query to the range of ids this fetcher covers.  The reference queries are limited
+     * too, so that each fetcher only reads the references of its own objects.
+     */
+    private void addIdRange(ConstraintSet constraints, QueryClass qc) {
+        QueryField id = new QueryField(qc, "id");
+        if (minId != null) {
+            constraints.addConstraint(new SimpleConstraint(id, ConstraintOp.GREATER_THAN_EQUALS,
+                    new QueryValue(minId)));
+        }
+        if (maxId != null) {
+            constraints.addConstraint(new SimpleConstraint(id, ConstraintOp.LESS_THAN,
+                    new QueryValue(maxId)));
+        }
+    }
+
     private Document createDocument(InterMineObject object, ClassDescriptor classDescriptor) {
         Document doc = new Document();
 
@@ -585,6 +659,7 @@ public class InterMineObjectFetcher extends Thread
                 QueryField topId = new QueryField(queryClass, "id");
                 q.addToSelect(topId);
                 q.addToOrderBy(topId); // important for optimization in run()
+                addIdRange(constraints, queryClass);
             } else {
                 if (parentClassDescriptor == null) {
                     continue;
@@ -12,18 +12,22 @@ package org.intermine.api.lucene;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -32,7 +36,16 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.UUID;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
@@ -59,10 +72,13 @@ import org.apache.lucene.search.TermsFilter;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
-import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.Constants;
 import org.apache.lucene.util.Version;
 import org.intermine.api.InterMineAPI;
 import org.intermine.api.data.Objects;
+import org.intermine.api.lucene.KeywordSearchResultsCache.CachedResults;
+import org.intermine.api.tracker.TrackerDelegate;
 import org.intermine.metadata.ClassDescriptor;
 import org.intermine.metadata.FieldDescriptor;
 import org.intermine.model.InterMineObject;
@@ -71,7 +87,13 @@ import org.intermine.modelproduction.MetadataManager.LargeObjectOutputStream;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.QueryFunction;
+import org.intermine.objectstore.query.ResultsRow;
 import org.intermine.sql.Database;
+import org.intermine.util.DaemonThreadFactory;
 import org.intermine.util.ObjectPipe;
 
 import com.browseengine.bobo.api.BoboBrowser;
@@ -103,6 +125,7 @@ import com.browseengine.bobo.facets.impl.SimpleFacetHandler;
 public final class KeywordSearch
 {
     private static final String LUCENE_INDEX_DIR = "keyword_search_index";
+    private static final String INDEX_VERSION_FILE = "intermine.index.version";
 
     /**
      * maximum number of hits returned
@@ -116,9 +139,18 @@ public final class KeywordSearch
 
     private static final Logger LOG = Logger.getLogger(KeywordSearch.class);
 
+    /**
+     * number of documents queued between the fetchers and the index writers
+     */
+    private static final int QUEUE_SIZE = 100000;
+
+    /**
+     * seconds between progress reports while the index is built
+     */
+    private static final int PROGRESS_INTERVAL = 30;
+
     private static IndexReader reader = null;
     private static BoboIndexReader boboIndexReader = null;
-    private static ObjectPipe<Document> indexingQueue = new ObjectPipe<Document>(100000);
     private static LuceneIndexContainer index = null;
 
     private static Properties properties = null;
@@ -130,6 +162,10 @@ public final class KeywordSearch
     private static Vector<KeywordSearchFacetData> facets;
     private static boolean debugOutput;
     private static Map<String, String> attributePrefixes = null;
+    private static int indexThreads = 1;
+    private static int resultsCacheSize = 1000;
+    private static int warmUpSearches = 100;
+    private static KeywordSearchResultsCache resultsCache = null;
 
     private KeywordSearch() {
         //don't
@@ -258,6 +294,11 @@ public final class KeywordSearch
 
                     tempDirectory = properties.getProperty("index.temp.directory", "");
                 }
+
+                indexThreads = Math.max(1, getIntProperty("index.threads",
+                        Math.min(4, Runtime.getRuntime().availableProcessors())));
+                resultsCacheSize = getIntProperty("search.cache.size", resultsCacheSize);
+                warmUpSearches = getIntProperty("search.cache.warmup", warmUpSearches);
             } catch (IOException e) {
                 LOG.error("keyword_search.properties: errow while loading file '" + configFileName
                         + "'", e);
@@ -294,6 +335,22 @@ public final class KeywordSearch
 
         LOG.info("Search - Debug mode: " + debugOutput);
         LOG.info("Indexing - Temp Dir: " + tempDirectory);
+        LOG.info("Indexing - Threads: " + indexThreads);
+        LOG.info("Search - Cached searches: " + resultsCacheSize + ", warm-up searches: "
+                + warmUpSearches);
+    }
+
+    private static int getIntProperty(String name, int defaultValue) {
+        String value = properties.getProperty(name);
+        if (StringUtils.isBlank(value)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOG.error("keyword_search.properties: " + name + " is not a number: '" + value + "'");
+            return defaultValue;
+        }
     }
 
     private static void addAttributePrefix(String classAndAttribute, String prefix) {
@@ -358,6 +415,11 @@ public final class KeywordSearch
                 LOG.debug("Indexed fields:"
                         + Arrays.toString(boboIndexReader.getFieldNames(FieldOption.INDEXED)
                                 .toArray()));
+
+                // the cache belongs to this index, and is thrown away with it
+                resultsCache = (resultsCacheSize > 0)
+                    ? new KeywordSearchResultsCache(resultsCacheSize) : null;
+                startWarmUp(im);
             }
         } catch (CorruptIndexException e) {
             LOG.error(e);
@@ -424,6 +486,8 @@ public final class KeywordSearch
                 LOG.debug("No previous search index blob found in db");
             }
 
+            // webapps compare this with the version of the index they have already unpacked
+            index.setVersion(UUID.randomUUID().toString());
             LOG.debug("Saving search index information to database...");
             writeObjectToDB(os, MetadataManager.SEARCH_INDEX, index);
             LOG.debug("Successfully saved search index information to database.");
@@ -497,10 +561,6 @@ public final class KeywordSearch
                         zipOut.close();
                     }
                 }
-            } else if ("RAMDirectory".equals(index.getDirectoryType())) {
-                LOG.debug("Saving RAM directory to database...");
-                writeObjectToDB(os, MetadataManager.SEARCH_INDEX_DIRECTORY, index.getDirectory());
-                LOG.debug("Successfully saved RAM directory to database.");
             }
         } catch (IOException e) {
             LOG.error(null, e);
@@ -671,24 +731,104 @@ public final class KeywordSearch
             Map<String, String> facetValues,
             List<Integer> ids)
         throws ObjectStoreException {
-        // last parameter used only when creating lists
-        BrowseResult results = runBrowseSearch(searchString, offset, facetValues, ids, 0);
+        CachedResults results = getResults(searchString, offset, facetValues, ids);
         Collection<KeywordSearchFacet> searchResultsFacets = Collections.emptySet();
         Collection<KeywordSearchHit> searchHits = Collections.emptySet();
         int totalHits = 0;
         if (results != null) {
-            totalHits = results.getNumHits();
+            totalHits = results.getTotalHits();
             LOG.debug("Browse found " + totalHits + " hits");
-            BrowseHit[] browseHits = results.getHits();
+            BrowseHit[] browseHits = results.getBrowseHits();
             Set<Integer> objectIds = getObjectIds(browseHits);
             Map<Integer, InterMineObject> objMap = Objects.getObjects(im, objectIds);
             searchHits = getSearchHits(browseHits, objMap);
-            searchResultsFacets = parseFacets(results, facets, facetValues);
-            results.close();
+            searchResultsFacets = results.getFacets();
         }
         return new ResultsWithFacets(searchHits, searchResultsFacets, totalHits);
     }
 
+    /**
+     * Get one page of the hits of a search, with its facets.  Searches that aren't restricted to
+     * the ids in a list are kept in the results cache.
+     */
+    private static CachedResults getResults(String searchString, int offset,
+            Map<String, String> facetValues, List<Integer> ids) {
+        KeywordSearchResultsCache cache = resultsCache;
+        String cacheKey = null;
+        if (cache != null && (ids == null || ids.isEmpty())) {
+            cacheKey = KeywordSearchResultsCache.getKey(parseQueryString(searchString),
+                    facetValues, offset);
+            CachedResults cached = cache.get(cacheKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // last parameter used only when creating lists
+        BrowseResult result = runBrowseSearch(searchString, offset, facetValues, ids, 0);
+        if (result == null) {
+            return null;
+        }
+        CachedResults results = new CachedResults(result.getHits(),
+                parseFacets(result, facets, facetValues), result.getNumHits());
+        result.close();
+        if (cacheKey != null) {
+            cache.put(cacheKey, results);
+        }
+        return results;
+    }
+
+    /**
+     * Run the most popular searches in the background, so that their results are in the cache
+     * before anyone asks for them.
+     */
+    private static void startWarmUp(InterMineAPI im) {
+        if (resultsCache == null || warmUpSearches <= 0 || im.getTrackerDelegate() == null) {
+            return;
+        }
+        final TrackerDelegate trackerDelegate = im.getTrackerDelegate();
+        Thread warmUp = new Thread("KeywordSearch warm-up") {
+            @Override
+            public void run() {
+                warmUpCache(trackerDelegate.getKeywordSearches(), warmUpSearches);
+            }
+        };
+        warmUp.setDaemon(true);
+        warmUp.start();
+    }
+
+    /**
+     * Put the results of the first page of the most popular searches into the results cache.
+     *
+     * @param keywordSearches map from keywords to the number of times they have been searched for
+     * @param count the number of searches to run
+     */
+    public static void warmUpCache(Map<String, Integer> keywordSearches, int count) {
+        if (keywordSearches == null || resultsCache == null) {
+            return;
+        }
+        long time = System.currentTimeMillis();
+        List<Map.Entry<String, Integer>> popular =
+            new ArrayList<Map.Entry<String, Integer>>(keywordSearches.entrySet());
+        Collections.sort(popular, new Comparator<Map.Entry<String, Integer>>() {
+            @Override
+            public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) {
+                return b.getValue().compareTo(a.getValue());
+            }
+        });
+        int run = 0;
+        for (Map.Entry<String, Integer> search : popular) {
+            if (run >= count) {
+                break;
+            }
+            if (!StringUtils.isBlank(search.getKey())) {
+                getResults(search.getKey(), 0, Collections.<String, String>emptyMap(), null);
+                run++;
+            }
+        }
+        LOG.info("Warmed up keyword search cache with " + run + " searches in "
+                + (System.currentTimeMillis() - time) + " ms: " + resultsCache);
+    }
+
     /**
      * perform a keyword search using bobo-browse for faceting and pagination
      * @param searchString string to search for
@@ -874,13 +1014,21 @@ public final class KeywordSearch
                 ret = restoreIndex(db);
 
                 if (ret != null) {
-                    String indexDirectoryType = ret.getDirectoryType();
-                    Directory dir = restoreSearchDirectory(indexDirectoryType, path, db);
-                    if (dir == null) {
+                    if (!"FSDirectory".equals(ret.getDirectoryType())) {
+                        LOG.error("Search index stored as a " + ret.getDirectoryType()
+                                + " is no longer supported, the index must be rebuilt");
+                        return null;
+                    }
+                    File directoryPath = new File(path + File.separator + LUCENE_INDEX_DIR);
+                    LOG.debug("Directory path: " + directoryPath);
+                    if (isUnpacked(directoryPath, ret.getVersion())) {
+                        LOG.info("Search index " + ret.getVersion() + " is already unpacked in "
+                                + directoryPath);
+                    } else if (!unpackSearchDirectory(directoryPath, ret.getVersion(), db)) {
                         LOG.error("Could not load directory");
                         return null;
                     }
-                    ret.setDirectory(dir);
+                    ret.setDirectory(openDirectory(directoryPath));
                     return ret;
                 }
 
@@ -897,41 +1045,56 @@ public final class KeywordSearch
         return null;
     }
 
-    private static Directory restoreSearchDirectory(String dirType, String path, Database db)
-        throws SQLException, IOException, FileNotFoundException, ClassNotFoundException {
-        InputStream is;
-        LOG.debug("Attempting to restore search directory from database...");
-        is = MetadataManager.readLargeBinary(db, MetadataManager.SEARCH_INDEX_DIRECTORY);
-
+    /**
+     * Check whether a directory already holds the files of a version of the index, so that they
+     * don't need to be read from the database again.  Indexes saved before versions were recorded
+     * are always unpacked.
+     */
+    private static boolean isUnpacked(File directoryPath, String version) throws IOException {
+        File versionFile = new File(directoryPath, INDEX_VERSION_FILE);
+        if (version == null || !versionFile.exists()) {
+            return false;
+        }
+        BufferedReader versionReader = new BufferedReader(new FileReader(versionFile));
+        try {
+            return version.equals(versionReader.readLine());
+        } finally {
+            versionReader.close();
+        }
+    }
 
-        if (is != null) {
-            try {
-                if ("FSDirectory".equals(dirType)) {
-                    return readFSDirectory(path, is);
-                } else if ("RAMDirectory".equals(dirType)) {
-                    return readRAMDirectory(is);
-                } else {
-                    LOG.warn("Unknown directory type specified: " + dirType);
-                }
-            } finally {
-                is.close();
+    /**
+     * Open the unpacked index.  On a 64 bit JVM the files are memory-mapped, so the index is held
+     * in the operating system's page cache rather than in the heap.
+     */
+    private static Directory openDirectory(File directoryPath) throws IOException {
+        if (Constants.JRE_IS_64BIT) {
+            MMapDirectory directory = new MMapDirectory(directoryPath);
+            if (MMapDirectory.UNMAP_SUPPORTED) {
+                directory.setUseUnmap(true);
             }
+            return directory;
+        }
+        return FSDirectory.open(directoryPath);
+    }
 
-        } else {
+    private static boolean unpackSearchDirectory(File directoryPath, String version, Database db)
+        throws SQLException, IOException {
+        LOG.debug("Attempting to restore search directory from database...");
+        InputStream is = MetadataManager.readLargeBinary(db,
+                MetadataManager.SEARCH_INDEX_DIRECTORY);
+        if (is == null) {
             LOG.warn("Could not find search directory!");
+            return false;
         }
-        return null;
-    }
 
-    private static FSDirectory readFSDirectory(String path, InputStream is)
-        throws IOException, FileNotFoundException {
         long time = System.currentTimeMillis();
         final int bufferSize = 2048;
-        File directoryPath = new File(path + File.separator + LUCENE_INDEX_DIR);
-        LOG.debug("Directory path: " + directoryPath);
 
-        // make sure we start with a new index
+        // make sure we start with a new index, removing the version first so that a partly
+        // unpacked index is never mistaken for a complete one
         if (directoryPath.exists()) {
+            new File(directoryPath, INDEX_VERSION_FILE).delete();
             String[] files = directoryPath.list();
             for (int i = 0; i < files.length; i++) {
                 LOG.info("Deleting old file: " + files[i]);
@@ -969,37 +1132,22 @@ public final class KeywordSearch
             }
         } finally {
             zis.close();
+            is.close();
         }
 
-        FSDirectory directory = FSDirectory.open(directoryPath);
+        if (version != null) {
+            FileWriter versionWriter = new FileWriter(new File(directoryPath, INDEX_VERSION_FILE));
+            try {
+                versionWriter.write(version);
+                versionWriter.write('\n');
+            } finally {
+                versionWriter.close();
+            }
+        }
 
         LOG.info("Successfully restored FS directory from database in "
                 + (System.currentTimeMillis() - time) + " ms");
-        return directory;
-    }
-
-    private static RAMDirectory readRAMDirectory(InputStream is)
-        throws IOException, ClassNotFoundException {
-        long time = System.currentTimeMillis();
-        GZIPInputStream gzipInput = new GZIPInputStream(is);
-        ObjectInputStream objectInput = new ObjectInputStream(gzipInput);
-
-        try {
-            Object object = objectInput.readObject();
-
-            if (object instanceof FSDirectory) {
-                RAMDirectory directory = (RAMDirectory) object;
-
-                time = System.currentTimeMillis() - time;
-                LOG.info("Successfully restored RAM directory"
-                        + " from database in " + time + " ms");
-                return directory;
-            }
-        } finally {
-            objectInput.close();
-            gzipInput.close();
-        }
-        return null;
+        return true;
     }
 
     private static LuceneIndexContainer restoreIndex(Database db)
@@ -1040,19 +1188,26 @@ public final class KeywordSearch
 
     private static File createIndex(ObjectStore os, Map<String, List<FieldDescriptor>> classKeys)
         throws IOException {
+        parseProperties(os);
+        return createIndex(os, classKeys, indexThreads);
+    }
+
+    /**
+     * Create the index, fetching the objects in the given number of id partitions.
+     * @param os intermine objectstore
+     * @param classKeys map of classname to key field descriptors
+     * @param threads the number of partitions to fetch and index side by side
+     * @return the index directory
+     * @throws IOException if the index can't be written or any partition fails
+     */
+    static File createIndex(ObjectStore os, Map<String, List<FieldDescriptor>> classKeys,
+            int threads) throws IOException {
         long time = System.currentTimeMillis();
         File tempFile = null;
         LOG.debug("Creating keyword search index...");
 
         parseProperties(os);
 
-        LOG.info("Starting fetcher thread...");
-        InterMineObjectFetcher fetchThread =
-                new InterMineObjectFetcher(os, classKeys, indexingQueue, ignoredClasses,
-                        ignoredFields, specialReferences, classBoost, facets, attributePrefixes);
-        fetchThread.start();
-
-        // index the docs queued by the fetchers
         LOG.info("Preparing indexer...");
         index = new LuceneIndexContainer();
         try {
@@ -1071,40 +1226,91 @@ public final class KeywordSearch
 
         LOG.info("Index directory: " + tempFile.getAbsolutePath());
 
-        IndexWriter writer;
-        writer = new IndexWriter(index.getDirectory(), new WhitespaceAnalyzer(), true,
-                 IndexWriter.MaxFieldLength.UNLIMITED); //autocommit = false?
-        writer.setMergeFactor(10); //10 default, higher values = more parts
-        writer.setRAMBufferSizeMB(64); //flush to disk when docs take up X MB
-
+        IndexWriter writer = createIndexWriter(index.getDirectory());
+
+        // each fetcher reads a range of ids and feeds its own writer, so that fetching and
+        // indexing run on as many threads as there are partitions
+        Integer[] bounds = getIdBounds(os, threads);
+        int partitions = bounds.length - 1;
+        LOG.info("Starting " + partitions + " fetcher threads...");
+        List<InterMineObjectFetcher> fetchers = new ArrayList<InterMineObjectFetcher>();
+        List<IndexWriter> partitionWriters = new ArrayList<IndexWriter>();
+        List<File> partitionFiles = new ArrayList<File>();
+        List<Future<Integer>> indexers = new ArrayList<Future<Integer>>();
+        AtomicInteger indexedCount = new AtomicInteger(0);
+        ExecutorService executor = Executors.newFixedThreadPool(partitions,
+                new DaemonThreadFactory("KeywordSearch indexer"));
         int indexed = 0;
+        try {
+            for (int i = 0; i < partitions; i++) {
+                IndexWriter partitionWriter = writer;
+                if (partitions > 1) {
+                    File partitionFile = new File(tempFile.getAbsolutePath() + "_" + i);
+                    partitionFile.mkdir();
+                    partitionFiles.add(partitionFile);
+                    partitionWriter = createIndexWriter(FSDirectory.open(partitionFile));
+                    partitionWriters.add(partitionWriter);
+                }
+                ObjectPipe<Document> queue = new ObjectPipe<Document>(QUEUE_SIZE / partitions);
+                InterMineObjectFetcher fetcher = new InterMineObjectFetcher(os, classKeys, queue,
+                        ignoredClasses, ignoredFields, specialReferences, classBoost, facets,
+                        attributePrefixes, bounds[i], bounds[i + 1]);
+                fetchers.add(fetcher);
+                fetcher.start();
+                indexers.add(executor.submit(new PartitionIndexer(queue, partitionWriter,
+                        indexedCount)));
+            }
 
-        // loop and index while we still have fetchers running
-        LOG.debug("Starting to index...");
-        while (indexingQueue.hasNext()) {
-            Document doc = indexingQueue.next();
+            // wait for the indexers, reporting progress while they run
+            LOG.debug("Starting to index...");
+            for (Future<Integer> indexer : indexers) {
+                while (true) {
+                    try {
+                        indexed += indexer.get(PROGRESS_INTERVAL, TimeUnit.SECONDS).intValue();
+                        break;
+                    } catch (TimeoutException e) {
+                        logIndexingProgress(time, indexedCount.get(), fetchers);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while building the index", e);
+                    } catch (ExecutionException e) {
+                        throw new IOException("Failed to build the index", e.getCause());
+                    }
+                }
+            }
 
-            // nothing in the queue?
-            if (doc != null) {
+            // a fetcher that fails still finishes its queue, so check that each one got everything
+            for (InterMineObjectFetcher fetcher : fetchers) {
                 try {
-                    writer.addDocument(doc);
-                    indexed++;
-                } catch (IOException e) {
-                    LOG.error("Failed to submit #" + doc.getFieldable("id") + " to the index",
-                            e);
+                    fetcher.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while building the index", e);
                 }
-
-                if (indexed % 10000 == 1) {
-                    LOG.info("docs indexed=" + indexed + "; thread state="
-                            + fetchThread.getState() + "; docs/ms=" + indexed * 1.0F
-                            / (System.currentTimeMillis() - time) + "; memory="
-                            + Runtime.getRuntime().freeMemory() / 1024 + "k/"
-                            + Runtime.getRuntime().maxMemory() / 1024 + "k" + "; time="
-                            + (System.currentTimeMillis() - time) + "ms");
+                if (fetcher.getFailure() != null) {
+                    throw new IOException("Failed to fetch objects for the index in "
+                            + fetcher.getName(), fetcher.getFailure());
                 }
             }
+        } finally {
+            executor.shutdownNow();
+        }
+        for (InterMineObjectFetcher fetcher : fetchers) {
+            index.getFieldNames().addAll(fetcher.getFieldNames());
+        }
+
+        if (!partitionWriters.isEmpty()) {
+            LOG.info("Indexing done, merging " + partitionWriters.size() + " partitions...");
+            Directory[] partitionDirectories = new Directory[partitionWriters.size()];
+            for (int i = 0; i < partitionWriters.size(); i++) {
+                partitionDirectories[i] = partitionWriters.get(i).getDirectory();
+                partitionWriters.get(i).close();
+            }
+            writer.addIndexesNoOptimize(partitionDirectories);
+            for (File partitionFile : partitionFiles) {
+                deleteDirectory(partitionFile);
+            }
         }
-        index.getFieldNames().addAll(fetchThread.getFieldNames());
         LOG.debug("Indexing done, optimizing index files...");
         try {
             writer.optimize();
@@ -1121,6 +1327,100 @@ public final class KeywordSearch
         return tempFile;
     }
 
+    private static IndexWriter createIndexWriter(Directory directory) throws IOException {
+        IndexWriter writer = new IndexWriter(directory, new WhitespaceAnalyzer(), true,
+                 IndexWriter.MaxFieldLength.UNLIMITED); //autocommit = false?
+        writer.setMergeFactor(10); //10 default, higher values = more parts
+        writer.setRAMBufferSizeMB(64); //flush to disk when docs take up X MB
+        return writer;
+    }
+
+    /**
+     * Split the range of object ids into a number of partitions of equal width.  The first and
+     * last bounds are null, so the partitions cover every id.
+     */
+    private static Integer[] getIdBounds(ObjectStore os, int partitions) {
+        Integer min = null;
+        Integer max = null;
+        if (partitions > 1) {
+            Query q = new Query();
+            QueryClass qc = new QueryClass(InterMineObject.class);
+            q.addFrom(qc);
+            QueryField id = new QueryField(qc, "id");
+            q.addToSelect(new QueryFunction(id, QueryFunction.MIN));
+            q.addToSelect(new QueryFunction(id, QueryFunction.MAX));
+            @SuppressWarnings("rawtypes")
+            List<ResultsRow> rows = (List) os.execute(q, 1, false, false, false);
+            if (!rows.isEmpty() && rows.get(0).get(0) != null) {
+                min = new Integer(((Number) rows.get(0).get(0)).intValue());
+                max = new Integer(((Number) rows.get(0).get(1)).intValue());
+            }
+        }
+        if (min == null || max.intValue() - (long) min.intValue() < partitions) {
+            return new Integer[] {null, null};
+        }
+        Integer[] bounds = new Integer[partitions + 1];
+        long width = (max.intValue() - (long) min.intValue() + partitions) / partitions;
+        for (int i = 1; i < partitions; i++) {
+            bounds[i] = new Integer((int) (min.intValue() + i * width));
+        }
+        return bounds;
+    }
+
+    private static void logIndexingProgress(long start, int indexed,
+            List<InterMineObjectFetcher> fetchers) {
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        StringBuilder fetched = new StringBuilder();
+        for (InterMineObjectFetcher fetcher : fetchers) {
+            if (fetched.length() > 0) {
+                fetched.append(", ");
+            }
+            fetched.append(fetcher.getFetchedCount());
+        }
+        LOG.info("docs indexed=" + indexed + "; docs/s=" + (indexed * 1000L / elapsed)
+                + "; objects fetched per partition=[" + fetched + "]; memory="
+                + Runtime.getRuntime().freeMemory() / 1024 + "k/"
+                + Runtime.getRuntime().maxMemory() / 1024 + "k; time=" + elapsed + "ms");
+    }
+
+    /**
+     * Adds the documents from one fetcher's queue to an IndexWriter.
+     */
+    private static class PartitionIndexer implements Callable<Integer>
+    {
+        private final ObjectPipe<Document> queue;
+        private final IndexWriter writer;
+        private final AtomicInteger indexedCount;
+
+        PartitionIndexer(ObjectPipe<Document> queue, IndexWriter writer,
+                AtomicInteger indexedCount) {
+            this.queue = queue;
+            this.writer = writer;
+            this.indexedCount = indexedCount;
+        }
+
+        @Override
+        public Integer call() {
+            int indexed = 0;
+            while (queue.hasNext()) {
+                Document doc = queue.next();
+
+                // nothing in the queue?
+                if (doc != null) {
+                    try {
+                        writer.addDocument(doc);
+                        indexed++;
+                        indexedCount.incrementAndGet();
+                    } catch (IOException e) {
+                        LOG.error("Failed to submit #" + doc.getFieldable("id")
+                                + " to the index", e);
+                    }
+                }
+            }
+            return new Integer(indexed);
+        }
+    }
+
     private static File makeTempFile(String tempDir) throws IOException {
         LOG.debug("Creating search index tmp dir: " + tempDir);
         File tempFile = File.createTempFile("search_index", "", new File(tempDir));
@@ -1227,6 +1527,16 @@ public final class KeywordSearch
         }
     }
 
+    private static void deleteDirectory(File directory) {
+        String[] files = directory.list();
+        if (files != null) {
+            for (String file : files) {
+                new File(directory, file).delete();
+            }
+        }
+        directory.delete();
+    }
+
     /**
      * set all the variables to NULL
      */
@@ -1249,7 +1559,7 @@ public final class KeywordSearch
             }
         }
         boboIndexReader = null;
-        indexingQueue = null;
+        resultsCache = null;
         index = null;
         properties = null;
         tempDirectory = null;
@@ -0,0 +1,153 @@
+package org.intermine.api.lucene;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.browseengine.bobo.api.BrowseHit;
+
+/**
+ * Holds the hits and facet counts of recent keyword searches, so that popular searches don't
+ * run the query and count the facets again.  The search index doesn't change while it is loaded,
+ * so entries are never out of date; the cache is thrown away with the index.  The least recently
+ * used entries are dropped once there are more than a fixed number of them.
+ *
+ * @author InterMine
+ */
+public final class KeywordSearchResultsCache
+{
+    private final int maxEntries;
+    private final Map<String, CachedResults> entries;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * The hits of one page of a search, with the facet counts of the whole search.
+     */
+    public static final class CachedResults
+    {
+        private final BrowseHit[] browseHits;
+        private final Collection<KeywordSearchFacet> facets;
+        private final int totalHits;
+
+        /**
+         * Constructor.
+         * @param browseHits the hits on the page
+         * @param facets the facets of the search
+         * @param totalHits the number of hits of the whole search
+         */
+        public CachedResults(BrowseHit[] browseHits, Collection<KeywordSearchFacet> facets,
+                int totalHits) {
+            this.browseHits = browseHits;
+            this.facets = Collections.unmodifiableCollection(facets);
+            this.totalHits = totalHits;
+        }
+
+        /** @return the hits on the page **/
+        public BrowseHit[] getBrowseHits() {
+            return browseHits;
+        }
+
+        /** @return the facets of the search **/
+        public Collection<KeywordSearchFacet> getFacets() {
+            return facets;
+        }
+
+        /** @return the number of hits of the whole search **/
+        public int getTotalHits() {
+            return totalHits;
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param maxEntries the number of searches to keep
+     */
+    public KeywordSearchResultsCache(final int maxEntries) {
+        this.maxEntries = maxEntries;
+        entries = new LinkedHashMap<String, CachedResults>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResults> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Make the key of a search.  Searches that differ only in white space or in the order of the
+     * facet selections have the same key.
+     *
+     * @param queryString the query string, already lower-cased and escaped
+     * @param facetValues map of facet field name to selected value
+     * @param offset the offset of the page
+     * @return a key
+     */
+    public static String getKey(String queryString, Map<String, String> facetValues, int offset) {
+        StringBuilder key = new StringBuilder();
+        key.append(offset).append('|').append(queryString.trim().replaceAll("\\s+", " "));
+        for (Map.Entry<String, String> facetValue
+                : new TreeMap<String, String>(facetValues).entrySet()) {
+            key.append('|').append(facetValue.getKey()).append('=').append(facetValue.getValue());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Get the results stored for a search.
+     * @param key the key, from getKey()
+     * @return the results, or null if they aren't in the cache
+     */
+    public synchronized CachedResults get(String key) {
+        CachedResults results = entries.get(key);
+        if (results == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return results;
+    }
+
+    /**
+     * Store the results of a search.
+     * @param key the key, from getKey()
+     * @param results the results
+     */
+    public synchronized void put(String key, CachedResults results) {
+        entries.put(key, results);
+    }
+
+    /**
+     * @return the number of searches in the cache
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the maximum number of searches kept
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "KeywordSearchResultsCache[" + entries.size() + "/" + maxEntries + " searches, "
+            + hits + " hits, " + misses + " misses]";
+    }
+}
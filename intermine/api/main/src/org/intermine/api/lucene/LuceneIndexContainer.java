@@ -27,6 +27,7 @@ class LuceneIndexContainer implements Serializable
     private static final long serialVersionUID = 1L;
     private transient Directory directory;
     private String directoryType;
+    private String version;
     private HashSet<String> fieldNames = new HashSet<String>();
     private HashMap<String, Float> fieldBoosts = new HashMap<String, Float>();
 
@@ -49,7 +50,7 @@ class LuceneIndexContainer implements Serializable
 
     /**
      * get type of directory
-     * @return 'FSDirectory' or 'RAMDirectory'
+     * @return 'FSDirectory'
      */
     public String getDirectoryType() {
         return directoryType;
@@ -64,6 +65,22 @@ class LuceneIndexContainer implements Serializable
         this.directoryType = directoryType;
     }
 
+    /**
+     * get the version of the index, which is different every time the index is saved
+     * @return a version identifier, or null for indexes saved without one
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * set the version of the index
+     * @param version a version identifier
+     */
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
     /**
      * get list of fields in the index
      * @return fields
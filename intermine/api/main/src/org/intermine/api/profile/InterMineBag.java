@@ -22,6 +22,7 @@ import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.intermine.api.bag.BagContentsCache;
 import org.intermine.api.bag.ClassKeysNotFoundException;
 import org.intermine.api.bag.IncompatibleTypesException;
 import org.intermine.api.bag.UnknownBagTypeException;
@@ -49,6 +50,7 @@ import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
 import org.intermine.objectstore.query.SimpleConstraint;
 import org.intermine.objectstore.query.SingletonResults;
+import org.intermine.util.IntBitmap;
 
 /**
  * An object that represents a bag of objects in our database for the webapp. It is backed by an
@@ -252,6 +254,17 @@ public class InterMineBag extends StorableBag implements Cloneable
         return ((List) res);
     }
 
+    /**
+     * Returns the contents of this bag as a bitmap of ids.  The contents of bags are cached, so
+     * this only reads the database the first time it is called for a bag, or after the bag has
+     * been changed.  The returned bitmap must not be changed.
+     *
+     * @return an IntBitmap
+     */
+    public IntBitmap getContentsAsBitmap() {
+        return BagContentsCache.getInstance(os).getContents(osb);
+    }
+
     /**
      * Returns a List which contains the ids given in input and contained
      * in this bag as Integer IDs.
@@ -415,6 +428,7 @@ public class InterMineBag extends StorableBag implements Cloneable
         SavedBag savedBag = (SavedBag) uosw.getObjectById(savedBagId, SavedBag.class);
         try {
             oswProduction = os.getNewWriter();
+            BagContentsCache.getInstance(os).invalidate(osb);
             osb = oswProduction.createObjectStoreBag();
             oswProduction.addAllToBag(osb, values);
             savedBag.setOsbId(osb.getBagId());
@@ -736,6 +750,27 @@ public class InterMineBag extends StorableBag implements Cloneable
                 addBagValuesFromIds(ids);
             }
         }
+        ObjectStoreWriter oswProduction = null;
+        try {
+            oswProduction = os.getNewWriter();
+            oswProduction.addAllToBag(osb, ids);
+        } finally {
+            BagContentsCache.getInstance(os).invalidate(osb);
+            if (oswProduction != null) {
+                oswProduction.close();
+            }
+        }
+    }
+
+    /**
+     * Fill a new, empty bag with the given ids, for example the result of a list operation.  The
+     * caller must make sure that the ids are of the type of the bag, as they are not checked.
+     * The ids are written in a single batch and the bag values are saved once they are all in.
+     *
+     * @param ids the ids to add, which must not be changed afterwards
+     * @throws ObjectStoreException if problem storing
+     */
+    public void addIdsToEmptyBag(IntBitmap ids) throws ObjectStoreException {
         ObjectStoreWriter oswProduction = null;
         try {
             oswProduction = os.getNewWriter();
@@ -745,6 +780,10 @@ public class InterMineBag extends StorableBag implements Cloneable
                 oswProduction.close();
             }
         }
+        BagContentsCache.getInstance(os).putContents(osb, ids);
+        if (profileId != null) {
+            addBagValues();
+        }
     }
 
     /**
@@ -785,6 +824,7 @@ public class InterMineBag extends StorableBag implements Cloneable
             oswProduction = os.getNewWriter();
             oswProduction.addToBagFromQuery(osb, query);
         } finally {
+            BagContentsCache.getInstance(os).invalidate(osb);
             if (oswProduction != null) {
                 oswProduction.close();
             }
@@ -816,6 +856,7 @@ public class InterMineBag extends StorableBag implements Cloneable
             oswProduction = os.getNewWriter();
             oswProduction.removeAllFromBag(osb, ids);
         } finally {
+            BagContentsCache.getInstance(os).invalidate(osb);
             if (oswProduction != null) {
                 oswProduction.close();
             }
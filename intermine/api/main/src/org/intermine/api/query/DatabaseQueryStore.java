@@ -0,0 +1,368 @@
+package org.intermine.api.query;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.intermine.objectstore.intermine.ObjectStoreWriterInterMineImpl;
+import org.intermine.objectstore.intermine.SQLOperation;
+import org.intermine.pathquery.PathQuery;
+import org.intermine.pathquery.PathQueryBinding;
+import org.intermine.sql.DatabaseUtil;
+
+/**
+ * A query store kept in the userprofile database.
+ *
+ * The key of a query is the SHA-1 hash of its XML, so the same query always gets the same key,
+ * on any webapp using the same userprofile, and keys stay valid when the webapp is restarted.
+ * Since a key always refers to the same XML, the most recently used queries can be kept in
+ * memory without ever being out of date, and can be read without taking a lock.  Queries are
+ * only parsed (to check them) the first time they are stored.
+ *
+ * Anyone can store queries, so the table is kept to a bounded size: each stored query records
+ * when it was last used, and every so often when a query is stored the queries not used for
+ * MAX_AGE_DAYS are deleted, as are the least recently used ones beyond MAX_STORED.  The table is
+ * created with the other userprofile tables, by createTable(), when the webapp starts.
+ *
+ * @author InterMine
+ */
+public class DatabaseQueryStore implements QueryStore
+{
+    private static final Logger LOG = Logger.getLogger(DatabaseQueryStore.class);
+
+    /** The number of queries kept in the database. **/
+    public static final int MAX_STORED = 100000;
+    /** The number of days a query is kept in the database after it was last used. **/
+    public static final int MAX_AGE_DAYS = 365;
+    // old queries are deleted after this many queries have been stored
+    private static final int PURGE_INTERVAL = 1000;
+    // the use of a query held in memory is recorded in the database at most this often
+    private static final long TOUCH_INTERVAL = 24L * 60 * 60 * 1000;
+
+    private static final String TABLE_NAME = "storedquery";
+    private static final String LAST_USED_COLUMN =
+            "lastused timestamp NOT NULL DEFAULT now()";
+    private static final String TABLE_DEFINITION =
+            "CREATE TABLE " + TABLE_NAME + " ("
+            + "id text NOT NULL PRIMARY KEY, "
+            + "xml text NOT NULL, "
+            + "created timestamp NOT NULL DEFAULT now(), "
+            + LAST_USED_COLUMN + ")";
+    private static final String FETCH_SQL =
+            "UPDATE " + TABLE_NAME + " SET lastused = now() WHERE id = ? RETURNING xml";
+    private static final String TOUCH_SQL =
+            "UPDATE " + TABLE_NAME + " SET lastused = now() WHERE id = ?";
+    private static final String INSERT_SQL =
+            "INSERT INTO " + TABLE_NAME + " (id, xml) SELECT ?, ? WHERE NOT EXISTS "
+            + "(SELECT 1 FROM " + TABLE_NAME + " WHERE id = ?)";
+    private static final String PURGE_SQL =
+            "DELETE FROM " + TABLE_NAME + " WHERE lastused < now() - interval '"
+            + MAX_AGE_DAYS + " days' OR id IN (SELECT id FROM " + TABLE_NAME
+            + " ORDER BY lastused DESC OFFSET " + MAX_STORED + ")";
+
+    private final ObjectStoreWriterInterMineImpl osw;
+    private final int maxSize;
+    private final Map<String, CachedQuery> cache = new ConcurrentHashMap<String, CachedQuery>();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger insertsSincePurge = new AtomicInteger();
+
+    /**
+     * A query in the in-memory cache, with the time it was last used, and the time its use was
+     * last recorded in the database.
+     */
+    private static final class CachedQuery
+    {
+        private final String xml;
+        private volatile long lastUsed;
+        private volatile long lastTouched;
+
+        CachedQuery(String xml, long lastUsed) {
+            this.xml = xml;
+            this.lastUsed = lastUsed;
+            this.lastTouched = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Constructor.  The table for the queries must already exist, see createTable().
+     *
+     * @param osw the userprofile objectstore writer
+     * @param maxSize the number of queries to keep in memory
+     */
+    public DatabaseQueryStore(ObjectStoreWriterInterMineImpl osw, int maxSize) {
+        this.osw = osw;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Create the table for the queries in the userprofile database, if it doesn't exist yet.
+     *
+     * @param con a connection to the userprofile database
+     * @throws SQLException if the table cannot be created
+     */
+    public static void createTable(Connection con) throws SQLException {
+        List<String> statements = new ArrayList<String>();
+        if (!DatabaseUtil.tableExists(con, TABLE_NAME)) {
+            LOG.info("Creating query store table");
+            statements.add(TABLE_DEFINITION);
+        } else if (!DatabaseUtil.columnExists(con, TABLE_NAME, "lastused")) {
+            LOG.info("Adding last used time to query store table");
+            statements.add("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + LAST_USED_COLUMN);
+        } else {
+            return;
+        }
+        // for deleting old queries
+        statements.add("CREATE INDEX " + TABLE_NAME + "_lastused ON " + TABLE_NAME
+                + " (lastused)");
+        Statement s = con.createStatement();
+        try {
+            for (String sql : statements) {
+                s.execute(sql);
+            }
+        } finally {
+            s.close();
+        }
+    }
+
+    /**
+     * @param xml xml
+     * @return the key of the query, the hash of its XML
+     * @throws BadQueryException if query is bad
+     */
+    @Override
+    public String putQuery(String xml) throws BadQueryException {
+        String key = getKey(xml);
+        if (getCached(key) != null) {
+            return key;
+        }
+        try {
+            if (fetch(key) != null) {
+                cache(key, xml);
+                return key;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Could not read from the query store", e);
+        }
+        try {
+            PathQueryBinding.unmarshalPathQuery(new StringReader(xml),
+                    PathQuery.USERPROFILE_VERSION);
+        } catch (Exception e) {
+            String message = "XML is not well formatted.";
+            throw new BadQueryException(message, e);
+        }
+        try {
+            insert(key, xml);
+        } catch (SQLException e) {
+            // another webapp may have stored the same query at the same time
+            try {
+                if (fetch(key) == null) {
+                    throw new RuntimeException("Could not write to the query store", e);
+                }
+            } catch (SQLException e2) {
+                throw new RuntimeException("Could not write to the query store", e);
+            }
+        }
+        cache(key, xml);
+        return key;
+    }
+
+    /**
+     * @param key key
+     * @return query
+     * @throws KeyFormatException if the key isn't a hash
+     * @throws NotPresentException if key is not in query store
+     */
+    @Override
+    public String getQuery(String key) throws KeyFormatException, NotPresentException {
+        if (key.matches("\\d+")) {
+            // a key from the old in-memory query store
+            throw new NotPresentException("Key not in query store. "
+                    + "This key may have come from an expired session");
+        }
+        if (!key.matches("[0-9a-f]{40}")) {
+            throw new KeyFormatException("The key for this query store must be a 40 character "
+                    + "hexadecimal hash");
+        }
+        String xml = getCached(key);
+        if (xml != null) {
+            return xml;
+        }
+        try {
+            xml = fetch(key);
+        } catch (SQLException e) {
+            throw new RuntimeException("Could not read from the query store", e);
+        }
+        if (xml == null) {
+            throw new NotPresentException("Key not in query store.");
+        }
+        cache(key, xml);
+        return xml;
+    }
+
+    /**
+     * @return the number of queries held in memory
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the key of a query, that is the SHA-1 hash of its XML, in hexadecimal.
+     *
+     * @param xml the query XML
+     * @return the key
+     */
+    public static String getKey(String xml) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] bits = sha1.digest(xml.getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder();
+            for (int i = 0; i < bits.length; i++) {
+                key.append(Integer.toHexString((0x000000ff & bits[i]) | 0xffffff00).substring(6));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-1 is not available", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException("UTF-8 is not available", e);
+        }
+    }
+
+    private String getCached(String key) {
+        CachedQuery cached = cache.get(key);
+        if (cached == null) {
+            return null;
+        }
+        cached.lastUsed = clock.incrementAndGet();
+        long now = System.currentTimeMillis();
+        if (now - cached.lastTouched > TOUCH_INTERVAL) {
+            // so that queries still used on this webapp aren't deleted as old
+            cached.lastTouched = now;
+            try {
+                update(TOUCH_SQL, key);
+            } catch (SQLException e) {
+                LOG.warn("Could not record the use of a stored query", e);
+            }
+        }
+        return cached.xml;
+    }
+
+    private void cache(String key, String xml) {
+        cache.put(key, new CachedQuery(xml, clock.incrementAndGet()));
+        if (cache.size() > maxSize) {
+            evict();
+        }
+    }
+
+    /**
+     * Drop the least recently used quarter of the cache, so that eviction only happens once in
+     * a while.
+     */
+    private synchronized void evict() {
+        if (cache.size() <= maxSize) {
+            return;
+        }
+        List<Map.Entry<String, CachedQuery>> entries =
+            new ArrayList<Map.Entry<String, CachedQuery>>(cache.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, CachedQuery>>() {
+            @Override
+            public int compare(Map.Entry<String, CachedQuery> a,
+                    Map.Entry<String, CachedQuery> b) {
+                long aUsed = a.getValue().lastUsed;
+                long bUsed = b.getValue().lastUsed;
+                return aUsed < bUsed ? -1 : (aUsed == bUsed ? 0 : 1);
+            }
+        });
+        int toRemove = entries.size() - (maxSize * 3 / 4);
+        for (int i = 0; i < toRemove; i++) {
+            cache.remove(entries.get(i).getKey());
+        }
+    }
+
+    private String fetch(final String key) throws SQLException {
+        return osw.performUnsafeOperation(FETCH_SQL, new SQLOperation<String>() {
+            @Override
+            public String run(PreparedStatement stm) throws SQLException {
+                stm.setString(1, key);
+                ResultSet rs = stm.executeQuery();
+                if (rs.next()) {
+                    return rs.getString(1);
+                }
+                return null;
+            }
+        });
+    }
+
+    private void insert(final String key, final String xml) throws SQLException {
+        osw.performUnsafeOperation(INSERT_SQL, new SQLOperation<Void>() {
+            @Override
+            public Void run(PreparedStatement stm) throws SQLException {
+                stm.setString(1, key);
+                stm.setString(2, xml);
+                stm.setString(3, key);
+                stm.executeUpdate();
+                return null;
+            }
+        });
+        if (insertsSincePurge.incrementAndGet() >= PURGE_INTERVAL) {
+            insertsSincePurge.set(0);
+            try {
+                purge();
+            } catch (SQLException e) {
+                LOG.warn("Could not delete old queries from the query store", e);
+            }
+        }
+    }
+
+    /**
+     * Delete the queries that haven't been used for MAX_AGE_DAYS, and the least recently used
+     * ones beyond MAX_STORED.
+     *
+     * @return the number of queries deleted
+     * @throws SQLException if the queries cannot be deleted
+     */
+    public int purge() throws SQLException {
+        int deleted = update(PURGE_SQL, null);
+        if (deleted > 0) {
+            LOG.info("Deleted " + deleted + " old queries from the query store");
+        }
+        return deleted;
+    }
+
+    private int update(String sql, final String key) throws SQLException {
+        return osw.performUnsafeOperation(sql, new SQLOperation<Integer>() {
+            @Override
+            public Integer run(PreparedStatement stm) throws SQLException {
+                if (key != null) {
+                    stm.setString(1, key);
+                }
+                return Integer.valueOf(stm.executeUpdate());
+            }
+        }).intValue();
+    }
+}
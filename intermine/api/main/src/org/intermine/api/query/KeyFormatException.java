@@ -28,4 +28,12 @@ public class KeyFormatException extends QueryStoreException
         super(message, e);
     }
 
+    /**
+     *
+     * @param message error message
+     */
+    public KeyFormatException(String message) {
+        super(message);
+    }
+
 }
@@ -25,6 +25,8 @@ import org.intermine.api.profile.BagState;
 import org.intermine.api.profile.InterMineBag;
 import org.intermine.api.profile.Profile;
 import org.intermine.api.results.ExportResultsIterator;
+import org.intermine.api.results.ExportRow;
+import org.intermine.api.results.ExportRowHandler;
 import org.intermine.api.results.ResultElement;
 import org.intermine.metadata.FieldDescriptor;
 import org.intermine.objectstore.ObjectStore;
@@ -296,4 +298,27 @@ class ResultIterator extends ExportResultsIterator
         counter++;
         return ret;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int forEachRow(final ExportRowHandler handler) {
+        if (counter >= (limit + start)) {
+            return 0;
+        }
+        final int first = Math.max(counter, start);
+        super.forEachRow(new ExportRowHandler() {
+            @Override
+            public boolean handleRow(ExportRow row) {
+                counter++;
+                // throw away results before start index
+                if (counter <= start) {
+                    return true;
+                }
+                return handler.handleRow(row) && counter < (limit + start);
+            }
+        });
+        return Math.max(0, counter - first);
+    }
 }
@@ -11,6 +11,7 @@ package org.intermine.api.results;
  */
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -34,6 +35,8 @@ import org.intermine.pathquery.PathQuery;
 /**
  * An Iterator that produces data in a format suitable for exporting. The data is flattened, so if
  * there are outer joined collections, there may be more rows than in the original results.
+ * Exporters that write each row out straight away can use forEachRow() instead, which fills in
+ * one reused ExportRow rather than making a List of ResultElements for every row.
  *
  * @author Matthew Wakeling
  */
@@ -43,8 +46,13 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
 
     private Iterator<List> osIter;
     protected Iterator<List<ResultElement>> subIter;
+    // The results row that subIter was made from by hasNext(), until next() takes a row from it
+    private List pendingRow = null;
     // This object contains a description of the collections in the input.
     private List columns;
+    // The same description, compiled for flattening rows into the ExportRow.
+    private Level layout;
+    private ExportRow exportRow;
     private final List<Path> paths = new ArrayList<Path>();
     private final Query query;
     private int columnCount;
@@ -102,6 +110,54 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
         }
         columns = convertColumnTypes(query.getSelect(), pq, pathToQueryNode);
         columnCount = pq.getView().size();
+        layout = new Level(columns);
+        exportRow = new ExportRow(paths);
+    }
+
+    /**
+     * Passes the remaining rows to a handler, one at a time, in the same order as next() would
+     * return them.  The handler is given the same ExportRow object each time, filled in with the
+     * values of the next row, so very little is allocated for each row.  This can be used after
+     * hasNext(), but not part way through the rows made from one results row by next(); see
+     * canForEachRow().
+     *
+     * @param handler the handler to pass rows to
+     * @return the number of rows passed to the handler
+     */
+    public int forEachRow(ExportRowHandler handler) {
+        if (!canForEachRow()) {
+            throw new IllegalStateException("Cannot call forEachRow() part way through a row "
+                    + "read by next()");
+        }
+        CountingHandler counter = new CountingHandler(handler);
+        if (pendingRow != null) {
+            // decoded by hasNext() but not read, so flatten it again
+            List row = pendingRow;
+            pendingRow = null;
+            List<List<ResultElement>> empty = Collections.emptyList();
+            subIter = empty.iterator();
+            exportRow.clear();
+            if (!flatten(row, layout, counter)) {
+                return counter.count;
+            }
+        }
+        while (osIter.hasNext()) {
+            exportRow.clear();
+            if (!flatten(osIter.next(), layout, counter)) {
+                break;
+            }
+        }
+        return counter.count;
+    }
+
+    /**
+     * Returns true if forEachRow() can be called now, that is unless next() has returned some but
+     * not all of the rows made from one results row.
+     *
+     * @return a boolean
+     */
+    public boolean canForEachRow() {
+        return (pendingRow != null) || !subIter.hasNext();
     }
 
     /**
@@ -110,7 +166,8 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
     @Override
     public boolean hasNext() {
         while ((!subIter.hasNext()) && osIter.hasNext()) {
-            subIter = decodeRow(osIter.next()).iterator();
+            pendingRow = osIter.next();
+            subIter = decodeRow(pendingRow).iterator();
         }
         return subIter.hasNext();
     }
@@ -123,6 +180,7 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
         while ((!subIter.hasNext()) && osIter.hasNext()) {
             subIter = decodeRow(osIter.next()).iterator();
         }
+        pendingRow = null;
         return subIter.next();
     }
 
@@ -275,110 +333,180 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
     }
 
     private List<List<ResultElement>> decodeRow(List row) {
-        List<ResultElement> template = new ArrayList<ResultElement>();
-        for (int i = 0; i < columnCount; i++) {
-            template.add(null);
-        }
-        List<List<ResultElement>> retval = new ArrayList<List<ResultElement>>();
-        expandCollections(row, retval, template, columns);
+        final List<List<ResultElement>> retval = new ArrayList<List<ResultElement>>();
+        exportRow.clear();
+        flatten(row, layout, new ExportRowHandler() {
+            @Override
+            public boolean handleRow(ExportRow flatRow) {
+                retval.add(flatRow.toResultElements());
+                return true;
+            }
+        });
         return retval;
     }
 
-    private void expandCollections(List row, List<List<ResultElement>> retval,
-            List<ResultElement> template, List cols) {
-        if (row.size() != cols.size()) {
-            throw new IllegalArgumentException("Column description (size " + cols.size()
-                    + ") does not match input data (size " + row.size() + ")");
-        }
-        List<ResultElement> templateResults = new ArrayList(template);
-        int columnNo = 0;
+    /**
+     * Flattens a row into the ExportRow, passing it to the handler once for each output row.
+     * If any collection in the row has more than one row, then each row of each collection gets
+     * its own output row, otherwise the whole row fits on a single output row.
+     *
+     * @return false if the handler asked to stop
+     */
+    private boolean flatten(List row, Level level, ExportRowHandler handler) {
+        level.checkSize(row);
         boolean multiRow = false;
-        for (Object column : cols) {
-            if (column instanceof Map) {
-                Map<Path, Integer> desc = (Map<Path, Integer>) column;
-                for (Map.Entry<Path, Integer> descEntry : desc.entrySet()) {
-                    templateResults.set(descEntry.getValue().intValue(),
-                            new ResultElement((FastPathObject) row.get(columnNo),
-                                descEntry.getKey(), false));
-                }
+        for (int i = 0; i < level.items.length; i++) {
+            Object item = level.items[i];
+            if (item instanceof int[]) {
+                setCells(row.get(i), (int[]) item);
             } else if (!multiRow) {
                 // Check the collection size, to see if we can get away with a single row.
-                List<List> collection = (List<List>) row.get(columnNo);
+                List collection = (List) row.get(i);
                 if (collection != null) {
                     if (collection.size() > 1) {
                         multiRow = true;
                     } else if (collection.size() == 1) {
-                        multiRow = isCollectionMultiRow(collection.iterator().next(),
-                                (List) column);
+                        multiRow = isCollectionMultiRow((List) collection.get(0), (Level) item);
                     }
                 }
             }
-            columnNo++;
         }
         boolean hasCollections = false;
-        columnNo = 0;
-        for (Object column : cols) {
-            if (column instanceof List) {
-                List<List> collection = (List<List>) row.get(columnNo);
+        for (int i = 0; i < level.items.length; i++) {
+            if (level.items[i] instanceof Level) {
+                Level subLevel = (Level) level.items[i];
+                List collection = (List) row.get(i);
                 if (collection != null) {
-                    for (List subRow : collection) {
+                    for (int j = 0; j < collection.size(); j++) {
+                        List subRow = (List) collection.get(j);
                         if (multiRow) {
                             hasCollections = true;
-                            expandCollections(subRow,
-                                    retval, templateResults, (List) column);
+                            boolean carryOn = flatten(subRow, subLevel, handler);
+                            // the next row of the collection starts without this one's values
+                            subLevel.clear(exportRow);
+                            if (!carryOn) {
+                                return false;
+                            }
                         } else {
-                            expandCollectionsJustOneRow(subRow,
-                                    retval, templateResults, (List) column);
+                            flattenJustOneRow(subRow, subLevel);
                         }
                     }
                 }
             }
-            columnNo++;
         }
         if (!hasCollections) {
-            retval.add(templateResults);
+            return handler.handleRow(exportRow);
         }
+        return true;
     }
 
-    private void expandCollectionsJustOneRow(List row, List<List<ResultElement>> retval,
-            List<ResultElement> template, List cols) {
-        if (row.size() != cols.size()) {
-            throw new IllegalArgumentException("Column description (size " + cols.size()
-                    + ") does not match input data (size " + row.size() + ")");
-        }
-        int columnNo = 0;
-        for (Object column : cols) {
-            if (column instanceof Map) {
-                Map<Path, Integer> desc = (Map<Path, Integer>) column;
-                for (Map.Entry<Path, Integer> descEntry : desc.entrySet()) {
-                    template.set(descEntry.getValue().intValue(),
-                            new ResultElement((FastPathObject) row.get(columnNo),
-                                descEntry.getKey(), false));
-                }
+    private void flattenJustOneRow(List row, Level level) {
+        level.checkSize(row);
+        for (int i = 0; i < level.items.length; i++) {
+            Object item = level.items[i];
+            if (item instanceof int[]) {
+                setCells(row.get(i), (int[]) item);
             } else {
-                List<List> collection = (List<List>) row.get(columnNo);
-                for (List subRow : collection) {
-                    expandCollectionsJustOneRow(subRow, retval, template, (List) column);
+                List collection = (List) row.get(i);
+                if (collection != null) {
+                    for (int j = 0; j < collection.size(); j++) {
+                        flattenJustOneRow((List) collection.get(j), (Level) item);
+                    }
                 }
             }
-            columnNo++;
         }
     }
 
-    private boolean isCollectionMultiRow(List row, List cols) {
-        boolean multiRow = false;
-        int columnNo = 0;
-        for (Object column : cols) {
-            if ((column instanceof List) && (!multiRow)) {
-                List<List> collection = (List<List>) row.get(columnNo);
+    private void setCells(Object value, int[] cells) {
+        for (int cell : cells) {
+            exportRow.set(cell, (FastPathObject) value);
+        }
+    }
+
+    private boolean isCollectionMultiRow(List row, Level level) {
+        for (int i = 0; i < level.items.length; i++) {
+            if (level.items[i] instanceof Level) {
+                List collection = (List) row.get(i);
                 if (collection.size() > 1) {
-                    multiRow = true;
-                } else if (collection.size() == 1) {
-                    multiRow = isCollectionMultiRow(collection.iterator().next(), (List) column);
+                    return true;
+                } else if (collection.size() == 1
+                        && isCollectionMultiRow((List) collection.get(0), (Level) level.items[i])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The column description from convertColumnTypes(), with the maps of paths to columns turned
+     * into arrays, so that flattening a row doesn't need to iterate over maps.
+     */
+    private static final class Level
+    {
+        // for each column of the input, either an int[] of output columns or a Level
+        private final Object[] items;
+        // all the output columns in this level and the levels inside it
+        private final int[] allColumns;
+
+        Level(List cols) {
+            items = new Object[cols.size()];
+            List<Integer> all = new ArrayList<Integer>();
+            for (int i = 0; i < items.length; i++) {
+                Object column = cols.get(i);
+                if (column instanceof Map) {
+                    Collection<Integer> desc = ((Map<Path, Integer>) column).values();
+                    int[] cells = new int[desc.size()];
+                    int cellNo = 0;
+                    for (Integer cell : desc) {
+                        cells[cellNo++] = cell.intValue();
+                    }
+                    all.addAll(desc);
+                    items[i] = cells;
+                } else {
+                    Level subLevel = new Level((List) column);
+                    for (int cell : subLevel.allColumns) {
+                        all.add(new Integer(cell));
+                    }
+                    items[i] = subLevel;
                 }
             }
-            columnNo++;
+            allColumns = new int[all.size()];
+            for (int i = 0; i < allColumns.length; i++) {
+                allColumns[i] = all.get(i).intValue();
+            }
+        }
+
+        void checkSize(List row) {
+            if (row.size() != items.length) {
+                throw new IllegalArgumentException("Column description (size " + items.length
+                        + ") does not match input data (size " + row.size() + ")");
+            }
+        }
+
+        void clear(ExportRow row) {
+            for (int cell : allColumns) {
+                row.clear(cell);
+            }
+        }
+    }
+
+    /**
+     * Passes rows on to another handler, counting them.
+     */
+    private static final class CountingHandler implements ExportRowHandler
+    {
+        private final ExportRowHandler handler;
+        private int count = 0;
+
+        CountingHandler(ExportRowHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public boolean handleRow(ExportRow row) {
+            count++;
+            return handler.handleRow(row);
         }
-        return multiRow;
     }
 }
@@ -0,0 +1,130 @@
+package org.intermine.api.results;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.intermine.model.FastPathObject;
+import org.intermine.pathquery.Path;
+
+/**
+ * One flattened row of export results, as passed to an ExportRowHandler.  The same object is
+ * filled in again for every row, so it must not be kept after the handler returns; use
+ * toResultElements() to get a copy.
+ *
+ * @author InterMine
+ */
+public final class ExportRow
+{
+    private final Path[] paths;
+    private final String[] fieldNames;
+    private final FastPathObject[] objects;
+    private final boolean[] present;
+
+    /**
+     * Constructor.
+     *
+     * @param paths the paths of the view, one for each column
+     */
+    ExportRow(List<Path> paths) {
+        this.paths = paths.toArray(new Path[paths.size()]);
+        fieldNames = new String[this.paths.length];
+        for (int i = 0; i < fieldNames.length; i++) {
+            fieldNames[i] = this.paths[i].getEndFieldDescriptor().getName();
+        }
+        objects = new FastPathObject[this.paths.length];
+        present = new boolean[this.paths.length];
+    }
+
+    /**
+     * @return the number of columns
+     */
+    public int size() {
+        return paths.length;
+    }
+
+    /**
+     * Returns true if a column has a value in this row.  A column is empty when it is in an outer
+     * joined collection that has no members, or that is shown on another row.  A column that is
+     * present may still have a null object, for an outer joined reference that is null.
+     *
+     * @param column the index of the column
+     * @return a boolean
+     */
+    public boolean isPresent(int column) {
+        return present[column];
+    }
+
+    /**
+     * @param column the index of the column
+     * @return the path of the column
+     */
+    public Path getPath(int column) {
+        return paths[column];
+    }
+
+    /**
+     * @param column the index of the column
+     * @return the object whose field is in the column, or null
+     */
+    public FastPathObject getObject(int column) {
+        return objects[column];
+    }
+
+    /**
+     * Returns the value of a column, that is the value of the last field of its path in its
+     * object.
+     *
+     * @param column the index of the column
+     * @return the value, or null
+     */
+    public Object getValue(int column) {
+        FastPathObject object = objects[column];
+        if (object == null) {
+            return null;
+        }
+        try {
+            return object.getFieldValue(fieldNames[column]);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Copy this row into the form returned by ExportResultsIterator.next().
+     *
+     * @return a new List of ResultElements, with nulls for the columns that are not present
+     */
+    public List<ResultElement> toResultElements() {
+        List<ResultElement> retval = new ArrayList<ResultElement>(paths.length);
+        for (int i = 0; i < paths.length; i++) {
+            retval.add(present[i] ? new ResultElement(objects[i], paths[i], false) : null);
+        }
+        return retval;
+    }
+
+    void set(int column, FastPathObject object) {
+        objects[column] = object;
+        present[column] = true;
+    }
+
+    void clear(int column) {
+        objects[column] = null;
+        present[column] = false;
+    }
+
+    void clear() {
+        Arrays.fill(objects, null);
+        Arrays.fill(present, false);
+    }
+}
@@ -0,0 +1,28 @@
+package org.intermine.api.results;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * Receives the flattened rows of export results from ExportResultsIterator.forEachRow(), without
+ * a List of ResultElements being made for each row.
+ *
+ * @author InterMine
+ */
+public interface ExportRowHandler
+{
+    /**
+     * Handle one row.  The row object is reused for the next row, so it must not be kept.
+     *
+     * @param row the row
+     * @return true to carry on, or false to stop after this row
+     */
+    boolean handleRow(ExportRow row);
+}
@@ -11,11 +11,23 @@ package org.intermine.api.template;
  */
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import net.sourceforge.iharder.Base64;
 
@@ -35,6 +47,7 @@ import org.intermine.objectstore.query.ResultsRow;
 import org.intermine.pathquery.Path;
 import org.intermine.pathquery.PathException;
 import org.intermine.template.TemplateQuery;
+import org.intermine.util.DaemonThreadFactory;
 
 /**
  * This class manages summaries of possible values for editable constraints for template queries.
@@ -43,6 +56,11 @@ import org.intermine.template.TemplateQuery;
  */
 public class TemplateSummariser
 {
+    /**
+     * The number of summary queries run in parallel when no other number is configured.
+     */
+    public static final int DEFAULT_THREADS = 4;
+
     private static final Logger LOG = Logger.getLogger(TemplateSummariser.class);
     protected ObjectStore os;
     protected ObjectStoreWriter osw;
@@ -69,38 +87,219 @@ public class TemplateSummariser
      * @throws ObjectStoreException if something goes wrong
      */
     public void summarise(ApiTemplate templateQuery) throws ObjectStoreException {
-        HashMap<String, List<Object>> templatePossibleValues = possibleValues.get(templateQuery);
-        if (templatePossibleValues == null) {
-            templatePossibleValues = new HashMap<String, List<Object>>();
-            possibleValues.put(templateQuery, templatePossibleValues);
+        summarise(Collections.singletonList(templateQuery), 1);
+    }
+
+    /**
+     * Populates the possibleValues data for a set of templates from the os.  The summary query of
+     * each editable path is only run once, however many of the templates need it, and the queries
+     * are run in parallel.  The summary of each template is written to the user profile database
+     * as soon as all its queries have finished.  If a query fails, the templates that need it are
+     * not summarised, the rest are, and the first exception is thrown at the end.
+     *
+     * @param templates the templates to summarise
+     * @param threadCount the number of queries to run in parallel
+     * @throws ObjectStoreException if something goes wrong
+     */
+    public void summarise(Collection<ApiTemplate> templates, int threadCount)
+        throws ObjectStoreException {
+        long start = System.currentTimeMillis();
+        // gather the summary queries of all the templates, sharing identical ones
+        Map<String, Query> queries = new LinkedHashMap<String, Query>();
+        Map<String, List<ApiTemplate>> templatesByQuery = new HashMap<String, List<ApiTemplate>>();
+        Map<ApiTemplate, Map<String, String>> queriesByTemplate =
+            new IdentityHashMap<ApiTemplate, Map<String, String>>();
+        int pathCount = 0;
+        for (ApiTemplate templateQuery : templates) {
+            Map<String, String> nodeQueries = new LinkedHashMap<String, String>();
+            for (String node : templateQuery.getEditablePaths()) {
+                Query q = TemplatePrecomputeHelper.getPrecomputeQuery(templateQuery, null, node);
+                String key = q.toString();
+                if (!queries.containsKey(key)) {
+                    queries.put(key, q);
+                    templatesByQuery.put(key, new ArrayList<ApiTemplate>());
+                }
+                if (!nodeQueries.containsValue(key)) {
+                    templatesByQuery.get(key).add(templateQuery);
+                }
+                nodeQueries.put(node, key);
+                pathCount++;
+            }
+            queriesByTemplate.put(templateQuery, nodeQueries);
         }
-        for (String node : templateQuery.getEditablePaths()) {
+        LOG.info("Summarising " + queriesByTemplate.size() + " templates with " + pathCount
+                + " editable paths by running " + queries.size() + " queries");
+
+        // templates without editable paths have nothing to wait for
+        Map<ApiTemplate, Integer> remaining = new IdentityHashMap<ApiTemplate, Integer>();
+        for (Map.Entry<ApiTemplate, Map<String, String>> entry : queriesByTemplate.entrySet()) {
+            int count = new HashSet<String>(entry.getValue().values()).size();
+            if (count == 0) {
+                store(entry.getKey(), queriesByTemplate.get(entry.getKey()),
+                        new HashMap<String, List<ResultsRow<Object>>>());
+            } else {
+                remaining.put(entry.getKey(), new Integer(count));
+            }
+        }
+
+        Map<String, List<ResultsRow<Object>>> results =
+            new HashMap<String, List<ResultsRow<Object>>>();
+        Set<ApiTemplate> failed = Collections.newSetFromMap(
+                new IdentityHashMap<ApiTemplate, Boolean>());
+        ObjectStoreException firstException = null;
+        ExecutorService executor = null;
+        CompletionService<SummaryQuery> completion;
+        if (threadCount > 1 && queries.size() > 1) {
+            executor = Executors.newFixedThreadPool(threadCount,
+                    new DaemonThreadFactory("TemplateSummariser"));
+            completion = new ExecutorCompletionService<SummaryQuery>(executor);
+        } else {
+            completion = new ExecutorCompletionService<SummaryQuery>(new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    command.run();
+                }
+            });
+        }
+        try {
+            for (Map.Entry<String, Query> query : queries.entrySet()) {
+                completion.submit(new SummaryQuery(query.getKey(), query.getValue()));
+            }
+            for (int done = 0; done < queries.size(); done++) {
+                SummaryQuery summaryQuery;
+                try {
+                    summaryQuery = completion.take().get();
+                } catch (InterruptedException e) {
+                    throw new ObjectStoreException("Interrupted while summarising templates", e);
+                } catch (ExecutionException e) {
+                    throw new ObjectStoreException("Error while summarising templates",
+                            e.getCause());
+                }
+                String key = summaryQuery.getKey();
+                List<ApiTemplate> waiting = templatesByQuery.get(key);
+                if (summaryQuery.getException() != null) {
+                    LOG.error("Failed to summarise templates " + getNames(waiting)
+                            + " with query: " + key, summaryQuery.getException());
+                    if (firstException == null) {
+                        firstException = summaryQuery.getException();
+                    }
+                    failed.addAll(waiting);
+                    continue;
+                }
+                results.put(key, summaryQuery.getResults());
+                for (ApiTemplate templateQuery : waiting) {
+                    int left = remaining.get(templateQuery).intValue() - 1;
+                    remaining.put(templateQuery, new Integer(left));
+                    if (left == 0 && !failed.contains(templateQuery)) {
+                        try {
+                            store(templateQuery, queriesByTemplate.get(templateQuery), results);
+                        } catch (ObjectStoreException e) {
+                            LOG.error("Failed to store summary of " + templateQuery.getName(), e);
+                            if (firstException == null) {
+                                firstException = e;
+                            }
+                            failed.add(templateQuery);
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        LOG.info("Summarised " + (queriesByTemplate.size() - failed.size()) + " of "
+                + queriesByTemplate.size() + " templates in "
+                + (System.currentTimeMillis() - start) + " ms");
+        if (firstException != null) {
+            throw firstException;
+        }
+    }
+
+    private static String getNames(List<ApiTemplate> templates) {
+        StringBuilder names = new StringBuilder();
+        for (ApiTemplate templateQuery : templates) {
+            if (names.length() > 0) {
+                names.append(", ");
+            }
+            names.append(templateQuery.getName());
+        }
+        return names.toString();
+    }
+
+    /**
+     * Runs one summary query, keeping the results or the exception.
+     */
+    private class SummaryQuery implements Callable<SummaryQuery>
+    {
+        private final String key;
+        private final Query query;
+        private List<ResultsRow<Object>> results;
+        private ObjectStoreException exception;
+
+        SummaryQuery(String key, Query query) {
+            this.key = key;
+            this.query = query;
+        }
+
+        @Override
+        public SummaryQuery call() {
+            LOG.info("Summarising templates by running query: " + query);
+            try {
+                results = os.execute(query, 0, maxSummaryValues, true, false,
+                        ObjectStore.SEQUENCE_IGNORE);
+            } catch (ObjectStoreException e) {
+                exception = e;
+            }
+            return this;
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        List<ResultsRow<Object>> getResults() {
+            return results;
+        }
+
+        ObjectStoreException getException() {
+            return exception;
+        }
+    }
+
+    /**
+     * Makes the summary of a template from the results of its queries, and writes it to the user
+     * profile database.
+     */
+    private void store(ApiTemplate templateQuery, Map<String, String> nodeQueries,
+            Map<String, List<ResultsRow<Object>>> results) throws ObjectStoreException {
+        HashMap<String, List<Object>> templatePossibleValues = new HashMap<String, List<Object>>();
+        for (Map.Entry<String, String> nodeQuery : nodeQueries.entrySet()) {
+            String node = nodeQuery.getKey();
             Path path;
             try {
                 path = templateQuery.makePath(node);
             } catch (PathException e) {
                 throw new ObjectStoreException(e);
             }
-            Query q = TemplatePrecomputeHelper.getPrecomputeQuery(templateQuery, null, node);
-            LOG.info("Summarising template " + templateQuery.getName() + " by running query: " + q);
-            List<ResultsRow<Object>> results = os.execute(q, 0, maxSummaryValues, true, false,
-                    ObjectStore.SEQUENCE_IGNORE);
-            if (results.size() < maxSummaryValues) {
-                if (path.endIsAttribute() || results.isEmpty()) {
+            List<ResultsRow<Object>> nodeResults = results.get(nodeQuery.getValue());
+            if (nodeResults.size() < maxSummaryValues) {
+                if (path.endIsAttribute() || nodeResults.isEmpty()) {
                     List<Object> values = new ArrayList<Object>();
-                    for (ResultsRow<Object> row : results) {
+                    for (ResultsRow<Object> row : nodeResults) {
                         values.add(row.get(0));
                     }
                     templatePossibleValues.put(node, values);
                 } else {
                     LOG.warn("Editable node " + node + " in template " + templateQuery.getName()
                             + " cannot be summarised as it is a LOOKUP "
-                            + "constraint, although it has only " + results.size()
+                            + "constraint, although it has only " + nodeResults.size()
                             + " possible values. Consider changing the node that the constraint is "
                             + "attached to");
                 }
             }
         }
+        possibleValues.put(templateQuery, templatePossibleValues);
         // Now write the summary to the user profile database.
         try {
             osw.beginTransaction();
@@ -0,0 +1,75 @@
+package org.intermine.api.bag;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import junit.framework.TestCase;
+
+import org.intermine.objectstore.dummy.ObjectStoreDummyImpl;
+import org.intermine.objectstore.query.ObjectStoreBag;
+import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.util.IntBitmap;
+
+public class BagContentsCacheTest extends TestCase
+{
+    private ObjectStoreDummyImpl os;
+    private BagContentsCache cache;
+    private ObjectStoreBag osb = new ObjectStoreBag(42);
+    private int rows = 0;
+
+    public BagContentsCacheTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() {
+        os = new ObjectStoreDummyImpl();
+        cache = BagContentsCache.getInstance(os);
+        addIds(11, 12, 13);
+    }
+
+    public void testCached() {
+        IntBitmap contents = cache.getContents(osb);
+        assertEquals(3, contents.size());
+        assertTrue(contents.contains(12));
+        int calls = os.getExecuteCalls();
+        // the bag has the same number of rows in the database, so the cached ids are used
+        assertSame(contents, cache.getContents(osb));
+        assertEquals(calls, os.getExecuteCalls());
+    }
+
+    public void testChangedElsewhere() {
+        IntBitmap contents = cache.getContents(osb);
+        // rows added to the bag without going through InterMineBag, e.g. by another webapp
+        addIds(14);
+        IntBitmap changed = cache.getContents(osb);
+        assertNotSame(contents, changed);
+        assertEquals(4, changed.size());
+        assertTrue(changed.contains(14));
+        assertSame(changed, cache.getContents(osb));
+    }
+
+    public void testInvalidate() {
+        IntBitmap contents = cache.getContents(osb);
+        cache.invalidate(osb);
+        IntBitmap read = cache.getContents(osb);
+        assertNotSame(contents, read);
+        assertEquals(3, read.size());
+    }
+
+    private void addIds(int... ids) {
+        for (int id : ids) {
+            ResultsRow<Object> row = new ResultsRow<Object>();
+            row.add(new Integer(id));
+            os.addRow(row);
+        }
+        rows += ids.length;
+        os.setResultsSize(rows);
+    }
+}
@@ -0,0 +1,76 @@
+package org.intermine.api.bag;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+public class BagQueryIndexTest extends TestCase
+{
+    private BagQueryIndex index;
+
+    public BagQueryIndexTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() {
+        index = new BagQueryIndex();
+        index.add("EVE", 1);
+        index.add("eve", 2);
+        index.add("CG2328", 1);
+        index.add("even-skipped", 3);
+        index.add("Eveless", 4);
+        index.add("ftz", 5);
+        index.add("FBgn0000606", 1);
+        index.freeze();
+    }
+
+    public void testSize() {
+        assertEquals(7, index.size());
+    }
+
+    public void testCaseInsensitive() {
+        assertEquals("[1, 2]", index.getIds("Eve", false).toString());
+        assertEquals("[1]", index.getIds("cg2328", false).toString());
+        assertTrue(index.getIds("nothing", false).isEmpty());
+    }
+
+    public void testCaseSensitive() {
+        assertEquals("[1]", index.getIds("EVE", true).toString());
+        assertEquals("[2]", index.getIds("eve", true).toString());
+        assertTrue(index.getIds("Eve", true).isEmpty());
+    }
+
+    public void testWildcards() {
+        Map<String, Set<Integer>> matches = index.matchWildcards(Arrays.asList("EVE*", "*SKIP*",
+                    "*606", "f*z", "zzz*"));
+        assertEquals("[1, 2, 3, 4]", new TreeSet<Integer>(matches.get("EVE*")).toString());
+        assertEquals("[3]", matches.get("*SKIP*").toString());
+        assertEquals("[1]", matches.get("*606").toString());
+        assertEquals("[5]", matches.get("f*z").toString());
+        assertFalse(matches.containsKey("zzz*"));
+    }
+
+    public void testWildcardMatches() {
+        assertTrue(BagQueryIndex.wildcardMatches("a*c", "abc"));
+        assertTrue(BagQueryIndex.wildcardMatches("a*c", "ac"));
+        assertTrue(BagQueryIndex.wildcardMatches("*", ""));
+        assertTrue(BagQueryIndex.wildcardMatches("a**b*", "axxbyy"));
+        assertTrue(BagQueryIndex.wildcardMatches("*ab*ab", "abxabab"));
+        assertFalse(BagQueryIndex.wildcardMatches("a*c", "abd"));
+        assertFalse(BagQueryIndex.wildcardMatches("a.c", "abc"));
+        assertFalse(BagQueryIndex.wildcardMatches("abc", "ab"));
+    }
+}
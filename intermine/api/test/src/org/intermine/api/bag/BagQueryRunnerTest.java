@@ -321,4 +321,25 @@ public class BagQueryRunnerTest extends StoreDataTestCase {
         assertTrue("Should have issues", !res.getIssues().isEmpty());
         assertTrue("Should have no unresolved identifiers", res.getUnresolved().isEmpty());
     }
+
+    // running the queries at once should give the same result as running them in turn, and
+    // with matchOnFirst they are always run in turn
+    public void testConcurrentStages() throws Exception {
+        List input = Arrays.asList(new Object[] {"EmployeeA1", "EmployeeB1", "EmployeeA*",
+            "unknown"});
+        for (boolean matchOnFirst : new boolean[] {true, false}) {
+            TestingBagQueryRunner serial = getRunner(matchOnFirst);
+            serial.setThreads(1);
+            TestingBagQueryRunner concurrent = getRunner(matchOnFirst);
+            concurrent.setThreads(4);
+            concurrent.setTimeout(60000);
+            BagQueryResult expected = serial.searchForBag("Employee", input, null, true);
+            BagQueryResult res = concurrent.searchForBag("Employee", input, null, true);
+            assertEquals(expected.getMatches(), res.getMatches());
+            assertEquals(expected.getIssues(), res.getIssues());
+            assertEquals(expected.getUnresolvedIdentifiers(), res.getUnresolvedIdentifiers());
+            assertEquals(expected.getStageTimings().keySet(), res.getStageTimings().keySet());
+            assertFalse(res.getStageTimings().isEmpty());
+        }
+    }
 }
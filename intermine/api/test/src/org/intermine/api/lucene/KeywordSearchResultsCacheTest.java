@@ -0,0 +1,65 @@
+package org.intermine.api.lucene;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.intermine.api.lucene.KeywordSearchResultsCache.CachedResults;
+
+import com.browseengine.bobo.api.BrowseHit;
+
+public class KeywordSearchResultsCacheTest extends TestCase
+{
+    public KeywordSearchResultsCacheTest(String arg) {
+        super(arg);
+    }
+
+    public void testKey() {
+        Map<String, String> facets = new HashMap<String, String>();
+        facets.put("Category", "Gene");
+        facets.put("organism.shortName", "D. melanogaster");
+        Map<String, String> sameFacets = new HashMap<String, String>();
+        sameFacets.put("organism.shortName", "D. melanogaster");
+        sameFacets.put("Category", "Gene");
+        Map<String, String> noFacets = Collections.emptyMap();
+
+        assertEquals(KeywordSearchResultsCache.getKey("eve  ftz", facets, 0),
+                KeywordSearchResultsCache.getKey(" eve ftz\t", sameFacets, 0));
+        assertFalse(KeywordSearchResultsCache.getKey("eve", facets, 0)
+                .equals(KeywordSearchResultsCache.getKey("eve", noFacets, 0)));
+        assertFalse(KeywordSearchResultsCache.getKey("eve", facets, 0)
+                .equals(KeywordSearchResultsCache.getKey("eve", facets, 100)));
+    }
+
+    public void testEviction() {
+        KeywordSearchResultsCache cache = new KeywordSearchResultsCache(2);
+        Set<KeywordSearchFacet> facets = Collections.emptySet();
+        CachedResults a = new CachedResults(new BrowseHit[0], facets, 1);
+        CachedResults b = new CachedResults(new BrowseHit[0], facets, 2);
+        CachedResults c = new CachedResults(new BrowseHit[0], facets, 3);
+        cache.put("a", a);
+        cache.put("b", b);
+        assertSame(a, cache.get("a"));
+        // b is now the least recently used
+        cache.put("c", c);
+        assertEquals(2, cache.size());
+        assertSame(a, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertSame(c, cache.get("c"));
+        assertEquals("KeywordSearchResultsCache[2/2 searches, 3 hits, 1 misses]",
+                cache.toString());
+    }
+}
@@ -0,0 +1,87 @@
+package org.intermine.api.lucene;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.Test;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.FSDirectory;
+import org.intermine.api.config.ClassKeyHelper;
+import org.intermine.metadata.FieldDescriptor;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreFactory;
+import org.intermine.objectstore.StoreDataTestCase;
+
+/**
+ * Tests for building the KeywordSearch index.
+ */
+public class KeywordSearchTest extends StoreDataTestCase
+{
+    private ObjectStore os;
+    private Map<String, List<FieldDescriptor>> classKeys;
+
+    public KeywordSearchTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        os = ObjectStoreFactory.getObjectStore("os.unittest");
+        Properties props = new Properties();
+        props.load(getClass().getClassLoader().getResourceAsStream("class_keys.properties"));
+        classKeys = ClassKeyHelper.readKeys(os.getModel(), props);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        KeywordSearch.deleteIndexDirectory();
+        super.tearDown();
+    }
+
+    public void executeTest(String type) {
+    }
+
+    @Override
+    public void testQueries() throws Throwable {
+    }
+
+    public static void oneTimeSetUp() throws Exception {
+        StoreDataTestCase.oneTimeSetUp();
+    }
+
+    public static Test suite() {
+        return buildSuite(KeywordSearchTest.class);
+    }
+
+    public void testPartitionedIndex() throws Exception {
+        int single = countDocuments(KeywordSearch.createIndex(os, classKeys, 1));
+        assertTrue(single > 0);
+        KeywordSearch.deleteIndexDirectory();
+
+        // the partitions are merged into one index holding the same documents
+        assertEquals(single, countDocuments(KeywordSearch.createIndex(os, classKeys, 3)));
+    }
+
+    private int countDocuments(File indexDirectory) throws Exception {
+        IndexReader reader = IndexReader.open(FSDirectory.open(indexDirectory), true);
+        try {
+            return reader.numDocs();
+        } finally {
+            reader.close();
+        }
+    }
+}
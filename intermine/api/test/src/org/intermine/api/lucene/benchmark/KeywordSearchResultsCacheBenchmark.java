@@ -0,0 +1,129 @@
+package org.intermine.api.lucene.benchmark;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.intermine.api.lucene.KeywordSearch;
+import org.intermine.api.lucene.KeywordSearchFacet;
+import org.intermine.api.lucene.KeywordSearchResultsCache;
+import org.intermine.api.lucene.KeywordSearchResultsCache.CachedResults;
+import org.junit.Test;
+
+import com.browseengine.bobo.api.BoboBrowser;
+import com.browseengine.bobo.api.BoboIndexReader;
+import com.browseengine.bobo.api.BrowseRequest;
+import com.browseengine.bobo.api.BrowseResult;
+import com.browseengine.bobo.api.FacetSpec;
+import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.facets.impl.SimpleFacetHandler;
+
+/**
+ * Measures the throughput of repeated popular searches over a small faceted index, with and
+ * without the KeywordSearchResultsCache.  Search terms are chosen with a skewed distribution, as
+ * they are on a real mine.  This is not part of the unit tests; run it on its own.
+ */
+public class KeywordSearchResultsCacheBenchmark
+{
+    private static final String[] CATEGORIES = {"Gene", "Protein", "Publication", "Organism"};
+
+    @Test
+    public void benchmarkPopularSearches() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory, new WhitespaceAnalyzer(), true,
+                IndexWriter.MaxFieldLength.UNLIMITED);
+        Random random = new Random(17);
+        for (int i = 0; i < 50000; i++) {
+            Document doc = new Document();
+            doc.add(new Field("id", Integer.toString(i), Field.Store.YES,
+                    Field.Index.NOT_ANALYZED_NO_NORMS));
+            doc.add(new Field("Category", CATEGORIES[i % CATEGORIES.length], Field.Store.NO,
+                    Field.Index.NOT_ANALYZED_NO_NORMS));
+            doc.add(new Field("symbol", "term" + random.nextInt(200) + " term"
+                    + random.nextInt(200), Field.Store.NO, Field.Index.ANALYZED));
+            writer.addDocument(doc);
+        }
+        writer.optimize();
+        writer.close();
+        Set<FacetHandler<?>> handlers = new HashSet<FacetHandler<?>>();
+        handlers.add(new SimpleFacetHandler("Category"));
+        BoboIndexReader reader = BoboIndexReader.getInstance(IndexReader.open(directory, true),
+                handlers);
+
+        int searches = 2000;
+        String[] terms = new String[searches];
+        for (int i = 0; i < searches; i++) {
+            // roughly zipfian: a few terms make up most of the searches
+            terms[i] = "term" + (int) Math.floor(Math.pow(200, random.nextDouble()) - 1);
+        }
+        Map<String, String> noFacets = Collections.emptyMap();
+
+        long start = System.nanoTime();
+        long uncachedHits = 0;
+        for (String term : terms) {
+            uncachedHits += browse(reader, term).getTotalHits();
+        }
+        long uncachedTime = System.nanoTime() - start;
+
+        KeywordSearchResultsCache cache = new KeywordSearchResultsCache(100);
+        start = System.nanoTime();
+        long cachedHits = 0;
+        for (String term : terms) {
+            String key = KeywordSearchResultsCache.getKey(term, noFacets, 0);
+            CachedResults results = cache.get(key);
+            if (results == null) {
+                results = browse(reader, term);
+                cache.put(key, results);
+            }
+            cachedHits += results.getTotalHits();
+        }
+        long cachedTime = System.nanoTime() - start;
+        reader.close();
+
+        System.out.printf("Keyword search: %d searches, uncached %.0f/s, cached %.0f/s, %s\n",
+                searches, searches / (uncachedTime / 1e9), searches / (cachedTime / 1e9), cache);
+        assertEquals(uncachedHits, cachedHits);
+    }
+
+    private static CachedResults browse(BoboIndexReader reader, String term) throws Exception {
+        BrowseRequest request = new BrowseRequest();
+        request.setQuery(new TermQuery(new Term("symbol", term)));
+        request.setFetchStoredFields(true);
+        request.setCount(KeywordSearch.PER_PAGE);
+        FacetSpec spec = new FacetSpec();
+        spec.setOrderBy(FacetSpec.FacetSortSpec.OrderHitsDesc);
+        request.setFacetSpec("Category", spec);
+        BoboBrowser browser = new BoboBrowser(reader);
+        try {
+            BrowseResult result = browser.browse(request);
+            CachedResults results = new CachedResults(result.getHits(),
+                    Collections.<KeywordSearchFacet>emptySet(), result.getNumHits());
+            result.close();
+            return results;
+        } finally {
+            browser.close();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.intermine.api.query;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.Connection;
+
+import org.intermine.api.InterMineAPITestCase;
+import org.intermine.objectstore.intermine.ObjectStoreWriterInterMineImpl;
+import org.intermine.pathquery.PathQuery;
+
+public class DatabaseQueryStoreTest extends InterMineAPITestCase
+{
+    public DatabaseQueryStoreTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        ObjectStoreWriterInterMineImpl writer = (ObjectStoreWriterInterMineImpl) uosw;
+        Connection con = writer.getConnection();
+        try {
+            DatabaseQueryStore.createTable(con);
+        } finally {
+            writer.releaseConnection(con);
+        }
+    }
+
+    private DatabaseQueryStore makeStore(int maxSize) {
+        return new DatabaseQueryStore((ObjectStoreWriterInterMineImpl) uosw, maxSize);
+    }
+
+    private String makeQuery(String view) {
+        PathQuery pq = new PathQuery(os.getModel());
+        pq.addView(view);
+        return pq.toXml(PathQuery.USERPROFILE_VERSION);
+    }
+
+    public void testPutAndGet() throws Exception {
+        DatabaseQueryStore store = makeStore(10);
+        String xml = makeQuery("Employee.name");
+        String key = store.putQuery(xml);
+        assertEquals(DatabaseQueryStore.getKey(xml), key);
+        assertEquals(40, key.length());
+        assertEquals(key, store.putQuery(xml));
+        assertEquals(xml, store.getQuery(key));
+        assertFalse(key.equals(store.putQuery(makeQuery("Employee.age"))));
+    }
+
+    public void testSharedBetweenStores() throws Exception {
+        String xml = makeQuery("Department.name");
+        String key = makeStore(10).putQuery(xml);
+        // as if on another webapp, or after a restart
+        DatabaseQueryStore other = makeStore(10);
+        assertEquals(0, other.getCacheSize());
+        assertEquals(xml, other.getQuery(key));
+        assertEquals(1, other.getCacheSize());
+    }
+
+    public void testEviction() throws Exception {
+        DatabaseQueryStore store = makeStore(4);
+        String[] views = {"Employee.name", "Employee.age", "Employee.fullTime",
+            "Department.name", "Company.name", "Company.vatNumber"};
+        String firstKey = null;
+        for (String view : views) {
+            String key = store.putQuery(makeQuery(view));
+            if (firstKey == null) {
+                firstKey = key;
+            }
+            assertTrue(store.getCacheSize() <= 4);
+        }
+        // dropped from memory, but still in the database
+        assertEquals(makeQuery("Employee.name"), store.getQuery(firstKey));
+    }
+
+    public void testBadKeys() throws Exception {
+        DatabaseQueryStore store = makeStore(10);
+        try {
+            store.getQuery("not a key");
+            fail("Expected KeyFormatException");
+        } catch (KeyFormatException e) {
+            // expected
+        }
+        try {
+            store.getQuery("1420070400000");
+            fail("Expected NotPresentException");
+        } catch (NotPresentException e) {
+            // expected
+        }
+        try {
+            store.getQuery(DatabaseQueryStore.getKey("never stored"));
+            fail("Expected NotPresentException");
+        } catch (NotPresentException e) {
+            // expected
+        }
+        try {
+            store.putQuery("<query");
+            fail("Expected BadQueryException");
+        } catch (BadQueryException e) {
+            // expected
+        }
+    }
+
+    public void testPurge() throws Exception {
+        DatabaseQueryStore store = makeStore(10);
+        String key = store.putQuery(makeQuery("Employee.name"));
+        // recently used, so kept
+        store.purge();
+        assertEquals(makeQuery("Employee.name"), makeStore(10).getQuery(key));
+    }
+}
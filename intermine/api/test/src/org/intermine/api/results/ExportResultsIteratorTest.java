@@ -464,4 +464,175 @@ public class ExportResultsIteratorTest extends TestCase
 
         assertEquals(expected, got);
     }
+
+    public void testForEachRow() throws Exception {
+        PathQuery pq = makeCompanyQuery();
+        List<Object> rows = makeCompanyRows(20, 3, 2);
+
+        List<List<ResultElement>> expected = new ArrayList<List<ResultElement>>();
+        for (List<ResultElement> row : new IteratorIterable<List<ResultElement>>(
+                    makeIterator(pq, rows))) {
+            expected.add(row);
+        }
+        // every department has two employees, so each company has 6 rows
+        assertEquals(120, expected.size());
+
+        final List<List<ResultElement>> got = new ArrayList<List<ResultElement>>();
+        int count = makeIterator(pq, rows).forEachRow(new ExportRowHandler() {
+            public boolean handleRow(ExportRow row) {
+                got.add(row.toResultElements());
+                return true;
+            }
+        });
+        assertEquals(120, count);
+        assertEquals(expected, got);
+
+        // values read from the row are those of the ResultElements
+        final List<List<Object>> values = new ArrayList<List<Object>>();
+        makeIterator(pq, rows).forEachRow(new ExportRowHandler() {
+            public boolean handleRow(ExportRow row) {
+                List<Object> rowValues = new ArrayList<Object>();
+                for (int i = 0; i < row.size(); i++) {
+                    rowValues.add(row.isPresent(i) ? row.getValue(i) : "(absent)");
+                }
+                values.add(rowValues);
+                return true;
+            }
+        });
+        assertEquals(Arrays.asList("Company0", new Integer(0), "Department0_0", "Employee0_0_0"),
+                values.get(0));
+        assertEquals(Arrays.asList("Company19", new Integer(19), "Department19_2",
+                    "Employee19_2_1"), values.get(119));
+    }
+
+    public void testForEachRowStop() throws Exception {
+        PathQuery pq = makeCompanyQuery();
+        List<Object> rows = makeCompanyRows(10, 2, 2);
+        final int[] seen = new int[1];
+        int count = makeIterator(pq, rows).forEachRow(new ExportRowHandler() {
+            public boolean handleRow(ExportRow row) {
+                seen[0]++;
+                return seen[0] < 7;
+            }
+        });
+        assertEquals(7, count);
+        assertEquals(7, seen[0]);
+
+        ExportResultsIterator iter = makeIterator(pq, rows);
+        iter.next();
+        try {
+            iter.forEachRow(new ExportRowHandler() {
+                public boolean handleRow(ExportRow row) {
+                    return true;
+                }
+            });
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testForEachRowAfterHasNext() throws Exception {
+        PathQuery pq = makeCompanyQuery();
+        List<Object> rows = makeCompanyRows(20, 3, 2);
+        List<List<ResultElement>> expected = new ArrayList<List<ResultElement>>();
+        for (List<ResultElement> row : new IteratorIterable<List<ResultElement>>(
+                    makeIterator(pq, rows))) {
+            expected.add(row);
+        }
+
+        final List<List<ResultElement>> got = new ArrayList<List<ResultElement>>();
+        ExportRowHandler handler = new ExportRowHandler() {
+            public boolean handleRow(ExportRow row) {
+                got.add(row.toResultElements());
+                return true;
+            }
+        };
+        // the row decoded by hasNext() is not lost
+        ExportResultsIterator iter = makeIterator(pq, rows);
+        assertTrue(iter.hasNext());
+        assertTrue(iter.canForEachRow());
+        assertEquals(120, iter.forEachRow(handler));
+        assertEquals(expected, got);
+        assertFalse(iter.hasNext());
+
+        // nor is anything after the rows of the first company have all been read with next()
+        got.clear();
+        iter = makeIterator(pq, rows);
+        for (int i = 0; i < 6; i++) {
+            assertTrue(iter.canForEachRow() == (i == 0));
+            iter.next();
+        }
+        assertTrue(iter.canForEachRow());
+        assertTrue(iter.hasNext());
+        assertEquals(114, iter.forEachRow(handler));
+        assertEquals(expected.subList(6, 120), got);
+    }
+
+    /**
+     * @return a query for companies with their departments and employees, outer joined
+     */
+    public static PathQuery makeCompanyQuery() {
+        PathQuery pq = new PathQuery(Model.getInstanceByName("testmodel"));
+        pq.addViews("Company.name", "Company.vatNumber", "Company.departments.name",
+                "Company.departments.employees.name");
+        pq.setOuterJoinStatus("Company.departments", OuterJoinStatus.OUTER);
+        pq.setOuterJoinStatus("Company.departments.employees", OuterJoinStatus.OUTER);
+        return pq;
+    }
+
+    /**
+     * @param pq the query, as made by makeCompanyQuery()
+     * @param rows the results, as made by makeCompanyRows()
+     * @return an iterator over the results
+     * @throws Exception if the query cannot be made
+     */
+    public static ExportResultsIterator makeIterator(PathQuery pq, List<Object> rows)
+        throws Exception {
+        Map pathToQueryNode = new HashMap();
+        Query q = MainHelper.makeQuery(pq, new HashMap(), pathToQueryNode, null, null);
+        return new ExportResultsIterator(pq, q, new DummyResults(q, rows), pathToQueryNode);
+    }
+
+    /**
+     * @param companies the number of companies
+     * @param departments the number of departments in each company
+     * @param employees the number of employees in each department
+     * @return results for the query made by makeCompanyQuery()
+     */
+    public static List<Object> makeCompanyRows(int companies, int departments, int employees) {
+        List<Object> rows = new ArrayList<Object>();
+        int id = 1;
+        for (int c = 0; c < companies; c++) {
+            Company company = (Company) DynamicUtil.createObject(
+                    Collections.singleton(Company.class));
+            company.setName("Company" + c);
+            company.setVatNumber(c);
+            company.setId(new Integer(id++));
+            ResultsRow row = new ResultsRow();
+            row.add(company);
+            List sub1 = new ArrayList();
+            for (int d = 0; d < departments; d++) {
+                Department department = new Department();
+                department.setName("Department" + c + "_" + d);
+                department.setId(new Integer(id++));
+                ResultsRow subRow1 = new ResultsRow();
+                subRow1.add(department);
+                List sub2 = new ArrayList();
+                for (int e = 0; e < employees; e++) {
+                    Employee employee = new Employee();
+                    employee.setName("Employee" + c + "_" + d + "_" + e);
+                    employee.setId(new Integer(id++));
+                    ResultsRow subRow2 = new ResultsRow();
+                    subRow2.add(employee);
+                    sub2.add(subRow2);
+                }
+                subRow1.add(sub2);
+                sub1.add(subRow1);
+            }
+            row.add(sub1);
+            rows.add(row);
+        }
+        return rows;
+    }
 }
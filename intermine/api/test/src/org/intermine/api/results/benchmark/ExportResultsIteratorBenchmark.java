@@ -0,0 +1,96 @@
+package org.intermine.api.results.benchmark;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.intermine.api.results.ExportResultsIterator;
+import org.intermine.api.results.ExportResultsIteratorTest;
+import org.intermine.api.results.ExportRow;
+import org.intermine.api.results.ExportRowHandler;
+import org.intermine.api.results.ResultElement;
+import org.intermine.pathquery.PathQuery;
+import org.intermine.testing.Allocations;
+import org.junit.Test;
+
+/**
+ * Compares the speed and the memory allocated per row of next() and forEachRow() of the
+ * ExportResultsIterator, for results with nested outer joined collections.  This is not part of
+ * the unit tests; run it on its own.
+ *
+ * @author InterMine
+ */
+public class ExportResultsIteratorBenchmark
+{
+    private static final int COMPANIES = 20000;
+    private static final int DEPARTMENTS = 5;
+    private static final int EMPLOYEES = 5;
+
+    @Test
+    public void benchmarkForEachRow() throws Exception {
+        PathQuery pq = ExportResultsIteratorTest.makeCompanyQuery();
+        List<Object> rows = ExportResultsIteratorTest.makeCompanyRows(COMPANIES, DEPARTMENTS,
+                EMPLOYEES);
+        int expectedRows = COMPANIES * DEPARTMENTS * EMPLOYEES;
+        for (int i = 0; i < 3; i++) {
+            // warm up, and let the JIT compile both paths
+            readWithIterator(pq, rows);
+            readWithHandler(pq, rows);
+        }
+        long allocated = Allocations.allocatedBytes();
+        long start = System.nanoTime();
+        assertEquals(expectedRows, readWithIterator(pq, rows));
+        long iteratorTime = System.nanoTime() - start;
+        String iteratorBytes = Allocations.perItem(allocated, Allocations.allocatedBytes(),
+                expectedRows);
+
+        allocated = Allocations.allocatedBytes();
+        start = System.nanoTime();
+        assertEquals(expectedRows, readWithHandler(pq, rows));
+        long handlerTime = System.nanoTime() - start;
+        String handlerBytes = Allocations.perItem(allocated, Allocations.allocatedBytes(),
+                expectedRows);
+
+        System.out.printf("Export %d rows: next() %.0f rows/s, %s bytes/row; forEachRow() %.0f "
+                + "rows/s, %s bytes/row\n", expectedRows, expectedRows / (iteratorTime / 1e9),
+                iteratorBytes, expectedRows / (handlerTime / 1e9), handlerBytes);
+    }
+
+    private static int readWithIterator(PathQuery pq, List<Object> rows) throws Exception {
+        int count = 0;
+        ExportResultsIterator iter = ExportResultsIteratorTest.makeIterator(pq, rows);
+        while (iter.hasNext()) {
+            for (ResultElement element : iter.next()) {
+                if (element != null && element.getField() != null) {
+                    count++;
+                }
+            }
+        }
+        return count / 4;
+    }
+
+    private static int readWithHandler(PathQuery pq, List<Object> rows) throws Exception {
+        final int[] count = new int[1];
+        ExportResultsIteratorTest.makeIterator(pq, rows).forEachRow(new ExportRowHandler() {
+            public boolean handleRow(ExportRow row) {
+                for (int i = 0; i < row.size(); i++) {
+                    if (row.getValue(i) != null) {
+                        count[0]++;
+                    }
+                }
+                return true;
+            }
+        });
+        return count[0] / 4;
+    }
+}
@@ -80,11 +80,19 @@ public class TemplateSummariserTest extends StoreDataTestCase
         twoConstraints.addConstraint(depCon);
         twoConstraints.setEditable(depCon, true);
         profile.saveTemplate("template", new ApiTemplate(twoConstraints));
+
+        TemplateQuery ageOnly = new TemplateQuery("ageOnly", "ageOnly", "", new PathQuery(model));
+        ageOnly.addViews("Employee.name");
+        PathConstraint ageOnlyCon = Constraints.greaterThan("Employee.age", "40");
+        ageOnly.addConstraint(ageOnlyCon);
+        ageOnly.setEditable(ageOnlyCon, true);
+        profile.saveTemplate("ageOnly", new ApiTemplate(ageOnly));
     }
 
     @Override
     public void tearDown() throws Exception {
         profile.deleteTemplate("template", null, true);
+        profile.deleteTemplate("ageOnly", null, true);
         removeUserProfile(profile.getUsername());
         uosw.close();
     }
@@ -134,4 +142,20 @@ public class TemplateSummariserTest extends StoreDataTestCase
         Set<Object> expected = new HashSet<Object>(Arrays.asList(10, 20, 30, 40, 50, 60));
         assertEquals(expected, new HashSet<Object>(possibleValues.values().iterator().next()));
     }
+
+    public void testSummariseMany() throws Exception {
+        ApiTemplate t = profile.getSavedTemplates().get("template");
+        ApiTemplate ageOnly = profile.getSavedTemplates().get("ageOnly");
+        TemplateSummariser summariser = new TemplateSummariser(os, uosw, null);
+        summariser.summarise(Arrays.asList(t, ageOnly), 2);
+        assertTrue(summariser.isSummarised(t));
+        assertTrue(summariser.isSummarised(ageOnly));
+        Set<Object> expected = new HashSet<Object>(Arrays.asList(10, 20, 30, 40, 50, 60));
+        assertEquals(expected, new HashSet<Object>(summariser.getPossibleValues(t,
+                "Employee.age")));
+        assertEquals(expected, new HashSet<Object>(summariser.getPossibleValues(ageOnly,
+                "Employee.age")));
+        assertEquals(2, summariser.getPossibleValues(t).size());
+        assertEquals(1, summariser.getPossibleValues(ageOnly).size());
+    }
 }
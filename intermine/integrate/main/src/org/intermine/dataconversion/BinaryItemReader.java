@@ -0,0 +1,339 @@
+package org.intermine.dataconversion;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.intermine.model.fulldata.Attribute;
+import org.intermine.model.fulldata.Item;
+import org.intermine.model.fulldata.Reference;
+import org.intermine.model.fulldata.ReferenceList;
+
+/**
+ * Reads Items from a stream written by BinaryItemWriter, one record at a time.
+ *
+ * Most records are whole Items. A record written by one of the other ItemWriter store methods
+ * adds a single field to an Item earlier in the stream, and is returned as an Item with no
+ * identifier or class name holding just that field. isExtra() says which kind of record was read
+ * last, and getItemNumber() gives the position in the stream of the Item it belongs to.
+ *
+ * Once the whole stream has been read, readAt() can decode any record again from a file, given
+ * the position returned by getPosition() when it was first read.
+ *
+ * @author InterMine
+ */
+public class BinaryItemReader
+{
+    private static final int BUFFER_SIZE = 65536;
+    private static final int HEADER_SIZE = 5;
+
+    private final DataInputStream in;
+    private final List<String> dictionary = new ArrayList<String>();
+    private long nextPosition = HEADER_SIZE;
+    private long position = -1;
+    private int itemCount = 0;
+    private int itemNumber = -1;
+    private boolean extra = false;
+
+    /**
+     * Constructs a reader and checks the header of the stream.
+     *
+     * @param is the InputStream to read from
+     * @throws IOException if the stream cannot be read or was not written by BinaryItemWriter
+     */
+    public BinaryItemReader(InputStream is) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(is, BUFFER_SIZE));
+        int magic;
+        try {
+            magic = in.readInt();
+        } catch (EOFException e) {
+            throw new IOException("Stream is too short to be a binary items file");
+        }
+        if (magic != BinaryItemWriter.MAGIC) {
+            throw new IOException("Stream is not a binary items file");
+        }
+        int version = in.readUnsignedByte();
+        if (version != BinaryItemWriter.VERSION) {
+            throw new IOException("Unsupported binary items file version " + version);
+        }
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return an Item, or null at the end of the stream
+     * @throws IOException if the stream cannot be read or is corrupt
+     */
+    public Item next() throws IOException {
+        int type = in.read();
+        if (type == -1) {
+            return null;
+        }
+        int length = readVarInt(in);
+        byte[] body = new byte[length];
+        in.readFully(body);
+        position = nextPosition;
+        nextPosition += 1 + varIntSize(length) + length;
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+        extra = type != BinaryItemWriter.ITEM;
+        if (extra) {
+            itemNumber = readVarInt(record);
+            if (itemNumber >= itemCount) {
+                throw new IOException("Record at position " + position + " refers to Item "
+                        + itemNumber + " but only " + itemCount + " Items have been read");
+            }
+        } else {
+            itemNumber = itemCount++;
+        }
+        return decode(type, record);
+    }
+
+    /**
+     * Returns the file offset of the record last returned by next().
+     *
+     * @return a long
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the position in the stream of the Item that the last record belongs to, counting
+     * from zero. This is the id that BinaryItemWriter returned when the Item was stored.
+     *
+     * @return an int
+     */
+    public int getItemNumber() {
+        return itemNumber;
+    }
+
+    /**
+     * Returns true if the record last returned by next() adds a field to an earlier Item.
+     *
+     * @return a boolean
+     */
+    public boolean isExtra() {
+        return extra;
+    }
+
+    /**
+     * Decodes the record at the given position of a file. The record must already have been read
+     * by next(), so that the dictionary entries it uses are known.
+     *
+     * @param file the file holding the stream read by this reader
+     * @param recordPosition the value of getPosition() when the record was read
+     * @return an Item
+     * @throws IOException if the file cannot be read
+     */
+    public Item readAt(RandomAccessFile file, long recordPosition) throws IOException {
+        file.seek(recordPosition);
+        int type = file.readUnsignedByte();
+        byte[] body = new byte[readVarInt(file)];
+        file.readFully(body);
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+        if (type != BinaryItemWriter.ITEM) {
+            readVarInt(record);
+        }
+        return decode(type, record);
+    }
+
+    /**
+     * Closes the underlying stream.
+     *
+     * @throws IOException if an error occurs
+     */
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Reads a whole stream into memory, adding the fields from extra records to their Items.
+     *
+     * @param is the InputStream to read
+     * @return a List of Items in the order they were written
+     * @throws IOException if the stream cannot be read or is corrupt
+     */
+    public static List<Item> readAll(InputStream is) throws IOException {
+        BinaryItemReader reader = new BinaryItemReader(is);
+        List<Item> items = new ArrayList<Item>();
+        Item item = reader.next();
+        while (item != null) {
+            if (reader.isExtra()) {
+                addFields(items.get(reader.getItemNumber()), item);
+            } else {
+                items.add(item);
+            }
+            item = reader.next();
+        }
+        return items;
+    }
+
+    /**
+     * Moves the fields of an Item from an extra record onto the Item they belong to.
+     *
+     * @param item the Item to add to
+     * @param extraItem an Item returned by next() for an extra record
+     */
+    public static void addFields(Item item, Item extraItem) {
+        for (Attribute a : extraItem.getAttributes()) {
+            item.getAttributes().add(a);
+            a.setItem(item);
+        }
+        for (Reference r : extraItem.getReferences()) {
+            item.getReferences().add(r);
+            r.setItem(item);
+        }
+        for (ReferenceList r : extraItem.getCollections()) {
+            item.getCollections().add(r);
+            r.setItem(item);
+        }
+    }
+
+    private Item decode(int type, DataInput record) throws IOException {
+        Item item = new Item();
+        switch (type) {
+            case BinaryItemWriter.ITEM:
+                item.setIdentifier(readIdentifier(record));
+                item.setClassName(readName(record));
+                item.setImplementations(readName(record));
+                int count = readVarInt(record);
+                for (int i = 0; i < count; i++) {
+                    addAttribute(item, record);
+                }
+                count = readVarInt(record);
+                for (int i = 0; i < count; i++) {
+                    addReference(item, record);
+                }
+                count = readVarInt(record);
+                for (int i = 0; i < count; i++) {
+                    addCollection(item, record);
+                }
+                break;
+            case BinaryItemWriter.ATTRIBUTE:
+                addAttribute(item, record);
+                break;
+            case BinaryItemWriter.REFERENCE:
+                addReference(item, record);
+                break;
+            case BinaryItemWriter.COLLECTION:
+                addCollection(item, record);
+                break;
+            default:
+                throw new IOException("Unknown record type " + type);
+        }
+        return item;
+    }
+
+    private void addAttribute(Item item, DataInput record) throws IOException {
+        Attribute a = new Attribute();
+        a.setName(readName(record));
+        a.setValue(readString(record));
+        item.getAttributes().add(a);
+        a.setItem(item);
+    }
+
+    private void addReference(Item item, DataInput record) throws IOException {
+        Reference r = new Reference();
+        r.setName(readName(record));
+        r.setRefId(readIdentifier(record));
+        item.getReferences().add(r);
+        r.setItem(item);
+    }
+
+    private void addCollection(Item item, DataInput record) throws IOException {
+        ReferenceList r = new ReferenceList();
+        r.setName(readName(record));
+        int count = readVarInt(record);
+        StringBuilder refIds = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                refIds.append(' ');
+            }
+            refIds.append(readIdentifier(record));
+        }
+        r.setRefIds(refIds.toString());
+        item.getCollections().add(r);
+        r.setItem(item);
+    }
+
+    private String readName(DataInput record) throws IOException {
+        int token = readVarInt(record);
+        if (token == BinaryItemWriter.NULL_TOKEN) {
+            return null;
+        }
+        if (token == BinaryItemWriter.DEFINITION_TOKEN) {
+            int index = readVarInt(record);
+            String name = readString(record);
+            while (dictionary.size() <= index) {
+                dictionary.add(null);
+            }
+            dictionary.set(index, name);
+            return name;
+        }
+        int index = token - BinaryItemWriter.FIRST_ENTRY_TOKEN;
+        String name = (index < dictionary.size() ? dictionary.get(index) : null);
+        if (name == null) {
+            throw new IOException("Dictionary entry " + index + " used before it was defined");
+        }
+        return name;
+    }
+
+    private String readIdentifier(DataInput record) throws IOException {
+        String namespace = readName(record);
+        if (namespace == null) {
+            return readString(record);
+        }
+        return namespace + "_" + readVarInt(record);
+    }
+
+    private static String readString(DataInput record) throws IOException {
+        int length = readVarInt(record);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        record.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static int readVarInt(DataInput record) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (shift > 28) {
+                throw new IOException("Malformed number in binary items stream");
+            }
+            b = record.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,324 @@
+package org.intermine.dataconversion;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.intermine.model.fulldata.Attribute;
+import org.intermine.model.fulldata.Item;
+import org.intermine.model.fulldata.Reference;
+import org.intermine.model.fulldata.ReferenceList;
+import org.intermine.objectstore.ObjectStoreException;
+
+/**
+ * Writes Items to a stream in a compact binary format, as an alternative to storing them in an
+ * items database or writing items XML. The stream can be read with BinaryItemReader, and loaded
+ * straight into a production database with BinaryItemDataLoader.
+ *
+ * The stream starts with a four byte magic number and a version byte, followed by one record per
+ * call to a store method. Each record is a type byte, the length of the rest of the record and
+ * then the record itself, so readers can skip records or read one from a known file offset.
+ * Numbers are written as unsigned variable-length integers. Class names and field names are
+ * written once and then referred to by their index in a dictionary, and item identifiers of the
+ * usual form "namespace_number" are written as a dictionary index and a number. A dictionary entry
+ * is defined in the first record that uses it, together with its index, so that a reader that has
+ * seen the whole stream can decode any record on its own.
+ *
+ * The ids returned by store(Item), and set on the Item, are the position of the Item in the
+ * stream, starting at zero, and the records written by the other store methods refer to the Item
+ * by this number.
+ *
+ * @author InterMine
+ */
+public class BinaryItemWriter implements ItemWriter
+{
+    /** The magic number at the start of the stream - "IMBI" */
+    static final int MAGIC = 0x494d4249;
+    /** The version of the format */
+    static final int VERSION = 1;
+    /** Record type for an Item */
+    static final int ITEM = 1;
+    /** Record type for an Attribute added to an Item already written */
+    static final int ATTRIBUTE = 2;
+    /** Record type for a Reference added to an Item already written */
+    static final int REFERENCE = 3;
+    /** Record type for a ReferenceList added to an Item already written */
+    static final int COLLECTION = 4;
+
+    /** Dictionary token for a null string */
+    static final int NULL_TOKEN = 0;
+    /** Dictionary token that introduces a new dictionary entry */
+    static final int DEFINITION_TOKEN = 1;
+    /** Dictionary tokens for existing entries start at this value */
+    static final int FIRST_ENTRY_TOKEN = 2;
+
+    private static final int BUFFER_SIZE = 65536;
+    // Longer numbers may overflow an int, so identifiers with them are written as plain strings
+    private static final int MAX_NUMBER_DIGITS = 9;
+
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final DataOutputStream record = new DataOutputStream(buffer);
+    private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+    private int itemCount = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructs the ItemWriter and writes the header of the stream.
+     *
+     * @param os the OutputStream to write to, which is closed when this ItemWriter is closed
+     * @throws IOException if the header cannot be written
+     */
+    public BinaryItemWriter(OutputStream os) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(os, BUFFER_SIZE));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized Integer store(Item item) throws ObjectStoreException {
+        if (StringUtils.isEmpty(item.getClassName())
+            && StringUtils.isEmpty(item.getImplementations())) {
+            throw new RuntimeException("className not set for item: " + item.getIdentifier());
+        }
+        try {
+            buffer.reset();
+            writeIdentifier(item.getIdentifier());
+            writeName(item.getClassName());
+            writeName(item.getImplementations());
+            writeVarInt(record, item.getAttributes().size());
+            for (Attribute a : item.getAttributes()) {
+                writeName(a.getName());
+                writeString(record, a.getValue());
+            }
+            writeVarInt(record, item.getReferences().size());
+            for (Reference r : item.getReferences()) {
+                writeName(r.getName());
+                writeIdentifier(r.getRefId());
+            }
+            writeVarInt(record, item.getCollections().size());
+            for (ReferenceList r : item.getCollections()) {
+                writeCollection(r);
+            }
+            writeRecord(ITEM);
+        } catch (IOException e) {
+            throw new ObjectStoreException("Error writing Item " + item.getIdentifier(), e);
+        }
+        // as with ObjectStoreItemWriter, the Item gets the id it was stored with
+        item.setId(new Integer(itemCount++));
+        return item.getId();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void store(ReferenceList refList, Integer itemId)
+        throws ObjectStoreException {
+        try {
+            startExtra(itemId);
+            writeCollection(refList);
+            writeRecord(COLLECTION);
+        } catch (IOException e) {
+            throw new ObjectStoreException("Error writing collection " + refList.getName(), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void store(Reference ref, Integer itemId) throws ObjectStoreException {
+        try {
+            startExtra(itemId);
+            writeName(ref.getName());
+            writeIdentifier(ref.getRefId());
+            writeRecord(REFERENCE);
+        } catch (IOException e) {
+            throw new ObjectStoreException("Error writing reference " + ref.getName(), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void store(Attribute att, Integer itemId) throws ObjectStoreException {
+        try {
+            startExtra(itemId);
+            writeName(att.getName());
+            writeString(record, att.getValue());
+            writeRecord(ATTRIBUTE);
+        } catch (IOException e) {
+            throw new ObjectStoreException("Error writing attribute " + att.getName(), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void storeAll(Collection<Item> items) throws ObjectStoreException {
+        for (Item item : items) {
+            store(item);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void close() throws ObjectStoreException {
+        if (!closed) {
+            closed = true;
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new ObjectStoreException("Error closing binary items stream", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of Items written so far.
+     *
+     * @return an int
+     */
+    public synchronized int getItemCount() {
+        return itemCount;
+    }
+
+    private void startExtra(Integer itemId) throws IOException {
+        if ((itemId == null) || (itemId.intValue() < 0) || (itemId.intValue() >= itemCount)) {
+            throw new IllegalArgumentException("No Item with id " + itemId + " has been stored");
+        }
+        buffer.reset();
+        writeVarInt(record, itemId.intValue());
+    }
+
+    private void writeRecord(int type) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("BinaryItemWriter has been closed");
+        }
+        record.flush();
+        out.writeByte(type);
+        writeVarInt(out, buffer.size());
+        buffer.writeTo(out);
+    }
+
+    private void writeCollection(ReferenceList refList) throws IOException {
+        writeName(refList.getName());
+        String refIds = refList.getRefIds();
+        if ((refIds == null) || (refIds.trim().length() == 0)) {
+            writeVarInt(record, 0);
+            return;
+        }
+        String[] identifiers = refIds.trim().split("\\s+");
+        writeVarInt(record, identifiers.length);
+        for (String identifier : identifiers) {
+            writeIdentifier(identifier);
+        }
+    }
+
+    /**
+     * Writes a string from a small set of possible values, such as a class name, as a dictionary
+     * token, defining a new dictionary entry if necessary.
+     */
+    private void writeName(String name) throws IOException {
+        if (name == null) {
+            writeVarInt(record, NULL_TOKEN);
+            return;
+        }
+        Integer index = dictionary.get(name);
+        if (index == null) {
+            index = new Integer(dictionary.size());
+            dictionary.put(name, index);
+            writeVarInt(record, DEFINITION_TOKEN);
+            writeVarInt(record, index.intValue());
+            writeString(record, name);
+        } else {
+            writeVarInt(record, index.intValue() + FIRST_ENTRY_TOKEN);
+        }
+    }
+
+    /**
+     * Writes an item identifier. Identifiers of the form "namespace_number" are written as the
+     * namespace and the number, and anything else as a null namespace and the whole string.
+     */
+    private void writeIdentifier(String identifier) throws IOException {
+        int number = parseNumber(identifier);
+        if (number < 0) {
+            writeVarInt(record, NULL_TOKEN);
+            writeString(record, identifier);
+        } else {
+            writeName(identifier.substring(0, identifier.indexOf('_')));
+            writeVarInt(record, number);
+        }
+    }
+
+    /**
+     * Returns the number after the first underscore in an identifier, or -1 if the identifier
+     * does not have that form, or if writing it as a number would not give back the same string.
+     */
+    private static int parseNumber(String identifier) {
+        if (identifier == null) {
+            return -1;
+        }
+        int underscore = identifier.indexOf('_');
+        int start = underscore + 1;
+        int length = identifier.length() - start;
+        if ((underscore < 0) || (length < 1) || (length > MAX_NUMBER_DIGITS)
+                || ((length > 1) && (identifier.charAt(start) == '0'))) {
+            return -1;
+        }
+        int number = 0;
+        for (int i = start; i < identifier.length(); i++) {
+            char c = identifier.charAt(i);
+            if ((c < '0') || (c > '9')) {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    /**
+     * Writes a possibly null string, as its length plus one (or zero for null) followed by its
+     * UTF-8 bytes. Unlike DataOutput.writeUTF(), there is no limit on the length.
+     */
+    static void writeString(DataOutput o, String s) throws IOException {
+        if (s == null) {
+            writeVarInt(o, 0);
+        } else {
+            byte[] bytes = s.getBytes("UTF-8");
+            writeVarInt(o, bytes.length + 1);
+            o.write(bytes);
+        }
+    }
+
+    /**
+     * Writes a non-negative int using seven bits per byte, lowest bits first, with the top bit
+     * of each byte set if more bytes follow.
+     */
+    static void writeVarInt(DataOutput o, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            o.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        o.writeByte(value);
+    }
+}
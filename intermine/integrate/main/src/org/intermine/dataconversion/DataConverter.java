@@ -40,6 +40,7 @@ public abstract class DataConverter
     private ItemFactory itemFactory;
     private DataConverterStoreHook storeHook = null;
     private Map<String, String> uniqueItems = new HashMap<String, String>();
+    private int threadCount = 1;
 
     /**
     * Constructor that should be called by children
@@ -68,6 +69,24 @@ public abstract class DataConverter
         return writer;
     }
 
+    /**
+     * Set the number of threads that a converter that supports it should use to process its
+     * input, for example with a ParallelRecordProcessor.  Set from the converter.threads
+     * property in project.xml.
+     * @param converterThreads the number of threads
+     */
+    public void setConverterThreads(String converterThreads) {
+        this.threadCount = Integer.parseInt(converterThreads);
+    }
+
+    /**
+     * Return the number of threads to process the input with, 1 unless set in project.xml.
+     * @return the number of threads
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
     /**
      * Uniquely alias a className
      * @param className the class name
@@ -19,6 +19,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 import org.intermine.metadata.ConstraintOp;
@@ -71,6 +72,9 @@ public class ItemToObjectTranslator extends Translator
     protected Model model;
     protected SortedMap<Integer, String> idToNamespace = new TreeMap<Integer, String>();
     protected Map<String, Integer> namespaceToId = new HashMap<String, Integer>();
+    private volatile NamespaceBase lastNamespace = null;
+    private Map<String, Class<? extends FastPathObject>> classCache =
+        new ConcurrentHashMap<String, Class<? extends FastPathObject>>();
 
     /**
      * Constructor
@@ -158,20 +162,107 @@ public class ItemToObjectTranslator extends Translator
         if (identifier == null) {
             return null;
         }
-        int index = identifier.indexOf("_");
-        if (index == -1) {
-            throw new RuntimeException("illegal identifier (\"" + identifier + "\") for item");
+        return new Integer(identifierToId(identifier, 0, identifier.length()));
+    }
+
+    /**
+     * Turn part of a String into an object id, without creating any intermediate Strings when
+     * the namespace is the same as the last one seen, which is usually the case as items are read
+     * in identifier order.
+     *
+     * @param identifiers a String containing an item identifier
+     * @param start the index of the start of the identifier
+     * @param end the index after the end of the identifier
+     * @return the corresponding InterMineObject id
+     */
+    private int identifierToId(String identifiers, int start, int end) {
+        int index = identifiers.indexOf('_', start);
+        if ((index == -1) || (index >= end)) {
+            throw new RuntimeException("illegal identifier (\"" + identifiers.substring(start, end)
+                    + "\") for item");
+        }
+        int namespaceLength = index - start;
+        NamespaceBase last = lastNamespace;
+        int base;
+        if ((last != null) && (last.namespace.length() == namespaceLength)
+                && identifiers.regionMatches(start, last.namespace, 0, namespaceLength)) {
+            base = last.base;
+        } else {
+            String namespace = identifiers.substring(start, index);
+            Integer objectId = namespaceToId.get(namespace);
+            if (objectId == null) {
+                throw new RuntimeException("namespace \"" + namespace + "\" not found");
+            }
+            base = objectId.intValue();
+            lastNamespace = new NamespaceBase(namespace, base);
+        }
+        return base + parseNumber(identifiers, index + 1, end);
+    }
+
+    /**
+     * Returns the name of the field that a reference or collection of an Item sets. Item field
+     * names may start with a capital letter, which is dropped unless the name is an acronym such
+     * as "CEO".
+     *
+     * @param itemFieldName the name of the reference or collection in the Item
+     * @return the name of the field
+     */
+    public static String getFieldName(String itemFieldName) {
+        if ((itemFieldName.length() > 1) && Character.isLowerCase(itemFieldName.charAt(1))) {
+            return StringUtil.decapitalise(itemFieldName);
+        }
+        return itemFieldName;
+    }
+
+    private static int parseNumber(String s, int start, int end) {
+        // Anything that might overflow or is not a plain number is left to Integer.parseInt, so
+        // that the same exceptions are thrown
+        if ((start >= end) || (end - start > 9)) {
+            return Integer.parseInt(s.substring(start, end));
         }
-        String namespace = identifier.substring(0, index);
-        Integer objectId = namespaceToId.get(namespace);
-        if (objectId == null) {
-            throw new RuntimeException("namespace \"" + namespace + "\" not found");
+        int retval = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if ((c < '0') || (c > '9')) {
+                return Integer.parseInt(s.substring(start, end));
+            }
+            retval = retval * 10 + (c - '0');
         }
-        int base = objectId.intValue();
-        Integer retval = new Integer(base + Integer.parseInt(identifier.substring(index + 1)));
         return retval;
     }
 
+    /**
+     * Turn a whitespace-separated list of item identifiers into a Collection of distinct object
+     * ids.
+     *
+     * @param refIds a String of item identifiers
+     * @return the corresponding InterMineObject ids
+     */
+    protected Collection<Integer> refIdsToIntegers(String refIds) {
+        Set<Integer> retval = new HashSet<Integer>();
+        int length = refIds.length();
+        int start = 0;
+        while (start < length) {
+            while ((start < length) && isWhitespace(refIds.charAt(start))) {
+                start++;
+            }
+            int end = start;
+            while ((end < length) && !isWhitespace(refIds.charAt(end))) {
+                end++;
+            }
+            if (end > start) {
+                retval.add(new Integer(identifierToId(refIds, start, end)));
+            }
+            start = end;
+        }
+        return new ArrayList<Integer>(retval);
+    }
+
+    private static boolean isWhitespace(char c) {
+        // The same characters as the default StringTokenizer delimiters
+        return (c == ' ') || (c == '\t') || (c == '\n') || (c == '\r') || (c == '\f');
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -268,12 +359,81 @@ public class ItemToObjectTranslator extends Translator
      */
     @Override
     public Object translateFromDbObject(Object o) throws MetaDataException {
-        long time1 = System.currentTimeMillis();
         if (!(o instanceof Item)) {
             return o;
         }
+        Object retval = translateItem((Item) o);
+        logProgress(1);
+        return retval;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * This translates a whole batch of Items, timing and logging progress once per batch rather
+     * than once per Item. Collections are created as lazy queries in the same way as for
+     * translateFromDbObject - ObjectStoreFastCollectionsForTranslatorImpl fetches the contents of
+     * all the collections in a batch together.
+     */
+    @Override
+    public List<Object> translateFromDbObjects(List<Object> objects) throws MetaDataException {
+        List<Object> retval = new ArrayList<Object>(objects.size());
+        int items = 0;
+        for (Object o : objects) {
+            if (o instanceof Item) {
+                retval.add(translateItem((Item) o));
+                items++;
+            } else {
+                retval.add(o);
+            }
+        }
+        logProgress(items);
+        return retval;
+    }
 
-        Item item = (Item) o;
+    private void logProgress(int translated) {
+        int before = objectCount;
+        objectCount += translated;
+        if (objectCount / 10000 != before / 10000) {
+            LOG.info("Translated " + objectCount + " objects. Time spent: sizing: "
+                    + timeSpentSizing + ", Create object: " + timeSpentCreate
+                    + ", Copy fields: " + timeSpentAttributes);
+        }
+    }
+
+    /**
+     * Instantiate an object of the right class for an Item. The classes are cached by class name
+     * and implementations, so the names only need to be resolved once.
+     *
+     * @param item the Item
+     * @return a new empty object
+     */
+    private FastPathObject instantiate(Item item) {
+        String implementations = item.getImplementations();
+        String key = (implementations == null ? item.getClassName()
+                : item.getClassName() + "|" + implementations);
+        Class<? extends FastPathObject> clazz = (key == null ? null : classCache.get(key));
+        if (clazz != null) {
+            return DynamicUtil.createObject(clazz);
+        }
+        FastPathObject obj;
+        try {
+            obj = DynamicUtil.instantiateObject(
+                    ItemHelper.generateClassNames(item.getClassName(), model),
+                    ItemHelper.generateClassNames(implementations, model));
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("class \"" + item.getClassName() + "\" does not exist\n"
+                    + "Problem found while loading Item with identifier " + item.getIdentifier(),
+                    e);
+        }
+        if (key != null) {
+            classCache.put(key, obj.getClass());
+        }
+        return obj;
+    }
+
+    private Object translateItem(Item item) throws MetaDataException {
+        long time1 = System.currentTimeMillis();
         int itemSize = 100;
         for (Attribute a : item.getAttributes()) {
             String value = a.getValue();
@@ -289,24 +449,15 @@ public class ItemToObjectTranslator extends Translator
         itemSize += item.getReferences().size() * 50;
         if (itemSize > 1000000) {
             LOG.info("Translating large object " + item.getIdentifier() + " ("
-                    + identifierToId(item.getIdentifier()) + ") - classname = "
+                    + getObjectId(item) + ") - classname = "
                     + item.getClassName() + ", size = " + itemSize);
         }
         long time2 = System.currentTimeMillis();
         timeSpentSizing += time2 - time1;
-        FastPathObject obj;
-        try {
-            obj = DynamicUtil.instantiateObject(
-                    ItemHelper.generateClassNames(item.getClassName(), model),
-                    ItemHelper.generateClassNames(item.getImplementations(), model));
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException("class \"" + item.getClassName() + "\" does not exist\n"
-                    + "Problem found while loading Item with identifier " + item.getIdentifier(),
-                    e);
-        }
+        FastPathObject obj = instantiate(item);
 
         try {
-            obj.setFieldValue("id", identifierToId(item.getIdentifier()));
+            obj.setFieldValue("id", getObjectId(item));
         } catch (IllegalArgumentException e) {
             // that's not good
         }
@@ -343,14 +494,6 @@ public class ItemToObjectTranslator extends Translator
             }
 
             for (Reference ref : item.getReferences()) {
-                Integer identifier;
-                try {
-                    identifier = identifierToId(ref.getRefId());
-                } catch (RuntimeException e) {
-                    throw new RuntimeException("Failed to find referenced Item with identifier "
-                            + ref.getRefId() + " in object store from Item with identifier "
-                            + item.getIdentifier() + " and reference name " + ref.getName(), e);
-                }
                 String refName = ref.getName();
                 if (refName == null) {
                     throw new RuntimeException("Item with identifier " + item.getIdentifier()
@@ -360,12 +503,9 @@ public class ItemToObjectTranslator extends Translator
                     throw new RuntimeException("Item with identifier " + item.getIdentifier()
                             + " has a reference with an empty name");
                 }
-                if (Character.isLowerCase(refName.charAt(1))) {
-                    refName = StringUtil.decapitalise(refName);
-                }
+                refName = getFieldName(refName);
                 if (TypeUtil.getFieldInfo(obj.getClass(), refName) != null) {
-                    obj.setFieldValue(refName, new ProxyReference(os, identifier,
-                                InterMineObject.class));
+                    obj.setFieldValue(refName, getReference(item, ref));
                 } else {
                     String message = "Reference not found in class: "
                         + Util.getFriendlyName(obj.getClass()) + "." + ref.getName()
@@ -376,30 +516,12 @@ public class ItemToObjectTranslator extends Translator
             }
 
             for (ReferenceList refs : item.getCollections()) {
-                QueryClass qc = new QueryClass(InterMineObject.class);
-                QueryField qf = new QueryField(qc, "id");
-                BagConstraint bc;
-                try {
-                    bc = new BagConstraint(qf, ConstraintOp.IN,
-                        toIntegers(new HashSet<String>(StringUtil.tokenize(refs.getRefIds()))));
-                } catch (Exception e) {
-                    throw new RuntimeException("failed to find some referenced Items from "
-                            + "identifiers " + refs.getRefIds() + " in object store from Item "
-                            + "with identifier " + item.getIdentifier() + " and collection name "
-                            + refs.getName(), e);
-                }
-
-                Query q = new Query();
-                q.addToSelect(qc);
-                q.addFrom(qc);
-                q.setConstraint(bc);
-                // TODO rules about case changes should be centralised
-                String refsName = refs.getName();
-                if (Character.isLowerCase(refsName.charAt(1))) {
-                    refsName = StringUtil.decapitalise(refsName);
-                }
+                String refsName = getFieldName(refs.getName());
                 if (TypeUtil.getFieldInfo(obj.getClass(), refsName) != null) {
-                    obj.setFieldValue(refsName, os.executeSingleton(q));
+                    Collection<?> collection = getCollection(item, refs);
+                    if (collection != null) {
+                        obj.setFieldValue(refsName, collection);
+                    }
                 } else {
                     String message = "Collection not found in class: "
                         + Util.getFriendlyName(obj.getClass()) + "." + refsName
@@ -419,15 +541,69 @@ public class ItemToObjectTranslator extends Translator
         }
         time2 = System.currentTimeMillis();
         timeSpentAttributes += time2 - time1;
-        objectCount++;
-        if (objectCount % 10000 == 0) {
-            LOG.info("Translated " + objectCount + " objects. Time spent: sizing: "
-                    + timeSpentSizing + ", Create object: " + timeSpentCreate
-                    + ", Copy fields: " + timeSpentAttributes);
-        }
         return obj;
     }
 
+    /**
+     * Returns the id of the object that an Item is translated into.
+     *
+     * @param item the Item
+     * @return the object id
+     */
+    protected Integer getObjectId(Item item) {
+        return identifierToId(item.getIdentifier());
+    }
+
+    /**
+     * Returns the value of a reference of the object an Item is translated into. This is a proxy
+     * for the referenced object in the items ObjectStore.
+     *
+     * @param item the Item
+     * @param ref the reference of the Item
+     * @return a proxy for the referenced object
+     * @throws MetaDataException if the reference cannot be translated
+     */
+    protected ProxyReference getReference(Item item, Reference ref) throws MetaDataException {
+        Integer identifier;
+        try {
+            identifier = identifierToId(ref.getRefId());
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Failed to find referenced Item with identifier "
+                    + ref.getRefId() + " in object store from Item with identifier "
+                    + item.getIdentifier() + " and reference name " + ref.getName(), e);
+        }
+        return new ProxyReference(os, identifier, InterMineObject.class);
+    }
+
+    /**
+     * Returns the value of a collection of the object an Item is translated into. This is a lazy
+     * query for the referenced objects in the items ObjectStore.
+     *
+     * @param item the Item
+     * @param refs the collection of the Item
+     * @return the objects in the collection, or null to leave the collection unset
+     * @throws MetaDataException if the collection cannot be translated
+     */
+    protected Collection<?> getCollection(Item item, ReferenceList refs)
+        throws MetaDataException {
+        QueryClass qc = new QueryClass(InterMineObject.class);
+        QueryField qf = new QueryField(qc, "id");
+        BagConstraint bc;
+        try {
+            bc = new BagConstraint(qf, ConstraintOp.IN, refIdsToIntegers(refs.getRefIds()));
+        } catch (Exception e) {
+            throw new RuntimeException("failed to find some referenced Items from "
+                    + "identifiers " + refs.getRefIds() + " in object store from Item "
+                    + "with identifier " + item.getIdentifier() + " and collection name "
+                    + refs.getName(), e);
+        }
+        Query q = new Query();
+        q.addToSelect(qc);
+        q.addFrom(qc);
+        q.setConstraint(bc);
+        return os.executeSingleton(q);
+    }
+
     /**
      * Convert a set of Integers to a set of String using idToIdentifier()
      * @param integers a set of Integers
@@ -453,4 +629,18 @@ public class ItemToObjectTranslator extends Translator
         }
         return integers;
     }
+
+    /**
+     * A namespace and the object id that its item identifiers are offset from.
+     */
+    private static class NamespaceBase
+    {
+        private final String namespace;
+        private final int base;
+
+        NamespaceBase(String namespace, int base) {
+            this.namespace = namespace;
+            this.base = base;
+        }
+    }
 }
@@ -0,0 +1,123 @@
+package org.intermine.dataconversion;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.intermine.util.DaemonThreadFactory;
+
+/**
+ * Helper for DataConverters whose input splits into independent records, such as the entries of a
+ * UniProt file or the lines of a GFF3 file, and which spend most of their time parsing them.
+ *
+ * Records are read from an Iterator on the calling thread and handed to parse() on a pool of
+ * worker threads. The results are passed to handle() on the calling thread in the same order as
+ * the records, so Items created and stored in handle() get the same identifiers as they would in
+ * a single-threaded run. parse() should do the expensive work, and must not create or store
+ * Items or change any state shared with handle().
+ *
+ * @author InterMine
+ * @param <R> the type of the records
+ * @param <P> the type of the parsed records
+ */
+public abstract class ParallelRecordProcessor<R, P>
+{
+    private static final int RECORDS_IN_FLIGHT_PER_THREAD = 4;
+
+    private final int threads;
+
+    /**
+     * Constructor.
+     *
+     * @param threads the number of threads to parse records on. If this is 1 or less, records are
+     * parsed on the calling thread
+     */
+    public ParallelRecordProcessor(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Parse a record. This is called on a worker thread.
+     *
+     * @param record the record
+     * @return the parsed record
+     * @throws Exception if the record cannot be parsed
+     */
+    protected abstract P parse(R record) throws Exception;
+
+    /**
+     * Deal with a parsed record, for example by creating and storing Items from it. This is called
+     * on the thread that called process(), in record order.
+     *
+     * @param parsed the result of parse()
+     * @throws Exception if something goes wrong
+     */
+    protected abstract void handle(P parsed) throws Exception;
+
+    /**
+     * Parse and handle all the records. A limited number of records are parsed ahead of the one
+     * being handled, so memory use does not depend on the number of records.
+     *
+     * @param records an Iterator over the records
+     * @throws Exception if parse() or handle() throws an exception, in which case no more
+     * records are handled
+     */
+    public void process(Iterator<R> records) throws Exception {
+        if (threads <= 1) {
+            while (records.hasNext()) {
+                handle(parse(records.next()));
+            }
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new DaemonThreadFactory("ParallelRecordProcessor"));
+        try {
+            LinkedList<Future<P>> inFlight = new LinkedList<Future<P>>();
+            int maxInFlight = threads * RECORDS_IN_FLIGHT_PER_THREAD;
+            while (records.hasNext()) {
+                final R record = records.next();
+                inFlight.add(executor.submit(new Callable<P>() {
+                    public P call() throws Exception {
+                        return parse(record);
+                    }
+                }));
+                if (inFlight.size() >= maxInFlight) {
+                    handle(getResult(inFlight.removeFirst()));
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                handle(getResult(inFlight.removeFirst()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private P getResult(Future<P> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package org.intermine.dataloader;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.intermine.InterMineException;
+import org.intermine.dataconversion.BinaryItemReader;
+import org.intermine.dataconversion.ItemToObjectTranslator;
+import org.intermine.metadata.MetaDataException;
+import org.intermine.metadata.Model;
+import org.intermine.model.FastPathObject;
+import org.intermine.model.InterMineObject;
+import org.intermine.model.fulldata.Item;
+import org.intermine.model.fulldata.Reference;
+import org.intermine.model.fulldata.ReferenceList;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.proxy.ProxyReference;
+import org.intermine.util.IntPresentSet;
+
+/**
+ * Loads a file written by BinaryItemWriter straight into the InterMine database, without going
+ * through an items database.
+ *
+ * The file is read twice. The first pass builds an index from item identifier to file offset,
+ * and gives each Item an object id in the same way as ItemToObjectTranslator. The second pass
+ * translates the Items with an ItemToObjectTranslator and stores them in file order. References
+ * are stored as proxies, and when the
+ * IntegrationWriter needs a referenced object that has not been loaded yet, it is read from its
+ * offset in the file. Only the index is held in memory, so large sources can be loaded.
+ *
+ * @author InterMine
+ */
+public class BinaryItemDataLoader extends DataLoader
+{
+    private static final Logger LOG = Logger.getLogger(BinaryItemDataLoader.class);
+    private static final int LOG_INTERVAL = 10000;
+    private static final int COMMIT_INTERVAL = 500000;
+
+    private final Model model;
+    // Objects from each file get ids above those of the files loaded before it
+    private int idBase = 1;
+
+    /**
+     * @see DataLoader#DataLoader(IntegrationWriter)
+     *
+     * @param iw an IntegrationWriter to use to write objects
+     */
+    public BinaryItemDataLoader(IntegrationWriter iw) {
+        super(iw);
+        model = iw.getObjectStore().getModel();
+    }
+
+    /**
+     * Loads all the Items in a binary items file.
+     *
+     * @param file the file to load
+     * @param source the main source
+     * @param skelSource the skeleton source
+     * @throws InterMineException if the file cannot be read or the objects cannot be stored
+     */
+    public void processFile(File file, Source source, Source skelSource)
+        throws InterMineException {
+        ItemFile itemFile = null;
+        try {
+            itemFile = new ItemFile(file);
+            itemFile.index();
+            itemFile.load(source, skelSource);
+            idBase += itemFile.idCount;
+        } catch (IOException e) {
+            throw new InterMineException("Problem reading binary items file " + file, e);
+        } catch (MetaDataException e) {
+            throw new InterMineException("Problem translating Items from " + file, e);
+        } catch (ObjectStoreException e) {
+            throw new InterMineException("Problem with store method", e);
+        } finally {
+            if (itemFile != null) {
+                try {
+                    itemFile.close();
+                } catch (IOException e) {
+                    LOG.warn("Failed to close " + file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Perform any necessary clean-up and close the integration writer
+     * @throws Exception if an error occurs
+     */
+    public void close() throws Exception {
+        getIntegrationWriter().close();
+    }
+
+    /**
+     * The item identifiers sharing one namespace, that is the part of the identifier before the
+     * underscore, with the file offset of each Item.
+     */
+    private static class Namespace
+    {
+        private final String name;
+        private final int index;
+        private int offset;
+        private int max = -1;
+        private long[] positions = new long[16];
+
+        Namespace(String name, int index) {
+            this.name = name;
+            this.index = index;
+        }
+
+        long getPosition(int number) {
+            return (number < positions.length ? positions[number] : 0L);
+        }
+
+        void setPosition(int number, long position) {
+            if (number >= positions.length) {
+                positions = Arrays.copyOf(positions, Math.max(number + 1, positions.length * 2));
+            }
+            positions[number] = position;
+            max = Math.max(max, number);
+        }
+    }
+
+    /**
+     * The state of loading one file. Items are identified by a key holding the index of their
+     * namespace in the top 32 bits and their number in the bottom 32 bits.
+     */
+    private class ItemFile
+    {
+        private final File file;
+        private final RandomAccessFile randomAccess;
+        private final Map<String, Namespace> namespaces = new HashMap<String, Namespace>();
+        private final List<Namespace> namespaceList = new ArrayList<Namespace>();
+        private final Map<Long, List<Long>> extras = new HashMap<Long, List<Long>>();
+        private final IntPresentSet stored = new IntPresentSet();
+        private final FileTranslator translator;
+        private final FileTranslator skeletonTranslator;
+        private BinaryItemReader indexReader = null;
+        private long[] itemKeys = new long[1024];
+        private int idCount = 0;
+
+        ItemFile(File file) throws IOException, ObjectStoreException {
+            this.file = file;
+            translator = new FileTranslator(true);
+            skeletonTranslator = new FileTranslator(false);
+            randomAccess = new RandomAccessFile(file, "r");
+        }
+
+        /**
+         * Reads the whole file, recording where each Item and each extra record is. The reader is
+         * kept afterwards, as it holds the dictionary needed to decode records at random.
+         */
+        void index() throws IOException {
+            long start = System.currentTimeMillis();
+            indexReader = new BinaryItemReader(new FileInputStream(file));
+            int itemCount = 0;
+            Item item = indexReader.next();
+            while (item != null) {
+                if (indexReader.isExtra()) {
+                    Long key = new Long(itemKeys[indexReader.getItemNumber()]);
+                    List<Long> positions = extras.get(key);
+                    if (positions == null) {
+                        positions = new ArrayList<Long>();
+                        extras.put(key, positions);
+                    }
+                    positions.add(new Long(indexReader.getPosition()));
+                } else {
+                    long key = keyFor(item.getIdentifier(), true);
+                    Namespace namespace = namespaceList.get((int) (key >>> 32));
+                    int number = (int) key;
+                    if (namespace.getPosition(number) != 0L) {
+                        throw new IllegalArgumentException("There is more than one Item with "
+                                + "identifier " + item.getIdentifier() + " in " + file);
+                    }
+                    namespace.setPosition(number, indexReader.getPosition());
+                    if (itemCount >= itemKeys.length) {
+                        itemKeys = Arrays.copyOf(itemKeys, itemKeys.length * 2);
+                    }
+                    itemKeys[itemCount++] = key;
+                }
+                item = indexReader.next();
+            }
+            indexReader.close();
+            for (Namespace namespace : namespaceList) {
+                namespace.offset = idCount;
+                idCount += namespace.max + 1;
+            }
+            LOG.info("Indexed " + itemCount + " Items in " + namespaceList.size()
+                    + " namespaces from " + file + " in " + (System.currentTimeMillis() - start)
+                    + " ms");
+        }
+
+        void load(Source source, Source skelSource) throws IOException, MetaDataException,
+            ObjectStoreException {
+            IntegrationWriter iw = getIntegrationWriter();
+            BinaryItemReader reader = new BinaryItemReader(new FileInputStream(file));
+            long opCount = 0;
+            long startTime = System.currentTimeMillis();
+            long time = startTime;
+            try {
+                iw.beginTransaction();
+                Item item = reader.next();
+                while (item != null) {
+                    if (!reader.isExtra()) {
+                        long key = itemKeys[reader.getItemNumber()];
+                        iw.store((FastPathObject) translator.translateFromDbObject(
+                                    withExtras(item, key)), source, skelSource);
+                        stored.add(new Integer(idFor(key)));
+                        opCount++;
+                        if (opCount % LOG_INTERVAL == 0) {
+                            long now = System.currentTimeMillis();
+                            LOG.info("Dataloaded " + opCount + " objects - running at "
+                                    + ((60000L * LOG_INTERVAL) / Math.max(1L, now - time))
+                                    + " (avg " + ((60000L * opCount)
+                                        / Math.max(1L, now - startTime))
+                                    + ") objects per minute");
+                            time = now;
+                        }
+                        if (opCount % COMMIT_INTERVAL == 0) {
+                            iw.commitTransaction();
+                            iw.beginTransaction();
+                        }
+                    }
+                    item = reader.next();
+                }
+                iw.commitTransaction();
+            } finally {
+                reader.close();
+            }
+            long now = System.currentTimeMillis();
+            LOG.info("Finished dataloading " + opCount + " objects at " + ((60000L * opCount)
+                        / Math.max(1L, now - startTime)) + " objects per minute ("
+                    + (now - startTime) + " ms total) for source " + source.getName());
+        }
+
+        void close() throws IOException {
+            randomAccess.close();
+        }
+
+        /**
+         * Returns the key for an item identifier, which must be of the form
+         * "namespace_number".
+         */
+        private long keyFor(String identifier, boolean create) {
+            int underscore = (identifier == null ? -1 : identifier.indexOf('_'));
+            int number;
+            try {
+                number = (underscore < 0 ? -1
+                        : Integer.parseInt(identifier.substring(underscore + 1)));
+            } catch (NumberFormatException e) {
+                number = -1;
+            }
+            if (number < 0) {
+                throw new IllegalArgumentException("Item identifier \"" + identifier
+                        + "\" in " + file + " is not of the form namespace_number");
+            }
+            String name = identifier.substring(0, underscore);
+            Namespace namespace = namespaces.get(name);
+            if (namespace == null) {
+                if (!create) {
+                    throw new IllegalArgumentException("Failed to find referenced Item with "
+                            + "identifier " + identifier + " in " + file);
+                }
+                namespace = new Namespace(name, namespaceList.size());
+                namespaces.put(name, namespace);
+                namespaceList.add(namespace);
+            }
+            return (((long) namespace.index) << 32) | number;
+        }
+
+        private int idFor(long key) {
+            return idBase + namespaceList.get((int) (key >>> 32)).offset + ((int) key);
+        }
+
+        private Item withExtras(Item item, long key) throws IOException {
+            List<Long> positions = extras.get(new Long(key));
+            if (positions != null) {
+                for (Long position : positions) {
+                    BinaryItemReader.addFields(item,
+                            indexReader.readAt(randomAccess, position.longValue()));
+                }
+            }
+            return item;
+        }
+
+        /**
+         * Reads an Item that has not been loaded yet from the file, so that the IntegrationWriter
+         * can store a skeleton for it. Collections are left out, as skeletons do not need them.
+         */
+        private InterMineObject realise(long key) throws IOException, MetaDataException {
+            Namespace namespace = namespaceList.get((int) (key >>> 32));
+            long position = namespace.getPosition((int) key);
+            if (position == 0L) {
+                throw new IllegalArgumentException("Failed to find referenced Item with "
+                        + "identifier " + namespace.name + "_" + ((int) key) + " in " + file);
+            }
+            Item item = withExtras(indexReader.readAt(randomAccess, position), key);
+            return (InterMineObject) skeletonTranslator.translateFromDbObject(item);
+        }
+
+        /**
+         * Translates Items from the file, giving them the ids from the index and pointing their
+         * references at other Items in the file.
+         */
+        private class FileTranslator extends ItemToObjectTranslator
+        {
+            private final boolean withCollections;
+
+            FileTranslator(boolean withCollections) throws ObjectStoreException {
+                super(BinaryItemDataLoader.this.model, null);
+                this.withCollections = withCollections;
+            }
+
+            @Override
+            protected Integer getObjectId(Item item) {
+                return new Integer(idFor(keyFor(item.getIdentifier(), false)));
+            }
+
+            @Override
+            protected ProxyReference getReference(Item item, Reference ref) {
+                return new ItemProxy(keyFor(ref.getRefId(), false));
+            }
+
+            @Override
+            protected Collection<?> getCollection(Item item, ReferenceList refs)
+                throws MetaDataException {
+                if (!withCollections) {
+                    // skeletons do not need collections
+                    return null;
+                }
+                Collection<InterMineObject> col = new HashSet<InterMineObject>();
+                String refIds = refs.getRefIds();
+                if ((refIds != null) && (refIds.trim().length() > 0)) {
+                    for (String refId : refIds.trim().split("\\s+")) {
+                        long refKey = keyFor(refId, false);
+                        // The IntegrationWriter only accepts proxies for objects it has seen
+                        if (stored.contains(idFor(refKey))) {
+                            col.add(new ItemProxy(refKey));
+                        } else {
+                            try {
+                                col.add(realise(refKey));
+                            } catch (IOException e) {
+                                throw new RuntimeException("Error reading Item " + refId
+                                        + " from " + file, e);
+                            }
+                        }
+                    }
+                }
+                return col;
+            }
+        }
+
+        /**
+         * A reference to an Item in the file, which is read from the file if the
+         * IntegrationWriter needs the object itself.
+         */
+        private class ItemProxy extends ProxyReference
+        {
+            private final long key;
+
+            ItemProxy(long key) {
+                super(null, new Integer(idFor(key)), InterMineObject.class);
+                this.key = key;
+            }
+
+            @Override
+            public InterMineObject getObject() {
+                try {
+                    return realise(key);
+                } catch (IOException e) {
+                    throw new RuntimeException("Error reading Item for object with ID " + getId()
+                            + " from " + file, e);
+                } catch (MetaDataException e) {
+                    throw new RuntimeException("Error translating Item for object with ID "
+                            + getId() + " from " + file, e);
+                }
+            }
+        }
+    }
+}
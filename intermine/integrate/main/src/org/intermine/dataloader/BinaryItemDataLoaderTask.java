@@ -0,0 +1,140 @@
+package org.intermine.dataloader;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.FileSet;
+
+/**
+ * Uses an IntegrationWriter to load data from files written by BinaryItemWriter.
+ *
+ * @author InterMine
+ */
+public class BinaryItemDataLoaderTask extends Task
+{
+    private static final Logger LOG = Logger.getLogger(BinaryItemDataLoaderTask.class);
+    protected String integrationWriter;
+    protected FileSet fileSet;
+    protected String file;
+    protected String sourceName;
+    protected String sourceType;
+    protected boolean ignoreDuplicates = false;
+
+    /**
+     * Set the IntegrationWriter.
+     *
+     * @param integrationWriter the name of the IntegrationWriter
+     */
+    public void setIntegrationWriter(String integrationWriter) {
+        this.integrationWriter = integrationWriter;
+    }
+
+    /**
+     * Set the data fileset
+     * @param fileSet the fileset
+     */
+    public void addFileSet(FileSet fileSet) {
+        this.fileSet = fileSet;
+    }
+
+    /**
+     * Set a file name to load from
+     * @param file name of file to load
+     */
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    /**
+     * Set the source name, as used by primary key priority config.
+     *
+     * @param sourceName the name of the data source
+     */
+    public void setSourceName(String sourceName) {
+        this.sourceName = sourceName;
+    }
+
+    /**
+     * Set the source type, as used by primary key priority config.
+     *
+     * @param sourceType the type of the data source
+     */
+    public void setSourceType(String sourceType) {
+        this.sourceType = sourceType;
+    }
+
+    /**
+     * Set the value of ignoreDuplicates for the IntegrationWriter
+     * @param ignoreDuplicates the value of ignoreDuplicates
+     */
+    public void setIgnoreDuplicates(boolean ignoreDuplicates) {
+        this.ignoreDuplicates = ignoreDuplicates;
+        LOG.info("Setting ignoreDuplicates to " + ignoreDuplicates);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws BuildException
+     */
+    @Override
+    public void execute() {
+        if (integrationWriter == null) {
+            throw new BuildException("integrationWriter attribute is not set");
+        }
+        if (sourceName == null) {
+            throw new BuildException("sourceName attribute is not set");
+        }
+        if (sourceType == null) {
+            throw new BuildException("sourceType attribute is not set");
+        }
+        if ((file == null || "".equals(file)) && fileSet == null) {
+            throw new BuildException("one of file or fileSet must be set");
+        }
+        List<File> files = new ArrayList<File>();
+        if (file != null && !"".equals(file)) {
+            files.add(new File(file));
+        } else {
+            DirectoryScanner ds = fileSet.getDirectoryScanner(getProject());
+            for (String fileName : ds.getIncludedFiles()) {
+                files.add(new File(ds.getBasedir(), fileName));
+            }
+        }
+        if (files.isEmpty()) {
+            throw new BuildException("No files found to load for source: " + sourceName);
+        }
+        File toRead = null;
+        try {
+            IntegrationWriter iw = IntegrationWriterFactory.getIntegrationWriter(integrationWriter);
+            iw.setIgnoreDuplicates(ignoreDuplicates);
+            BinaryItemDataLoader loader = new BinaryItemDataLoader(iw);
+            for (File f : files) {
+                toRead = f;
+                LOG.info("Processing file " + toRead.toString());
+                loader.processFile(toRead, iw.getMainSource(sourceName, sourceType),
+                        iw.getSkeletonSource(sourceName, sourceType));
+            }
+            loader.close();
+        } catch (Exception e) {
+            if (toRead == null) {
+                throw new BuildException("Exception in BinaryItemDataLoaderTask", e);
+            } else {
+                throw new BuildException("Exception while reading from: " + toRead, e);
+            }
+        }
+    }
+}
@@ -10,19 +10,26 @@ package org.intermine.dataloader;
  *
  */
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.intermine.metadata.ConstraintOp;
 import org.intermine.metadata.Util;
+import org.intermine.modelproduction.MetadataManager;
 import org.intermine.model.FastPathObject;
 import org.intermine.model.InterMineObject;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.ObjectStoreSummary;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QueryClass;
 import org.intermine.objectstore.query.QueryCloner;
@@ -31,20 +38,32 @@ import org.intermine.objectstore.query.QueryField;
 import org.intermine.objectstore.query.QueryForeignKey;
 import org.intermine.objectstore.query.QueryFunction;
 import org.intermine.objectstore.query.QueryValue;
+import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
 import org.intermine.objectstore.query.SubqueryExistsConstraint;
 import org.intermine.util.AlwaysSet;
+import org.intermine.util.BloomFilterSet;
 import org.intermine.util.PseudoSet;
 
 /**
  * Object for holding hint data for the getEquivalentObjects method in IntegrationWriters.
  *
+ * The hints describe the database as it was before the current source started loading, and
+ * objects stored afterwards are deliberately not added to them. A new EquivalentObjectHints is
+ * created for each source when the IntegrationWriter is reset, and within a source the objects
+ * already stored are matched through the id map rather than by primary key queries, so the
+ * hints are only consulted for objects from earlier sources. The same holds for databaseEmpty
+ * and classNotExists, which are also never updated after a store.
+ *
  * @author Matthew Wakeling
  */
 public class EquivalentObjectHints
 {
     private static final Logger LOG = Logger.getLogger(EquivalentObjectHints.class);
     private static final int SUMMARY_SIZE = 100;
+    private static final int BLOOM_FILTER_MAX_ENTRIES = 20000000;
+    private static final double BLOOM_FILTER_FALSE_POSITIVE_RATE = 0.01;
+    private static final int BLOOM_FILTER_BATCH_SIZE = 10000;
 
     private boolean databaseEmptyChecked = false;
     private boolean databaseEmpty = false;
@@ -56,6 +75,8 @@ public class EquivalentObjectHints
     private Map<String, ClassAndFieldName> summaryToCafn = new HashMap<String, ClassAndFieldName>();
 
     private ObjectStore os;
+    private boolean summaryChecked = false;
+    private ObjectStoreSummary summary = null;
 
     /**
      * Constructor.
@@ -66,6 +87,18 @@ public class EquivalentObjectHints
         this.os = os;
     }
 
+    /**
+     * Constructor, for an ObjectStore whose summary is already known.
+     *
+     * @param os an ObjectStore of a production database
+     * @param summary the ObjectStoreSummary of the database, or null to count the rows instead
+     */
+    public EquivalentObjectHints(ObjectStore os, ObjectStoreSummary summary) {
+        this.os = os;
+        this.summary = summary;
+        summaryChecked = true;
+    }
+
     /**
      * Returns true if the database was empty at the start of the run.
      *
@@ -189,7 +222,7 @@ public class EquivalentObjectHints
                         values = new IntegerRangeSet(((Integer) results2.get(0).get(0)).intValue(),
                                 ((Integer) results2.get(0).get(1)).intValue());
                     } else {
-                        values = AlwaysSet.getInstance();
+                        values = buildBloomFilter(qc, qs);
                     }
                 } else {
                     values = new HashSet<Object>();
@@ -225,6 +258,86 @@ public class EquivalentObjectHints
         return !values.contains(value);
     }
 
+    /**
+     * Builds a Bloom filter over all the values of a field in the database, so that values that
+     * are definitely not present can be spotted without holding all the values in memory. The
+     * filter is sized from the class count in the ObjectStoreSummary, falling back to counting
+     * the rows of the class if there is no summary, and the values are streamed into it in
+     * batches. If the class has too many rows, an AlwaysSet is returned instead. A summary that
+     * is out of date only raises the false positive rate of the filter, which costs extra primary
+     * key queries but never gives a wrong answer.
+     *
+     * @param qc the QueryClass for the class
+     * @param qs the QueryEvaluable for the field
+     * @return a Set that returns false from contains only for values not in the database
+     * @throws ObjectStoreException if something goes wrong
+     */
+    private Set<Object> buildBloomFilter(QueryClass qc, QueryEvaluable qs)
+        throws ObjectStoreException {
+        int rowCount = getClassCount(qc.getType());
+        if (rowCount < 0) {
+            Query countQuery = new Query();
+            countQuery.addFrom(qc);
+            countQuery.addToSelect(new QueryField(qc, "id"));
+            countQuery.setDistinct(false);
+            rowCount = os.count(countQuery, ObjectStore.SEQUENCE_IGNORE);
+        }
+        if (rowCount > BLOOM_FILTER_MAX_ENTRIES) {
+            LOG.info("Not building Bloom filter for " + qs + " - " + rowCount + " rows is more "
+                    + "than the maximum of " + BLOOM_FILTER_MAX_ENTRIES);
+            return AlwaysSet.getInstance();
+        }
+        BloomFilterSet<Object> filter = new BloomFilterSet<Object>(rowCount,
+                BLOOM_FILTER_FALSE_POSITIVE_RATE);
+        Query q = new Query();
+        q.addFrom(qc);
+        q.addToSelect(qs);
+        q.setDistinct(true);
+        Results results = os.execute(q, BLOOM_FILTER_BATCH_SIZE, false, false, false);
+        for (Object row : results) {
+            filter.add(((List<?>) row).get(0));
+        }
+        return filter;
+    }
+
+    /**
+     * Returns the number of instances of a class recorded in the ObjectStoreSummary of the
+     * database, reading the summary from the database metadata the first time.
+     *
+     * @param clazz the class
+     * @return the number of instances, or -1 if there is no summary or the class is not in it
+     */
+    private int getClassCount(Class<?> clazz) {
+        if (!summaryChecked) {
+            summaryChecked = true;
+            if (os instanceof ObjectStoreInterMineImpl) {
+                try {
+                    String summaryString = MetadataManager.retrieve(
+                            ((ObjectStoreInterMineImpl) os).getDatabase(),
+                            MetadataManager.OS_SUMMARY);
+                    if (summaryString != null) {
+                        Properties summaryProperties = new Properties();
+                        summaryProperties.load(new StringReader(summaryString));
+                        summary = new ObjectStoreSummary(summaryProperties);
+                    }
+                } catch (SQLException e) {
+                    LOG.warn("Error reading the ObjectStoreSummary, counting rows instead", e);
+                } catch (IOException e) {
+                    LOG.warn("Error reading the ObjectStoreSummary, counting rows instead", e);
+                }
+            }
+        }
+        if (summary == null) {
+            return -1;
+        }
+        try {
+            return summary.getClassCount(clazz.getName());
+        } catch (RuntimeException e) {
+            // the summary was made before this class was in the model
+            return -1;
+        }
+    }
+
     /**
      * Returns a Set of values that have been tested for a particular class and fieldname.
      *
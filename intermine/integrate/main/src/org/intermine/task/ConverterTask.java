@@ -31,6 +31,7 @@ public class ConverterTask extends DynamicAttributeTask
     private String modelName = null;
     private String osName;
     private String excludeList;
+    private String itemsFile;
 
     /**
      * Set the objectstore name
@@ -40,6 +41,24 @@ public class ConverterTask extends DynamicAttributeTask
         this.osName = osName;
     }
 
+    /**
+     * Set a file to write Items to in the binary items format, instead of storing them in the
+     * items objectstore. The file can be loaded with the insert-binary-items task. The source
+     * project targets set this when use.binary.items is true.
+     * @param itemsFile the name of the file, or an empty string to use the items objectstore
+     */
+    public void setItemsFile(String itemsFile) {
+        this.itemsFile = ("".equals(itemsFile) ? null : itemsFile);
+    }
+
+    /**
+     * Return the file set by setItemsFile().
+     * @return the file name, or null if Items are stored in the items objectstore
+     */
+    public String getItemsFile() {
+        return itemsFile;
+    }
+
     /**
      * Sets the list of classes to NOT try and convert
      * @param excludeList the suitably formatted list of classes to exclude.
@@ -12,6 +12,7 @@ package org.intermine.task;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -46,6 +47,7 @@ import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 import org.apache.log4j.Logger;
 import org.apache.tools.ant.BuildException;
@@ -77,6 +79,12 @@ public class CreateIndexesTask extends Task
     private Set<String> indexesMade = Collections.synchronizedSet(new HashSet<String>());
     private static final int POSTGRESQL_INDEX_NAME_LIMIT = 63;
     private int extraThreads = 3;
+    private boolean concurrent = false;
+    private boolean resume = false;
+    private Set<String> validIndexes = Collections.emptySet();
+    private Map<String, Long> indexTimes = Collections.synchronizedMap(
+            new HashMap<String, Long>());
+    private volatile RuntimeException workerFailure = null;
     private ObjectStore objectStore;
 
     /**
@@ -123,6 +131,30 @@ public class CreateIndexesTask extends Task
         this.extraThreads = extraThreads;
     }
 
+    /**
+     * Set the concurrent flag.  If true, indexes are created with CREATE INDEX CONCURRENTLY, which
+     * does not lock out writes to the table, so it can be used on a live production database.
+     * Concurrent index builds take longer overall.
+     *
+     * @param concurrent flag for concurrent index creation
+     */
+    public void setConcurrent(boolean concurrent) {
+        this.concurrent = concurrent;
+    }
+
+    /**
+     * Set the resume flag.  If true, any index that already exists with the name of an index that
+     * would be created, and that postgres reports as valid, is left alone rather than being
+     * dropped and recreated.  Invalid indexes, such as those left by an interrupted concurrent
+     * build, are still dropped and rebuilt.  Use this to restart a run that failed part way
+     * through.
+     *
+     * @param resume flag for skipping existing valid indexes
+     */
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
     /**
      * Sets up the instance variables
      *
@@ -186,8 +218,6 @@ public class CreateIndexesTask extends Task
 
         checkForIndexNameClashes(statements);
 
-        IndexStatement indexStatement = null;
-
         Map<String, Set<String>> existingIndexes = new HashMap<String, Set<String>>();
 
         try {
@@ -221,9 +251,18 @@ public class CreateIndexesTask extends Task
                 existingIndexes.put(cld.getName(), indexNames);
             }
 
+            if (resume) {
+                validIndexes = getValidIndexNames(c);
+            }
+
+            // Start with the classes whose indexes are on the biggest tables, so that the longest
+            // index builds don't end up running on their own at the end
+            List<Map.Entry<String, Map<String, IndexStatement>>> cldEntries =
+                sortByTableSize(clds, getTableSizes(c));
+
             Iterator<Map.Entry<String, Map<String, IndexStatement>>> cldsIter =
-                new SynchronisedIterator<Map.Entry<String, Map<String, IndexStatement>>>(clds
-                        .entrySet().iterator());
+                new SynchronisedIterator<Map.Entry<String, Map<String, IndexStatement>>>(cldEntries
+                        .iterator());
             Set<Integer> threads = new HashSet<Integer>();
 
             synchronized (threads) {
@@ -237,20 +276,7 @@ public class CreateIndexesTask extends Task
 
             try {
                 while (cldsIter.hasNext()) {
-                    Map.Entry<String, Map<String, IndexStatement>> cldEntry = cldsIter.next();
-                    String cldName = cldEntry.getKey();
-                    LOG.info("Thread 0 processing class " + cldName);
-                    for (Map.Entry<String, IndexStatement> statementEntry : cldEntry.getValue()
-                            .entrySet()) {
-                        Set<String> existingCldIndexes = existingIndexes.get(cldName);
-                        String indexName = statementEntry.getKey();
-                        indexStatement = statementEntry.getValue();
-                        if (existingCldIndexes != null
-                                && existingCldIndexes.contains(indexName)) {
-                            dropIndex(indexName, 0);
-                        }
-                        createIndex(c, indexName, indexStatement, 0);
-                    }
+                    createIndexesForClass(c, cldsIter.next(), existingIndexes, 0);
                 }
             } catch (NoSuchElementException e) {
                 // This is fine - just a consequence of concurrent access to the iterator. It means
@@ -264,13 +290,15 @@ public class CreateIndexesTask extends Task
                 }
             }
             LOG.info("All threads finished");
-        } catch (Exception e) {
-            String message = "Error creating indexes";
-            if (indexStatement != null) {
-                message = "Error creating indexes for " + indexStatement.getTableName() + "("
-                    + indexStatement.getColumnNames() + ")";
+            if (workerFailure != null) {
+                throw workerFailure;
             }
-            throw new BuildException(message, e);
+            logIndexTimes();
+        } catch (BuildException e) {
+            // already says which table and columns failed
+            throw e;
+        } catch (Exception e) {
+            throw new BuildException("Error creating indexes", e);
         } finally {
             if (c != null) {
                 try {
@@ -311,20 +339,7 @@ public class CreateIndexesTask extends Task
                     conn = database.getConnection();
                     conn.setAutoCommit(true);
                     while (cldsIter.hasNext()) {
-                        Map.Entry<String, Map<String, IndexStatement>> cldEntry = cldsIter.next();
-                        String cldName = cldEntry.getKey();
-                        Set<String> existingCldIndexes = existingIndexes.get(cldName);
-                        LOG.info("Thread " + threadNo + " processing class " + cldName);
-                        for (Map.Entry<String, IndexStatement> statementEntry : cldEntry.getValue()
-                                .entrySet()) {
-                            String indexName = statementEntry.getKey();
-                            IndexStatement st = statementEntry.getValue();
-                            if (existingCldIndexes != null
-                                    && existingCldIndexes.contains(indexName)) {
-                                dropIndex(indexName, threadNo);
-                            }
-                            createIndex(conn, indexName, st, threadNo);
-                        }
+                        createIndexesForClass(conn, cldsIter.next(), existingIndexes, threadNo);
                     }
                 } catch (NoSuchElementException e) {
                     // empty
@@ -343,10 +358,155 @@ public class CreateIndexesTask extends Task
                 }
             } catch (SQLException e) {
                 LOG.error("Thread " + threadNo + " failed", e);
+            } catch (RuntimeException e) {
+                LOG.error("Thread " + threadNo + " failed", e);
+                workerFailure = e;
             }
         }
     }
 
+    /**
+     * Create all the indexes for one class, dropping any existing index of the same name first
+     * unless it is a valid index and resume is set.
+     *
+     * @param conn a Connection
+     * @param cldEntry the class name and its index statements
+     * @param existingIndexes a map from class name to the names of existing indexes
+     * @param threadNo the number of the calling thread
+     */
+    private void createIndexesForClass(Connection conn,
+            Map.Entry<String, Map<String, IndexStatement>> cldEntry,
+            Map<String, Set<String>> existingIndexes, int threadNo) {
+        String cldName = cldEntry.getKey();
+        Set<String> existingCldIndexes = existingIndexes.get(cldName);
+        LOG.info("Thread " + threadNo + " processing class " + cldName);
+        for (Map.Entry<String, IndexStatement> statementEntry : cldEntry.getValue().entrySet()) {
+            String indexName = statementEntry.getKey();
+            IndexStatement st = statementEntry.getValue();
+            if (validIndexes.contains(indexName)) {
+                LOG.info("Thread " + threadNo + " skipping existing valid index: " + indexName);
+                markIndexDone(indexName, st);
+                continue;
+            }
+            try {
+                if (existingCldIndexes != null && existingCldIndexes.contains(indexName)) {
+                    dropIndex(indexName, threadNo);
+                }
+                createIndex(conn, indexName, st, threadNo);
+            } catch (RuntimeException e) {
+                throw new BuildException("Error creating indexes for " + st.getTableName() + "("
+                        + st.getColumnNames() + ")", e);
+            }
+        }
+    }
+
+    /**
+     * Order the classes so that those whose indexes are on the largest tables come first.  The
+     * size of a class is the sum of the sizes of the tables its index statements refer to.
+     *
+     * @param clds a Map from class name to the index statements for that class
+     * @param tableSizes a Map from table name to table size
+     * @return a List of the entries of clds, largest first
+     */
+    protected static List<Map.Entry<String, Map<String, IndexStatement>>> sortByTableSize(
+            Map<String, Map<String, IndexStatement>> clds, Map<String, Long> tableSizes) {
+        final Map<String, Long> cldSizes = new HashMap<String, Long>();
+        for (Map.Entry<String, Map<String, IndexStatement>> cldEntry : clds.entrySet()) {
+            long size = 0;
+            for (IndexStatement st : cldEntry.getValue().values()) {
+                Long tableSize = tableSizes.get(st.getTableName());
+                if (tableSize != null) {
+                    size += tableSize.longValue();
+                }
+            }
+            cldSizes.put(cldEntry.getKey(), new Long(size));
+        }
+        List<Map.Entry<String, Map<String, IndexStatement>>> retval =
+            new ArrayList<Map.Entry<String, Map<String, IndexStatement>>>(clds.entrySet());
+        // Collections.sort is stable, so equal sized classes stay in name order
+        Collections.sort(retval, new Comparator<Map.Entry<String, Map<String, IndexStatement>>>() {
+            @Override
+            public int compare(Map.Entry<String, Map<String, IndexStatement>> o1,
+                    Map.Entry<String, Map<String, IndexStatement>> o2) {
+                return cldSizes.get(o2.getKey()).compareTo(cldSizes.get(o1.getKey()));
+            }
+        });
+        return retval;
+    }
+
+    /**
+     * Fetch the size in pages of every table from the postgres catalog statistics.
+     *
+     * @param conn a Connection
+     * @return a Map from lower case table name to number of pages
+     * @throws SQLException if an error occurs
+     */
+    protected Map<String, Long> getTableSizes(Connection conn) throws SQLException {
+        Map<String, Long> retval = new HashMap<String, Long>();
+        Statement s = conn.createStatement();
+        try {
+            ResultSet r = s.executeQuery("SELECT relname, relpages FROM pg_class"
+                    + " WHERE relkind = 'r'");
+            while (r.next()) {
+                retval.put(r.getString(1).toLowerCase(), new Long(r.getLong(2)));
+            }
+        } finally {
+            s.close();
+        }
+        return retval;
+    }
+
+    /**
+     * Fetch the names of all indexes that postgres reports as valid.
+     *
+     * @param conn a Connection
+     * @return a Set of lower case index names
+     * @throws SQLException if an error occurs
+     */
+    protected Set<String> getValidIndexNames(Connection conn) throws SQLException {
+        Set<String> retval = new HashSet<String>();
+        Statement s = conn.createStatement();
+        try {
+            ResultSet r = s.executeQuery("SELECT c.relname FROM pg_index i, pg_class c"
+                    + " WHERE c.oid = i.indexrelid AND i.indisvalid");
+            while (r.next()) {
+                retval.add(r.getString(1).toLowerCase());
+            }
+        } finally {
+            s.close();
+        }
+        return retval;
+    }
+
+    /**
+     * Log the total time spent creating indexes, and the slowest indexes.
+     */
+    private void logIndexTimes() {
+        List<Map.Entry<String, Long>> times;
+        synchronized (indexTimes) {
+            times = new ArrayList<Map.Entry<String, Long>>(indexTimes.entrySet());
+        }
+        Collections.sort(times, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+                return o2.getValue().compareTo(o1.getValue());
+            }
+        });
+        long total = 0;
+        for (Map.Entry<String, Long> time : times) {
+            total += time.getValue().longValue();
+        }
+        StringBuilder message = new StringBuilder("Created " + times.size() + " indexes in "
+                + total + " ms of index build time. Slowest:");
+        for (Map.Entry<String, Long> time : times.subList(0, Math.min(SLOWEST_TO_LOG,
+                        times.size()))) {
+            message.append("\n    " + time.getKey() + ": " + time.getValue() + " ms");
+        }
+        LOG.info(message.toString());
+    }
+
+    private static final int SLOWEST_TO_LOG = 20;
+
     private static final int MAX_ITERATIONS = 10;
 
     /**
@@ -614,18 +774,65 @@ public class CreateIndexesTask extends Task
         }
         if (!indexesForTable.contains(indexStatement.getColumnNames())) {
             try {
-                execute(conn, indexStatement.getStatementString(indexName));
+                long start = System.currentTimeMillis();
+                execute(conn, indexStatement.getStatementString(indexName, concurrent));
+                long time = System.currentTimeMillis() - start;
+                indexTimes.put(indexName, new Long(time));
+                LOG.info("Thread " + threadNo + " created index " + indexName + " in " + time
+                        + " ms");
             } catch (SQLException e) {
                 // ignore - we just don't create this index
                 LOG.info("failed to create index " + indexName + " for " + tableName + "("
                         + indexStatement.getColumnNames() + ")", e);
                 System.err .println("Failed to create index " + indexName);
+                if (concurrent) {
+                    dropInvalidIndex(conn, indexName, threadNo);
+                }
+                return;
             }
         }
         indexesForTable.add(indexStatement.getColumnNames());
         indexesMade.add(indexName);
     }
 
+    /**
+     * Drop the index left behind by a failed CREATE INDEX CONCURRENTLY.  Postgres keeps such an
+     * index, marked invalid, and goes on updating it on every write to the table.
+     *
+     * @param conn a Connection
+     * @param indexName the index name
+     * @param threadNo the number of the calling thread
+     */
+    private void dropInvalidIndex(Connection conn, String indexName, int threadNo) {
+        try {
+            LOG.info("Thread " + threadNo + " dropping invalid index: " + indexName);
+            execute(conn, "drop index if exists " + indexName);
+        } catch (SQLException e) {
+            throw new BuildException("Failed to drop invalid index " + indexName + " left by a"
+                    + " failed concurrent build", e);
+        }
+    }
+
+    /**
+     * Record that an index exists without creating it, so that it is neither dropped nor
+     * duplicated later in the run.
+     *
+     * @param indexName the index name
+     * @param indexStatement the IndexStatement
+     */
+    private void markIndexDone(String indexName, IndexStatement indexStatement) {
+        String tableName = indexStatement.getTableName();
+        synchronized (tableIndexesDone) {
+            Set<String> indexesForTable = tableIndexesDone.get(tableName);
+            if (indexesForTable == null) {
+                indexesForTable = Collections.synchronizedSet(new HashSet<String>());
+                tableIndexesDone.put(tableName, indexesForTable);
+            }
+            indexesForTable.add(indexStatement.getColumnNames());
+        }
+        indexesMade.add(indexName);
+    }
+
     /**
      * Execute an sql statement.
      *
@@ -703,6 +910,17 @@ class IndexStatement
      * @return the SQL String
      */
     String getStatementString(String indexName) {
-        return "create index " + indexName + " on " + tableName + "(" + columnNames + ")";
+        return getStatementString(indexName, false);
+    }
+
+    /**
+     * Return the SQL String to use to create the index, optionally without locking out writes.
+     * @param indexName the index name to substitute into the statement.
+     * @param concurrent if true, create the index concurrently
+     * @return the SQL String
+     */
+    String getStatementString(String indexName, boolean concurrent) {
+        return "create index " + (concurrent ? "concurrently " : "") + indexName + " on "
+            + tableName + "(" + columnNames + ")";
     }
 }
@@ -11,9 +11,11 @@ package org.intermine.task;
  */
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.lang.reflect.Constructor;
 
 import org.apache.tools.ant.BuildException;
+import org.intermine.dataconversion.BinaryItemWriter;
 import org.intermine.dataconversion.DirectoryConverter;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.dataconversion.ObjectStoreItemWriter;
@@ -68,8 +70,8 @@ public class DirectoryConverterTask extends ConverterTask
         if (clsName == null) {
             throw new BuildException("clsName attribute is not set");
         }
-        if (getOsName() == null) {
-            throw new BuildException("osName attribute is not set");
+        if (getOsName() == null && getItemsFile() == null) {
+            throw new BuildException("one of osName or itemsFile must be set");
         }
         if (getModelName() == null) {
             throw new BuildException("modelName attribute is not set");
@@ -83,8 +85,12 @@ public class DirectoryConverterTask extends ConverterTask
         ItemWriter writer = null;
         try {
             Model model = Model.getInstanceByName(getModelName());
-            osw = ObjectStoreWriterFactory.getObjectStoreWriter(getOsName());
-            writer = new ObjectStoreItemWriter(osw);
+            if (getItemsFile() == null) {
+                osw = ObjectStoreWriterFactory.getObjectStoreWriter(getOsName());
+                writer = new ObjectStoreItemWriter(osw);
+            } else {
+                writer = new BinaryItemWriter(new FileOutputStream(getItemsFile()));
+            }
 
             Class c = Class.forName(clsName);
             if (!DirectoryConverter.class.isAssignableFrom(c)) {
@@ -116,7 +122,7 @@ public class DirectoryConverterTask extends ConverterTask
                 if (writer != null) {
                     writer.close();
                 }
-                if (writer != null) {
+                if (osw != null) {
                     osw.close();
                 }
             } catch (Exception e) {
@@ -124,10 +130,12 @@ public class DirectoryConverterTask extends ConverterTask
             }
         }
 
-        try {
-            doSQL(osw.getObjectStore());
-        } catch (Exception e) {
-            throw new BuildException(e);
+        if (osw != null) {
+            try {
+                doSQL(osw.getObjectStore());
+            } catch (Exception e) {
+                throw new BuildException(e);
+            }
         }
     }
 
@@ -0,0 +1,204 @@
+package org.intermine.dataconversion;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.intermine.model.fulldata.Attribute;
+import org.intermine.model.fulldata.Item;
+import org.intermine.model.fulldata.Reference;
+import org.intermine.model.fulldata.ReferenceList;
+
+public class BinaryItemWriterTest extends TestCase
+{
+    public BinaryItemWriterTest(String arg1) {
+        super(arg1);
+    }
+
+    public void testRoundTrip() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryItemWriter writer = new BinaryItemWriter(out);
+        Item gene = createItem("1_3", "Gene", null);
+        addAttribute(gene, "symbol", "eve");
+        addAttribute(gene, "description", "café α-helix");
+        addAttribute(gene, "empty", "");
+        addReference(gene, "organism", "0_1");
+        addCollection(gene, "synonyms", "2_10 2_11 odd-identifier");
+        Item organism = createItem("0_1", "Organism", null);
+        addAttribute(organism, "taxonId", "7227");
+        Item other = createItem("weird", "", "Gene Protein");
+        addCollection(other, "empty", "");
+        assertEquals(new Integer(0), writer.store(gene));
+        assertEquals(new Integer(1), writer.store(organism));
+        assertEquals(new Integer(2), writer.store(other));
+        assertEquals(new Integer(1), organism.getId());
+        assertEquals(3, writer.getItemCount());
+        writer.close();
+
+        List<Item> items = BinaryItemReader.readAll(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(3, items.size());
+        assertEquals(describe(gene), describe(items.get(0)));
+        assertEquals(describe(organism), describe(items.get(1)));
+        assertEquals(describe(other), describe(items.get(2)));
+    }
+
+    public void testExtras() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryItemWriter writer = new BinaryItemWriter(out);
+        Integer first = writer.store(createItem("0_1", "Gene", null));
+        writer.store(createItem("0_2", "Gene", null));
+        Attribute att = new Attribute();
+        att.setName("symbol");
+        att.setValue("zen");
+        writer.store(att, first);
+        Reference ref = new Reference();
+        ref.setName("organism");
+        ref.setRefId("1_1");
+        writer.store(ref, first);
+        ReferenceList refs = new ReferenceList();
+        refs.setName("pathways");
+        refs.setRefIds("2_1 2_2");
+        writer.store(refs, first);
+        try {
+            writer.store(att, new Integer(5));
+            fail("Expected an exception for an Item that has not been stored");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        writer.close();
+
+        BinaryItemReader reader = new BinaryItemReader(
+                new ByteArrayInputStream(out.toByteArray()));
+        int extras = 0;
+        Item item = reader.next();
+        while (item != null) {
+            if (reader.isExtra()) {
+                assertEquals(0, reader.getItemNumber());
+                assertNull(item.getIdentifier());
+                extras++;
+            }
+            item = reader.next();
+        }
+        assertEquals(3, extras);
+
+        List<Item> items = BinaryItemReader.readAll(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(2, items.size());
+        assertEquals("0_1 Gene null {symbol=zen} {organism=1_1} {pathways=2_1 2_2}",
+                describe(items.get(0)));
+        assertEquals("0_2 Gene null {} {} {}", describe(items.get(1)));
+    }
+
+    public void testReadAt() throws Exception {
+        File file = File.createTempFile("binaryitems", ".dat");
+        try {
+            BinaryItemWriter writer = new BinaryItemWriter(new FileOutputStream(file));
+            for (int i = 0; i < 100; i++) {
+                Item item = createItem("0_" + i, (i % 2 == 0 ? "Gene" : "Protein"), null);
+                addAttribute(item, "symbol", "symbol" + i);
+                addReference(item, "organism", "1_" + (i % 3));
+                writer.store(item);
+            }
+            writer.close();
+
+            BinaryItemReader reader = new BinaryItemReader(new FileInputStream(file));
+            List<Long> positions = new ArrayList<Long>();
+            List<String> descriptions = new ArrayList<String>();
+            Item item = reader.next();
+            while (item != null) {
+                positions.add(new Long(reader.getPosition()));
+                descriptions.add(describe(item));
+                item = reader.next();
+            }
+            reader.close();
+            assertEquals(100, positions.size());
+
+            RandomAccessFile randomAccess = new RandomAccessFile(file, "r");
+            try {
+                for (int i = 99; i >= 0; i -= 7) {
+                    assertEquals(descriptions.get(i),
+                            describe(reader.readAt(randomAccess, positions.get(i).longValue())));
+                }
+            } finally {
+                randomAccess.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testNotBinaryItems() throws Exception {
+        try {
+            new BinaryItemReader(new ByteArrayInputStream("<items>".getBytes("UTF-8")));
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static Item createItem(String identifier, String className, String implementations) {
+        Item item = new Item();
+        item.setIdentifier(identifier);
+        item.setClassName(className);
+        item.setImplementations(implementations);
+        return item;
+    }
+
+    private static void addAttribute(Item item, String name, String value) {
+        Attribute a = new Attribute();
+        a.setName(name);
+        a.setValue(value);
+        item.getAttributes().add(a);
+    }
+
+    private static void addReference(Item item, String name, String refId) {
+        Reference r = new Reference();
+        r.setName(name);
+        r.setRefId(refId);
+        item.getReferences().add(r);
+    }
+
+    private static void addCollection(Item item, String name, String refIds) {
+        ReferenceList r = new ReferenceList();
+        r.setName(name);
+        r.setRefIds(refIds);
+        item.getCollections().add(r);
+    }
+
+    private static String describe(Item item) {
+        Map<String, String> attributes = new TreeMap<String, String>();
+        for (Attribute a : item.getAttributes()) {
+            attributes.put(a.getName(), a.getValue());
+        }
+        Map<String, String> references = new TreeMap<String, String>();
+        for (Reference r : item.getReferences()) {
+            references.put(r.getName(), r.getRefId());
+        }
+        Map<String, String> collections = new TreeMap<String, String>();
+        for (ReferenceList r : item.getCollections()) {
+            collections.put(r.getName(), r.getRefIds());
+        }
+        return item.getIdentifier() + " " + item.getClassName() + " "
+            + item.getImplementations() + " " + attributes + " " + references + " "
+            + collections;
+    }
+}
@@ -178,6 +178,38 @@ public class ItemToObjectTranslatorTest extends QueryTestCase
         }
     }
 
+    public void testIdentifierToId() throws Exception {
+        translator.idToNamespace.put(new Integer(100), "cod");
+        translator.namespaceToId.put("cod", new Integer(100));
+        assertEquals(new Integer(5), translator.identifierToId("fish_5"));
+        assertEquals(new Integer(105), translator.identifierToId("cod_5"));
+        assertEquals(new Integer(12), translator.identifierToId("fish_12"));
+        assertNull(translator.identifierToId(null));
+        try {
+            translator.identifierToId("fish5");
+            fail("Expected RuntimeException");
+        } catch (RuntimeException e) {
+        }
+        try {
+            translator.identifierToId("haddock_5");
+            fail("Expected RuntimeException");
+        } catch (RuntimeException e) {
+        }
+        try {
+            translator.identifierToId("fish_5x");
+            fail("Expected NumberFormatException");
+        } catch (NumberFormatException e) {
+        }
+    }
+
+    public void testRefIdsToIntegers() throws Exception {
+        Set<Integer> expected = new HashSet<Integer>();
+        expected.add(new Integer(3));
+        expected.add(new Integer(4));
+        assertEquals(expected, new HashSet<Integer>(translator.refIdsToIntegers(" fish_3\tfish_4 fish_3 ")));
+        assertTrue(translator.refIdsToIntegers("").isEmpty());
+    }
+
     public void testTranslateFromDbObject() throws Exception {
         Item dbItem = new Item();
         dbItem.setClassName("Department");
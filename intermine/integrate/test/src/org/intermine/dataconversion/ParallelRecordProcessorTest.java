@@ -0,0 +1,92 @@
+package org.intermine.dataconversion;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class ParallelRecordProcessorTest extends TestCase
+{
+    public ParallelRecordProcessorTest(String arg1) {
+        super(arg1);
+    }
+
+    private List<Integer> records(int count) {
+        List<Integer> retval = new ArrayList<Integer>();
+        for (int i = 0; i < count; i++) {
+            retval.add(new Integer(i));
+        }
+        return retval;
+    }
+
+    public void testOrderPreserved() throws Exception {
+        final List<String> handled = new ArrayList<String>();
+        ParallelRecordProcessor<Integer, String> processor =
+            new ParallelRecordProcessor<Integer, String>(4) {
+                protected String parse(Integer record) throws Exception {
+                    // Make later records finish first
+                    Thread.sleep((1000 - record.intValue()) % 7);
+                    return "record" + record;
+                }
+
+                protected void handle(String parsed) {
+                    handled.add(parsed);
+                }
+            };
+        processor.process(records(1000).iterator());
+        assertEquals(1000, handled.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("record" + i, handled.get(i));
+        }
+    }
+
+    public void testSingleThread() throws Exception {
+        final List<Integer> handled = new ArrayList<Integer>();
+        ParallelRecordProcessor<Integer, Integer> processor =
+            new ParallelRecordProcessor<Integer, Integer>(1) {
+                protected Integer parse(Integer record) {
+                    return new Integer(record.intValue() * 2);
+                }
+
+                protected void handle(Integer parsed) {
+                    handled.add(parsed);
+                }
+            };
+        processor.process(records(3).iterator());
+        assertEquals("[0, 2, 4]", handled.toString());
+    }
+
+    public void testParseException() throws Exception {
+        final List<Integer> handled = new ArrayList<Integer>();
+        ParallelRecordProcessor<Integer, Integer> processor =
+            new ParallelRecordProcessor<Integer, Integer>(3) {
+                protected Integer parse(Integer record) throws Exception {
+                    if (record.intValue() == 50) {
+                        throw new IllegalStateException("bad record 50");
+                    }
+                    return record;
+                }
+
+                protected void handle(Integer parsed) {
+                    handled.add(parsed);
+                }
+            };
+        try {
+            processor.process(records(100).iterator());
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("bad record 50", e.getMessage());
+        }
+        assertEquals(50, handled.size());
+    }
+}
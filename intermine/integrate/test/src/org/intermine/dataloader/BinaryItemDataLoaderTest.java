@@ -0,0 +1,218 @@
+package org.intermine.dataloader;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.intermine.dataconversion.BinaryItemWriter;
+import org.intermine.metadata.Model;
+import org.intermine.metadata.TypeUtil;
+import org.intermine.metadata.Util;
+import org.intermine.model.FastPathObject;
+import org.intermine.model.InterMineObject;
+import org.intermine.objectstore.proxy.ProxyReference;
+import org.intermine.xml.full.FullRenderer;
+import org.intermine.xml.full.Item;
+import org.intermine.xml.full.ItemFactory;
+import org.intermine.xml.full.ItemHelper;
+import org.intermine.xml.full.Reference;
+
+/**
+ * Loads the same Items with the XmlDataLoader and the BinaryItemDataLoader, into an
+ * IntegrationWriter that records what is stored, and checks that the same objects are stored.
+ */
+public class BinaryItemDataLoaderTest extends TestCase
+{
+    private final Model model = Model.getInstanceByName("testmodel");
+    private File file;
+
+    public BinaryItemDataLoaderTest(String arg) {
+        super(arg);
+    }
+
+    public void tearDown() throws Exception {
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    public void testLoadMatchesXmlLoader() throws Exception {
+        ItemFactory factory = new ItemFactory(model);
+        // the department is before the company and employees it refers to, so they are read
+        // from the file as skeletons
+        Item department = factory.makeItem("2_1", "Department", "");
+        department.setAttribute("name", "Sales");
+        department.setReference("company", "1_1");
+        department.setCollection("employees", Arrays.asList("3_1", "3_2"));
+        Item company = factory.makeItem("1_1", "Company", "");
+        company.setAttribute("name", "Wernham Hogg");
+        company.setAttribute("vatNumber", "1234");
+        company.setReference("address", "0_5");
+        company.setReference("CEO", "4_1");
+        Item address = factory.makeItem("0_5", "Address", "");
+        address.setAttribute("address", "Slough");
+        Item tim = factory.makeItem("3_1", "Employee", "");
+        tim.setAttribute("name", "Tim Canterbury");
+        tim.setAttribute("age", "30");
+        tim.setAttribute("fullTime", "true");
+        tim.setReference("department", "2_1");
+        Item gareth = factory.makeItem("3_2", "Employee", "");
+        gareth.setAttribute("name", "Gareth Keenan");
+        gareth.setAttribute("end", "é α 😀");
+        Item ceo = factory.makeItem("4_1", "CEO", "");
+        ceo.setAttribute("name", "Jennifer Taylor-Clarke");
+        ceo.setAttribute("salary", "100000");
+        ceo.setReference("company", "1_1");
+        List<Item> items = Arrays.asList(department, company, address, tim, gareth, ceo);
+
+        file = File.createTempFile("items", ".bin");
+        BinaryItemWriter writer = new BinaryItemWriter(new FileOutputStream(file));
+        for (Item item : items) {
+            if (item == gareth) {
+                // stored without the department, which is added afterwards
+                Item copy = factory.makeItem("3_2", "Employee", "");
+                copy.setAttribute("name", "Gareth Keenan");
+                copy.setAttribute("end", "é α 😀");
+                Integer id = writer.store(ItemHelper.convert(copy));
+                writer.store(ItemHelper.convert(new Reference("department", "2_1")), id);
+                gareth.setReference("department", "2_1");
+            } else {
+                writer.store(ItemHelper.convert(item));
+            }
+        }
+        writer.close();
+
+        RecordingWriter xmlRecorder = new RecordingWriter();
+        XmlDataLoader xmlLoader = new XmlDataLoader(xmlRecorder.getWriter());
+        xmlLoader.processXml(new ByteArrayInputStream(FullRenderer.render(items)
+                    .getBytes("UTF-8")), new Source("test"), new Source("test", true));
+
+        RecordingWriter binaryRecorder = new RecordingWriter();
+        BinaryItemDataLoader binaryLoader = new BinaryItemDataLoader(binaryRecorder.getWriter());
+        binaryLoader.processFile(file, new Source("test"), new Source("test", true));
+
+        assertEquals(6, xmlRecorder.stored.size());
+        assertEquals(xmlRecorder.describeAll(), binaryRecorder.describeAll());
+        // the objects refer to each other by id, so ids must be unique
+        assertEquals(6, binaryRecorder.byId.size());
+    }
+
+    public void testBadReference() throws Exception {
+        ItemFactory factory = new ItemFactory(model);
+        Item employee = factory.makeItem("3_1", "Employee", "");
+        employee.setReference("department", "2_1");
+        file = File.createTempFile("items", ".bin");
+        BinaryItemWriter writer = new BinaryItemWriter(new FileOutputStream(file));
+        writer.store(ItemHelper.convert(employee));
+        writer.close();
+        BinaryItemDataLoader loader = new BinaryItemDataLoader(new RecordingWriter().getWriter());
+        try {
+            loader.processFile(file, new Source("test"), new Source("test", true));
+            fail("Expected an exception");
+        } catch (RuntimeException e) {
+            // translation errors are wrapped as they are for the items database
+            assertTrue(e.getMessage(), e.getMessage().contains("2_1"));
+        }
+    }
+
+    /**
+     * An IntegrationWriter that only remembers the objects stored in it.
+     */
+    private class RecordingWriter implements InvocationHandler
+    {
+        private final List<FastPathObject> stored = new ArrayList<FastPathObject>();
+        private final Map<Integer, FastPathObject> byId = new HashMap<Integer, FastPathObject>();
+        private final IntegrationWriter writer = (IntegrationWriter) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[] {IntegrationWriter.class}, this);
+
+        IntegrationWriter getWriter() {
+            return writer;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if ("getObjectStore".equals(name)) {
+                return writer;
+            } else if ("getModel".equals(name)) {
+                return model;
+            } else if ("store".equals(name)) {
+                FastPathObject o = (FastPathObject) args[0];
+                stored.add(o);
+                if (o instanceof InterMineObject) {
+                    byId.put(((InterMineObject) o).getId(), o);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Describes the stored objects, with references and collections described by the name
+         * of the objects they refer to, as the two loaders give the objects different ids.
+         */
+        List<String> describeAll() throws Exception {
+            List<String> ret = new ArrayList<String>();
+            for (FastPathObject o : stored) {
+                ret.add(describe(o));
+            }
+            return ret;
+        }
+
+        private String describe(FastPathObject o) throws Exception {
+            Map<String, Object> fields = new TreeMap<String, Object>();
+            for (String field : TypeUtil.getFieldInfos(o.getClass()).keySet()) {
+                if ("id".equals(field)) {
+                    continue;
+                }
+                Object value = o.getFieldProxy(field);
+                if (value instanceof Collection<?>) {
+                    TreeSet<String> names = new TreeSet<String>();
+                    for (Object element : (Collection<?>) value) {
+                        names.add(nameOf(element));
+                    }
+                    if (!names.isEmpty()) {
+                        fields.put(field, names);
+                    }
+                } else if (value instanceof InterMineObject || value instanceof ProxyReference) {
+                    fields.put(field, nameOf(value));
+                } else if (value != null) {
+                    fields.put(field, value);
+                }
+            }
+            return Util.getFriendlyName(o.getClass()) + fields;
+        }
+
+        // the name or address of the stored object that a reference points to
+        private String nameOf(Object value) throws Exception {
+            Integer id = (value instanceof ProxyReference) ? ((ProxyReference) value).getId()
+                : ((InterMineObject) value).getId();
+            FastPathObject o = byId.get(id);
+            assertNotNull("Nothing stored with id " + id, o);
+            Object name = (o.getClass().getSimpleName().startsWith("Address")
+                    ? o.getFieldValue("address") : o.getFieldValue("name"));
+            return String.valueOf(name);
+        }
+    }
+}
@@ -10,10 +10,17 @@ package org.intermine.task;
  *
  */
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import junit.framework.TestCase;
 
@@ -112,6 +119,63 @@ public class CreateIndexesTaskTest extends TestCase
         assertEquals(expected.toString(), getIndexStatementStrings(statements).toString());
     }
 
+    public void testConcurrentStatementString() throws Exception {
+        IndexStatement st = new IndexStatement("ceo", "salary", null, null);
+        assertEquals("create index ceo__salary on ceo(salary)", st.getStatementString("ceo__salary"));
+        assertEquals("create index concurrently ceo__salary on ceo(salary)",
+                st.getStatementString("ceo__salary", true));
+    }
+
+    public void testFailedConcurrentIndex() throws Exception {
+        final List<String> executed = new ArrayList<String>();
+        CreateIndexesTask task = new CreateIndexesTask() {
+            @Override
+            protected void execute(Connection conn, String sql) throws SQLException {
+                executed.add(sql);
+                if (sql.startsWith("create index concurrently ceo__salary")) {
+                    throw new SQLException("deadlock detected");
+                }
+            }
+        };
+        task.setConcurrent(true);
+        task.createIndex(null, "ceo__salary", new IndexStatement("ceo", "salary", null, null), 0);
+        task.createIndex(null, "ceo__age", new IndexStatement("ceo", "age", null, null), 0);
+        assertEquals(Arrays.asList("create index concurrently ceo__salary on ceo(salary)",
+                    "drop index if exists ceo__salary",
+                    "create index concurrently ceo__age on ceo(age)"), executed);
+
+        // only the index that was made is kept
+        executed.clear();
+        task.dropIndex("ceo__salary", 0);
+        task.dropIndex("ceo__age", 0);
+        assertEquals(Arrays.asList("drop index ceo__salary"), executed);
+    }
+
+    public void testSortByTableSize() throws Exception {
+        Map<String, Map<String, IndexStatement>> clds = new TreeMap<String, Map<String, IndexStatement>>();
+        Map<String, IndexStatement> small = new TreeMap<String, IndexStatement>();
+        small.put("company__name", new IndexStatement("company", "name", null, null));
+        clds.put("Company", small);
+        Map<String, IndexStatement> big = new TreeMap<String, IndexStatement>();
+        big.put("employee__name", new IndexStatement("employee", "name", null, null));
+        big.put("employee__age", new IndexStatement("employee", "age", null, null));
+        clds.put("Employee", big);
+        Map<String, IndexStatement> unknown = new TreeMap<String, IndexStatement>();
+        unknown.put("address__address", new IndexStatement("address", "address", null, null));
+        clds.put("Address", unknown);
+
+        Map<String, Long> tableSizes = new HashMap<String, Long>();
+        tableSizes.put("company", new Long(100));
+        tableSizes.put("employee", new Long(60));
+
+        List<String> order = new ArrayList<String>();
+        for (Map.Entry<String, Map<String, IndexStatement>> entry
+                : CreateIndexesTask.sortByTableSize(clds, tableSizes)) {
+            order.add(entry.getKey());
+        }
+        assertEquals(Arrays.asList("Employee", "Company", "Address"), order);
+    }
+
     private Set<String> getIndexStatementStrings(Map<String, IndexStatement> statements) {
         Set<String> retval = new HashSet<String>();
         for (String indexName: statements.keySet()) {
@@ -12,20 +12,72 @@ package org.intermine.webservice.server.jbrowse;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.intermine.api.InterMineAPI;
+import org.intermine.util.DaemonThreadFactory;
+import org.intermine.webservice.server.jbrowse.Commands.Action;
 
 /**
+ * Runs JBrowse commands, passing the results to the listeners.
+ *
+ * <p>
+ * Requests for features are split into aligned tiles, which are fetched on a thread pool shared
+ * by all requests, so that the number of queries running at once is limited however many
+ * requests come in.  A request for a tile that is already being fetched waits for its features
+ * rather than fetching it again, and the features of recently requested tiles are kept, so that
+ * panning the browser mostly reuses the tiles already fetched.  Other commands stream their
+ * results to the listeners as they run.
+ * </p>
  *
  * @author Alex
  *
  */
 public abstract class CommandRunner
 {
+    /** The width in bases of the tiles features are fetched in. **/
+    public static final int TILE_WIDTH = 100000;
+    private static final int MAX_TILES_PER_REQUEST = 20;
+    private static final int MAX_CACHED_TILES = 500;
+    private static final int POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final int QUEUE_SIZE = 1000;
+
+    private static final ExecutorService EXECUTOR = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE,
+            60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(QUEUE_SIZE),
+            new DaemonThreadFactory("JBrowse command runner"),
+            // when the queue is full the request thread runs its own command
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    private static final ConcurrentMap<List<Object>, Future<CommandResult>> RUNNING =
+        new ConcurrentHashMap<List<Object>, Future<CommandResult>>();
+    private static final Map<List<Object>, CommandResult> TILES =
+        new LinkedHashMap<List<Object>, CommandResult>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, CommandResult> eldest) {
+                return size() > MAX_CACHED_TILES;
+            }
+        };
 
     private InterMineAPI api;
 
@@ -110,9 +162,147 @@ public abstract class CommandRunner
     }
 
     /**
+     * Run a command, and pass its results to the listeners.  Requests for features that fit in
+     * a bounded number of tiles are run on the shared thread pool; anything else streams its
+     * results straight to the listeners.
+     *
      * @param command command
      */
     public void run(Command command) {
+        List<Command> tiles = getTiles(command);
+        if (tiles == null) {
+            // stream anything that can't be split into a bounded number of tiles
+            dispatch(command);
+            return;
+        }
+        List<Future<CommandResult>> pending = new ArrayList<Future<CommandResult>>();
+        for (Command tile: tiles) {
+            pending.add(submit(tile));
+        }
+        List<Map<String, Object>> features = new ArrayList<Map<String, Object>>();
+        Set<List<Object>> seen = new HashSet<List<Object>>();
+        Segment segment = command.getSegment();
+        for (Future<CommandResult> future: pending) {
+            for (Map<String, Object> feature: waitFor(future).items) {
+                // features that span tiles are in all of them
+                if (overlaps(feature, segment) && seen.add(Arrays.asList(
+                        feature.get("uniqueID"), feature.get("start"), feature.get("end")))) {
+                    features.add(feature);
+                }
+            }
+        }
+        for (int i = 0; i < features.size(); i++) {
+            onData(features.get(i), i + 1 < features.size());
+        }
+    }
+
+    /**
+     * Split a request for features into aligned tiles.
+     *
+     * @param command command
+     * @return the commands for the tiles, or null if the command can't be split up
+     */
+    static List<Command> getTiles(Command command) {
+        Segment segment = command.getSegment();
+        if (command.getAction() != Action.FEATURES || segment.getSection() == null
+                || segment.getStart() == null || segment.getEnd() == null
+                || segment.getEnd() <= segment.getStart()) {
+            return null;
+        }
+        int first = segment.getStart() / TILE_WIDTH;
+        int last = (segment.getEnd() - 1) / TILE_WIDTH;
+        if (last - first + 1 > MAX_TILES_PER_REQUEST) {
+            return null;
+        }
+        List<Command> tiles = new ArrayList<Command>();
+        for (int tile = first; tile <= last; tile++) {
+            int start = tile * TILE_WIDTH;
+            int end = start + TILE_WIDTH;
+            Map<String, String> params = new HashMap<String, String>();
+            if (command.getParameter("type") != null) {
+                params.put("type", command.getParameter("type"));
+            }
+            params.put("start", String.valueOf(start));
+            params.put("end", String.valueOf(end));
+            tiles.add(new Command(Action.FEATURES, command.getDomain(), command.getType(null),
+                    Segment.makeSegment(segment.getSection(), start, end), params));
+        }
+        return tiles;
+    }
+
+    private static boolean overlaps(Map<String, Object> feature, Segment segment) {
+        Object start = feature.get("start");
+        Object end = feature.get("end");
+        if (!(start instanceof Integer) || !(end instanceof Integer)) {
+            return true;
+        }
+        return (Integer) start < segment.getEnd() && (Integer) end > segment.getStart();
+    }
+
+    private static CommandResult waitFor(Future<CommandResult> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while running command", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Error running command", e.getCause());
+        }
+    }
+
+    /**
+     * Start fetching the features of a tile, unless they are cached or already being fetched.
+     */
+    private Future<CommandResult> submit(final Command tile) {
+        final List<Object> key = Arrays.<Object>asList(getClass().getName(), tile);
+        CommandResult cached;
+        synchronized (TILES) {
+            cached = TILES.get(key);
+        }
+        if (cached != null) {
+            return new CompletedResult(cached);
+        }
+        final FutureTask<CommandResult> task = new FutureTask<CommandResult>(
+                new Callable<CommandResult>() {
+                    @Override
+                    public CommandResult call() {
+                        CommandResult result = record(tile);
+                        synchronized (TILES) {
+                            TILES.put(key, result);
+                        }
+                        return result;
+                    }
+                });
+        Future<CommandResult> running = RUNNING.putIfAbsent(key, task);
+        if (running != null) {
+            return running;
+        }
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    RUNNING.remove(key, task);
+                }
+            }
+        });
+        return task;
+    }
+
+    // Run a command with a new runner, keeping its results.
+    private CommandResult record(Command command) {
+        CommandRunner runner = getRunner(getClass().getName(), api);
+        CommandResult result = new CommandResult();
+        runner.addListener(result);
+        runner.dispatch(command);
+        return result;
+    }
+
+    private void dispatch(Command command) {
         switch (command.getAction()) {
             case STATS:
                 stats(command);
@@ -177,4 +367,60 @@ public abstract class CommandRunner
     public void addListener(MapListener<String, Object> listener) {
         listeners.add(listener);
     }
+
+    /**
+     * The features of a tile, kept so they can be passed to the listeners of any number of
+     * requests.
+     */
+    private static final class CommandResult implements MapListener<String, Object>
+    {
+        private final List<Map<String, Object>> items = new ArrayList<Map<String, Object>>();
+
+        @Override
+        public void add(Entry<String, Object> entry, boolean hasMore) {
+            throw new IllegalStateException("Features should be maps, not " + entry);
+        }
+
+        @Override
+        public void add(Map<String, Object> map, boolean hasMore) {
+            items.add(map);
+        }
+    }
+
+    /**
+     * A Future for a result that is already known.
+     */
+    private static final class CompletedResult implements Future<CommandResult>
+    {
+        private final CommandResult result;
+
+        CompletedResult(CommandResult result) {
+            this.result = result;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return true;
+        }
+
+        @Override
+        public CommandResult get() {
+            return result;
+        }
+
+        @Override
+        public CommandResult get(long timeout, TimeUnit unit) {
+            return result;
+        }
+    }
 }
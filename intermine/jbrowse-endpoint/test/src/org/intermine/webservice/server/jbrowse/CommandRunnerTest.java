@@ -0,0 +1,199 @@
+package org.intermine.webservice.server.jbrowse;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.intermine.api.InterMineAPI;
+import org.intermine.webservice.server.jbrowse.Commands.Action;
+
+/**
+ * Tests for the tiling in CommandRunner.
+ */
+public class CommandRunnerTest extends TestCase
+{
+    private static final List<Map<String, Object>> FEATURES =
+        new ArrayList<Map<String, Object>>();
+    private static final List<Segment> FETCHED =
+        Collections.synchronizedList(new ArrayList<Segment>());
+    private static volatile CountDownLatch release = null;
+
+    public CommandRunnerTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() {
+        FEATURES.clear();
+        FETCHED.clear();
+        release = null;
+        // spans the boundary between the first two tiles
+        FEATURES.add(feature("A", 99990, 100010));
+        // ends before the request starts
+        FEATURES.add(feature("B", 50, 100));
+        // the same feature again, at another location
+        FEATURES.add(feature("A", 120000, 120010));
+        FEATURES.add(feature("C", 150000, 150100));
+    }
+
+    public void testGetTiles() {
+        List<Command> tiles = CommandRunner.getTiles(features("tiles", 1000, 160000));
+        assertEquals(2, tiles.size());
+        assertEquals(Segment.makeSegment("tiles", 0, 100000), tiles.get(0).getSegment());
+        assertEquals(Segment.makeSegment("tiles", 100000, 200000), tiles.get(1).getSegment());
+
+        assertNull(CommandRunner.getTiles(features("tiles", 0, 50 * CommandRunner.TILE_WIDTH)));
+        assertNull(CommandRunner.getTiles(new Command(Action.STATS, "d", "Gene",
+                Segment.makeSegment("tiles", 0, 100), new HashMap<String, String>())));
+    }
+
+    public void testStitchTiles() {
+        Recorder recorder = run(features("stitch", 1000, 160000));
+        assertEquals(Arrays.asList("A:99990", "A:120000", "C:150000"), recorder.features);
+        assertEquals(Arrays.asList(true, true, false), recorder.hasMores);
+        assertEquals(2, FETCHED.size());
+
+        // the tiles are kept, so a request within them doesn't fetch anything
+        recorder = run(features("stitch", 100005, 130000));
+        assertEquals(Arrays.asList("A:99990", "A:120000"), recorder.features);
+        assertEquals(2, FETCHED.size());
+    }
+
+    public void testStreamUntiled() {
+        Command command = features("untiled", 0, 50 * CommandRunner.TILE_WIDTH);
+        Recorder recorder = run(command);
+        assertEquals(Arrays.asList("A:99990", "B:50", "A:120000", "C:150000"),
+                recorder.features);
+        assertEquals(Collections.singletonList(command.getSegment()), FETCHED);
+    }
+
+    public void testConcurrentRequests() throws Exception {
+        release = new CountDownLatch(1);
+        final Command command = features("concurrent", 1000, 160000);
+        final Recorder[] recorders = new Recorder[2];
+        Thread[] threads = new Thread[2];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    recorders[index] = CommandRunnerTest.this.run(command);
+                }
+            };
+            threads[i].start();
+        }
+        // wait for both requests to be waiting for the tiles
+        long deadline = System.currentTimeMillis() + 10000;
+        while (FETCHED.size() < 2 || threads[0].getState() != Thread.State.WAITING
+                || threads[1].getState() != Thread.State.WAITING) {
+            assertTrue("requests did not start", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+        assertEquals(2, FETCHED.size());
+        assertEquals(Arrays.asList("A:99990", "A:120000", "C:150000"), recorders[0].features);
+        assertEquals(recorders[0].features, recorders[1].features);
+    }
+
+    private Recorder run(Command command) {
+        CommandRunner runner = CommandRunner.getRunner(TestRunner.class.getName(), null);
+        Recorder recorder = new Recorder();
+        runner.addListener(recorder);
+        runner.run(command);
+        return recorder;
+    }
+
+    private static Command features(String section, int start, int end) {
+        return new Command(Action.FEATURES, "d", "Gene",
+                Segment.makeSegment(section, start, end), new HashMap<String, String>());
+    }
+
+    private static Map<String, Object> feature(String uniqueID, int start, int end) {
+        Map<String, Object> feature = new HashMap<String, Object>();
+        feature.put("uniqueID", uniqueID);
+        feature.put("start", start);
+        feature.put("end", end);
+        return feature;
+    }
+
+    /**
+     * Returns the features overlapping the requested segment, recording the segments fetched.
+     */
+    public static class TestRunner extends CommandRunner
+    {
+        public TestRunner(InterMineAPI api) {
+            super(api);
+        }
+
+        @Override
+        public void features(Command command) {
+            Segment segment = command.getSegment();
+            FETCHED.add(segment);
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            List<Map<String, Object>> found = new ArrayList<Map<String, Object>>();
+            for (Map<String, Object> feature : FEATURES) {
+                if ((Integer) feature.get("start") < segment.getEnd()
+                        && (Integer) feature.get("end") > segment.getStart()) {
+                    found.add(feature);
+                }
+            }
+            for (int i = 0; i < found.size(); i++) {
+                onData(found.get(i), i + 1 < found.size());
+            }
+        }
+
+        @Override
+        public void stats(Command command) {
+        }
+
+        @Override
+        public void reference(Command command) {
+        }
+
+        @Override
+        public void densities(Command command) {
+        }
+    }
+
+    private static class Recorder implements MapListener<String, Object>
+    {
+        private final List<String> features = new ArrayList<String>();
+        private final List<Boolean> hasMores = new ArrayList<Boolean>();
+
+        @Override
+        public void add(Entry<String, Object> entry, boolean hasMore) {
+            fail("unexpected entry " + entry);
+        }
+
+        @Override
+        public void add(Map<String, Object> map, boolean hasMore) {
+            features.add(map.get("uniqueID") + ":" + map.get("start"));
+            hasMores.add(hasMore);
+        }
+    }
+}
@@ -124,6 +124,12 @@ public final class MetadataManager
      */
     public static final String RANGE_DEFINITIONS = "rangeDefinitions";
 
+    /**
+     * The comma-separated names of the tables with a bin column filled in for every row, see
+     * RangeBins.
+     */
+    public static final String RANGE_BIN_TABLES = "rangeBinTables";
+
     /**
      * Store a (key, value) pair in the metadata table of the database
      * @param database the database
@@ -10,6 +10,7 @@ package org.intermine.objectstore.intermine;
  *
  */
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
@@ -47,6 +48,8 @@ public class DatabaseSchema
     private int version;
     protected boolean hasBioSeg;
     protected boolean useRangeTypes;
+    protected Set<String> rangeBinTables;
+    protected Set<String> binnedTables;
 
     private Set<ClassDescriptor> truncatedSet;
     private Map<ClassDescriptor, Fields> tableMasterToFieldDescriptors
@@ -69,6 +72,28 @@ public class DatabaseSchema
      */
     public DatabaseSchema(Model model, List<ClassDescriptor> truncated, boolean noNotXml,
             Set<String> missingTables, int version, boolean hasBioSeg, boolean useRangeTypes) {
+        this(model, truncated, noNotXml, missingTables, version, hasBioSeg, useRangeTypes,
+                Collections.<String>emptySet());
+    }
+
+    /**
+     * Returns an instance of DatabaseSchema, for the given Model and and List of truncated classes.
+     *
+     * @param model a Model
+     * @param truncated a List of ClassDescriptors representing the truncated classes, in order of
+     * decreasing priority.
+     * @param noNotXml true if NotXML data should be omitted from every table except InterMineObject
+     * @param missingTables a Set of lowercase table names which are missing
+     * @param version the version number in the database
+     * @param hasBioSeg true if the database has the bioseg type installed
+     * @param useRangeTypes true if we can use Postgres built-in range types
+     * @param rangeBinTables a Set of lowercase table names which have a filled in bin column for
+     * their start and end, see RangeBins
+     * @throws IllegalArgumentException if the truncated class list does not make sense
+     */
+    public DatabaseSchema(Model model, List<ClassDescriptor> truncated, boolean noNotXml,
+            Set<String> missingTables, int version, boolean hasBioSeg, boolean useRangeTypes,
+            Set<String> rangeBinTables) {
         this.model = model;
         this.truncated = truncated;
         this.missingTables = missingTables;
@@ -78,6 +103,8 @@ public class DatabaseSchema
         this.version = version;
         this.hasBioSeg = hasBioSeg;
         this.useRangeTypes = useRangeTypes;
+        this.rangeBinTables = Collections.synchronizedSet(new HashSet<String>(rangeBinTables));
+        this.binnedTables = Collections.synchronizedSet(new HashSet<String>(rangeBinTables));
         for (int i = 0; i < truncated.size(); i++) {
             Class<?> cA = truncated.get(i).getType();
             for (int o = 0; o < i; o++) {
@@ -203,6 +230,47 @@ public class DatabaseSchema
         return useRangeTypes;
     }
 
+    /**
+     * Returns true if the given table has a bin column for its start and end fields, filled in
+     * for every row, which can be used to speed up overlap constraints.
+     *
+     * @param tableName the lowercase name of a table
+     * @return true if the table has range bins
+     */
+    public boolean hasRangeBins(String tableName) {
+        return rangeBinTables.contains(tableName);
+    }
+
+    /**
+     * Returns true if the given table has had range bins filled in for every row at any time
+     * while this schema has been in use, so that storing rows without a bin must be recorded.
+     *
+     * @param tableName the lowercase name of a table
+     * @return true if the table has had range bins
+     */
+    public boolean hadRangeBins(String tableName) {
+        return binnedTables.contains(tableName);
+    }
+
+    /**
+     * Sets whether the given table has range bins filled in for every row. Queries generated
+     * after this call use or stop using the bins, as SQL already generated for this schema is
+     * discarded.
+     *
+     * @param tableName the lowercase name of a table
+     * @param complete true if every row of the table has a bin
+     */
+    public void setRangeBins(String tableName, boolean complete) {
+        if (complete) {
+            binnedTables.add(tableName);
+        }
+        boolean changed = (complete ? rangeBinTables.add(tableName)
+                : rangeBinTables.remove(tableName));
+        if (changed) {
+            SqlGenerator.flushSqlCache(this);
+        }
+    }
+
 
 
     /**
@@ -216,6 +216,23 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
         return new ObjectStoreWriterInterMineImpl(this);
     }
 
+    /**
+     * Finds the tables that have a bin column for overlap constraints, see RangeBins. A table is
+     * only used if the bin has been recorded as filled in for every row, since rows without one
+     * would not be found by overlap constraints.
+     *
+     * @param database the Database
+     * @return a Set of lowercase table names
+     */
+    private static Set<String> findRangeBinTables(Database database) {
+        try {
+            return RangeBins.getCompleteTables(database);
+        } catch (SQLException e) {
+            LOG.warn("Could not look for tables with range bins", e);
+            return new HashSet<String>();
+        }
+    }
+
     /**
      * Returns the DatabaseSchema used by this ObjectStore.
      *
@@ -467,8 +484,10 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
                     }
                 }
 
+                Set<String> rangeBinTables = findRangeBinTables(database);
+
                 DatabaseSchema schema = new DatabaseSchema(osModel, truncatedClasses, noNotXml,
-                        missingTables, formatVersion, hasBioSeg, useRangeTypes);
+                        missingTables, formatVersion, hasBioSeg, useRangeTypes, rangeBinTables);
                 os = new ObjectStoreInterMineImpl(database, schema);
                 os.description = osAlias;
 
@@ -94,6 +94,7 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
     protected Map<String, Set<CollectionDescriptor>> tableToCollections;
     protected String connectionTakenBy = null;
     protected Set<Object> tablesAltered = new HashSet<Object>();
+    protected Set<String> rangeBinsCleared = new HashSet<String>();
 
     private Long cumulativeWait = new Long(0);    // just for diagnostic, can be removed
     private Integer getConnectionCalls = 0;       // as above
@@ -740,6 +741,7 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
                                 ? ((InterMineObject) o).getId() : null), tableInfo.colNames,
                             values);
                     tablesAltered.add(tableInfo.tableName);
+                    clearRangeBins(c, tableInfo.tableName);
                 }
 
                 writeCollections(c, o, collections);
@@ -783,6 +785,30 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
         }
     }
 
+    /**
+     * Records that a table whose range bins were complete now has a row without a bin.  The
+     * metadata is changed in the current transaction, and the schema is changed straight away so
+     * that overlap queries on this ObjectStore stop using the bins.  This is only done the first
+     * time a row is stored in each such table in a transaction.
+     *
+     * @param c the Connection, in a transaction
+     * @param tableName the name of the table a row has been added to
+     * @throws SQLException if the metadata cannot be written
+     */
+    private void clearRangeBins(Connection c, String tableName) throws SQLException {
+        String table = tableName.toLowerCase();
+        if (schema.hadRangeBins(table) && rangeBinsCleared.add(table)) {
+            if (schema.hasRangeBins(table)) {
+                LOG.info("Storing rows without range bins in table " + table
+                        + ", overlap queries will no longer use the bins");
+                schema.setRangeBins(table, false);
+            }
+            // wait for any background flush to finish with the connection
+            batch.flush(c, Collections.<String>emptySet());
+            RangeBins.setComplete(c, table, false);
+        }
+    }
+
     private void writeCollections(Connection c, Object o, Set<CollectionDescriptor> collections)
         throws IllegalAccessException, SQLException {
         for (CollectionDescriptor collection : collections) {
@@ -851,6 +877,79 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
         }
     }
 
+    /**
+     * Adds many objects to many-to-many collections at once, for example when a post-processing
+     * step has found a large number of relations.  The collection and its indirection table are
+     * only looked up once, and the pairs are written to the batch together, so this is much
+     * quicker than calling addToCollection for each pair.
+     *
+     * @param clazz the class of the objects that have the collection
+     * @param fieldName the name of the collection
+     * @param hasIds the IDs of the objects that have the collection
+     * @param hadIds the IDs of the objects to place in the collections, in the same order
+     * @param count the number of pairs to add, from the start of the arrays
+     * @throws ObjectStoreException if an error occurs
+     */
+    public void addAllToCollection(Class<?> clazz, String fieldName, int[] hasIds,
+            int[] hadIds, int count) throws ObjectStoreException {
+        Connection c = null;
+        try {
+            c = getConnection();
+            addAllToCollectionWithConnection(c, clazz, fieldName, hasIds, hadIds, count);
+        } catch (SQLException e) {
+            throw new ObjectStoreException("Could not get connection to database", e);
+        } finally {
+            releaseConnection(c);
+        }
+    }
+
+    /**
+     * Performs addAllToCollection with given connection
+     *
+     * @param c the Connection
+     * @param clazz the class of the objects that have the collection
+     * @param fieldName the name of the collection
+     * @param hasIds the IDs of the objects that have the collection
+     * @param hadIds the IDs of the objects to place in the collections, in the same order
+     * @param count the number of pairs to add, from the start of the arrays
+     * @throws ObjectStoreException if an error occurs
+     */
+    protected void addAllToCollectionWithConnection(Connection c, Class<?> clazz,
+            String fieldName, int[] hasIds, int[] hadIds, int count)
+        throws ObjectStoreException {
+        boolean wasInTransaction = isInTransactionWithConnection(c);
+        if (!wasInTransaction) {
+            beginTransactionWithConnection(c);
+        }
+
+        try {
+            CollectionDescriptor coll = getManyToManyCollection(clazz, fieldName);
+            String indirectTableName = DatabaseUtil.getIndirectionTableName(coll);
+            boolean swap = isIndirectionSwapped(coll);
+            String[] indirColNames = getIndirectionColumnNames(coll);
+            for (int i = 0; i < count; i++) {
+                int hasId = hasIds[i];
+                int hadId = hadIds[i];
+                invalidateObjectById(Integer.valueOf(hasId));
+                invalidateObjectById(Integer.valueOf(hadId));
+                batch.addRow(c, indirectTableName, indirColNames[0], indirColNames[1],
+                        (swap ? hasId : hadId), (swap ? hadId : hasId));
+            }
+            tablesAltered.add(indirectTableName);
+        } catch (SQLException e) {
+            throw new ObjectStoreException("Error while storing", e);
+        } finally {
+            if (!wasInTransaction) {
+                try {
+                    commitTransactionWithConnection(c);
+                } catch (ObjectStoreException e) {
+                    abortTransactionWithConnection(c);
+                    throw e;
+                }
+            }
+        }
+    }
+
     /**
      * Performs addToCollection with given connection
      *
@@ -869,35 +968,15 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
         }
 
         try {
-            FieldDescriptor field = model.getFieldDescriptorsForClass(clazz).get(fieldName);
-            if (field == null) {
-                throw new ObjectStoreException("Field " + clazz.getName() + "." + fieldName
-                        + " does not exist in the model.");
-            }
-            if (field.relationType() == FieldDescriptor.M_N_RELATION) {
-                invalidateObjectById(hasId);
-                invalidateObjectById(hadId);
-                CollectionDescriptor coll = (CollectionDescriptor) field;
-                String indirectTableName = DatabaseUtil.getIndirectionTableName(coll);
-                String inwardColumnName = DatabaseUtil.getInwardIndirectionColumnName(coll,
-                        schema.getVersion());
-                String outwardColumnName = DatabaseUtil.getOutwardIndirectionColumnName(coll,
-                        schema.getVersion());
-                boolean swap = (inwardColumnName.compareTo(outwardColumnName) > 0);
-                String[] indirColNames = tableToColNameArray.get(indirectTableName);
-                if (indirColNames == null) {
-                    indirColNames = new String[2];
-                    indirColNames[0] = (swap ? inwardColumnName : outwardColumnName);
-                    indirColNames[1] = (swap ? outwardColumnName : inwardColumnName);
-                    tableToColNameArray.put(indirectTableName, indirColNames);
-                }
-                batch.addRow(c, indirectTableName, indirColNames[0], indirColNames[1],
-                             (swap ? hasId : hadId).intValue(), (swap ? hadId : hasId).intValue());
-                tablesAltered.add(indirectTableName);
-            } else {
-                throw new ObjectStoreException("Field " + clazz.getName() + "." + fieldName
-                        + " is not a many-to-many collection.");
-            }
+            CollectionDescriptor coll = getManyToManyCollection(clazz, fieldName);
+            invalidateObjectById(hasId);
+            invalidateObjectById(hadId);
+            String indirectTableName = DatabaseUtil.getIndirectionTableName(coll);
+            boolean swap = isIndirectionSwapped(coll);
+            String[] indirColNames = getIndirectionColumnNames(coll);
+            batch.addRow(c, indirectTableName, indirColNames[0], indirColNames[1],
+                         (swap ? hasId : hadId).intValue(), (swap ? hadId : hasId).intValue());
+            tablesAltered.add(indirectTableName);
         } catch (SQLException e) {
             throw new ObjectStoreException("Error while storing", e);
         } finally {
@@ -912,6 +991,45 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
         }
     }
 
+    private CollectionDescriptor getManyToManyCollection(Class<?> clazz, String fieldName)
+        throws ObjectStoreException {
+        FieldDescriptor field = model.getFieldDescriptorsForClass(clazz).get(fieldName);
+        if (field == null) {
+            throw new ObjectStoreException("Field " + clazz.getName() + "." + fieldName
+                    + " does not exist in the model.");
+        }
+        if (field.relationType() != FieldDescriptor.M_N_RELATION) {
+            throw new ObjectStoreException("Field " + clazz.getName() + "." + fieldName
+                    + " is not a many-to-many collection.");
+        }
+        return (CollectionDescriptor) field;
+    }
+
+    private boolean isIndirectionSwapped(CollectionDescriptor coll) {
+        String inwardColumnName = DatabaseUtil.getInwardIndirectionColumnName(coll,
+                schema.getVersion());
+        String outwardColumnName = DatabaseUtil.getOutwardIndirectionColumnName(coll,
+                schema.getVersion());
+        return (inwardColumnName.compareTo(outwardColumnName) > 0);
+    }
+
+    private String[] getIndirectionColumnNames(CollectionDescriptor coll) {
+        String indirectTableName = DatabaseUtil.getIndirectionTableName(coll);
+        String[] indirColNames = tableToColNameArray.get(indirectTableName);
+        if (indirColNames == null) {
+            String inwardColumnName = DatabaseUtil.getInwardIndirectionColumnName(coll,
+                    schema.getVersion());
+            String outwardColumnName = DatabaseUtil.getOutwardIndirectionColumnName(coll,
+                    schema.getVersion());
+            boolean swap = isIndirectionSwapped(coll);
+            indirColNames = new String[2];
+            indirColNames[0] = (swap ? inwardColumnName : outwardColumnName);
+            indirColNames[1] = (swap ? outwardColumnName : inwardColumnName);
+            tableToColNameArray.put(indirectTableName, indirColNames);
+        }
+        return indirColNames;
+    }
+
     /**
      * Produces metadata for a given table, caching it to save time.
      *
@@ -1568,6 +1686,7 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
             c.setAutoCommit(true);
             os.databaseAltered(tablesAltered);
             tablesAltered.clear();
+            rangeBinsCleared.clear();
         } catch (SQLException e) {
             throw new ObjectStoreException("Error committing transaction", e);
         }
@@ -1605,6 +1724,7 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
             c.setAutoCommit(true);
             os.flushObjectById();
             tablesAltered.clear();
+            rangeBinsCleared.clear();
         } catch (SQLException e) {
             throw new ObjectStoreException("Error aborting transaction", e);
         }
@@ -1638,6 +1758,7 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
             batch.batchCommit(c);
             os.databaseAltered(tablesAltered);
             tablesAltered.clear();
+            rangeBinsCleared.clear();
         } catch (SQLException e) {
             throw new ObjectStoreException("Error batch-committing transaction", e);
         }
@@ -0,0 +1,250 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.lang.StringUtils;
+import org.intermine.modelproduction.MetadataManager;
+import org.intermine.sql.Database;
+
+/**
+ * The hierarchical binning scheme used by the UCSC genome browser, for finding overlapping ranges
+ * with an ordinary btree index.
+ *
+ * <p>
+ * The coordinate space is divided into bins of 128kb, then 1Mb, 8Mb, 64Mb and 512Mb, and a range
+ * is put in the smallest bin that holds all of it.  All the ranges that overlap a given range
+ * are then in one of the few bins that overlap it at each level, so a constraint on the bin
+ * column selects a small superset of them.  Bin numbers are those of the UCSC extended scheme,
+ * so the smallest bins are numbered from 4681 and the bin holding everything is 0.
+ * </p>
+ *
+ * <p>
+ * Ranges are given as InterMine stores them: start and end are both included and count from 1.
+ * The start and end may be given either way round.
+ * </p>
+ *
+ * @author InterMine
+ */
+public final class RangeBins
+{
+    /** The name of the column holding the bin of a range, on tables that have one. */
+    public static final String BIN_COLUMN = "intermine_bin";
+
+    private static final int FIRST_SHIFT = 17;
+    private static final int NEXT_SHIFT = 3;
+    // the first bin number at each level, from the smallest bins upwards
+    private static final int[] OFFSETS = {4096 + 512 + 64 + 8 + 1, 512 + 64 + 8 + 1, 64 + 8 + 1,
+        8 + 1, 1};
+
+    private RangeBins() {
+        // disable external instantiation
+    }
+
+    /**
+     * Returns the bin of a range.
+     *
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return the smallest bin that holds the whole range
+     */
+    public static int getBin(int start, int end) {
+        int first = getFirst(start, end);
+        int last = getLast(start, end);
+        int shift = FIRST_SHIFT;
+        for (int i = 0; i < OFFSETS.length; i++) {
+            if ((first >> shift) == (last >> shift)) {
+                return OFFSETS[i] + (first >> shift);
+            }
+            shift += NEXT_SHIFT;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the bins that ranges overlapping the given range may be in, as pairs of first and
+     * last bin numbers, one pair for each level.  The last pair is always the bin holding
+     * everything.
+     *
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return an array of first and last bin numbers, alternately
+     */
+    public static int[] getOverlappingBins(int start, int end) {
+        int first = getFirst(start, end);
+        int last = getLast(start, end);
+        int[] bins = new int[OFFSETS.length * 2 + 2];
+        int shift = FIRST_SHIFT;
+        for (int i = 0; i < OFFSETS.length; i++) {
+            bins[i * 2] = OFFSETS[i] + (first >> shift);
+            bins[i * 2 + 1] = OFFSETS[i] + (last >> shift);
+            shift += NEXT_SHIFT;
+        }
+        return bins;
+    }
+
+    /**
+     * Appends a constraint that is true for every range overlapping the given range, if the bins
+     * of the ranges are in the given column.
+     *
+     * @param buffer the StringBuffer to add the constraint to
+     * @param binColumn the column holding the bins
+     * @param start the start of the range
+     * @param end the end of the range
+     */
+    public static void appendOverlappingBinsSql(StringBuffer buffer, String binColumn, int start,
+            int end) {
+        int[] bins = getOverlappingBins(start, end);
+        buffer.append("(");
+        for (int i = 0; i < bins.length; i += 2) {
+            if (i > 0) {
+                buffer.append(" OR ");
+            }
+            if (bins[i] == bins[i + 1]) {
+                buffer.append(binColumn).append(" = ").append(bins[i]);
+            } else {
+                buffer.append(binColumn).append(" BETWEEN ").append(bins[i]).append(" AND ")
+                    .append(bins[i + 1]);
+            }
+        }
+        buffer.append(")");
+    }
+
+    /**
+     * Returns an SQL expression that works out the bin of a range in the same way as getBin(),
+     * for filling in the bin column.
+     *
+     * @param startColumn the column holding the start of the range
+     * @param endColumn the column holding the end of the range
+     * @return an SQL expression
+     */
+    public static String getBinSql(String startColumn, String endColumn) {
+        String first = "GREATEST(LEAST(" + startColumn + ", " + endColumn + ") - 1, 0)";
+        String last = "GREATEST(GREATEST(" + startColumn + ", " + endColumn + ") - 1, " + first
+            + ")";
+        StringBuilder sql = new StringBuilder("CASE");
+        int shift = FIRST_SHIFT;
+        for (int i = 0; i < OFFSETS.length; i++) {
+            sql.append(" WHEN (").append(first).append(" >> ").append(shift).append(") = (")
+                .append(last).append(" >> ").append(shift).append(") THEN ").append(OFFSETS[i])
+                .append(" + (").append(first).append(" >> ").append(shift).append(")");
+            shift += NEXT_SHIFT;
+        }
+        sql.append(" ELSE 0 END");
+        return sql.toString();
+    }
+
+    /**
+     * Returns the tables whose bin column is filled in for every row, as recorded in the metadata
+     * table by setComplete().
+     *
+     * @param database the Database
+     * @return a Set of lowercase table names
+     * @throws SQLException if the metadata cannot be read
+     */
+    public static Set<String> getCompleteTables(Database database) throws SQLException {
+        Set<String> tables = new TreeSet<String>();
+        addTables(tables, MetadataManager.retrieve(database, MetadataManager.RANGE_BIN_TABLES));
+        return tables;
+    }
+
+    /**
+     * Records in the metadata table whether the bin column of a table is filled in for every
+     * row.  Overlap queries only use the bins of a table once this has been set, and it should be
+     * unset in the same transaction that stores rows without a bin.  If the record has to change,
+     * the metadata row is locked until the transaction ends, so that concurrent writers do not
+     * lose each other's changes.
+     *
+     * @param con a Connection, in the transaction that changes the table
+     * @param table the name of the table
+     * @param complete true if every row of the table has a bin
+     * @throws SQLException if the metadata cannot be read or written
+     */
+    public static void setComplete(Connection con, String table, boolean complete)
+        throws SQLException {
+        String lowerTable = table.toLowerCase();
+        Set<String> tables = new TreeSet<String>();
+        readTables(con, tables, false);
+        if (tables.contains(lowerTable) == complete) {
+            // nothing to change, so don't hold a lock on the metadata
+            return;
+        }
+        tables.clear();
+        boolean exists = readTables(con, tables, true);
+        boolean changed = (complete ? tables.add(lowerTable) : tables.remove(lowerTable));
+        if (!changed) {
+            return;
+        }
+        String sql;
+        if (tables.isEmpty()) {
+            sql = "DELETE FROM " + MetadataManager.METADATA_TABLE + " WHERE key = ?";
+        } else if (exists) {
+            sql = "UPDATE " + MetadataManager.METADATA_TABLE + " SET value = ? WHERE key = ?";
+        } else {
+            sql = "INSERT INTO " + MetadataManager.METADATA_TABLE + " (value, key) VALUES (?, ?)";
+        }
+        PreparedStatement update = con.prepareStatement(sql);
+        try {
+            int param = 1;
+            if (!tables.isEmpty()) {
+                update.setString(param++, StringUtils.join(tables, ","));
+            }
+            update.setString(param, MetadataManager.RANGE_BIN_TABLES);
+            update.executeUpdate();
+        } finally {
+            update.close();
+        }
+    }
+
+    private static boolean readTables(Connection con, Set<String> tables, boolean forUpdate)
+        throws SQLException {
+        PreparedStatement select = con.prepareStatement("SELECT value FROM "
+                + MetadataManager.METADATA_TABLE + " WHERE key = ?"
+                + (forUpdate ? " FOR UPDATE" : ""));
+        try {
+            select.setString(1, MetadataManager.RANGE_BIN_TABLES);
+            ResultSet r = select.executeQuery();
+            if (r.next()) {
+                addTables(tables, r.getString(1));
+                return true;
+            }
+            return false;
+        } finally {
+            select.close();
+        }
+    }
+
+    private static void addTables(Set<String> tables, String value) {
+        if (value != null) {
+            for (String table : value.split(",")) {
+                if (table.length() > 0) {
+                    tables.add(table.toLowerCase());
+                }
+            }
+        }
+    }
+
+    // the zero-based first position of the range
+    private static int getFirst(int start, int end) {
+        return Math.max(Math.min(start, end) - 1, 0);
+    }
+
+    // the zero-based last position of the range, not before the first
+    private static int getLast(int start, int end) {
+        return Math.max(Math.max(start, end) - 1, getFirst(start, end));
+    }
+}
@@ -67,6 +67,7 @@ import org.intermine.objectstore.query.ObjectStoreBagCombination;
 import org.intermine.objectstore.query.ObjectStoreBagsForObject;
 import org.intermine.objectstore.query.OrderDescending;
 import org.intermine.objectstore.query.OverlapConstraint;
+import org.intermine.objectstore.query.OverlapRange;
 import org.intermine.objectstore.query.PathExpressionField;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QueryCast;
@@ -431,6 +432,17 @@ public final class SqlGenerator
         }
     }
 
+    /**
+     * Discards the SQL generated for a DatabaseSchema, for when the schema has changed.
+     *
+     * @param schema the DatabaseSchema
+     */
+    protected static void flushSqlCache(DatabaseSchema schema) {
+        synchronized (sqlCache) {
+            sqlCache.remove(schema);
+        }
+    }
+
     /**
      * Converts a Query object into an SQL String.
      *
@@ -2000,10 +2012,79 @@ public final class SqlGenerator
         }
     }
 
+    /**
+     * Adds a constraint on the bin column of one range of an OverlapConstraint, followed by AND,
+     * if that range is on a table with range bins and the other range is constant. Ranges that
+     * are contained in, contain or overlap the constant range all overlap it, so they all have one
+     * of the bins that overlap it. See RangeBins.
+     *
+     * @param state the current SqlGenerator state
+     * @param buffer the StringBuffer to place text into
+     * @param c the OverlapConstraint object
+     * @param schema the DatabaseSchema in which to look up metadata
+     */
+    protected static void rangeBinConstraintToString(State state, StringBuffer buffer,
+            OverlapConstraint c, DatabaseSchema schema) {
+        OverlapRange constant = c.getRight();
+        String binColumn = getRangeBinColumn(state, c.getLeft(), schema);
+        if (binColumn == null) {
+            constant = c.getLeft();
+            binColumn = getRangeBinColumn(state, c.getRight(), schema);
+        }
+        if ((binColumn != null) && (constant.getStart() instanceof QueryValue)
+                && (constant.getEnd() instanceof QueryValue)) {
+            Object start = ((QueryValue) constant.getStart()).getValue();
+            Object end = ((QueryValue) constant.getEnd()).getValue();
+            if ((start instanceof Integer) && (end instanceof Integer)) {
+                RangeBins.appendOverlappingBinsSql(buffer, binColumn,
+                        ((Integer) start).intValue(), ((Integer) end).intValue());
+                buffer.append(" AND ");
+            }
+        }
+    }
+
+    /**
+     * Returns the bin column for a range, if the start and end of the range are fields of a class
+     * whose table has range bins.
+     *
+     * @param state the current SqlGenerator state
+     * @param range an OverlapRange
+     * @param schema the DatabaseSchema in which to look up metadata
+     * @return the aliased bin column, or null
+     */
+    private static String getRangeBinColumn(State state, OverlapRange range,
+            DatabaseSchema schema) {
+        if (!((range.getStart() instanceof QueryField) && (range.getEnd() instanceof QueryField))) {
+            return null;
+        }
+        QueryField start = (QueryField) range.getStart();
+        QueryField end = (QueryField) range.getEnd();
+        if ((start.getFromElement() != end.getFromElement())
+                || (!(start.getFromElement() instanceof QueryClass))
+                || (start.getSecondFieldName() != null)) {
+            return null;
+        }
+        QueryClass qc = (QueryClass) start.getFromElement();
+        ClassDescriptor cld = schema.getModel().getClassDescriptorByName(qc.getType().getName());
+        if (cld == null) {
+            return null;
+        }
+        String tableName = DatabaseUtil.getTableName(schema.getTableMaster(cld));
+        if (!schema.hasRangeBins(tableName.toLowerCase())) {
+            return null;
+        }
+        String startColumn = state.getFieldToAlias(qc).get(start.getFieldName());
+        if (startColumn == null) {
+            return null;
+        }
+        return startColumn.substring(0, startColumn.lastIndexOf('.') + 1) + RangeBins.BIN_COLUMN;
+    }
+
     /**
      * Converts an OverlapConstraint to a String suitable for putting in an SQL query. This will
      * try to use a Postgres range type column first, if not present it will try BioSeg, if not
-     * present it will use simple constraints on start and end fields.
+     * present it will use simple constraints on start and end fields. If one of the ranges is on
+     * a table with range bins and the other is constant, a constraint on the bins is added too.
      *
      * @param state the current SqlGenerator state
      * @param buffer the StringBuffer to place text into
@@ -2039,6 +2120,10 @@ public final class SqlGenerator
                     .getFieldName()))
             .append(" AND ");
 
+        if (!not) {
+            rangeBinConstraintToString(state, buffer, c, schema);
+        }
+
         // TODO get column type and use appropriate range type, currently uses int4range which is
         // correct for integer columns, we could support other range types
         boolean useRangeFunction = schema.hasBioSeg() || schema.useRangeTypes();
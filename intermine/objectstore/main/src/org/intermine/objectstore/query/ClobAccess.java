@@ -12,7 +12,9 @@ package org.intermine.objectstore.query;
 
 import static org.intermine.objectstore.query.Clob.CLOB_PAGE_SIZE;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.Reader;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.HashMap;
@@ -230,6 +232,53 @@ public class ClobAccess implements CharSequence, Lazy
         }
     }
 
+    /**
+     * Copies characters from this sequence into an array, in the same way as String.getChars().
+     * Only the pages of the Clob holding those characters are read.
+     *
+     * @param srcBegin the index of the first character to copy
+     * @param srcEnd the index after the last character to copy
+     * @param dst the array to copy into
+     * @param dstBegin the position in the array of the first character
+     * @throws IndexOutOfBoundsException if srcBegin is negative, srcEnd is greater than length(),
+     * or srcBegin is greater than srcEnd
+     */
+    public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        init();
+        if (srcBegin < 0) {
+            throw new IndexOutOfBoundsException("srcBegin is less than zero");
+        }
+        if (srcEnd > length) {
+            throw new IndexOutOfBoundsException("srcEnd is greater than the length of this Clob");
+        }
+        if (srcEnd < srcBegin) {
+            throw new IndexOutOfBoundsException("srcEnd is less than srcBegin");
+        }
+        int pos = offset + srcBegin;
+        int end = offset + srcEnd;
+        int dstPos = dstBegin;
+        while (pos < end) {
+            int page = pos / CLOB_PAGE_SIZE;
+            int pageStart = page * CLOB_PAGE_SIZE;
+            String pageText = (String) results.get(page);
+            int pageEnd = Math.min(end - pageStart, pageText.length());
+            pageText.getChars(pos - pageStart, pageEnd, dst, dstPos);
+            dstPos += pageEnd - (pos - pageStart);
+            pos = pageStart + pageEnd;
+        }
+    }
+
+    /**
+     * Returns a Reader of the contents of this sequence, which reads the Clob a page at a time
+     * as it goes along, so that a large Clob can be sent somewhere without holding all of it in
+     * memory.
+     *
+     * @return a Reader
+     */
+    public Reader getReader() {
+        return new ClobAccessReader(this);
+    }
+
     /**
      * Returns a String that describes this object sufficiently for it to be recreated given an
      * ObjectStore. This format is stored in the database.
@@ -341,6 +390,54 @@ public class ClobAccess implements CharSequence, Lazy
         return clob;
     }
 
+    /**
+     * A Reader of a ClobAccess, using getChars() so that subclasses that transform the text are
+     * read in the same way.
+     */
+    private static final class ClobAccessReader extends Reader
+    {
+        private final ClobAccess clobAccess;
+        private int position = 0;
+        private boolean closed = false;
+
+        ClobAccessReader(ClobAccess clobAccess) {
+            this.clobAccess = clobAccess;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Reader is closed");
+            }
+            if ((off < 0) || (len < 0) || (off + len > cbuf.length)) {
+                throw new IndexOutOfBoundsException();
+            }
+            int remaining = clobAccess.length() - position;
+            if (remaining <= 0) {
+                return (len == 0) ? 0 : -1;
+            }
+            int count = Math.min(len, remaining);
+            clobAccess.getChars(position, position + count, cbuf, off);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (closed) {
+                throw new IOException("Reader is closed");
+            }
+            int skipped = (int) Math.min(Math.max(n, 0), clobAccess.length() - position);
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
     /**
      * Class to provide fast access to the constructor of plugin subclasses of ClobAccess.
      *
@@ -68,6 +68,14 @@ public class PendingClob extends ClobAccess
         return text.length();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        text.getChars(srcBegin, srcEnd, dst, dstBegin);
+    }
+
     /**
      * {@inheritDoc}
      */
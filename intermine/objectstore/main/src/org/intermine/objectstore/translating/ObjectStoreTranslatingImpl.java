@@ -14,6 +14,7 @@ import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -150,11 +151,22 @@ public class ObjectStoreTranslatingImpl extends ObjectStoreAbstractImpl
         timeSpentExecute += time1 - time2;
 
         try {
+            // Translate all the objects in the batch in one go, so the translator can share work
+            List<Object> toTranslate = new ArrayList<Object>();
+            for (ResultsRow<Object> origRow : origResults) {
+                for (Object o : origRow) {
+                    if (o instanceof InterMineObject) {
+                        toTranslate.add(o);
+                    }
+                }
+            }
+            Iterator<Object> translated = translator.translateFromDbObjects(toTranslate)
+                .iterator();
             for (ResultsRow<Object> origRow : origResults) {
                 ResultsRow<Object> row = new ResultsRow<Object>();
                 for (Object o : origRow) {
                     if (o instanceof InterMineObject) {
-                        Object imo = translator.translateFromDbObject(o);
+                        Object imo = translated.next();
                         row.add(imo);
                         if (imo instanceof InterMineObject) {
                             cacheObjectById(((InterMineObject) imo).getId(), (InterMineObject) imo);
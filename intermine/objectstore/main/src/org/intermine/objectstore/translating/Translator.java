@@ -10,6 +10,9 @@ package org.intermine.objectstore.translating;
  *
  */
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.intermine.metadata.MetaDataException;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
@@ -62,6 +65,23 @@ public abstract class Translator
     public abstract Object translateFromDbObject(Object o)
         throws MetaDataException;
 
+    /**
+     * Translate a batch of objects exiting the ObjectStore. Translators that can share work
+     * between objects should override this - the default translates each object in turn.
+     *
+     * @param objects the objects to translate
+     * @return a List of the translated objects, in the same order
+     * @throws MetaDataException if an item has a field that isn't in InterMine model
+     */
+    public List<Object> translateFromDbObjects(List<Object> objects)
+        throws MetaDataException {
+        List<Object> retval = new ArrayList<Object>(objects.size());
+        for (Object o : objects) {
+            retval.add(translateFromDbObject(o));
+        }
+        return retval;
+    }
+
     /**
      * Translate an object id into a native identifier.
      *
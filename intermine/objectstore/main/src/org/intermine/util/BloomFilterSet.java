@@ -0,0 +1,170 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * A Set backed by a Bloom filter. The contains method never returns false for an object that has
+ * been added, but may return true for an object that has not been added, with a probability
+ * determined by the expected number of entries and the false positive rate given to the
+ * constructor. The set uses a fixed amount of RAM regardless of the size of the objects added,
+ * and does not hold references to them.
+ *
+ * @author InterMine
+ * @param <E> The element type
+ */
+public class BloomFilterSet<E> extends PseudoSet<E>
+{
+    private static final double LN2 = Math.log(2.0);
+    private static final int MAX_HASHES = 16;
+    // Bit indexes are taken from 32 bit hashes, so more than 2^32 bits would be wasted
+    private static final int MAX_WORDS = 1 << 26;
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+    private int added = 0;
+
+    /**
+     * Constructor for this class. Creates an empty filter sized to hold the given number of
+     * entries with the given false positive rate.
+     *
+     * @param expectedEntries the number of entries that will be added to the set
+     * @param falsePositiveRate the acceptable probability of contains returning true for an
+     * object that has not been added, between 0 and 1
+     */
+    public BloomFilterSet(int expectedEntries, double falsePositiveRate) {
+        if (expectedEntries < 1) {
+            expectedEntries = 1;
+        }
+        if ((falsePositiveRate <= 0.0) || (falsePositiveRate >= 1.0)) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1, not "
+                    + falsePositiveRate);
+        }
+        long wanted = (long) Math.ceil(-expectedEntries * Math.log(falsePositiveRate)
+                / (LN2 * LN2));
+        int words = (int) Math.min(MAX_WORDS, (Math.max(wanted, 64L) + 63) / 64);
+        bits = new long[words];
+        bitCount = words * 64L;
+        hashCount = (int) Math.max(1, Math.min(MAX_HASHES,
+                    Math.round(((double) bitCount) / expectedEntries * LN2)));
+    }
+
+    /**
+     * Adds an object to the filter. This is a cheap operation, so the filter can be kept up to
+     * date as new values are seen.
+     *
+     * @param o the object to add
+     * @return true if the filter changed, which is always the case for an object that was not
+     * present before
+     */
+    @Override
+    public boolean add(E o) {
+        long hash = hash(o);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        boolean changed = false;
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = indexFor(h1 + i * h2);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << (bit & 63);
+            if ((bits[word] & mask) == 0) {
+                bits[word] |= mask;
+                changed = true;
+            }
+        }
+        added++;
+        return changed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(Object o) {
+        long hash = hash(o);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = indexFor(h1 + i * h2);
+            if ((bits[(int) (bit >>> 6)] & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of objects that have been added to the filter, including duplicates.
+     *
+     * @return an int
+     */
+    public int getAddedCount() {
+        return added;
+    }
+
+    /**
+     * Returns the number of bits in the filter.
+     *
+     * @return a long
+     */
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    /**
+     * Returns the number of hash functions used for each object.
+     *
+     * @return an int
+     */
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "BloomFilterSet(" + added + " added, " + bitCount + " bits, " + hashCount
+            + " hashes)";
+    }
+
+    private long indexFor(int combinedHash) {
+        return (combinedHash & 0xFFFFFFFFL) % bitCount;
+    }
+
+    /**
+     * Produces a 64 bit hash of an object. Strings are hashed over all their characters so that
+     * identifiers sharing a hashCode() do not always collide, and other objects have their
+     * hashCode() spread across all 64 bits.
+     */
+    private static long hash(Object o) {
+        long h;
+        if (o == null) {
+            h = 0L;
+        } else if (o instanceof String) {
+            String s = (String) o;
+            h = 0xcbf29ce484222325L;
+            for (int i = 0; i < s.length(); i++) {
+                h ^= s.charAt(i);
+                h *= 0x100000001b3L;
+            }
+        } else {
+            h = o.hashCode();
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
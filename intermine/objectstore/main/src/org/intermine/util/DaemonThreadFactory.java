@@ -0,0 +1,48 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A ThreadFactory for thread pools that creates daemon threads, so that a pool that is not shut
+ * down does not stop the JVM from exiting.  The threads are named after the pool, for example
+ * "TemplateSummariser 3 thread 2" for the second thread of the third factory created.
+ *
+ * @author InterMine
+ */
+public class DaemonThreadFactory implements ThreadFactory
+{
+    private static final AtomicInteger POOL_COUNT = new AtomicInteger(0);
+
+    private final String prefix;
+    private final AtomicInteger threadCount = new AtomicInteger(0);
+
+    /**
+     * Constructs a DaemonThreadFactory for one thread pool.
+     *
+     * @param name the name of the pool, used in the names of its threads
+     */
+    public DaemonThreadFactory(String name) {
+        prefix = name + " " + POOL_COUNT.incrementAndGet() + " thread ";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, prefix + threadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    }
+}
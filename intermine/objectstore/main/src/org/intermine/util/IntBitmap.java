@@ -0,0 +1,393 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A compressed set of ints, with fast union, intersection and difference operations.  The ints
+ * are split into chunks of 65536 by their top 16 bits.  A chunk with few members holds their
+ * bottom 16 bits in a sorted array, and a chunk with more than 4096 members is held as a bitmap,
+ * so no chunk takes more than 8 kilobytes and a sparse set takes about two bytes per member.
+ * Unlike IntPresentSet, this works well for ints spread thinly over a large range, such as the
+ * ids of the objects in a list.
+ *
+ * Iteration is in ascending order of the ints treated as unsigned.  The set operations return new
+ * sets and leave their arguments unchanged.  Members cannot be removed, except by the set
+ * operations.  This class is not thread-safe while it is being added to.
+ *
+ * @author InterMine
+ */
+public final class IntBitmap extends AbstractSet<Integer>
+{
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+    private static final int OR = 0;
+    private static final int AND = 1;
+    private static final int AND_NOT = 2;
+    private static final int XOR = 3;
+
+    private int[] keys = new int[4];
+    private Object[] chunks = new Object[4];
+    private int[] cardinalities = new int[4];
+    private int chunkCount = 0;
+    private int size = 0;
+
+    /**
+     * Creates an empty set.
+     */
+    public IntBitmap() {
+    }
+
+    /**
+     * Creates a set containing the given ints.
+     *
+     * @param values the ints to add
+     */
+    public IntBitmap(int[] values) {
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (int value : sorted) {
+            add(value);
+        }
+    }
+
+    /**
+     * Adds an int to the set.
+     *
+     * @param value the int to add
+     * @return true if the set did not already contain it
+     */
+    public boolean add(int value) {
+        int key = value >>> 16;
+        char low = (char) value;
+        int index = findChunk(key);
+        if (index < 0) {
+            index = -index - 1;
+            insertChunk(index, key, new char[4]);
+        }
+        Object chunk = chunks[index];
+        int cardinality = cardinalities[index];
+        if (chunk instanceof long[]) {
+            long[] bits = (long[]) chunk;
+            long mask = 1L << low;
+            if ((bits[low >>> 6] & mask) != 0) {
+                return false;
+            }
+            bits[low >>> 6] |= mask;
+        } else {
+            char[] array = (char[]) chunk;
+            int pos = Arrays.binarySearch(array, 0, cardinality, low);
+            if (pos >= 0) {
+                return false;
+            }
+            pos = -pos - 1;
+            if (cardinality == ARRAY_MAX) {
+                long[] bits = toBits(array, cardinality);
+                bits[low >>> 6] |= 1L << low;
+                chunks[index] = bits;
+            } else {
+                if (cardinality == array.length) {
+                    array = Arrays.copyOf(array, Math.min(ARRAY_MAX, cardinality * 2));
+                    chunks[index] = array;
+                }
+                System.arraycopy(array, pos, array, pos + 1, cardinality - pos);
+                array[pos] = low;
+            }
+        }
+        cardinalities[index]++;
+        size++;
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean add(Integer value) {
+        return add(value.intValue());
+    }
+
+    /**
+     * Returns true if the set contains an int.
+     *
+     * @param value the int
+     * @return a boolean
+     */
+    public boolean contains(int value) {
+        int index = findChunk(value >>> 16);
+        if (index < 0) {
+            return false;
+        }
+        char low = (char) value;
+        Object chunk = chunks[index];
+        if (chunk instanceof long[]) {
+            return (((long[]) chunk)[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) chunk, 0, cardinalities[index], low) >= 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(Object o) {
+        return (o instanceof Integer) && contains(((Integer) o).intValue());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the contents of the set, in ascending order of the ints treated as unsigned.
+     *
+     * @return an array of ints
+     */
+    public int[] toIntArray() {
+        int[] retval = new int[size];
+        int pos = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            pos = copyChunk(i, retval, pos);
+        }
+        return retval;
+    }
+
+    /**
+     * Returns roughly how much memory the set uses.
+     *
+     * @return a number of bytes
+     */
+    public long getSizeInBytes() {
+        long bytes = 64 + 16L * keys.length;
+        for (int i = 0; i < chunkCount; i++) {
+            Object chunk = chunks[i];
+            bytes += 16 + ((chunk instanceof long[]) ? 8L * BITMAP_WORDS
+                    : 2L * ((char[]) chunk).length);
+        }
+        return bytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+            private final int[] values = toIntArray();
+            private int pos = 0;
+
+            @Override
+            public boolean hasNext() {
+                return pos < values.length;
+            }
+
+            @Override
+            public Integer next() {
+                if (pos >= values.length) {
+                    throw new NoSuchElementException();
+                }
+                return new Integer(values[pos++]);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Cannot remove from an IntBitmap");
+            }
+        };
+    }
+
+    /**
+     * Returns the ints in either of two sets.
+     *
+     * @param a a set
+     * @param b another set
+     * @return a new set
+     */
+    public static IntBitmap or(IntBitmap a, IntBitmap b) {
+        return combine(a, b, OR);
+    }
+
+    /**
+     * Returns the ints in both of two sets.
+     *
+     * @param a a set
+     * @param b another set
+     * @return a new set
+     */
+    public static IntBitmap and(IntBitmap a, IntBitmap b) {
+        return combine(a, b, AND);
+    }
+
+    /**
+     * Returns the ints in the first set that are not in the second.
+     *
+     * @param a a set
+     * @param b the set of ints to leave out
+     * @return a new set
+     */
+    public static IntBitmap andNot(IntBitmap a, IntBitmap b) {
+        return combine(a, b, AND_NOT);
+    }
+
+    /**
+     * Returns the ints in exactly one of two sets.
+     *
+     * @param a a set
+     * @param b another set
+     * @return a new set
+     */
+    public static IntBitmap xor(IntBitmap a, IntBitmap b) {
+        return combine(a, b, XOR);
+    }
+
+    private static IntBitmap combine(IntBitmap a, IntBitmap b, int op) {
+        IntBitmap result = new IntBitmap();
+        int i = 0, j = 0;
+        while (i < a.chunkCount || j < b.chunkCount) {
+            int keyA = (i < a.chunkCount) ? a.keys[i] : Integer.MAX_VALUE;
+            int keyB = (j < b.chunkCount) ? b.keys[j] : Integer.MAX_VALUE;
+            if (keyA < keyB) {
+                if (op != AND) {
+                    result.appendChunk(keyA, a.copyOfChunk(i), a.cardinalities[i]);
+                }
+                i++;
+            } else if (keyB < keyA) {
+                if (op == OR || op == XOR) {
+                    result.appendChunk(keyB, b.copyOfChunk(j), b.cardinalities[j]);
+                }
+                j++;
+            } else {
+                long[] bitsA = a.chunkBits(i);
+                long[] bitsB = b.chunkBits(j);
+                long[] bits = new long[BITMAP_WORDS];
+                int cardinality = 0;
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    long word;
+                    switch (op) {
+                        case OR:
+                            word = bitsA[w] | bitsB[w];
+                            break;
+                        case AND:
+                            word = bitsA[w] & bitsB[w];
+                            break;
+                        case AND_NOT:
+                            word = bitsA[w] & ~bitsB[w];
+                            break;
+                        default:
+                            word = bitsA[w] ^ bitsB[w];
+                            break;
+                    }
+                    bits[w] = word;
+                    cardinality += Long.bitCount(word);
+                }
+                if (cardinality > ARRAY_MAX) {
+                    result.appendChunk(keyA, bits, cardinality);
+                } else if (cardinality > 0) {
+                    result.appendChunk(keyA, toArray(bits, cardinality), cardinality);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    private int findChunk(int key) {
+        return Arrays.binarySearch(keys, 0, chunkCount, key);
+    }
+
+    private void insertChunk(int index, int key, Object chunk) {
+        if (chunkCount == keys.length) {
+            keys = Arrays.copyOf(keys, chunkCount * 2);
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            cardinalities = Arrays.copyOf(cardinalities, chunkCount * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, chunkCount - index);
+        System.arraycopy(chunks, index, chunks, index + 1, chunkCount - index);
+        System.arraycopy(cardinalities, index, cardinalities, index + 1, chunkCount - index);
+        keys[index] = key;
+        chunks[index] = chunk;
+        cardinalities[index] = 0;
+        chunkCount++;
+    }
+
+    private void appendChunk(int key, Object chunk, int cardinality) {
+        insertChunk(chunkCount, key, chunk);
+        cardinalities[chunkCount - 1] = cardinality;
+        size += cardinality;
+    }
+
+    private Object copyOfChunk(int index) {
+        Object chunk = chunks[index];
+        if (chunk instanceof long[]) {
+            return ((long[]) chunk).clone();
+        }
+        return Arrays.copyOf((char[]) chunk, cardinalities[index]);
+    }
+
+    private long[] chunkBits(int index) {
+        Object chunk = chunks[index];
+        if (chunk instanceof long[]) {
+            return (long[]) chunk;
+        }
+        return toBits((char[]) chunk, cardinalities[index]);
+    }
+
+    private int copyChunk(int index, int[] dest, int pos) {
+        int high = keys[index] << 16;
+        Object chunk = chunks[index];
+        if (chunk instanceof long[]) {
+            long[] bits = (long[]) chunk;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                long word = bits[w];
+                while (word != 0) {
+                    dest[pos++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+        } else {
+            char[] array = (char[]) chunk;
+            for (int k = 0; k < cardinalities[index]; k++) {
+                dest[pos++] = high | array[k];
+            }
+        }
+        return pos;
+    }
+
+    private static long[] toBits(char[] array, int cardinality) {
+        long[] bits = new long[BITMAP_WORDS];
+        for (int k = 0; k < cardinality; k++) {
+            bits[array[k] >>> 6] |= 1L << array[k];
+        }
+        return bits;
+    }
+
+    private static char[] toArray(long[] bits, int cardinality) {
+        char[] array = new char[cardinality];
+        int pos = 0;
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            long word = bits[w];
+            while (word != 0) {
+                array[pos++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return array;
+    }
+}
@@ -137,6 +137,28 @@ public final class PropertiesUtil
         return ret;
     }
 
+    /**
+     * Returns the value of a property as an int, or the default if the property is not set.
+     *
+     * @param props the Properties to read
+     * @param name the name of the property
+     * @param defaultValue the value to return if the property is not set or is blank
+     * @return the value of the property
+     * @throws IllegalArgumentException if the property is set but is not an integer
+     */
+    public static int getInt(Properties props, String name, int defaultValue) {
+        String value = props.getProperty(name);
+        if (value == null || value.trim().length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Property " + name + " should be an integer, but is "
+                    + value, e);
+        }
+    }
+
     /**
      * Serialize properties to a string suitable for a subsequent load()
      * @param props the properties
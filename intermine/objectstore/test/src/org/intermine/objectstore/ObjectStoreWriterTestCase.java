@@ -10,6 +10,8 @@ package org.intermine.objectstore;
  *
  */
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.ConcurrentModificationException;
@@ -756,5 +758,21 @@ public class ObjectStoreWriterTestCase extends ObjectStoreAbstractImplTestCase
         ClobAccess sub = ca.subSequence(85000, 85016);
         assertEquals("Lots of monkeys.", sub.toString());
         assertEquals(16, sub.length());
+        char[] chars = new char[20];
+        ca.getChars(16990, 17010, chars, 0);
+        assertEquals(longString.substring(16990, 17010), new String(chars));
+        assertEquals(longString.toString(), readAll(ca.getReader()));
+        assertEquals(longString.substring(1000, 150000),
+                readAll(ca.subSequence(1000, 150000).getReader()));
+    }
+
+    private static String readAll(Reader reader) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[1000];
+        int count;
+        while ((count = reader.read(buffer)) != -1) {
+            text.append(buffer, 0, count);
+        }
+        return text.toString();
     }
 }
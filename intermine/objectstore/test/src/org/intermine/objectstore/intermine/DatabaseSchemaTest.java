@@ -20,6 +20,8 @@ import java.util.Set;
 
 import org.intermine.metadata.ClassDescriptor;
 import org.intermine.metadata.Model;
+import org.intermine.objectstore.ObjectStoreQueriesTestCase;
+import org.intermine.objectstore.query.Query;
 
 public class DatabaseSchemaTest extends TestCase
 {
@@ -40,6 +42,29 @@ public class DatabaseSchemaTest extends TestCase
         }
     }
 
+    public void testSetRangeBins() throws Exception {
+        DatabaseSchema schema = new DatabaseSchema(model, Collections.EMPTY_LIST, false,
+                Collections.EMPTY_SET, 1, false, false);
+        Query q = ObjectStoreQueriesTestCase.rangeOverlapsValues();
+        assertFalse(schema.hasRangeBins("intermine_range"));
+        assertFalse(generate(q, schema).contains(RangeBins.BIN_COLUMN));
+
+        schema.setRangeBins("intermine_range", true);
+        assertTrue(schema.hasRangeBins("intermine_range"));
+        assertTrue(generate(q, schema).contains(RangeBins.BIN_COLUMN));
+
+        // SQL generated with the bins must not be used once rows without a bin are stored
+        schema.setRangeBins("intermine_range", false);
+        assertFalse(schema.hasRangeBins("intermine_range"));
+        assertTrue(schema.hadRangeBins("intermine_range"));
+        assertFalse(generate(q, schema).contains(RangeBins.BIN_COLUMN));
+    }
+
+    private static String generate(Query q, DatabaseSchema schema) throws Exception {
+        return SqlGenerator.generate(q, 0, Integer.MAX_VALUE, schema, null,
+                Collections.<Object, String>emptyMap());
+    }
+
     public void testValidTruncatedList() throws Exception {
         List truncated = new ArrayList();
         ClassDescriptor ceo = model.getClassDescriptorByName("org.intermine.model.testmodel.CEO");
@@ -0,0 +1,89 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class RangeBinsTest extends TestCase
+{
+    public RangeBinsTest(String arg) {
+        super(arg);
+    }
+
+    public void testGetBin() throws Exception {
+        // the same numbers as the UCSC extended scheme, which counts from 0 and excludes the end
+        assertEquals(4681, RangeBins.getBin(1, 1));
+        assertEquals(4681, RangeBins.getBin(1, 131072));
+        assertEquals(4682, RangeBins.getBin(131073, 131073));
+        assertEquals(585, RangeBins.getBin(131072, 131073));
+        assertEquals(586, RangeBins.getBin(1048577, 2000000));
+        assertEquals(73, RangeBins.getBin(1, 8388608));
+        assertEquals(9, RangeBins.getBin(1, 8388609));
+        assertEquals(1, RangeBins.getBin(1, 536870912));
+        assertEquals(0, RangeBins.getBin(1, 536870913));
+        // either way round, and not before the start of the chromosome
+        assertEquals(RangeBins.getBin(100, 200000), RangeBins.getBin(200000, 100));
+        assertEquals(4681, RangeBins.getBin(0, 0));
+        assertEquals(4681, RangeBins.getBin(-10, 5));
+    }
+
+    public void testGetOverlappingBins() throws Exception {
+        assertEquals(Arrays.toString(new int[] {4681, 4681, 585, 585, 73, 73, 9, 9, 1, 1, 0, 0}),
+                Arrays.toString(RangeBins.getOverlappingBins(10, 20)));
+        assertEquals(Arrays.toString(new int[] {4688, 4696, 585, 586, 73, 73, 9, 9, 1, 1, 0, 0}),
+                Arrays.toString(RangeBins.getOverlappingBins(1000000, 2000000)));
+    }
+
+    public void testOverlapping() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            int scale = 1 << random.nextInt(30);
+            int start1 = random.nextInt(Integer.MAX_VALUE / 2);
+            int end1 = start1 + random.nextInt(scale);
+            int start2 = Math.max(1, start1 - scale + random.nextInt(2 * scale));
+            int end2 = start2 + random.nextInt(scale);
+            boolean overlaps = (start1 <= end2) && (end1 >= start2);
+            if (overlaps) {
+                assertTrue(start1 + ".." + end1 + " overlaps " + start2 + ".." + end2,
+                        isInBins(RangeBins.getBin(start2, end2),
+                            RangeBins.getOverlappingBins(start1, end1)));
+            }
+        }
+    }
+
+    public void testAppendOverlappingBinsSql() throws Exception {
+        StringBuffer buffer = new StringBuffer();
+        RangeBins.appendOverlappingBinsSql(buffer, "a1_.intermine_bin", 1000000, 2000000);
+        assertEquals("(a1_.intermine_bin BETWEEN 4688 AND 4696 OR a1_.intermine_bin BETWEEN 585"
+                + " AND 586 OR a1_.intermine_bin = 73 OR a1_.intermine_bin = 9"
+                + " OR a1_.intermine_bin = 1 OR a1_.intermine_bin = 0)", buffer.toString());
+    }
+
+    public void testGetBinSql() throws Exception {
+        String sql = RangeBins.getBinSql("s", "e");
+        assertTrue(sql, sql.startsWith("CASE WHEN (GREATEST(LEAST(s, e) - 1, 0) >> 17) = "
+                + "(GREATEST(GREATEST(s, e) - 1, GREATEST(LEAST(s, e) - 1, 0)) >> 17) THEN 4681"
+                + " + (GREATEST(LEAST(s, e) - 1, 0) >> 17)"));
+        assertTrue(sql, sql.endsWith(" ELSE 0 END"));
+    }
+
+    private static boolean isInBins(int bin, int[] bins) {
+        for (int i = 0; i < bins.length; i += 2) {
+            if ((bin >= bins[i]) && (bin <= bins[i + 1])) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
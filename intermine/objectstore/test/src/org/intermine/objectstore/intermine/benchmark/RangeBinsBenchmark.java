@@ -0,0 +1,99 @@
+package org.intermine.objectstore.intermine.benchmark;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.intermine.objectstore.intermine.RangeBins;
+import org.junit.Test;
+
+/**
+ * Compares how many rows a bin constraint selects with the rows actually overlapping, which is
+ * what a range index finds, for chromosomes dense with SNPs, genes and large features.  This is
+ * not part of the unit tests; run it on its own.
+ *
+ * @author InterMine
+ */
+public class RangeBinsBenchmark
+{
+    @Test
+    public void benchmarkBinSelectivity() throws Exception {
+        Random random = new Random(1);
+        int chrLength = 250000000;
+        int[][] densities = {{3000000, 1, 1}, {30000, 1000, 200000}, {3000, 100000, 2000000}};
+        String[] names = {"SNPs", "genes", "large features"};
+        for (int d = 0; d < densities.length; d++) {
+            int count = densities[d][0];
+            int[] starts = new int[count];
+            int[] ends = new int[count];
+            int[] bins = new int[count];
+            for (int i = 0; i < count; i++) {
+                int length = densities[d][1]
+                    + random.nextInt(densities[d][2] - densities[d][1] + 1);
+                starts[i] = 1 + random.nextInt(chrLength - length);
+                ends[i] = starts[i] + length - 1;
+                bins[i] = RangeBins.getBin(starts[i], ends[i]);
+            }
+            int[] binCounts = new int[40000];
+            for (int bin : bins) {
+                binCounts[bin]++;
+            }
+            // what a range index finds: those starting before the end of the region, less those
+            // ending before the start of it
+            int[] sortedStarts = starts.clone();
+            int[] sortedEnds = ends.clone();
+            Arrays.sort(sortedStarts);
+            Arrays.sort(sortedEnds);
+            for (int regionLength : new int[] {1000, 100000, 1000000}) {
+                int regions = 1000;
+                int[] regionStarts = new int[regions];
+                for (int r = 0; r < regions; r++) {
+                    regionStarts[r] = 1 + random.nextInt(chrLength - regionLength);
+                }
+                long selected = 0;
+                for (int r = 0; r < regions; r++) {
+                    int[] overlappingBins = RangeBins.getOverlappingBins(regionStarts[r],
+                            regionStarts[r] + regionLength - 1);
+                    for (int i = 0; i < overlappingBins.length; i += 2) {
+                        for (int bin = overlappingBins[i]; bin <= overlappingBins[i + 1]; bin++) {
+                            selected += binCounts[bin];
+                        }
+                    }
+                }
+                long overlapping = 0;
+                for (int r = 0; r < regions; r++) {
+                    int end = regionStarts[r] + regionLength - 1;
+                    overlapping += countBelow(sortedStarts, end + 1)
+                        - countBelow(sortedEnds, regionStarts[r]);
+                }
+                assertTrue(selected >= overlapping);
+                System.out.printf("%d %s, %d bp regions: bins select %.1f rows per region for"
+                        + " %.1f overlapping%n", count, names[d], regionLength,
+                        selected / (double) regions, overlapping / (double) regions);
+            }
+        }
+    }
+
+    // the number of values less than key
+    private static int countBelow(int[] values, int key) {
+        int i = Arrays.binarySearch(values, key);
+        if (i < 0) {
+            return -(i + 1);
+        }
+        while (i > 0 && values[i - 1] == key) {
+            i--;
+        }
+        return i;
+    }
+}
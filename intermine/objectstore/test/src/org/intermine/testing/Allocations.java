@@ -0,0 +1,73 @@
+package org.intermine.testing;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * Measures the memory allocated by the current thread, for benchmarks.  This relies on an
+ * extension of ThreadMXBean that only some JVMs have, so is looked up by reflection.
+ *
+ * @author InterMine
+ */
+public final class Allocations
+{
+    private static final ThreadMXBean BEAN = ManagementFactory.getThreadMXBean();
+    private static final Method ALLOCATED_BYTES = findMethod();
+
+    private Allocations() {
+        // don't
+    }
+
+    private static Method findMethod() {
+        try {
+            Class<?> c = Class.forName("com.sun.management.ThreadMXBean");
+            if (c.isInstance(BEAN)) {
+                return c.getMethod("getThreadAllocatedBytes", long.class);
+            }
+        } catch (Exception e) {
+            // not supported by this JVM
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of bytes allocated so far by the current thread, or -1 if this JVM
+     * cannot measure it
+     */
+    public static long allocatedBytes() {
+        if (ALLOCATED_BYTES == null) {
+            return -1;
+        }
+        try {
+            return ((Long) ALLOCATED_BYTES.invoke(BEAN, Long.valueOf(Thread.currentThread()
+                            .getId()))).longValue();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Describe the memory allocated per item between two calls of allocatedBytes().
+     * @param before the result of allocatedBytes() before the work
+     * @param after the result of allocatedBytes() after the work
+     * @param items the number of items processed
+     * @return the number of bytes per item, or "n/a" if this JVM cannot measure it
+     */
+    public static String perItem(long before, long after, int items) {
+        if (before < 0 || after < 0) {
+            return "n/a";
+        }
+        return String.valueOf((after - before) / items);
+    }
+}
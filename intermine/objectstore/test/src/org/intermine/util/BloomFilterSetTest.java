@@ -0,0 +1,53 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import junit.framework.*;
+
+public class BloomFilterSetTest extends TestCase
+{
+    public BloomFilterSetTest(String arg1) {
+        super(arg1);
+    }
+
+    public void testNoFalseNegatives() throws Exception {
+        BloomFilterSet<Object> set = new BloomFilterSet<Object>(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            set.add("FBgn" + i);
+        }
+        set.add(null);
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(set.contains("FBgn" + i));
+        }
+        assertTrue(set.contains(null));
+        assertEquals(10001, set.getAddedCount());
+    }
+
+    public void testFalsePositiveRate() throws Exception {
+        BloomFilterSet<Object> set = new BloomFilterSet<Object>(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            set.add("FBgn" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (set.contains("CG" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("Too many false positives: " + falsePositives, falsePositives < 300);
+    }
+
+    public void testEmpty() throws Exception {
+        BloomFilterSet<Object> set = new BloomFilterSet<Object>(0, 0.01);
+        assertFalse(set.contains("FBgn0000001"));
+        assertFalse(set.contains(Boolean.TRUE));
+    }
+}
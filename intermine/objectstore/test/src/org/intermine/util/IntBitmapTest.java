@@ -0,0 +1,110 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+public class IntBitmapTest extends TestCase
+{
+    public IntBitmapTest(String arg1) {
+        super(arg1);
+    }
+
+    public void testAdd() throws Exception {
+        IntBitmap set = new IntBitmap();
+        assertTrue(set.add(42));
+        assertTrue(set.add(28673452));
+        assertFalse(set.add(42));
+
+        assertEquals(2, set.size());
+        assertTrue(set.contains(42));
+        assertTrue(set.contains(28673452));
+        assertTrue(set.contains(new Integer(42)));
+        assertFalse(set.contains(63));
+        assertFalse(set.contains("42"));
+        assertEquals("[42, 28673452]", set.toString());
+        assertTrue(Arrays.equals(new int[] {42, 28673452}, set.toIntArray()));
+    }
+
+    public void testDenseChunk() throws Exception {
+        // enough values in one chunk to change from an array to a bitmap
+        IntBitmap set = new IntBitmap();
+        Set<Integer> expected = new TreeSet<Integer>();
+        for (int i = 10000; i > 0; i--) {
+            set.add(70000 + i * 3);
+            expected.add(new Integer(70000 + i * 3));
+        }
+        assertEquals(10000, set.size());
+        assertEquals(expected, set);
+        assertEquals(new IntBitmap(new int[] {70003, 70006}),
+                IntBitmap.and(set, new IntBitmap(new int[] {70003, 70004, 70006})));
+    }
+
+    public void testOperations() throws Exception {
+        Random random = new Random(12345);
+        for (int run = 0; run < 20; run++) {
+            int range = (run % 2 == 0) ? 100000 : 50000000;
+            int count = 1 + random.nextInt(20000);
+            IntBitmap a = new IntBitmap();
+            IntBitmap b = new IntBitmap();
+            Set<Integer> setA = new TreeSet<Integer>();
+            Set<Integer> setB = new TreeSet<Integer>();
+            for (int i = 0; i < count; i++) {
+                int x = random.nextInt(range);
+                a.add(x);
+                setA.add(new Integer(x));
+                int y = random.nextInt(range);
+                b.add(y);
+                setB.add(new Integer(y));
+            }
+            assertEquals(setA, a);
+            assertEquals(setB, b);
+
+            Set<Integer> union = new TreeSet<Integer>(setA);
+            union.addAll(setB);
+            checkSet(union, IntBitmap.or(a, b));
+
+            Set<Integer> intersection = new TreeSet<Integer>(setA);
+            intersection.retainAll(setB);
+            checkSet(intersection, IntBitmap.and(a, b));
+
+            Set<Integer> difference = new TreeSet<Integer>(setA);
+            difference.removeAll(setB);
+            checkSet(difference, IntBitmap.andNot(a, b));
+
+            Set<Integer> symmetric = new TreeSet<Integer>(union);
+            symmetric.removeAll(intersection);
+            checkSet(symmetric, IntBitmap.xor(a, b));
+
+            // the arguments must not change
+            assertEquals(setA, a);
+            assertEquals(setB, b);
+        }
+    }
+
+    private static void checkSet(Set<Integer> expected, IntBitmap actual) {
+        assertEquals(expected.size(), actual.size());
+        int[] values = actual.toIntArray();
+        int i = 0;
+        for (Integer value : expected) {
+            assertEquals(value.intValue(), values[i++]);
+            assertTrue(actual.contains(value.intValue()));
+        }
+        // the result can be added to like any other set
+        actual.add(-1);
+        assertTrue(actual.contains(-1));
+    }
+}
@@ -100,6 +100,21 @@ public class PropertiesUtilTest extends TestCase
         assertEquals(0, p.size());
     }
 
+    public void testGetInt() throws Exception {
+        Properties p = new Properties();
+        p.setProperty("threads", " 8 ");
+        p.setProperty("blank", "");
+        p.setProperty("word", "many");
+        assertEquals(8, PropertiesUtil.getInt(p, "threads", 4));
+        assertEquals(4, PropertiesUtil.getInt(p, "blank", 4));
+        assertEquals(4, PropertiesUtil.getInt(p, "missing", 4));
+        try {
+            PropertiesUtil.getInt(p, "word", 4);
+            fail("Expected: IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
     public void testLoadInvalid() throws Exception {
         try {
             Properties p = PropertiesUtil.loadProperties("invalidTest.properties");
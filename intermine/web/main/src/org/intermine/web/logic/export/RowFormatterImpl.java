@@ -35,6 +35,20 @@ public class RowFormatterImpl implements RowFormatter
         this.quoted = quoted;
     }
 
+    /**
+     * @return the delimiter between values
+     */
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    /**
+     * @return true if all strings are quoted
+     */
+    public boolean isQuoted() {
+        return quoted;
+    }
+
     /**
      * Formats objects to string. Just convert objects to strings
      * with toString method and quotes it if required or needed
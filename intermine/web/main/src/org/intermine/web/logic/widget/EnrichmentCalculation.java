@@ -15,7 +15,6 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
-import org.apache.commons.math3.distribution.HypergeometricDistribution;
 
 /**
  * Calculate enrichment of an attribute applied to members of a sample that is a subset of a larger
@@ -54,14 +53,14 @@ public final class EnrichmentCalculation
 
         int sampleSize = input.getSampleSize();
         PopulationInfo population = input.getPopulationInfo();
-        int populationSize = population.getSize();
 
         Map<String, Integer> sampleCounts = input.getAnnotatedCountsInSample();
         Map<String, PopulationInfo> annotatedPopulationInfo =
             input.getAnnotatedCountsInPopulation();
 
         Map<String, BigDecimal> rawResults =
-                getRawResults(sampleSize, populationSize, sampleCounts, annotatedPopulationInfo);
+                getRawResults(sampleSize, input.getHypergeometric(), sampleCounts,
+                        annotatedPopulationInfo);
         ErrorCorrection.Strategy strategy = getStrategy(errorCorrection);
 
         Map<String, BigDecimal> correctedResults = ErrorCorrection.adjustPValues(strategy,
@@ -81,19 +80,17 @@ public final class EnrichmentCalculation
     }
 
     private static Map<String, BigDecimal> getRawResults(int sampleSize,
-            int populationSize, Map<String, Integer> sampleCounts,
+            Hypergeometric h, Map<String, Integer> sampleCounts,
             Map<String, PopulationInfo> annotatedPopulationInfo) {
         Map<String, BigDecimal> rawResults = new HashMap<String, BigDecimal>();
         for (Map.Entry<String, Integer> entry : sampleCounts.entrySet()) {
             String attribute = entry.getKey();
 
-            Integer sampleCount = entry.getValue();
+            int sampleCount = entry.getValue().intValue();
             PopulationInfo pi = annotatedPopulationInfo.get(attribute);
-            Integer populationCount = (pi != null) ? pi.getSize() : 0;
+            int populationCount = (pi != null) ? pi.getSize() : 0;
 
-            HypergeometricDistribution h =
-                new HypergeometricDistribution(populationSize, populationCount, sampleSize);
-            Double pValue = h.upperCumulativeProbability(sampleCount);
+            double pValue = h.upperTail(populationCount, sampleSize, sampleCount);
             rawResults.put(attribute, new BigDecimal(pValue));
         }
         return rawResults;
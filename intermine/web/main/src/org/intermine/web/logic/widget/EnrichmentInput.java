@@ -71,4 +71,12 @@ public interface EnrichmentInput
      * @return the number of tests to be performed
      */
     int getTestCount();
+
+    /**
+     * The hypergeometric distribution for the population size, N, used to work out the p-values.
+     * Making one costs time and memory in proportion to the population size, so implementations
+     * should keep it with the population statistics.
+     * @return the distribution for the population
+     */
+    Hypergeometric getHypergeometric();
 }
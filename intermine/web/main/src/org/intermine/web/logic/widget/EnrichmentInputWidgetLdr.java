@@ -20,7 +20,6 @@ import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
-import org.intermine.util.CacheMap;
 
 /**
  * Executes queries and summarises data for a specific EnrichmentWidgetLdr ready for calculation.
@@ -33,23 +32,10 @@ public class EnrichmentInputWidgetLdr implements EnrichmentInput
     private final EnrichmentWidgetImplLdr ldr;
     private final ObjectStore os;
     private Map<String, Integer> sampleCounts = null;
-    private Map<String, PopulationInfo> populationCounts = null;
+    private EnrichmentPopulationCache.Entry population = null;
     private Map<String, String> labels = null;
     private static final int BATCH_SIZE = 20000;
 
-    // population queries that don't involve bags can be cached between widget executions
-    private static CacheMap<String, PopulationInfo> populationCache = new CacheMap<String,
-        PopulationInfo>();
-    private static CacheMap<String, Map<String, PopulationInfo>> populationCountsCache =
-        new CacheMap<String, Map<String, PopulationInfo>>();
-
-    // TODO population counts and sizes are no longer cached
-
-    // TODO make a static cache from populate query to size and populationCounts maps,
-    // this should only have a few entries per widget depending on the organism composition
-    // of bags and other parameters, e.g. GO namespace.  But log cache size for a bit to make
-    // sure.  This should be a CacheMap, old cache was just a standard Map.
-
     /**
      * Construct with an EnrichmentWidgetLdr that contains queries needed for specific widget tests.
      * This class executes queries and summarises data ready for calculation.
@@ -63,38 +49,57 @@ public class EnrichmentInputWidgetLdr implements EnrichmentInput
 
     @Override
     public Map<String, PopulationInfo> getAnnotatedCountsInPopulation() {
-        if (populationCounts == null) {
-            Query query = ldr.getPopulationQuery(false);
-
-            populationCounts = populationCountsCache.get(query.toString());
-            if (populationCounts == null) {
-                populationCounts = new HashMap<String, PopulationInfo>();
-
-                Results results = os.execute(query, BATCH_SIZE, true, true, true);
-                Iterator<?> iter = results.iterator();
-                while (iter.hasNext()) {
-                    @SuppressWarnings("rawtypes")
-                    ResultsRow row =  (ResultsRow) iter.next();
-
-                    // an identifier for an attribute value, e.g. a department name
-                    String identifier = String.valueOf(row.get(0));
-
-                    // the number of times the item is applied in the population, e.g. the number of
-                    // companies that contain a department with this name
-                    // TODO should check that casting from a long gives correct result
-                    Integer count = ((Long) row.get(1)).intValue();
-
-                    float geneLengthAverage = 0;
-                    if (row.size() > 2) {
-                        if (row.get(2) != null) {
-                            geneLengthAverage = ((BigDecimal) row.get(2)).floatValue();
-                        }
-                    }
-                    populationCounts.put(identifier, new PopulationInfo(count, geneLengthAverage));
+        return getPopulation().getAnnotatedCounts();
+    }
+
+    /**
+     * The population statistics don't depend on the list, other than through list constraints,
+     * so they are shared between widget executions by EnrichmentPopulationCache.
+     */
+    private EnrichmentPopulationCache.Entry getPopulation() {
+        if (population == null) {
+            EnrichmentPopulationCache cache = EnrichmentPopulationCache.getInstance(os);
+            String key = ldr.getPopulationCacheKey();
+            if (key != null) {
+                population = cache.get(key);
+            }
+            if (population == null) {
+                population = new EnrichmentPopulationCache.Entry(queryPopulationInfo(),
+                        queryAnnotatedCountsInPopulation());
+                if (key != null) {
+                    cache.put(key, population);
                 }
-                populationCountsCache.put(query.toString(), populationCounts);
             }
         }
+        return population;
+    }
+
+    private Map<String, PopulationInfo> queryAnnotatedCountsInPopulation() {
+        Query query = ldr.getPopulationQuery(false);
+        Map<String, PopulationInfo> populationCounts = new HashMap<String, PopulationInfo>();
+
+        Results results = os.execute(query, BATCH_SIZE, true, true, true);
+        Iterator<?> iter = results.iterator();
+        while (iter.hasNext()) {
+            @SuppressWarnings("rawtypes")
+            ResultsRow row =  (ResultsRow) iter.next();
+
+            // an identifier for an attribute value, e.g. a department name
+            String identifier = String.valueOf(row.get(0));
+
+            // the number of times the item is applied in the population, e.g. the number of
+            // companies that contain a department with this name
+            // TODO should check that casting from a long gives correct result
+            Integer count = ((Long) row.get(1)).intValue();
+
+            float geneLengthAverage = 0;
+            if (row.size() > 2) {
+                if (row.get(2) != null) {
+                    geneLengthAverage = ((BigDecimal) row.get(2)).floatValue();
+                }
+            }
+            populationCounts.put(identifier, new PopulationInfo(count, geneLengthAverage));
+        }
         return populationCounts;
     }
 
@@ -137,24 +142,23 @@ public class EnrichmentInputWidgetLdr implements EnrichmentInput
 
     @Override
     public PopulationInfo getPopulationInfo() {
+        return getPopulation().getPopulationInfo();
+    }
+
+    private PopulationInfo queryPopulationInfo() {
         Query q = ldr.getPopulationQuery(true);
-        PopulationInfo populationInfo = populationCache.get(q.toString());
-        if (populationInfo == null) {
-            int size = 0;
-            float extraAttribute = 0;
-            Results res = os.execute(q);
-            @SuppressWarnings("unchecked")
-            List<Object> info = (List<Object>) res.get(0);
-            size = ((Long) info.get(0)).intValue();
-            if (info.size() > 1) {
-                if (info.get(1) != null) {
-                    extraAttribute = (Float) info.get(1);
-                }
+        int size = 0;
+        float extraAttribute = 0;
+        Results res = os.execute(q);
+        @SuppressWarnings("unchecked")
+        List<Object> info = (List<Object>) res.get(0);
+        size = ((Long) info.get(0)).intValue();
+        if (info.size() > 1) {
+            if (info.get(1) != null) {
+                extraAttribute = (Float) info.get(1);
             }
-            populationInfo = new PopulationInfo(size, extraAttribute);
-            populationCache.put(q.toString(), populationInfo);
         }
-        return populationInfo;
+        return new PopulationInfo(size, extraAttribute);
     }
 
     @Override
@@ -164,9 +168,14 @@ public class EnrichmentInputWidgetLdr implements EnrichmentInput
         return calcTotal(q);
     }
 
+    @Override
+    public Hypergeometric getHypergeometric() {
+        return getPopulation().getHypergeometric();
+    }
+
     @Override
     public int getTestCount() {
-        return populationCounts.keySet().size();
+        return getPopulation().getAnnotatedCounts().size();
     }
 
     private int calcTotal(Query q) {
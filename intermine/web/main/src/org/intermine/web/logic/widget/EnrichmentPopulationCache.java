@@ -0,0 +1,134 @@
+package org.intermine.web.logic.widget;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.log4j.Logger;
+import org.intermine.objectstore.ObjectStore;
+
+/**
+ * Holds the population statistics of enrichment widgets, so that they are only calculated once
+ * for each widget, filter and set of organisms (or other values of list constraints).  The
+ * production database doesn't change while a release is deployed, so a cache is kept for each
+ * ObjectStore and its entries are never out of date.  The least recently used entries are
+ * dropped once there are more than a fixed number of them.
+ *
+ * @author InterMine
+ */
+public final class EnrichmentPopulationCache
+{
+    private static final Logger LOG = Logger.getLogger(EnrichmentPopulationCache.class);
+    private static final int MAX_ENTRIES = 500;
+
+    private static final Map<ObjectStore, EnrichmentPopulationCache> CACHES =
+        new WeakHashMap<ObjectStore, EnrichmentPopulationCache>();
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * The population statistics of one widget: the size of the population and the number of
+     * items in it with each attribute value, and the hypergeometric distribution for the size.
+     */
+    public static final class Entry
+    {
+        private final PopulationInfo populationInfo;
+        private final Map<String, PopulationInfo> annotatedCounts;
+        private Hypergeometric hypergeometric = null;
+
+        /**
+         * Constructor.
+         * @param populationInfo the size of the population
+         * @param annotatedCounts a map from attribute value to the number of items with that value
+         */
+        public Entry(PopulationInfo populationInfo, Map<String, PopulationInfo> annotatedCounts) {
+            this.populationInfo = populationInfo;
+            this.annotatedCounts = Collections.unmodifiableMap(annotatedCounts);
+        }
+
+        /** @return the size of the population **/
+        public PopulationInfo getPopulationInfo() {
+            return populationInfo;
+        }
+
+        /** @return a map from attribute value to the number of items with that value **/
+        public Map<String, PopulationInfo> getAnnotatedCounts() {
+            return annotatedCounts;
+        }
+
+        /**
+         * Returns the hypergeometric distribution for the size of the population, which is made
+         * the first time it is needed and then kept with the statistics.
+         * @return a Hypergeometric for the population size
+         */
+        public synchronized Hypergeometric getHypergeometric() {
+            if (hypergeometric == null) {
+                hypergeometric = new Hypergeometric(populationInfo.getSize());
+            }
+            return hypergeometric;
+        }
+    }
+
+    private EnrichmentPopulationCache() {
+    }
+
+    /**
+     * Returns the cache for an ObjectStore.
+     * @param os the ObjectStore the populations are counted in
+     * @return an EnrichmentPopulationCache
+     */
+    public static synchronized EnrichmentPopulationCache getInstance(ObjectStore os) {
+        EnrichmentPopulationCache cache = CACHES.get(os);
+        if (cache == null) {
+            cache = new EnrichmentPopulationCache();
+            CACHES.put(os, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * Get the statistics stored for a key.
+     * @param key the key, from EnrichmentWidgetImplLdr.getPopulationCacheKey()
+     * @return the statistics, or null if they aren't in the cache
+     */
+    public synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Store the statistics for a key.
+     * @param key the key, from EnrichmentWidgetImplLdr.getPopulationCacheKey()
+     * @param entry the statistics
+     */
+    public synchronized void put(String key, Entry entry) {
+        entries.put(key, entry);
+        LOG.info("Cached population of " + entry.getAnnotatedCounts().size()
+                + " attribute values for " + key + ", " + entries.size() + " entries in cache");
+    }
+
+    /**
+     * Remove all the statistics from this cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+}
@@ -9,6 +9,7 @@ package org.intermine.web.logic.widget;
  * information or http://www.gnu.org/copyleft/lesser.html.
  *
  */
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
@@ -308,6 +309,71 @@ public class EnrichmentWidgetImplLdr extends WidgetLdr
         return getQuery(actionLocal, null);
     }
 
+    /**
+     * The population queries only depend on the list through the values of any list constraints,
+     * e.g. the organisms of the genes in the list, so lists that have the same values share the
+     * same population statistics.  This returns a key that identifies them.
+     *
+     * @return a key for EnrichmentPopulationCache, or null if the population is a list and so
+     * can't be cached
+     */
+    public String getPopulationCacheKey() {
+        if (populationBag != null) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(config.getId());
+        key.append("|filter=").append(filter);
+        key.append("|correction=").append(extraCorrectionCoefficient
+                && correctionCoefficient.isApplicable());
+        for (PathConstraint pc : config.getPathConstraints()) {
+            if (WidgetConfigUtil.isListConstraint(pc)) {
+                key.append("|").append(pc.getPath()).append("=")
+                    .append(getListConstraintValues(pc));
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the values in the list for the path of a list constraint, e.g. the names of the
+     * organisms of the genes in the list.
+     */
+    private List<String> getListConstraintValues(PathConstraint pc) {
+        Query query = new Query();
+        ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
+        query.setConstraint(cs);
+        query.addFrom(startClass);
+        String[] pathsConstraint = pc.getPath().split("\\.");
+        QueryClass qc = startClass;
+        for (int index = 0; index < pathsConstraint.length - 1; index++) {
+            QueryReference qr;
+            QueryClass qcConstraint;
+            try {
+                qr = new QueryObjectReference(qc, pathsConstraint[index]);
+                qcConstraint = new QueryClass(qr.getType());
+            } catch (IllegalArgumentException e) {
+                // Not a reference - try collection instead
+                qr = new QueryCollectionReference(qc, pathsConstraint[index]);
+                qcConstraint = new QueryClass(TypeUtil.getElementType(
+                    qc.getType(), pathsConstraint[index]));
+            }
+            query.addFrom(qcConstraint);
+            cs.addConstraint(new ContainsConstraint(qr, ConstraintOp.CONTAINS, qcConstraint));
+            qc = qcConstraint;
+        }
+        QueryField qfConstraint = new QueryField(qc, pathsConstraint[pathsConstraint.length - 1]);
+        query.addToSelect(qfConstraint);
+        query.addToOrderBy(qfConstraint);
+        query.setDistinct(true);
+        cs.addConstraint(new BagConstraint(new QueryField(startClass, "id"), ConstraintOp.IN,
+                bag.getOsb()));
+        List<String> values = new ArrayList<String>();
+        for (Object value : os.executeSingleton(query, 1000, true, true, true)) {
+            values.add(String.valueOf(value));
+        }
+        return values;
+    }
+
     /**
      * @param keys the keys to the records to be exported
      * @return the query representing the records to be exported
@@ -0,0 +1,132 @@
+package org.intermine.web.logic.widget;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * The upper tail of the hypergeometric distribution for one population size, as used by the
+ * enrichment calculation.  The logarithms of the factorials up to the population size are worked
+ * out once, so each p-value only costs a few additions and one pass over the terms of the tail,
+ * without creating any objects.
+ *
+ * The tail is summed from the probability of its first term, which is calculated in log space,
+ * using the ratio between neighbouring terms.  Where the requested tail contains the mode of the
+ * distribution the complementary tail is summed instead, so the terms always get smaller and the
+ * sum cannot overflow.
+ *
+ * @author InterMine
+ */
+public final class Hypergeometric
+{
+    private final int populationSize;
+    private final double[] logFactorials;
+
+    /**
+     * Construct for a given population size.
+     * @param populationSize the number of items in the population, N
+     */
+    public Hypergeometric(int populationSize) {
+        if (populationSize < 0) {
+            throw new IllegalArgumentException("Population size must not be negative: "
+                    + populationSize);
+        }
+        this.populationSize = populationSize;
+        logFactorials = new double[populationSize + 1];
+        for (int i = 2; i <= populationSize; i++) {
+            logFactorials[i] = logFactorials[i - 1] + Math.log(i);
+        }
+    }
+
+    /**
+     * @return the number of items in the population
+     */
+    public int getPopulationSize() {
+        return populationSize;
+    }
+
+    /**
+     * The probability of finding at least sampleCount items with an attribute in a sample, given
+     * how many items in the population have the attribute.  This is the same value as
+     * HypergeometricDistribution.upperCumulativeProbability() in commons-math.
+     *
+     * @param populationCount the number of items in the population with the attribute, M
+     * @param sampleSize the number of items in the sample, n
+     * @param sampleCount the number of items in the sample with the attribute, k
+     * @return P(X &gt;= k)
+     */
+    public double upperTail(int populationCount, int sampleSize, int sampleCount) {
+        if (populationCount < 0 || populationCount > populationSize) {
+            throw new IllegalArgumentException("Population count " + populationCount
+                    + " is not between 0 and the population size " + populationSize);
+        }
+        if (sampleSize < 0 || sampleSize > populationSize) {
+            throw new IllegalArgumentException("Sample size " + sampleSize
+                    + " is not between 0 and the population size " + populationSize);
+        }
+        int lowest = Math.max(0, sampleSize + populationCount - populationSize);
+        int highest = Math.min(sampleSize, populationCount);
+        if (sampleCount <= lowest) {
+            return 1.0;
+        }
+        if (sampleCount > highest) {
+            return 0.0;
+        }
+        int mode = (int) Math.floor((sampleSize + 1.0) * (populationCount + 1.0)
+                / (populationSize + 2.0));
+        if (sampleCount > mode) {
+            return Math.min(1.0, sumUpwards(populationCount, sampleSize, sampleCount, highest));
+        }
+        // the upper tail includes the mode, so take away the lower tail, which doesn't
+        return Math.max(0.0, 1.0 - sumDownwards(populationCount, sampleSize, sampleCount - 1,
+                    lowest));
+    }
+
+    /**
+     * The log of the probability of exactly k items in the sample having the attribute.
+     */
+    private double logProbability(int m, int n, int k) {
+        return logChoose(m, k) + logChoose(populationSize - m, n - k)
+            - logChoose(populationSize, n);
+    }
+
+    private double logChoose(int n, int k) {
+        return logFactorials[n] - logFactorials[k] - logFactorials[n - k];
+    }
+
+    /**
+     * P(from &lt;= X &lt;= to), where from is above the mode.
+     */
+    private double sumUpwards(int m, int n, int from, int to) {
+        double term = 1.0;
+        double sum = 1.0;
+        for (int i = from; i < to && term > sum * 1e-17; i++) {
+            // P(i + 1) / P(i)
+            term *= ((double) (m - i) * (n - i)) / ((double) (i + 1) * (populationSize - m - n
+                        + i + 1));
+            sum += term;
+        }
+        return Math.exp(logProbability(m, n, from) + Math.log(sum));
+    }
+
+    /**
+     * P(to &lt;= X &lt;= from), where from is at or below the mode.
+     */
+    private double sumDownwards(int m, int n, int from, int to) {
+        double term = 1.0;
+        double sum = 1.0;
+        for (int i = from; i > to && term > sum * 1e-17; i--) {
+            // P(i - 1) / P(i)
+            term *= ((double) i * (populationSize - m - n + i)) / ((double) (m - i + 1)
+                    * (n - i + 1));
+            sum += term;
+        }
+        return Math.exp(logProbability(m, n, from) + Math.log(sum));
+    }
+}
@@ -59,6 +59,7 @@ import org.intermine.api.profile.Profile;
 import org.intermine.api.profile.ProfileManager;
 import org.intermine.api.profile.TagManager;
 import org.intermine.api.profile.UserNotFoundException;
+import org.intermine.api.query.DatabaseQueryStore;
 import org.intermine.api.query.MainHelper;
 import org.intermine.api.search.GlobalRepository;
 import org.intermine.api.search.SearchRepository;
@@ -201,6 +202,9 @@ public class InitialiserPlugin implements PlugIn
             throw new ServletException("Could not read from userprofile data store", e);
         }
 
+        configureBagQueryRunner(im, webProperties);
+        startBagQueryIndexing(im, webProperties);
+
         initSearch(servletContext, superProfile);
 
         servletContext.setAttribute(Constants.GRAPH_CACHE, new HashMap<String, String>());
@@ -250,6 +254,49 @@ public class InitialiserPlugin implements PlugIn
         }
     }
 
+    /**
+     * Set the number of bag queries list upload runs at once and the time limit for them, from
+     * the bag.query.threads and bag.query.timeout properties.
+     */
+    private void configureBagQueryRunner(final InterMineAPI im, final Properties webProperties) {
+        String threads = webProperties.getProperty("bag.query.threads");
+        String timeout = webProperties.getProperty("bag.query.timeout");
+        try {
+            if (StringUtils.isNotBlank(threads)) {
+                im.getBagQueryRunner().setThreads(Integer.parseInt(threads.trim()));
+            }
+            if (StringUtils.isNotBlank(timeout)) {
+                im.getBagQueryRunner().setTimeout(Long.parseLong(timeout.trim()));
+            }
+        } catch (NumberFormatException e) {
+            LOG.error("Invalid bag.query.threads or bag.query.timeout property", e);
+        }
+    }
+
+    /**
+     * Build the in-memory identifier indexes for list upload in the background, for the types
+     * listed in the bag.index.types property. Until they are ready, uploads query the database.
+     */
+    private void startBagQueryIndexing(final InterMineAPI im, final Properties webProperties) {
+        String types = webProperties.getProperty("bag.index.types");
+        if (StringUtils.isBlank(types)) {
+            return;
+        }
+        final List<String> typeList = Arrays.asList(types.trim().split("\\s*,\\s*"));
+        Thread indexer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    im.getBagQueryRunner().buildIndexes(typeList);
+                } catch (Exception e) {
+                    LOG.error("Failed to build list upload indexes for " + typeList, e);
+                }
+            }
+        }, "BagQueryRunner indexer");
+        indexer.setDaemon(true);
+        indexer.start();
+    }
+
     private void initKeylessClasses(
             final ServletContext servletContext,
             final WebConfig webConfig) {
@@ -854,6 +901,8 @@ public class InitialiserPlugin implements PlugIn
                 createPermaTokenTable(osw, con);
             }
 
+            DatabaseQueryStore.createTable(con);
+
             LOG.debug("SUCCESSFULLY APPLIED ALL UPGRADES");
         } catch (SQLException sqle) {
             LOG.error("Problem retrieving connection", sqle);
@@ -11,6 +11,7 @@ package org.intermine.web.struts;
  */
 
 import java.util.Map;
+import java.util.Properties;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -27,6 +28,7 @@ import org.intermine.api.template.ApiTemplate;
 import org.intermine.api.template.TemplateSummariser;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.api.template.TemplateManager;
+import org.intermine.util.PropertiesUtil;
 import org.intermine.web.logic.session.SessionMethods;
 
 /**
@@ -38,6 +40,11 @@ public class SummariseTemplatesAction extends InterMineAction
 {
     protected static final Logger LOG = Logger.getLogger(CreateTemplateAction.class);
 
+    /**
+     * The web property holding the number of summary queries to run in parallel.
+     */
+    public static final String THREADS_PROPERTY = "web.templates.summarise.threads";
+
     /**
      * Summarises every public template, and then forwards to the mymine template page.
      * This comes from a link on the my mine page for the super user only.
@@ -63,14 +70,13 @@ public class SummariseTemplatesAction extends InterMineAction
                 im.getObjectStore().getModel());
         Map<String, ApiTemplate> templates = templateManager.getGlobalTemplates();
 
-        for (Map.Entry<String, ApiTemplate> entry : templates.entrySet()) {
-            //String templateName = entry.getKey();
-            ApiTemplate template = entry.getValue();
-            try {
-                summariser.summarise(template);
-            } catch (ObjectStoreException e) {
-                recordError(new ActionMessage("errors.query.objectstoreerror"), request, e, LOG);
-            }
+        Properties webProperties = SessionMethods.getWebProperties(request);
+        int threads = PropertiesUtil.getInt(webProperties, THREADS_PROPERTY,
+                TemplateSummariser.DEFAULT_THREADS);
+        try {
+            summariser.summarise(templates.values(), threads);
+        } catch (ObjectStoreException e) {
+            recordError(new ActionMessage("errors.query.objectstoreerror"), request, e, LOG);
         }
 
         return new ForwardParameters(mapping.findForward("mymine"))
@@ -123,6 +123,11 @@ public class WebServiceRequestParser
      **/
     public static final String FORMAT_PARAMETER_JSONP_ROW = "jsonprows";
 
+    /**
+     * Value of parameter when user wants typed results in the binary columnar format
+     **/
+    public static final String FORMAT_PARAMETER_COLUMNAR = "columnar";
+
     /**
      * Value of parameter when user wants json data suitable
      * for using to construct tables with - this returns the rows of the table
@@ -206,6 +211,7 @@ public class WebServiceRequestParser
             put(FORMAT_PARAMETER_JSONP_TABLE, Format.TABLE);
             put(FORMAT_PARAMETER_JSON_ROW, Format.ROWS);
             put(FORMAT_PARAMETER_JSONP_ROW, Format.ROWS);
+            put(FORMAT_PARAMETER_COLUMNAR, Format.COLUMNAR);
             put(FORMAT_PARAMETER_JSONP, Format.JSON);
             put(FORMAT_PARAMETER_JSON, Format.JSON);
             put(FORMAT_PARAMETER_JSONP_COUNT, Format.JSON);
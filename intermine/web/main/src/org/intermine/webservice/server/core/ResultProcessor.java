@@ -15,9 +15,13 @@ import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 
+import org.intermine.api.results.ExportResultsIterator;
+import org.intermine.api.results.ExportRow;
+import org.intermine.api.results.ExportRowHandler;
 import org.intermine.api.results.ResultElement;
 import org.intermine.pathquery.ConstraintValueParser;
 import org.intermine.webservice.server.output.Output;
+import org.intermine.webservice.server.output.RowSink;
 
 /**
  * Processor of Results object for easy accessing and parsing of results to list of strings.
@@ -42,11 +46,19 @@ public class ResultProcessor
     }
 
     /**
-     * Writes results to output.
+     * Writes results to output.  If the output can take rows a cell at a time and the rows come
+     * from an ExportResultsIterator, the cells are passed straight from the results to the
+     * output without making a List of ResultElements or of Strings for each row.
      * @param resultIt iterator over results row
      * @param output output
      */
     public void write(Iterator<List<ResultElement>> resultIt, Output output) {
+        RowSink sink = output.getRowSink();
+        if (sink != null && resultIt instanceof ExportResultsIterator
+                && ((ExportResultsIterator) resultIt).canForEachRow()) {
+            ((ExportResultsIterator) resultIt).forEachRow(new SinkRowHandler(sink));
+            return;
+        }
         while (resultIt.hasNext())  {
             List<ResultElement> row = resultIt.next();
             output.addResultItem(convertResultElementsToStrings(row));
@@ -55,19 +67,42 @@ public class ResultProcessor
 
     private static List<String> convertResultElementsToStrings(List<ResultElement> row) {
         List<String> ret = new ArrayList<String>();
-        String value;
         for (ResultElement el : row) {
-            if (el != null && el.getField() != null) {
-                if (el.getField() instanceof Date) {
-                    value = ConstraintValueParser.ISO_DATE_FORMAT.format(el.getField());
-                } else {
-                    value = el.getField().toString();
-                }
-            } else {
-                value = "";
-            }
-            ret.add(value);
+            ret.add(convertValueToString((el == null) ? null : el.getField()));
         }
         return ret;
     }
+
+    private static String convertValueToString(Object field) {
+        if (field == null) {
+            return "";
+        } else if (field instanceof Date) {
+            return ConstraintValueParser.ISO_DATE_FORMAT.format(field);
+        } else {
+            return field.toString();
+        }
+    }
+
+    /**
+     * Passes the cells of each row to a RowSink, converted as convertResultElementsToStrings()
+     * does.
+     */
+    private static final class SinkRowHandler implements ExportRowHandler
+    {
+        private final RowSink sink;
+
+        SinkRowHandler(RowSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public boolean handleRow(ExportRow row) {
+            sink.startRow();
+            for (int i = 0; i < row.size(); i++) {
+                sink.addCell(convertValueToString(row.isPresent(i) ? row.getValue(i) : null));
+            }
+            sink.endRow();
+            return true;
+        }
+    }
 }
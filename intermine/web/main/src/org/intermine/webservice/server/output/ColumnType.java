@@ -0,0 +1,73 @@
+package org.intermine.webservice.server.output;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * The types of the columns written by ColumnarOutput, with the codes that identify them in the
+ * stream.
+ *
+ * @author InterMine
+ */
+public enum ColumnType
+{
+    /** true or false, one bit per row **/
+    BOOLEAN(1),
+    /** 32 bit integers, for int, short and byte attributes **/
+    INT(2),
+    /** 64 bit integers **/
+    LONG(3),
+    /** 32 bit floating point numbers **/
+    FLOAT(4),
+    /** 64 bit floating point numbers **/
+    DOUBLE(5),
+    /** dates, as 64 bit milliseconds since the epoch **/
+    DATE(6),
+    /** UTF-8 strings, for everything else **/
+    STRING(7);
+
+    private final int code;
+
+    private ColumnType(int code) {
+        this.code = code;
+    }
+
+    /**
+     * @return the code that identifies this type in the stream
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Returns the column type for values of an attribute.
+     *
+     * @param type the type of the attribute, as given by AttributeDescriptor.getType()
+     * @return the column type, which is STRING for types that have no column type of their own
+     */
+    public static ColumnType forAttributeType(String type) {
+        if ("int".equals(type) || "java.lang.Integer".equals(type) || "short".equals(type)
+                || "java.lang.Short".equals(type) || "byte".equals(type)
+                || "java.lang.Byte".equals(type)) {
+            return INT;
+        } else if ("long".equals(type) || "java.lang.Long".equals(type)) {
+            return LONG;
+        } else if ("float".equals(type) || "java.lang.Float".equals(type)) {
+            return FLOAT;
+        } else if ("double".equals(type) || "java.lang.Double".equals(type)) {
+            return DOUBLE;
+        } else if ("boolean".equals(type) || "java.lang.Boolean".equals(type)) {
+            return BOOLEAN;
+        } else if ("java.util.Date".equals(type)) {
+            return DATE;
+        }
+        return STRING;
+    }
+}
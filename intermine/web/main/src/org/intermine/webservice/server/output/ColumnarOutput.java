@@ -0,0 +1,435 @@
+package org.intermine.webservice.server.output;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.intermine.pathquery.ConstraintValueParser;
+import org.intermine.webservice.server.exceptions.ServiceException;
+
+/**
+ * An output that streams typed results in a binary columnar format, so that clients reading
+ * large result sets don't have to parse text.  Rows are collected into batches, and each batch
+ * is written column by column, with the values of each column in a single block.
+ *
+ * <p>
+ * The columns are set with the header attributes KEY_COLUMNS, a list of column names, and
+ * KEY_COLUMN_TYPES, a list of ColumnTypes.  Rows are added either a value at a time with
+ * setValue() and endRow(), or as Strings with addResultItem(), which converts them to the types
+ * of the columns.  If no columns have been set, rows of Strings are written as STRING columns.
+ * </p>
+ *
+ * <p>
+ * The stream is made up of these parts, with all numbers big-endian, as written by a
+ * DataOutputStream, and strings written as their length in bytes followed by their UTF-8
+ * bytes:
+ * </p>
+ * <ul>
+ *   <li>the int MAGIC</li>
+ *   <li>the schema: the number of columns as an int, then the name of each column as a string
+ *   followed by the code of its ColumnType as a byte</li>
+ *   <li>any number of batches, each the byte 1, the number of rows in the batch as an int, and
+ *   the data of each column in turn</li>
+ *   <li>the end: the byte 0, the status code as an int, and the error message as a string, which
+ *   is empty if there was no error</li>
+ * </ul>
+ *
+ * <p>
+ * The data of a column starts with a bitmap of the rows that have a value, one bit for each row
+ * starting from the lowest bit of the first byte, followed by the values.  BOOLEAN values are a
+ * bitmap in the same form, INT values are ints, LONG and DATE values are longs, FLOAT values are
+ * floats and DOUBLE values are doubles, with zero in the rows without a value.  STRING values
+ * are the number of rows plus one ints, giving the offset of each value in the data that follows,
+ * then the UTF-8 bytes of all the values.
+ * </p>
+ *
+ * @author InterMine
+ */
+public class ColumnarOutput extends Output
+{
+    /** The key for the names of the columns. **/
+    public static final String KEY_COLUMNS = "columns";
+    /** The key for the ColumnTypes of the columns. **/
+    public static final String KEY_COLUMN_TYPES = "columnTypes";
+    /** The first four bytes of the stream, "IMC1". **/
+    public static final int MAGIC = 0x494D4331;
+    /** The number of rows in each batch, unless otherwise given. **/
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    private static final int BATCH = 1;
+    private static final int END = 0;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final int batchSize;
+    // for writing the fixed width values of a column
+    private final ByteBuffer scratch;
+    private Column[] columns = null;
+    private int rowsInBatch = 0;
+    private int resultsCount = 0;
+    private boolean finished = false;
+
+    /**
+     * Constructor.
+     * @param os the stream to write the results to
+     */
+    public ColumnarOutput(OutputStream os) {
+        this(os, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor.
+     * @param os the stream to write the results to
+     * @param batchSize the number of rows in each batch
+     */
+    public ColumnarOutput(OutputStream os, int batchSize) {
+        this.out = new BufferedOutputStream(os, BUFFER_SIZE);
+        this.batchSize = batchSize;
+        this.scratch = ByteBuffer.allocate(Math.max(batchSize * 8, 16));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setHeaderAttributes(Map<String, Object> attributes) {
+        if (columns != null) {
+            throw new RuntimeException("Attempt to set header attributes "
+                + "although header was printed already.");
+        }
+        super.setHeaderAttributes(attributes);
+    }
+
+    /**
+     * Set a value of the current row.
+     * @param column the index of the column
+     * @param value the value, or null
+     */
+    public void setValue(int column, Object value) {
+        ensureSchemaIsWritten(0);
+        if (column >= columns.length) {
+            throw new ServiceException("Value for column " + column + " but there are only "
+                    + columns.length + " columns");
+        }
+        columns[column].set(rowsInBatch, value);
+    }
+
+    /**
+     * Finish the current row, leaving any columns that were not set empty.
+     */
+    public void endRow() {
+        ensureSchemaIsWritten(0);
+        for (Column column : columns) {
+            column.fillTo(rowsInBatch + 1);
+        }
+        rowsInBatch++;
+        resultsCount++;
+        if (rowsInBatch == batchSize) {
+            writeBatch();
+        }
+    }
+
+    /**
+     * Adds a row of Strings, converting them to the types of the columns.
+     * @param item the values of the row
+     */
+    @Override
+    public void addResultItem(List<String> item) {
+        ensureSchemaIsWritten(item.size());
+        for (int i = 0; i < item.size(); i++) {
+            setValue(i, item.get(i));
+        }
+        endRow();
+    }
+
+    /**
+     * Finish writing: writes any remaining rows, then the status, and closes the stream.
+     */
+    @Override
+    public void flush() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        try {
+            ensureSchemaIsWritten(0);
+            if (rowsInBatch > 0) {
+                writeBatch();
+            }
+            out.write(END);
+            writeInt(getCode());
+            writeString(getError() == null ? "" : getError());
+            out.flush();
+            out.close();
+        } catch (IOException e) {
+            throw new ServiceException("Error writing results", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getResultsCount() {
+        return resultsCount;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void ensureSchemaIsWritten(int width) {
+        if (columns != null) {
+            return;
+        }
+        Map<String, Object> attributes = getHeaderAttributes();
+        List<String> names = (List<String>) attributes.get(KEY_COLUMNS);
+        List<ColumnType> types = (List<ColumnType>) attributes.get(KEY_COLUMN_TYPES);
+        if (names == null) {
+            names = Collections.emptyList();
+        }
+        columns = new Column[Math.max(names.size(), width)];
+        for (int i = 0; i < columns.length; i++) {
+            String name = (i < names.size()) ? names.get(i) : String.valueOf(i);
+            ColumnType type = (types != null && i < types.size()) ? types.get(i)
+                    : ColumnType.STRING;
+            columns[i] = new Column(name, type, batchSize);
+        }
+        try {
+            writeInt(MAGIC);
+            writeInt(columns.length);
+            for (Column column : columns) {
+                writeString(column.name);
+                out.write(column.type.getCode());
+            }
+        } catch (IOException e) {
+            throw new ServiceException("Error writing results", e);
+        }
+    }
+
+    private void writeBatch() {
+        try {
+            out.write(BATCH);
+            writeInt(rowsInBatch);
+            for (Column column : columns) {
+                column.write(out, rowsInBatch, scratch);
+                column.clear();
+            }
+        } catch (IOException e) {
+            throw new ServiceException("Error writing results", e);
+        }
+        rowsInBatch = 0;
+    }
+
+    private void writeInt(int value) throws IOException {
+        scratch.clear();
+        scratch.putInt(value);
+        out.write(scratch.array(), 0, scratch.position());
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes("UTF-8");
+        writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * The values of one column in the current batch.
+     */
+    private static final class Column
+    {
+        private final String name;
+        private final ColumnType type;
+        private final byte[] present;
+        private final long[] longs;
+        private final double[] doubles;
+        private final int[] offsets;
+        private byte[] data;
+        // the number of rows that have been set
+        private int filled = 0;
+
+        Column(String name, ColumnType type, int batchSize) {
+            this.name = name;
+            this.type = type;
+            present = new byte[(batchSize + 7) / 8];
+            boolean floating = (type == ColumnType.FLOAT) || (type == ColumnType.DOUBLE);
+            longs = (type == ColumnType.STRING || floating) ? null : new long[batchSize];
+            doubles = floating ? new double[batchSize] : null;
+            offsets = (type == ColumnType.STRING) ? new int[batchSize + 1] : null;
+            data = (type == ColumnType.STRING) ? new byte[batchSize * 16] : null;
+        }
+
+        void set(int row, Object value) {
+            fillTo(row);
+            if (filled > row) {
+                throw new ServiceException("Value set twice for row " + row + " of column "
+                        + name);
+            }
+            if (value == null) {
+                setNull(row);
+                return;
+            }
+            present[row >> 3] |= 1 << (row & 7);
+            try {
+                switch (type) {
+                    case BOOLEAN:
+                        boolean b = (value instanceof Boolean) ? ((Boolean) value).booleanValue()
+                                : Boolean.parseBoolean(value.toString());
+                        longs[row] = b ? 1 : 0;
+                        break;
+                    case INT:
+                    case LONG:
+                        longs[row] = (value instanceof Number) ? ((Number) value).longValue()
+                                : Long.parseLong(value.toString());
+                        break;
+                    case DATE:
+                        if (value instanceof Date) {
+                            longs[row] = ((Date) value).getTime();
+                        } else if (value instanceof Number) {
+                            longs[row] = ((Number) value).longValue();
+                        } else {
+                            throw new ServiceException("Cannot write " + value
+                                    + " in DATE column " + name);
+                        }
+                        break;
+                    case FLOAT:
+                    case DOUBLE:
+                        doubles[row] = (value instanceof Number)
+                                ? ((Number) value).doubleValue()
+                                : Double.parseDouble(value.toString());
+                        break;
+                    default:
+                        String s;
+                        if (value instanceof Date) {
+                            s = ConstraintValueParser.ISO_DATE_FORMAT.format(value);
+                        } else {
+                            s = value.toString();
+                        }
+                        offsets[row + 1] = putUtf8(s, offsets[row]);
+                        break;
+                }
+            } catch (NumberFormatException e) {
+                throw new ServiceException("Cannot write " + value + " in " + type + " column "
+                        + name, e);
+            }
+            filled = row + 1;
+        }
+
+        // leave any rows before the given one that have not been set empty
+        void fillTo(int row) {
+            while (filled < row) {
+                setNull(filled);
+            }
+        }
+
+        private void setNull(int row) {
+            if (longs != null) {
+                longs[row] = 0;
+            } else if (doubles != null) {
+                doubles[row] = 0;
+            } else {
+                offsets[row + 1] = offsets[row];
+            }
+            filled = row + 1;
+        }
+
+        // appends a String as UTF-8, replacing unpaired surrogates as String.getBytes() does
+        private int putUtf8(String s, int start) {
+            int length = s.length();
+            if (data.length - start < length * 3) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, start + length * 3));
+            }
+            byte[] d = data;
+            int n = start;
+            for (int i = 0; i < length; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    d[n++] = (byte) c;
+                } else if (c < 0x800) {
+                    d[n++] = (byte) (0xC0 | (c >> 6));
+                    d[n++] = (byte) (0x80 | (c & 0x3F));
+                } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                    if (Character.isHighSurrogate(c) && i + 1 < length
+                            && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        int cp = Character.toCodePoint(c, s.charAt(++i));
+                        d[n++] = (byte) (0xF0 | (cp >> 18));
+                        d[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                        d[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                        d[n++] = (byte) (0x80 | (cp & 0x3F));
+                    } else {
+                        d[n++] = (byte) '?';
+                    }
+                } else {
+                    d[n++] = (byte) (0xE0 | (c >> 12));
+                    d[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    d[n++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            return n;
+        }
+
+        void write(OutputStream out, int rows, ByteBuffer scratch) throws IOException {
+            int bitmapLength = (rows + 7) / 8;
+            out.write(present, 0, bitmapLength);
+            scratch.clear();
+            switch (type) {
+                case BOOLEAN:
+                    byte[] bits = new byte[bitmapLength];
+                    for (int i = 0; i < rows; i++) {
+                        if (longs[i] != 0) {
+                            bits[i >> 3] |= 1 << (i & 7);
+                        }
+                    }
+                    out.write(bits);
+                    return;
+                case INT:
+                    for (int i = 0; i < rows; i++) {
+                        scratch.putInt((int) longs[i]);
+                    }
+                    break;
+                case LONG:
+                case DATE:
+                    for (int i = 0; i < rows; i++) {
+                        scratch.putLong(longs[i]);
+                    }
+                    break;
+                case FLOAT:
+                    for (int i = 0; i < rows; i++) {
+                        scratch.putFloat((float) doubles[i]);
+                    }
+                    break;
+                case DOUBLE:
+                    for (int i = 0; i < rows; i++) {
+                        scratch.putDouble(doubles[i]);
+                    }
+                    break;
+                default:
+                    for (int i = 0; i <= rows; i++) {
+                        scratch.putInt(offsets[i]);
+                    }
+                    out.write(scratch.array(), 0, scratch.position());
+                    out.write(data, 0, offsets[rows]);
+                    return;
+            }
+            out.write(scratch.array(), 0, scratch.position());
+        }
+
+        void clear() {
+            Arrays.fill(present, (byte) 0);
+            filled = 0;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.intermine.webservice.server.output;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.intermine.api.results.ExportResultsIterator;
+import org.intermine.api.results.ExportRow;
+import org.intermine.api.results.ExportRowHandler;
+import org.intermine.api.results.ResultElement;
+import org.intermine.webservice.server.core.ResultProcessor;
+
+/**
+ * Writes results to a ColumnarOutput as typed values rather than as Strings.  Rows from an
+ * ExportResultsIterator are read with forEachRow(), so nothing is allocated for each row.  Other
+ * outputs are written to as by ResultProcessor.
+ *
+ * @author InterMine
+ */
+public class ColumnarResultProcessor extends ResultProcessor
+{
+    /**
+     * Constructor.
+     */
+    public ColumnarResultProcessor() {
+        // Nothing to do.
+    }
+
+    @Override
+    public void write(Iterator<List<ResultElement>> resultIt, Output output) {
+        if (!(output instanceof ColumnarOutput)) {
+            super.write(resultIt, output);
+            return;
+        }
+        final ColumnarOutput columnar = (ColumnarOutput) output;
+        if (resultIt instanceof ExportResultsIterator
+                && ((ExportResultsIterator) resultIt).canForEachRow()) {
+            ((ExportResultsIterator) resultIt).forEachRow(new ExportRowHandler() {
+                @Override
+                public boolean handleRow(ExportRow row) {
+                    for (int i = 0; i < row.size(); i++) {
+                        columnar.setValue(i, row.isPresent(i) ? row.getValue(i) : null);
+                    }
+                    columnar.endRow();
+                    return true;
+                }
+            });
+            return;
+        }
+        while (resultIt.hasNext()) {
+            List<ResultElement> row = resultIt.next();
+            for (int i = 0; i < row.size(); i++) {
+                ResultElement el = row.get(i);
+                columnar.setValue(i, (el == null) ? null : el.getField());
+            }
+            columnar.endRow();
+        }
+    }
+}
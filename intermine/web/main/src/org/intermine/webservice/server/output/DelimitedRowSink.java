@@ -0,0 +1,76 @@
+package org.intermine.webservice.server.output;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.PrintWriter;
+
+/**
+ * Writes cells separated by a delimiter, quoting them in the same way as RowFormatterImpl: a
+ * cell is quoted if all cells should be, or if it is empty or holds the delimiter, and quotes
+ * inside it are doubled.  A null cell is written as an empty quoted string.
+ *
+ * @author InterMine
+ */
+public class DelimitedRowSink implements RowSink
+{
+    private final PrintWriter out;
+    private final String delimiter;
+    private final boolean quoted;
+    private boolean firstCell = true;
+
+    /**
+     * Constructor.
+     *
+     * @param out the writer to write the cells to, which should be buffered
+     * @param delimiter the delimiter between cells
+     * @param quoted true if every cell should be quoted
+     */
+    public DelimitedRowSink(PrintWriter out, String delimiter, boolean quoted) {
+        this.out = out;
+        this.delimiter = delimiter;
+        this.quoted = quoted;
+    }
+
+    @Override
+    public void startRow() {
+        firstCell = true;
+    }
+
+    @Override
+    public void addCell(String value) {
+        if (!firstCell) {
+            out.write(delimiter);
+        }
+        firstCell = false;
+        if (value == null) {
+            out.write("\"\"");
+        } else if (!quoted && value.length() > 0 && value.indexOf(delimiter) < 0) {
+            out.write(value);
+        } else {
+            out.write('"');
+            int from = 0;
+            int quote;
+            while ((quote = value.indexOf('"', from)) >= 0) {
+                // quotes are quoted by doubling
+                out.write(value, from, quote + 1 - from);
+                out.write('"');
+                from = quote + 1;
+            }
+            out.write(value, from, value.length() - from);
+            out.write('"');
+        }
+    }
+
+    @Override
+    public void endRow() {
+        // nothing to finish
+    }
+}
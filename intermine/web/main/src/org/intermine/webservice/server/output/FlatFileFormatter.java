@@ -10,10 +10,12 @@ package org.intermine.webservice.server.output;
  *
  */
 
+import java.io.PrintWriter;
 import java.util.List;
 import java.util.Map;
 
 import org.intermine.web.logic.export.RowFormatter;
+import org.intermine.web.logic.export.RowFormatterImpl;
 
 /**
  * A class to define behaviour common to flat files (csv, tsv)
@@ -64,6 +66,20 @@ public abstract class FlatFileFormatter extends Formatter
         return getRowFormatter().format((List) resultRow);
     }
 
+    /**
+     * Rows formatted by a RowFormatterImpl can be streamed, as they only depend on its delimiter
+     * and quoting.
+     * {@inheritDoc}
+     */
+    @Override
+    public RowSink getRowSink(PrintWriter out) {
+        if (getRowFormatter() instanceof RowFormatterImpl) {
+            RowFormatterImpl impl = (RowFormatterImpl) getRowFormatter();
+            return new DelimitedRowSink(out, impl.getDelimiter(), impl.isQuoted());
+        }
+        return null;
+    }
+
     @Override
     public String formatFooter(String errorMessage, int errorCode) {
         StringBuilder sb = new StringBuilder();
@@ -10,6 +10,7 @@ package org.intermine.webservice.server.output;
  *
  */
 
+import java.io.PrintWriter;
 import java.util.List;
 import java.util.Map;
 
@@ -43,4 +44,15 @@ public abstract class Formatter
      */
     public abstract String formatFooter(String errorMessage, int errorCode);
 
+    /**
+     * Returns a RowSink that writes result rows to a writer cell by cell, in the same form as
+     * formatResult(), or null if this formatter can only format whole rows.  Line separators
+     * are left to the caller.
+     * @param out the writer the rows should be written to
+     * @return a RowSink, or null
+     */
+    public RowSink getRowSink(PrintWriter out) {
+        return null;
+    }
+
 }
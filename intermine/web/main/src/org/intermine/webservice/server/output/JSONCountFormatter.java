@@ -10,6 +10,7 @@ package org.intermine.webservice.server.output;
  *
  */
 
+import java.io.PrintWriter;
 import java.util.List;
 
 import org.intermine.webservice.server.exceptions.ServiceException;
@@ -34,4 +35,13 @@ public class JSONCountFormatter extends JSONFormatter
         }
     }
 
+    /**
+     * Counts are formatted as whole rows.
+     * {@inheritDoc}
+     */
+    @Override
+    public RowSink getRowSink(PrintWriter out) {
+        return null;
+    }
+
 }
@@ -10,6 +10,7 @@ package org.intermine.webservice.server.output;
  *
  */
 
+import java.io.PrintWriter;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
@@ -206,6 +207,43 @@ public class JSONFormatter extends Formatter
         return buffer.toString();
     }
 
+    /**
+     * Streams rows in the same form as formatResult(), writing the cells to the writer as they
+     * come rather than joining them into a String first.
+     * {@inheritDoc}
+     */
+    @Override
+    public RowSink getRowSink(final PrintWriter out) {
+        return new RowSink() {
+            private boolean firstCell = true;
+
+            @Override
+            public void startRow() {
+                firstCell = true;
+            }
+
+            @Override
+            public void addCell(String value) {
+                String cell = value;
+                if (shouldQuote && !"".equals(cell)) {
+                    cell = quoteValue(cell);
+                }
+                if (firstCell) {
+                    firstCell = false;
+                    declarePrinted();
+                } else {
+                    out.write(',');
+                }
+                out.write(cell == null ? "null" : cell);
+            }
+
+            @Override
+            public void endRow() {
+                // nothing to finish
+            }
+        };
+    }
+
     /** Signal that we have started printing results and that it isn't safe to print headers. **/
     protected void declarePrinted() {
         hasPrintedSomething = true;
@@ -45,6 +45,12 @@ public abstract class JSONResultProcessor extends ResultProcessor
     protected abstract Iterator<? extends Object> getResultsIterator(
             Iterator<List<ResultElement>> it);
 
+    /**
+     * Writes each JSON result as a row, followed by an empty cell (that is a comma) if there
+     * are more to come.  If the output has a RowSink the rows are passed to it, so no List
+     * or joined String is made for each of them.
+     * {@inheritDoc}
+     */
     @SuppressWarnings("unchecked")
     @Override
     public void write(Iterator<List<ResultElement>> resultIt, Output output) {
@@ -52,18 +58,27 @@ public abstract class JSONResultProcessor extends ResultProcessor
         if (!objIter.hasNext()) { // address bug which means json results with < 1 results fail
             output.addResultItem(Collections.EMPTY_LIST);
         }
+        RowSink sink = output.getRowSink();
         boolean lastHasComma = false;
         while (objIter.hasNext()) {
             Object next = objIter.next();
-            List<String> outputLine = new ArrayList<String>(
-                    Arrays.asList(next.toString()));
-            if (objIter.hasNext()) {
-                outputLine.add("");
-                lastHasComma = true;
+            boolean hasMore = objIter.hasNext();
+            if (sink != null) {
+                sink.startRow();
+                sink.addCell(next.toString());
+                if (hasMore) {
+                    sink.addCell("");
+                }
+                sink.endRow();
             } else {
-                lastHasComma = false;
+                List<String> outputLine = new ArrayList<String>(
+                        Arrays.asList(next.toString()));
+                if (hasMore) {
+                    outputLine.add("");
+                }
+                output.addResultItem(outputLine);
             }
-            output.addResultItem(outputLine);
+            lastHasComma = hasMore;
         }
         if (lastHasComma) {
             LOG.error("Last row has a comma!");
@@ -103,6 +103,15 @@ public abstract class Output
      */
     public abstract void addResultItem(List<String> item);
 
+    /**
+     * Returns a RowSink that writes result rows straight to this output a cell at a time, in the
+     * same way as addResultItem() would, or null if the rows must be added as Lists.
+     * @return a RowSink, or null
+     */
+    public RowSink getRowSink() {
+        return null;
+    }
+
     /**
      * Flushes output. What it actually does depends at implementation.
      */
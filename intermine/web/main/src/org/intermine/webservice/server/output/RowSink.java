@@ -0,0 +1,38 @@
+package org.intermine.webservice.server.output;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * Receives result rows one cell at a time and writes them straight to the output, so that no
+ * List or String has to be made for each row.  The cells of a row are written in the same form
+ * as Formatter.formatResult() would give for the whole row.
+ *
+ * @author InterMine
+ */
+public interface RowSink
+{
+    /**
+     * Start a new row.
+     */
+    void startRow();
+
+    /**
+     * Write the next cell of the current row.
+     *
+     * @param value the value of the cell, which may be null
+     */
+    void addCell(String value);
+
+    /**
+     * Finish the current row.
+     */
+    void endRow();
+}
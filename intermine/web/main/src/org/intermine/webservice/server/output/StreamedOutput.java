@@ -87,6 +87,38 @@ public class StreamedOutput extends Output
         resultsCount++;
     }
 
+    /**
+     * Rows are passed to the sink of the formatter, if it has one, with the header written
+     * before the first row and a line separator after each.
+     * {@inheritDoc}
+     */
+    @Override
+    public RowSink getRowSink() {
+        final RowSink sink = formatter.getRowSink(writer);
+        if (sink == null) {
+            return null;
+        }
+        return new RowSink() {
+            @Override
+            public void startRow() {
+                ensureHeaderIsPrinted();
+                sink.startRow();
+            }
+
+            @Override
+            public void addCell(String value) {
+                sink.addCell(value);
+            }
+
+            @Override
+            public void endRow() {
+                sink.endRow();
+                writeLn("");
+                resultsCount++;
+            }
+        };
+    }
+
     /** Returns associated writer
      * @return writer
      * **/
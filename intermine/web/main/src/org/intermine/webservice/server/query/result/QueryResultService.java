@@ -12,6 +12,7 @@ package org.intermine.webservice.server.query.result;
 
 import static org.apache.commons.lang.StringUtils.isBlank;
 
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
@@ -40,6 +41,7 @@ import org.intermine.pathquery.PathException;
 import org.intermine.pathquery.PathQuery;
 import org.intermine.web.context.InterMineContext;
 import org.intermine.web.logic.WebUtil;
+import org.intermine.web.logic.export.ResponseUtil;
 import org.intermine.webservice.server.ColumnHeaderStyle;
 import org.intermine.webservice.server.Format;
 import org.intermine.webservice.server.WebServiceRequestParser;
@@ -47,6 +49,9 @@ import org.intermine.webservice.server.core.CountProcessor;
 import org.intermine.webservice.server.core.ResultProcessor;
 import org.intermine.webservice.server.exceptions.BadRequestException;
 import org.intermine.webservice.server.exceptions.ServiceException;
+import org.intermine.webservice.server.output.ColumnType;
+import org.intermine.webservice.server.output.ColumnarOutput;
+import org.intermine.webservice.server.output.ColumnarResultProcessor;
 import org.intermine.webservice.server.output.FlatFileFormatter;
 import org.intermine.webservice.server.output.HTMLTableFormatter;
 import org.intermine.webservice.server.output.JSONCountFormatter;
@@ -123,6 +128,7 @@ public class QueryResultService extends AbstractQueryService
             addAll(Format.BASIC_FORMATS);
             addAll(Format.FLAT_FILES);
             addAll(Format.JSON_FORMATS);
+            add(Format.COLUMNAR);
         }
     };
 
@@ -208,6 +214,30 @@ public class QueryResultService extends AbstractQueryService
                 attributes.put(HTMLTableFormatter.KEY_COLUMN_HEADERS,
                         WebUtil.formatPathQueryView(pq, InterMineContext.getWebConfig()));
                 break;
+            case COLUMNAR:
+                if (wantsCount) {
+                    attributes.put(ColumnarOutput.KEY_COLUMNS, Arrays.asList("count"));
+                    attributes.put(ColumnarOutput.KEY_COLUMN_TYPES,
+                            Arrays.asList(ColumnType.LONG));
+                } else if (isNotBlank(getOptionalParameter("summaryPath"))) {
+                    throw new BadRequestException(
+                            "Summaries are not available in the columnar format");
+                } else {
+                    List<ColumnType> columnTypes = new ArrayList<ColumnType>();
+                    for (String v: pq.getView()) {
+                        try {
+                            Path p = pq.makePath(v);
+                            AttributeDescriptor ad =
+                                (AttributeDescriptor) p.getEndFieldDescriptor();
+                            columnTypes.add(ColumnType.forAttributeType(ad.getType()));
+                        } catch (PathException e) {
+                            throw new ServiceException(e);
+                        }
+                    }
+                    attributes.put(ColumnarOutput.KEY_COLUMNS, pq.getView());
+                    attributes.put(ColumnarOutput.KEY_COLUMN_TYPES, columnTypes);
+                }
+                break;
             default:
                 break;
         }
@@ -255,6 +285,23 @@ public class QueryResultService extends AbstractQueryService
         return new StreamedOutput(out, new JSONTableFormatter(), separator);
     }
 
+    /**
+     * The columnar format is written straight to the response stream.
+     * {@inheritDoc}
+     */
+    @Override
+    protected Output getDefaultOutput(PrintWriter out, OutputStream os, String separator) {
+        if (getFormat() == Format.COLUMNAR) {
+            output = new ColumnarOutput(os);
+            if (isUncompressed()) {
+                ResponseUtil.setCustomTypeHeader(response, getRequestFileName() + ".columnar",
+                        Format.COLUMNAR.getContentType());
+            }
+            return output;
+        }
+        return super.getDefaultOutput(out, os, separator);
+    }
+
     /**
      * URL Encode an object. Null values are returned as the empty string, and encoding problems
      * throw runtime exceptions.
@@ -371,6 +418,9 @@ public class QueryResultService extends AbstractQueryService
             case TABLE:
                 processor = new JSONTableResultProcessor();
                 break;
+            case COLUMNAR:
+                processor = new ColumnarResultProcessor();
+                break;
             case ROWS:
                 if (summarising) {
                     processor = new JSONSummaryProcessor();
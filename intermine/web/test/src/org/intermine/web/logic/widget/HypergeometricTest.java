@@ -0,0 +1,81 @@
+package org.intermine.web.logic.widget;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.HashMap;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.math3.distribution.HypergeometricDistribution;
+
+public class HypergeometricTest extends TestCase
+{
+    public HypergeometricTest(String arg) {
+        super(arg);
+    }
+
+    public void testBounds() {
+        Hypergeometric h = new Hypergeometric(100);
+        assertEquals(1.0, h.upperTail(10, 20, 0), 0.0);
+        assertEquals(0.0, h.upperTail(10, 20, 11), 0.0);
+        assertEquals(0.0, h.upperTail(0, 20, 1), 0.0);
+        // a sample of everything must contain every annotated item
+        assertEquals(1.0, h.upperTail(10, 100, 10), 1e-12);
+        try {
+            h.upperTail(101, 20, 1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testAgainstCommonsMath() {
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            int populationSize = 1 + random.nextInt(20000);
+            int populationCount = random.nextInt(Math.min(populationSize, 2000) + 1);
+            int sampleSize = random.nextInt(Math.min(populationSize, 1000) + 1);
+            int sampleCount = random.nextInt(Math.min(sampleSize, populationCount) + 2);
+            assertClose(populationSize, populationCount, sampleSize, sampleCount);
+        }
+    }
+
+    public void testSmallPValues() {
+        // typical of a strongly enriched GO term
+        assertClose(15000, 40, 200, 30);
+        assertClose(15000, 300, 500, 120);
+        assertClose(15000, 5, 10, 5);
+    }
+
+    public void testKeptWithPopulation() {
+        EnrichmentPopulationCache.Entry entry = new EnrichmentPopulationCache.Entry(
+                new PopulationInfo(15000, 0), new HashMap<String, PopulationInfo>());
+        Hypergeometric h = entry.getHypergeometric();
+        assertEquals(15000, h.getPopulationSize());
+        assertSame(h, entry.getHypergeometric());
+    }
+
+    private static void assertClose(int populationSize, int populationCount, int sampleSize,
+            int sampleCount) {
+        double expected = new HypergeometricDistribution(populationSize, populationCount,
+                sampleSize).upperCumulativeProbability(sampleCount);
+        double actual = new Hypergeometric(populationSize).upperTail(populationCount,
+                sampleSize, sampleCount);
+        String message = "N=" + populationSize + " M=" + populationCount + " n=" + sampleSize
+            + " k=" + sampleCount;
+        if (expected < 1e-300) {
+            assertEquals(message, expected, actual, 1e-300);
+        } else {
+            assertEquals(message, expected, actual, Math.max(expected * 1e-8, 1e-14));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.intermine.web.logic.widget.benchmark;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.apache.commons.math3.distribution.HypergeometricDistribution;
+import org.intermine.web.logic.widget.Hypergeometric;
+import org.junit.Test;
+
+/**
+ * Compares the time taken to work out enrichment p-values with Hypergeometric and with
+ * commons-math, which the enrichment calculation used to create a new HypergeometricDistribution
+ * for each term.  This is not part of the unit tests; run it on its own.
+ */
+public class HypergeometricBenchmark
+{
+    private static final int RUNS = 200000;
+
+    @Test
+    public void benchmarkUpperTail() {
+        int populationSize = 15000;
+        Random random = new Random(7);
+        int[] populationCounts = new int[RUNS];
+        int[] sampleCounts = new int[RUNS];
+        int sampleSize = 300;
+        for (int i = 0; i < RUNS; i++) {
+            populationCounts[i] = 1 + random.nextInt(500);
+            sampleCounts[i] = random.nextInt(Math.min(sampleSize, populationCounts[i]) + 1);
+        }
+        double total = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            HypergeometricDistribution d = new HypergeometricDistribution(populationSize,
+                    populationCounts[i], sampleSize);
+            total += d.upperCumulativeProbability(sampleCounts[i]);
+        }
+        long commonsTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        Hypergeometric h = new Hypergeometric(populationSize);
+        double fastTotal = 0;
+        for (int i = 0; i < RUNS; i++) {
+            fastTotal += h.upperTail(populationCounts[i], sampleSize, sampleCounts[i]);
+        }
+        long fastTime = System.nanoTime() - start;
+        System.out.printf("Hypergeometric: %d p-values, commons-math %.1f ms, log-space %.1f ms\n",
+                RUNS, commonsTime / 1e6, fastTime / 1e6);
+        assertEquals(total, fastTotal, total * 1e-9);
+    }
+}
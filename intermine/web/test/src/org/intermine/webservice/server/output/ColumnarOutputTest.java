@@ -0,0 +1,187 @@
+package org.intermine.webservice.server.output;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.intermine.api.profile.InterMineBag;
+import org.intermine.api.query.MainHelper;
+import org.intermine.api.results.ExportResultsIterator;
+import org.intermine.metadata.Model;
+import org.intermine.model.testmodel.Employee;
+import org.intermine.objectstore.dummy.DummyResults;
+import org.intermine.objectstore.dummy.ObjectStoreDummyImpl;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QuerySelectable;
+import org.intermine.objectstore.query.Results;
+import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.pathquery.PathQuery;
+
+public class ColumnarOutputTest extends TestCase
+{
+    private final Model model = Model.getInstanceByName("testmodel");
+
+    public ColumnarOutputTest(String name) {
+        super(name);
+    }
+
+    public void testWrite() throws Exception {
+        ObjectStoreDummyImpl os = new ObjectStoreDummyImpl();
+        String[] names = {"Tim Canterbury", "Gareth Keenan", null, "Keith Bishop", "Lée 😀"};
+        int[] ages = {30, 32, 26, 41, 28};
+        os.setResultsSize(names.length);
+        for (int i = 0; i < names.length; i++) {
+            Employee employee = new Employee();
+            employee.setId(new Integer(i + 5));
+            employee.setName(names[i]);
+            employee.setAge(ages[i]);
+            employee.setFullTime(i % 2 == 0);
+            ResultsRow<Employee> row = new ResultsRow<Employee>();
+            row.add(employee);
+            os.addRow(row);
+        }
+
+        PathQuery pq = new PathQuery(model);
+        pq.addViews("Employee.age", "Employee.name", "Employee.fullTime");
+        Map<String, QuerySelectable> pathToQueryNode = new HashMap<String, QuerySelectable>();
+        Query q = MainHelper.makeQuery(pq, new HashMap<String, InterMineBag>(), pathToQueryNode,
+                null, null);
+        @SuppressWarnings("unchecked")
+        List<Object> resultList = os.execute(q, 0, 5, true, true, new HashMap<Object, Integer>());
+        Results results = new DummyResults(q, resultList);
+        ExportResultsIterator iterator = new ExportResultsIterator(pq, q, results,
+                pathToQueryNode);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ColumnarOutput output = new ColumnarOutput(bytes, 2);
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put(ColumnarOutput.KEY_COLUMNS, pq.getView());
+        attributes.put(ColumnarOutput.KEY_COLUMN_TYPES,
+                Arrays.asList(ColumnType.INT, ColumnType.STRING, ColumnType.BOOLEAN));
+        output.setHeaderAttributes(attributes);
+        new ColumnarResultProcessor().write(iterator, output);
+        output.flush();
+        assertEquals(5, output.getResultsCount());
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(ColumnarOutput.MAGIC, in.readInt());
+        assertEquals(3, in.readInt());
+        assertEquals("Employee.age", readString(in));
+        assertEquals(ColumnType.INT.getCode(), in.readByte());
+        assertEquals("Employee.name", readString(in));
+        assertEquals(ColumnType.STRING.getCode(), in.readByte());
+        assertEquals("Employee.fullTime", readString(in));
+        assertEquals(ColumnType.BOOLEAN.getCode(), in.readByte());
+
+        List<Object> rows = new ArrayList<Object>();
+        int[] batchSizes = {2, 2, 1};
+        for (int batchSize : batchSizes) {
+            assertEquals(1, in.readByte());
+            assertEquals(batchSize, in.readInt());
+            List<List<Object>> batch = new ArrayList<List<Object>>();
+            for (int i = 0; i < batchSize; i++) {
+                batch.add(new ArrayList<Object>());
+            }
+            // ages
+            int present = in.readUnsignedByte();
+            for (int i = 0; i < batchSize; i++) {
+                assertTrue((present & (1 << i)) != 0);
+                batch.get(i).add(in.readInt());
+            }
+            // names
+            present = in.readUnsignedByte();
+            int[] offsets = new int[batchSize + 1];
+            for (int i = 0; i <= batchSize; i++) {
+                offsets[i] = in.readInt();
+            }
+            byte[] data = new byte[offsets[batchSize]];
+            in.readFully(data);
+            for (int i = 0; i < batchSize; i++) {
+                batch.get(i).add((present & (1 << i)) == 0 ? null
+                        : new String(data, offsets[i], offsets[i + 1] - offsets[i], "UTF-8"));
+            }
+            // full time
+            present = in.readUnsignedByte();
+            int bits = in.readUnsignedByte();
+            for (int i = 0; i < batchSize; i++) {
+                assertTrue((present & (1 << i)) != 0);
+                batch.get(i).add((bits & (1 << i)) != 0);
+            }
+            rows.addAll(batch);
+        }
+        assertEquals(Arrays.asList(Arrays.asList(30, "Tim Canterbury", true),
+                    Arrays.asList(32, "Gareth Keenan", false), Arrays.asList(26, null, true),
+                    Arrays.asList(41, "Keith Bishop", false),
+                    Arrays.asList(28, "Lée 😀", true)), rows);
+        assertEquals(0, in.readByte());
+        assertEquals(200, in.readInt());
+        assertEquals("", readString(in));
+        assertEquals(-1, in.read());
+    }
+
+    public void testAddResultItemAndError() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ColumnarOutput output = new ColumnarOutput(bytes);
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put(ColumnarOutput.KEY_COLUMNS, Arrays.asList("count"));
+        attributes.put(ColumnarOutput.KEY_COLUMN_TYPES, Arrays.asList(ColumnType.LONG));
+        output.setHeaderAttributes(attributes);
+        output.addResultItem(Arrays.asList("12345678901"));
+        output.setError("Something went wrong", 500);
+        output.flush();
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(ColumnarOutput.MAGIC, in.readInt());
+        assertEquals(1, in.readInt());
+        assertEquals("count", readString(in));
+        assertEquals(ColumnType.LONG.getCode(), in.readByte());
+        assertEquals(1, in.readByte());
+        assertEquals(1, in.readInt());
+        assertEquals(1, in.readByte());
+        assertEquals(12345678901L, in.readLong());
+        assertEquals(0, in.readByte());
+        assertEquals(500, in.readInt());
+        assertEquals("Something went wrong", readString(in));
+        try {
+            output.setHeaderAttributes(attributes);
+            fail("Expected an exception");
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+
+    public void testColumnTypes() throws Exception {
+        assertEquals(ColumnType.INT, ColumnType.forAttributeType("int"));
+        assertEquals(ColumnType.INT, ColumnType.forAttributeType("java.lang.Integer"));
+        assertEquals(ColumnType.LONG, ColumnType.forAttributeType("long"));
+        assertEquals(ColumnType.DOUBLE, ColumnType.forAttributeType("java.lang.Double"));
+        assertEquals(ColumnType.BOOLEAN, ColumnType.forAttributeType("boolean"));
+        assertEquals(ColumnType.DATE, ColumnType.forAttributeType("java.util.Date"));
+        assertEquals(ColumnType.STRING, ColumnType.forAttributeType("java.lang.String"));
+        assertEquals(ColumnType.STRING, ColumnType.forAttributeType("java.math.BigDecimal"));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
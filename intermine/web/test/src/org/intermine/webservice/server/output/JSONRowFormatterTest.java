@@ -212,6 +212,29 @@ public class JSONRowFormatterTest extends TestCase {
         assertEquals(expected, fmtr.formatResult(new ArrayList<String>()));
     }
 
+    public void testRowSink() {
+        List<List<String>> rows = Arrays.asList(Arrays.asList("[\"a\",1]", ""),
+                Arrays.asList("x", "", "1", "true", null), new ArrayList<String>());
+        for (boolean quote : new boolean[] {false, true}) {
+            Map<String, Object> attrs = new HashMap<String, Object>();
+            attrs.put(JSONFormatter.KEY_QUOTE, Boolean.valueOf(quote));
+            JSONRowFormatter fmtr = new JSONRowFormatter();
+            fmtr.formatHeader(attrs);
+            for (List<String> row : rows) {
+                StringWriter cells = new StringWriter();
+                PrintWriter out = new PrintWriter(cells);
+                RowSink sink = fmtr.getRowSink(out);
+                sink.startRow();
+                for (String cell : row) {
+                    sink.addCell(cell);
+                }
+                sink.endRow();
+                out.flush();
+                assertEquals(fmtr.formatResult(row), cells.toString());
+            }
+        }
+    }
+
     public void testFormatFooter() {
         JSONRowFormatter fmtr = new JSONRowFormatter();
         Date now = Calendar.getInstance().getTime();
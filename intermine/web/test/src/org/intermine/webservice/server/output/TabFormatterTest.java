@@ -6,6 +6,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -14,6 +15,7 @@ import junit.framework.TestCase;
 import org.intermine.api.profile.InterMineBag;
 import org.intermine.api.query.MainHelper;
 import org.intermine.api.results.ExportResultsIterator;
+import org.intermine.api.results.ResultElement;
 import org.intermine.metadata.Model;
 import org.intermine.model.testmodel.Employee;
 import org.intermine.objectstore.dummy.DummyResults;
@@ -210,5 +212,47 @@ public class TabFormatterTest extends TestCase {
         assertEquals(expected, sw.toString());
     }
 
+    public void testRowSinkMatchesFormatResult() throws Exception {
+        for (boolean quoted : new boolean[] {true, false}) {
+            setUp();
+            StringWriter listSw = new StringWriter();
+            StreamedOutput listOut = new StreamedOutput(new PrintWriter(listSw),
+                    new TabFormatter(quoted));
+            listOut.setHeaderAttributes(attributes);
+            processor.write(hideType(iterator), listOut);
+            listOut.flush();
+
+            setUp();
+            StreamedOutput out = new StreamedOutput(pw, new TabFormatter(quoted));
+            out.setHeaderAttributes(attributes);
+            // the service primes the iterator before writing
+            assertTrue(iterator.hasNext());
+            processor.write(iterator, out);
+            out.flush();
+
+            assertEquals(5, out.getResultsCount());
+            assertEquals(listSw.toString(), sw.toString());
+        }
+    }
 
+    /**
+     * @param iter the rows
+     * @return an Iterator that is not an ExportResultsIterator, so the rows are written as Lists
+     */
+    public static Iterator<List<ResultElement>> hideType(
+            final Iterator<List<ResultElement>> iter) {
+        return new Iterator<List<ResultElement>>() {
+            public boolean hasNext() {
+                return iter.hasNext();
+            }
+
+            public List<ResultElement> next() {
+                return iter.next();
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
 }
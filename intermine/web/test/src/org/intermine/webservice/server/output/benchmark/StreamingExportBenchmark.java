@@ -0,0 +1,126 @@
+package org.intermine.webservice.server.output.benchmark;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.intermine.api.profile.InterMineBag;
+import org.intermine.api.query.MainHelper;
+import org.intermine.api.results.ExportResultsIterator;
+import org.intermine.metadata.Model;
+import org.intermine.model.testmodel.Employee;
+import org.intermine.objectstore.dummy.DummyResults;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QuerySelectable;
+import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.pathquery.PathQuery;
+import org.intermine.testing.Allocations;
+import org.intermine.webservice.server.core.ResultProcessor;
+import org.intermine.webservice.server.output.StreamedOutput;
+import org.intermine.webservice.server.output.TabFormatter;
+import org.intermine.webservice.server.output.TabFormatterTest;
+import org.junit.Test;
+
+/**
+ * Compares the speed and the memory allocated per row of formatting a million rows as TSV from
+ * Lists of Strings and writing them through the RowSink.  This is not part of the unit tests;
+ * run it on its own.
+ *
+ * @author InterMine
+ */
+public class StreamingExportBenchmark
+{
+    private static final int ROWS = 1000000;
+
+    private final ResultProcessor processor = new ResultProcessor();
+
+    @Test
+    public void benchmarkTabStreaming() throws Exception {
+        PathQuery pq = new PathQuery(Model.getInstanceByName("testmodel"));
+        pq.addViews("Employee.name", "Employee.age", "Employee.end");
+        Map<String, QuerySelectable> pathToQueryNode = new HashMap<String, QuerySelectable>();
+        Query q = MainHelper.makeQuery(pq, new HashMap<String, InterMineBag>(), pathToQueryNode,
+                null, null);
+        String[] names = {"Tim Canterbury", "Gareth Keenan", "Dawn Tinsley", "Keith Bishop",
+            "Lee"};
+        String[] ends = {"a", "b", null, "quote here -> \" <- there", "tab here -> \t <- there"};
+        List<Object> rows = new ArrayList<Object>();
+        for (int i = 0; i < ROWS; i++) {
+            int n = i % names.length;
+            Employee employee = new Employee();
+            employee.setId(new Integer(n + 5));
+            employee.setName(names[n]);
+            employee.setAge(26 + n);
+            employee.setEnd(ends[n]);
+            ResultsRow<Employee> row = new ResultsRow<Employee>();
+            row.add(employee);
+            rows.add(row);
+        }
+        for (int i = 0; i < 2; i++) {
+            // warm up, and let the JIT compile both paths
+            writeRows(new ExportResultsIterator(pq, q, new DummyResults(q, rows),
+                    pathToQueryNode), true);
+            writeRows(new ExportResultsIterator(pq, q, new DummyResults(q, rows),
+                    pathToQueryNode), false);
+        }
+        ExportResultsIterator iter = new ExportResultsIterator(pq, q, new DummyResults(q, rows),
+                pathToQueryNode);
+        long allocated = Allocations.allocatedBytes();
+        long start = System.nanoTime();
+        assertEquals(ROWS, writeRows(iter, true));
+        long listTime = System.nanoTime() - start;
+        String listBytes = Allocations.perItem(allocated, Allocations.allocatedBytes(), ROWS);
+
+        iter = new ExportResultsIterator(pq, q, new DummyResults(q, rows), pathToQueryNode);
+        allocated = Allocations.allocatedBytes();
+        start = System.nanoTime();
+        assertEquals(ROWS, writeRows(iter, false));
+        long sinkTime = System.nanoTime() - start;
+        String sinkBytes = Allocations.perItem(allocated, Allocations.allocatedBytes(), ROWS);
+
+        System.out.printf("TSV export of %d rows: Lists %.0f rows/s, %s bytes/row; RowSink %.0f "
+                + "rows/s, %s bytes/row\n", ROWS, ROWS / (listTime / 1e9), listBytes,
+                ROWS / (sinkTime / 1e9), sinkBytes);
+    }
+
+    // writes the rows as the service does, to a stream that only counts them
+    private int writeRows(ExportResultsIterator iter, boolean asLists) {
+        final long[] written = new long[1];
+        OutputStream counter = new OutputStream() {
+            @Override
+            public void write(int b) {
+                written[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                written[0] += len;
+            }
+        };
+        PrintWriter writer = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(counter)));
+        StreamedOutput out = new StreamedOutput(writer, new TabFormatter(false));
+        processor.write(asLists ? TabFormatterTest.hideType(iter) : iter, out);
+        out.flush();
+        assertTrue(written[0] > 0);
+        return out.getResultsCount();
+    }
+}
@@ -76,6 +76,12 @@ public final class ContentType
     public static final ContentType APPLICATION_JSON_ROW =
         new ContentType("application", "jsonrows", UTF8_CHARSET);
 
+    /**
+     * A Content type that describes the binary columnar results content type.
+     */
+    public static final ContentType APPLICATION_COLUMNAR =
+        new ContentType("application", "x-intermine-columnar", UTF8_CHARSET);
+
     private ContentType(String type, String subType, String charSet) {
         this.type = type;
         this.subType = subType;
@@ -195,6 +195,8 @@ public class Service
             return "jsonobjects";
         } else if (contentType == ContentType.APPLICATION_JSON_ROW) {
             return "jsonrows";
+        } else if (contentType == ContentType.APPLICATION_COLUMNAR) {
+            return "columnar";
         } else if (contentType == ContentType.TEXT_COUNT) {
             return "count";
         } else if (contentType == ContentType.APPLICATION_JSON) {
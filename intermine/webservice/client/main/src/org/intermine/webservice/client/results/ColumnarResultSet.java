@@ -0,0 +1,450 @@
+package org.intermine.webservice.client.results;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.intermine.webservice.client.exceptions.ServiceException;
+import org.intermine.webservice.client.util.HttpConnection;
+
+/**
+ * A class for reading results received in the binary columnar format, in which the results
+ * come in batches of rows, with the values of each column of a batch held together and typed
+ * as the attributes selected for output.  The values are read straight into arrays of
+ * primitives, with no text to parse.
+ *
+ * <p>
+ * Each batch can be read with nextBatch(), and its values read with the typed getters of Batch,
+ * which is the quickest way to read large result sets.  For convenience the rows can also be
+ * read as lists of objects with getListIterator() or getRowsAsLists().
+ * </p>
+ *
+ * @author InterMine
+ */
+public class ColumnarResultSet
+{
+    /** The first four bytes of a columnar result stream, "IMC1". **/
+    public static final int MAGIC = 0x494D4331;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int BATCH = 1;
+    private static final int END = 0;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // the codes of the column types in the stream
+    private static final int BOOLEAN = 1;
+    private static final int INT = 2;
+    private static final int LONG = 3;
+    private static final int FLOAT = 4;
+    private static final int DOUBLE = 5;
+    private static final int DATE = 6;
+    private static final int STRING = 7;
+
+    private final HttpConnection connection;
+    private final DataInputStream in;
+    private final List<String> columnNames;
+    private final int[] typeCodes;
+    private boolean finished = false;
+    private byte[] scratch = new byte[BUFFER_SIZE];
+
+    /**
+     * Construct a new result-set with an HttpConnection, reading the names and types of the
+     * columns from it.
+     * @param connection The connection to receive results from.
+     */
+    public ColumnarResultSet(HttpConnection connection) {
+        this(connection, connection.getResponseBodyAsStream());
+    }
+
+    /**
+     * Construct a new result-set from a stream, reading the names and types of the columns from
+     * it.
+     *
+     * Use this constructor when you want to make the request yourself.
+     * @param is The stream to receive results from.
+     */
+    public ColumnarResultSet(InputStream is) {
+        this(null, is);
+    }
+
+    private ColumnarResultSet(HttpConnection connection, InputStream is) {
+        this.connection = connection;
+        this.in = new DataInputStream(new BufferedInputStream(is, BUFFER_SIZE));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new ServiceException("The response is not in the columnar format");
+            }
+            int columnCount = in.readInt();
+            List<String> names = new ArrayList<String>(columnCount);
+            typeCodes = new int[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                names.add(readString());
+                typeCodes[i] = in.readUnsignedByte();
+                if (typeCodes[i] < BOOLEAN || typeCodes[i] > STRING) {
+                    throw new ServiceException("Unknown type " + typeCodes[i] + " of column "
+                            + names.get(i));
+                }
+            }
+            columnNames = Collections.unmodifiableList(names);
+        } catch (IOException e) {
+            close();
+            throw new ServiceException("Reading from response stream failed", e);
+        }
+    }
+
+    /**
+     * @return the names of the columns, that is the paths of the view
+     */
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    /**
+     * Get the types of the columns: Boolean, Integer, Long, Float, Double, Date or String.
+     * @return the class of the values of each column
+     */
+    public List<Class<?>> getColumnTypes() {
+        List<Class<?>> types = new ArrayList<Class<?>>();
+        for (int code : typeCodes) {
+            types.add(getType(code));
+        }
+        return types;
+    }
+
+    private static Class<?> getType(int code) {
+        switch (code) {
+            case BOOLEAN:
+                return Boolean.class;
+            case INT:
+                return Integer.class;
+            case LONG:
+                return Long.class;
+            case FLOAT:
+                return Float.class;
+            case DOUBLE:
+                return Double.class;
+            case DATE:
+                return Date.class;
+            default:
+                return String.class;
+        }
+    }
+
+    /**
+     * Read the next batch of rows.
+     * @return the batch, or null if all the rows have been read
+     * @throws ServiceException if the service reports an error after the rows it sent, or the
+     * stream ends before it should
+     */
+    public Batch nextBatch() {
+        if (finished) {
+            return null;
+        }
+        try {
+            int kind = in.readUnsignedByte();
+            if (kind == END) {
+                int code = in.readInt();
+                String error = readString();
+                close();
+                if (code >= 400) {
+                    throw new ServiceException(error);
+                }
+                return null;
+            } else if (kind != BATCH) {
+                throw new ServiceException("Unexpected message " + kind + " in response stream");
+            }
+            int rows = in.readInt();
+            Batch batch = new Batch(rows, typeCodes.length);
+            for (int i = 0; i < typeCodes.length; i++) {
+                readColumn(batch, i, rows);
+            }
+            return batch;
+        } catch (EOFException e) {
+            close();
+            throw new ServiceException(
+                    "Error reading results - transmission may have been interrupted", e);
+        } catch (IOException e) {
+            close();
+            throw new ServiceException("Reading from response stream failed", e);
+        }
+    }
+
+    private void readColumn(Batch batch, int column, int rows) throws IOException {
+        int bitmapLength = (rows + 7) / 8;
+        byte[] present = new byte[bitmapLength];
+        in.readFully(present);
+        batch.present[column] = present;
+        switch (typeCodes[column]) {
+            case BOOLEAN:
+                byte[] bits = new byte[bitmapLength];
+                in.readFully(bits);
+                batch.values[column] = bits;
+                break;
+            case INT:
+                int[] ints = new int[rows];
+                readFully(rows * 4).asIntBuffer().get(ints);
+                batch.values[column] = ints;
+                break;
+            case LONG:
+            case DATE:
+                long[] longs = new long[rows];
+                readFully(rows * 8).asLongBuffer().get(longs);
+                batch.values[column] = longs;
+                break;
+            case FLOAT:
+                float[] floats = new float[rows];
+                readFully(rows * 4).asFloatBuffer().get(floats);
+                batch.values[column] = floats;
+                break;
+            case DOUBLE:
+                double[] doubles = new double[rows];
+                readFully(rows * 8).asDoubleBuffer().get(doubles);
+                batch.values[column] = doubles;
+                break;
+            default:
+                int[] offsets = new int[rows + 1];
+                readFully((rows + 1) * 4).asIntBuffer().get(offsets);
+                byte[] data = new byte[offsets[rows]];
+                in.readFully(data);
+                batch.values[column] = offsets;
+                batch.data[column] = data;
+                break;
+        }
+    }
+
+    // reads bytes into the scratch buffer, growing it if needed
+    private ByteBuffer readFully(int length) throws IOException {
+        if (scratch.length < length) {
+            scratch = new byte[length];
+        }
+        in.readFully(scratch, 0, length);
+        return ByteBuffer.wrap(scratch, 0, length);
+    }
+
+    private String readString() throws IOException {
+        int length = in.readInt();
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Close the connection, or the stream the results are read from.
+     */
+    public void close() {
+        finished = true;
+        try {
+            in.close();
+        } catch (IOException e) {
+            // Ignore, there is nothing more to read.
+        }
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Get all the rows, as lists of objects of the types of the columns.
+     * @return A two-dimensional list (table) of objects.
+     */
+    public List<List<Object>> getRowsAsLists() {
+        List<List<Object>> ret = new ArrayList<List<Object>>();
+        Iterator<List<Object>> it = getListIterator();
+        while (it.hasNext()) {
+            ret.add(it.next());
+        }
+        return ret;
+    }
+
+    /**
+     * Get a memory efficient iterator over the result rows, reading a batch at a time.
+     * @return an iterator over the rows as lists of objects of the types of the columns
+     */
+    public Iterator<List<Object>> getListIterator() {
+        return new RowListIterator();
+    }
+
+    private class RowListIterator implements Iterator<List<Object>>
+    {
+        private Batch batch = null;
+        private int row = 0;
+
+        @Override
+        public boolean hasNext() {
+            while (batch == null || row >= batch.size()) {
+                batch = nextBatch();
+                row = 0;
+                if (batch == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public List<Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Object[] values = new Object[batch.getColumnCount()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = batch.getValue(i, row);
+            }
+            row++;
+            return Arrays.asList(values);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * One batch of rows.  The getters for each type should only be used for columns of that
+     * type, and return zero or false for rows without a value.
+     */
+    public final class Batch
+    {
+        private final int rows;
+        private final byte[][] present;
+        private final Object[] values;
+        private final byte[][] data;
+
+        private Batch(int rows, int columns) {
+            this.rows = rows;
+            present = new byte[columns][];
+            values = new Object[columns];
+            data = new byte[columns][];
+        }
+
+        /**
+         * @return the number of rows in this batch
+         */
+        public int size() {
+            return rows;
+        }
+
+        /**
+         * @return the number of columns
+         */
+        public int getColumnCount() {
+            return values.length;
+        }
+
+        /**
+         * @param column the index of the column
+         * @param row the index of the row in this batch
+         * @return true if the column has no value in the row
+         */
+        public boolean isNull(int column, int row) {
+            return (present[column][row >> 3] & (1 << (row & 7))) == 0;
+        }
+
+        /**
+         * @param column the index of a BOOLEAN column
+         * @param row the index of the row in this batch
+         * @return the value
+         */
+        public boolean getBoolean(int column, int row) {
+            return (((byte[]) values[column])[row >> 3] & (1 << (row & 7))) != 0;
+        }
+
+        /**
+         * @param column the index of an INT column
+         * @param row the index of the row in this batch
+         * @return the value
+         */
+        public int getInt(int column, int row) {
+            return ((int[]) values[column])[row];
+        }
+
+        /**
+         * @param column the index of a LONG or DATE column, giving milliseconds since the epoch
+         * for dates
+         * @param row the index of the row in this batch
+         * @return the value
+         */
+        public long getLong(int column, int row) {
+            return ((long[]) values[column])[row];
+        }
+
+        /**
+         * @param column the index of a FLOAT column
+         * @param row the index of the row in this batch
+         * @return the value
+         */
+        public float getFloat(int column, int row) {
+            return ((float[]) values[column])[row];
+        }
+
+        /**
+         * @param column the index of a DOUBLE column
+         * @param row the index of the row in this batch
+         * @return the value
+         */
+        public double getDouble(int column, int row) {
+            return ((double[]) values[column])[row];
+        }
+
+        /**
+         * @param column the index of a STRING column
+         * @param row the index of the row in this batch
+         * @return the value, or null
+         */
+        public String getString(int column, int row) {
+            if (isNull(column, row)) {
+                return null;
+            }
+            int[] offsets = (int[]) values[column];
+            return new String(data[column], offsets[row], offsets[row + 1] - offsets[row], UTF8);
+        }
+
+        /**
+         * @param column the index of the column
+         * @param row the index of the row in this batch
+         * @return the value, as an object of the type of the column, or null
+         */
+        public Object getValue(int column, int row) {
+            if (isNull(column, row)) {
+                return null;
+            }
+            switch (typeCodes[column]) {
+                case BOOLEAN:
+                    return Boolean.valueOf(getBoolean(column, row));
+                case INT:
+                    return Integer.valueOf(getInt(column, row));
+                case LONG:
+                    return Long.valueOf(getLong(column, row));
+                case FLOAT:
+                    return Float.valueOf(getFloat(column, row));
+                case DOUBLE:
+                    return Double.valueOf(getDouble(column, row));
+                case DATE:
+                    return new Date(getLong(column, row));
+                default:
+                    return getString(column, row);
+            }
+        }
+    }
+}
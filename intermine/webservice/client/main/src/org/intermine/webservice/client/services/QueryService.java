@@ -31,6 +31,7 @@ import org.intermine.webservice.client.core.ContentType;
 import org.intermine.webservice.client.core.Request.RequestType;
 import org.intermine.webservice.client.core.RequestImpl;
 import org.intermine.webservice.client.exceptions.ServiceException;
+import org.intermine.webservice.client.results.ColumnarResultSet;
 import org.intermine.webservice.client.results.JSONResult;
 import org.intermine.webservice.client.results.Page;
 import org.intermine.webservice.client.results.RowResultSet;
@@ -402,6 +403,35 @@ public class QueryService extends AbstractQueryService<PathQuery>
         return getRows(request, views);
     }
 
+    /**
+     * Get the results of a query in the binary columnar format, in which the values come typed
+     * as the attributes of the view and a batch of rows at a time.  This is the quickest way
+     * to fetch large numbers of rows.
+     *
+     * @param query the query to run.
+     * @param page The subsection of the result set to retrieve.
+     * @return a result set to read the batches of rows from.
+     */
+    public ColumnarResultSet getColumnarResults(PathQuery query, Page page) {
+        String queryXml = query.toXml(PathQuery.USERPROFILE_VERSION);
+        QueryRequest request = new QueryRequest(RequestType.POST, getUrl(),
+                ContentType.APPLICATION_COLUMNAR);
+        request.setPage(page);
+        request.setQueryXml(queryXml);
+        return new ColumnarResultSet(executeRequest(request));
+    }
+
+    /**
+     * Get the results of a query in the binary columnar format, up to the maximum result size
+     * of 10,000,000 rows from the beginning.
+     *
+     * @param query the query to run.
+     * @return a result set to read the batches of rows from.
+     */
+    public ColumnarResultSet getColumnarResults(PathQuery query) {
+        return getColumnarResults(query, Page.DEFAULT);
+    }
+
     /**
      * Get a summary for the values in column of a query.
      *
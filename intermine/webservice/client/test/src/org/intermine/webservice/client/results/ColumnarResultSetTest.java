@@ -0,0 +1,168 @@
+package org.intermine.webservice.client.results;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.intermine.webservice.client.exceptions.ServiceException;
+import org.intermine.webservice.server.output.ColumnType;
+import org.intermine.webservice.server.output.ColumnarOutput;
+
+/**
+ * Writes results with the service's ColumnarOutput and reads them back with the
+ * ColumnarResultSet.
+ */
+public class ColumnarResultSetTest extends TestCase
+{
+    private static final List<String> COLUMNS = Arrays.asList("Employee.fullTime",
+            "Employee.age", "Company.vatNumber", "Employee.weight", "Employee.salary",
+            "Employee.start", "Employee.name");
+    private static final List<ColumnType> TYPES = Arrays.asList(ColumnType.BOOLEAN,
+            ColumnType.INT, ColumnType.LONG, ColumnType.FLOAT, ColumnType.DOUBLE,
+            ColumnType.DATE, ColumnType.STRING);
+
+    private List<List<Object>> rows;
+
+    public ColumnarResultSetTest(String name) {
+        super(name);
+    }
+
+    @Override
+    public void setUp() {
+        rows = new ArrayList<List<Object>>();
+        // every column is null in one of the rows, and the rows fill more than two batches
+        for (int i = 0; i < 20; i++) {
+            Object[] row = new Object[] {Boolean.valueOf(i % 3 == 0), Integer.valueOf(i - 10),
+                Long.valueOf(12345678901L * i), Float.valueOf(i + 0.5f),
+                Double.valueOf(i / 3.0), new Date(1000000000000L + i * 86400000L),
+                (i % 2 == 0) ? "Employee" + i : "Lée 😀 " + i};
+            if (i < row.length) {
+                row[i] = null;
+            }
+            rows.add(Arrays.asList(row));
+        }
+    }
+
+    public void testRoundTrip() throws Exception {
+        ColumnarResultSet results = new ColumnarResultSet(write(null, 0));
+        assertEquals(COLUMNS, results.getColumnNames());
+        assertEquals(Arrays.asList(Boolean.class, Integer.class, Long.class, Float.class,
+                    Double.class, Date.class, String.class), results.getColumnTypes());
+        assertEquals(rows, results.getRowsAsLists());
+    }
+
+    public void testBatches() throws Exception {
+        ColumnarResultSet results = new ColumnarResultSet(write(null, 0));
+        int[] sizes = {8, 8, 4};
+        int offset = 0;
+        for (int size : sizes) {
+            ColumnarResultSet.Batch batch = results.nextBatch();
+            assertEquals(size, batch.size());
+            assertEquals(COLUMNS.size(), batch.getColumnCount());
+            for (int row = 0; row < size; row++) {
+                List<Object> expected = rows.get(offset + row);
+                for (int column = 0; column < COLUMNS.size(); column++) {
+                    assertEquals(expected.get(column) == null, batch.isNull(column, row));
+                }
+                if (expected.get(0) != null) {
+                    assertEquals(expected.get(0), batch.getBoolean(0, row));
+                }
+                if (expected.get(1) != null) {
+                    assertEquals(expected.get(1), batch.getInt(1, row));
+                }
+                if (expected.get(2) != null) {
+                    assertEquals(expected.get(2), batch.getLong(2, row));
+                }
+                if (expected.get(3) != null) {
+                    assertEquals(expected.get(3), batch.getFloat(3, row));
+                }
+                if (expected.get(4) != null) {
+                    assertEquals(expected.get(4), batch.getDouble(4, row));
+                }
+                if (expected.get(5) != null) {
+                    assertEquals(((Date) expected.get(5)).getTime(), batch.getLong(5, row));
+                }
+                assertEquals(expected.get(6), batch.getString(6, row));
+            }
+            offset += size;
+        }
+        assertNull(results.nextBatch());
+        assertNull(results.nextBatch());
+    }
+
+    public void testError() throws Exception {
+        ColumnarResultSet results = new ColumnarResultSet(write("Something went wrong", 500));
+        assertEquals(8, results.nextBatch().size());
+        assertEquals(8, results.nextBatch().size());
+        assertEquals(4, results.nextBatch().size());
+        try {
+            results.nextBatch();
+            fail("Expected an exception");
+        } catch (ServiceException e) {
+            assertEquals("Something went wrong", e.getMessage());
+        }
+        assertNull(results.nextBatch());
+    }
+
+    public void testTruncated() throws Exception {
+        byte[] bytes = toBytes(null, 0);
+        ColumnarResultSet results = new ColumnarResultSet(new ByteArrayInputStream(
+                    Arrays.copyOf(bytes, bytes.length - 20)));
+        try {
+            results.getRowsAsLists();
+            fail("Expected an exception");
+        } catch (ServiceException e) {
+            // expected
+        }
+    }
+
+    public void testNotColumnar() throws Exception {
+        try {
+            new ColumnarResultSet(new ByteArrayInputStream("[[1,2,3]]".getBytes("UTF-8")));
+            fail("Expected an exception");
+        } catch (ServiceException e) {
+            // expected
+        }
+    }
+
+    private ByteArrayInputStream write(String error, int code) {
+        return new ByteArrayInputStream(toBytes(error, code));
+    }
+
+    private byte[] toBytes(String error, int code) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ColumnarOutput output = new ColumnarOutput(bytes, 8);
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put(ColumnarOutput.KEY_COLUMNS, COLUMNS);
+        attributes.put(ColumnarOutput.KEY_COLUMN_TYPES, TYPES);
+        output.setHeaderAttributes(attributes);
+        for (List<Object> row : rows) {
+            for (int i = 0; i < row.size(); i++) {
+                output.setValue(i, row.get(i));
+            }
+            output.endRow();
+        }
+        if (error != null) {
+            output.setError(error, code);
+        }
+        output.flush();
+        return bytes.toByteArray();
+    }
+}
@@ -64,6 +64,7 @@ public class PrecomputeTemplatesTask extends Task
     protected String ignore = "";
     protected Set<String> ignoreNames = new HashSet<String>();
     protected boolean doSummarise = true;
+    protected int threads = TemplateSummariser.DEFAULT_THREADS;
 
     /**
      * Set the ObjectStore alias
@@ -99,6 +100,14 @@ public class PrecomputeTemplatesTask extends Task
         this.minRows = minRows.intValue();
     }
 
+    /**
+     * Set the number of queries to precompute and summarise in parallel.
+     * @param threads the number of threads
+     */
+    public void setThreads(Integer threads) {
+        this.threads = threads.intValue();
+    }
+
     /**
      * Set the account name to laod template to.
      * @param user username to load templates into
@@ -211,7 +220,7 @@ public class PrecomputeTemplatesTask extends Task
             jobs.add(new ParallelPrecomputer.Job(template.getName(), q, indexes, false,
                         PRECOMPUTE_CATEGORY_TEMPLATE));
         }
-        ParallelPrecomputer pp = new ParallelPrecomputer((ObjectStoreInterMineImpl) os, 4);
+        ParallelPrecomputer pp = new ParallelPrecomputer((ObjectStoreInterMineImpl) os, threads);
         try {
             pp.precompute(jobs);
         } catch (ObjectStoreException e) {
@@ -220,13 +229,11 @@ public class PrecomputeTemplatesTask extends Task
         // TODO:  don't require servlet context to create oss, we can't get it here yet
         ObjectStoreSummary oss = null;
         TemplateSummariser summariser = new TemplateSummariser(os, userProfileOS, oss);
-        for (ApiTemplate template : toSummarise) {
-            if (doSummarise) {
-                try {
-                    summariser.summarise(template);
-                } catch (ObjectStoreException e) {
-                    LOG.error("Exception while summarising template " + template.getName(), e);
-                }
+        if (doSummarise) {
+            try {
+                summariser.summarise(toSummarise, threads);
+            } catch (ObjectStoreException e) {
+                LOG.error("Exception while summarising templates", e);
             }
         }
     }